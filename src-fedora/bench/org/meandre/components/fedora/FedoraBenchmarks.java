@@ -0,0 +1,397 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jrdf.graph.Node;
+import org.meandre.components.fedora.bench.Benchmark;
+import org.meandre.components.fedora.bench.BenchmarkRunner;
+import org.meandre.components.fedora.fake.FakeAPIA;
+import org.meandre.components.fedora.fake.FakeAPIM;
+import org.meandre.components.fedora.fake.FakeRepository;
+import org.meandre.components.fedora.fake.FakeServer;
+import org.meandre.components.fedora.support.ByteStreams;
+import org.meandre.components.fedora.support.CorpusObject;
+import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FedoraConnectionRegistry;
+import org.meandre.components.fedora.support.FindObjectsPager;
+import org.meandre.components.fedora.support.FoxmlProjection;
+import org.meandre.components.fedora.support.ObjectCache;
+import org.meandre.components.fedora.support.ResourceIndex;
+import org.meandre.components.fedora.support.RestTransport;
+import org.meandre.components.fedora.support.RetryPolicy;
+import org.meandre.components.fedora.support.TupleRows;
+import org.trippi.TupleIterator;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import fedora.client.FedoraClient;
+import fedora.server.access.FedoraAPIA;
+import fedora.server.management.FedoraAPIM;
+
+/**
+ * 
+ * <p>
+ * Title: FedoraBenchmarks
+ * </p>
+ * 
+ * <p>
+ * Description: Benchmarks the hot paths of the components against an
+ * in-memory fake repository, so numbers can be compared before and
+ * after a change without a Fedora server: client creation, findObjects
+ * paging, resource index tuple parsing, disseminations, ingest and export
+ * byte handling, and datastream projection.  The component helpers are
+ * called directly since the components themselves need a Meandre flow.
+ * </p>
+ * 
+ * <p>
+ * Run with: ant run-bench [-Dbench.args="-filter tuples -iterations 10"]
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FedoraBenchmarks
+{
+	static final String PREFIX = "monk:";
+	static final int OBJECTS = 20000;
+	static final int OBJECT_BYTES = 16 * 1024;
+	static final int TUPLES = 10000;
+	static final String QUERY = "select $s from <#ri> where $s " +
+			"<info:fedora/fedora-system:def/relations-external#isMemberOfCollection> <info:fedora/monk:collection>;";
+	
+	// held so the level set in main is not lost with the logger
+	static final Logger QUIET = Logger.getLogger("org.meandre");
+	
+	final FakeRepository repository = new FakeRepository();
+	final FedoraAPIA apia = new FakeAPIA(repository);
+	final FedoraAPIM apim = new FakeAPIM(repository);
+	final FakeServer server;
+	final File scratch;
+	
+	FedoraBenchmarks()
+	throws Exception
+	{
+		repository.populate(PREFIX, OBJECTS, OBJECT_BYTES);
+		for (int i = 1; i <= TUPLES; i++)
+		{
+			repository.getTriples().addResource("info:fedora/"+PREFIX+i, 
+					FedoraConstants.COLLECTION_PREDICATE, "info:fedora/monk:collection");
+		}
+		server = new FakeServer(repository);
+		scratch = File.createTempFile("fedora-bench", "");
+		scratch.delete();
+		scratch.mkdirs();
+	}
+	
+	public static void main(String[] args)
+	throws Exception
+	{
+		// the components log every call at INFO
+		QUIET.setLevel(Level.WARNING);
+		
+		BenchmarkRunner runner = new BenchmarkRunner();
+		runner.configure(args);
+		FedoraBenchmarks benchmarks = new FedoraBenchmarks();
+		try
+		{
+			benchmarks.addAll(runner);
+			runner.runAll(System.out);
+		}
+		finally
+		{
+			benchmarks.server.stop();
+		}
+	}
+	
+	static boolean hasPullParser()
+	{
+		try
+		{
+			XmlPullParserFactory.newInstance();
+			return true;
+		}
+		catch (XmlPullParserException e)
+		{
+			return false;
+		}
+	}
+	
+	void addAll(BenchmarkRunner runner)
+	throws Exception
+	{
+		final String port = String.valueOf(server.getPort());
+		
+		// FedoraClientComponent: a new client and stubs per firing against the shared registry
+		runner.add(new Benchmark("client.create")
+		{
+			public long run() throws Exception
+			{
+				FedoraClient fclient = new FedoraClient(server.getBaseURL(), "user", "pass");
+				return (fclient.getAPIA() != null && fclient.getAPIM() != null) ? 1 : 0;
+			}
+		});
+		runner.add(new Benchmark("client.registry")
+		{
+			public void setUp()
+			{
+				FedoraConnectionRegistry.getInstance().setValidateAfter(Long.MAX_VALUE);
+			}
+			
+			public long run() throws Exception
+			{
+				return (FedoraConnectionRegistry.getInstance().getConnection(
+						"http", "127.0.0.1", port, "user", "pass") != null) ? 1 : 0;
+			}
+		});
+		
+		// GetWorkObjects / GetCollectionObjects: rows paged through findObjects
+		runner.add(new FindWorks("findObjects.serverFilter", true, 1000, 2));
+		runner.add(new FindWorks("findObjects.clientFilter", false, 1000, 2));
+		runner.add(new FindWorks("findObjects.noPrefetch", true, 1000, 0));
+		runner.add(new FindWorks("findObjects.smallPages", true, 100, 2));
+		
+		// GetCollectionsComponent / GetCollectionMembersComponent: rows parsed per query
+		final FedoraClient fclient = new FedoraClient(server.getBaseURL(), "user", "pass");
+		runner.add(new Benchmark("tuples.csv")
+		{
+			public long run() throws Exception
+			{
+				ArrayList<String> members = new ArrayList<String>(TUPLES);
+				ResourceIndex.getTuples(fclient, ResourceIndex.ITQL, QUERY, false, 0).addValuesTo(members);
+				return members.size();
+			}
+		});
+		// the pre-CSV path; trippi needs an xmlpull implementation on the classpath
+		if (hasPullParser())
+		{
+			runner.add(new Benchmark("tuples.sparql")
+			{
+				@SuppressWarnings("unchecked")
+				public long run() throws Exception
+				{
+					Map<String, String> params = new HashMap<String, String>();
+					params.put("lang", ResourceIndex.ITQL);
+					params.put("flush", "false");
+					params.put("query", QUERY);
+					TupleIterator tuples = fclient.getTuples(params);
+					ArrayList<String> members = new ArrayList<String>(TUPLES);
+					while (tuples.hasNext())
+					{
+						Map<String, Node> row = tuples.next();
+						for (Node node: row.values())
+						{  members.add(node.toString()); }
+					}
+					tuples.close();
+					return members.size();
+				}
+			});
+		}
+		runner.add(new Benchmark("tuples.cached")
+		{
+			public long run() throws Exception
+			{
+				TupleRows rows = ResourceIndex.getTuples(fclient, ResourceIndex.ITQL, QUERY, false, 60000);
+				return rows.size();
+			}
+		});
+		
+		// GetMonkObject: one dissemination per firing
+		runner.add(new Benchmark("dissemination")
+		{
+			int next = 0;
+			
+			public long run() throws Exception
+			{
+				String pid = PREFIX + (next++ % OBJECTS + 1);
+				return GetMonkObject.getChunk(apia, pid, "monk:behav-def-book", "getChunk", "wp1").length() > 0 ? 1 : 0;
+			}
+		});
+		// FedoraClientComponent with TRANSPORT=rest: the same dissemination over HTTP
+		final FedoraAPIA restApia = RestTransport.apia(RestTransport.REST, fclient, apia);
+		runner.add(new Benchmark("dissemination.rest")
+		{
+			int next = 0;
+			
+			public long run() throws Exception
+			{
+				String pid = PREFIX + (next++ % OBJECTS + 1);
+				return GetMonkObject.getChunk(restApia, pid, "monk:behav-def-book", "getChunk", "wp1").length() > 0 ? 1 : 0;
+			}
+		});
+		runner.add(new Benchmark("dissemination.diskCache")
+		{
+			ObjectCache cache;
+			int next = 0;
+			
+			public void setUp() throws Exception
+			{
+				cache = ObjectCache.getInstance(new File(scratch, "cache"));
+			}
+			
+			public long run() throws Exception
+			{
+				String pid = PREFIX + (next++ % 1000 + 1);
+				return GetMonkObject.getChunk(apia, pid, "monk:behav-def-book", "getChunk", "wp1",
+						cache, 60000).length() > 0 ? 1 : 0;
+			}
+		});
+		
+		// IngestSingleObject / BulkIngest / BulkExport byte handling
+		runner.add(new Benchmark("ingest.readFile")
+		{
+			File file;
+			byte[] written;
+			
+			public void setUp() throws Exception
+			{
+				file = new File(scratch, "object.xml");
+				written = FakeRepository.foxml("bench:file", "File", 4 * 1024 * 1024, null);
+				FileOutputStream out = new FileOutputStream(file);
+				out.write(written);
+				out.close();
+			}
+			
+			public long run() throws Exception
+			{
+				// the file spans many chunks; every one of them must be read
+				byte[] read = ByteStreams.readFile(file, ByteStreams.DEFAULT_CHUNK_SIZE);
+				if (!Arrays.equals(written, read))
+				{  throw new IllegalStateException("readFile returned different bytes than "+file); }
+				return 1;
+			}
+		});
+		runner.add(new Benchmark("ingest.bulk")
+		{
+			String document;
+			RetryPolicy retry = new RetryPolicy(1, 0);
+			
+			public void setUp() throws Exception
+			{
+				document = new String(FakeRepository.foxml("bench:ingest", "Ingest", OBJECT_BYTES, null), "UTF-8");
+			}
+			
+			public long run() throws Exception
+			{
+				return BulkIngest.ingest(apim, document, "foxml1.0", "bench", new String[0], retry).isSuccess() ? 1 : 0;
+			}
+		});
+		runner.add(new Benchmark("export.bulk")
+		{
+			RetryPolicy retry = new RetryPolicy(1, 0);
+			int next = 0;
+			
+			public long run() throws Exception
+			{
+				String pid = PREFIX + (next++ % OBJECTS + 1);
+				return BulkExport.export(apim, pid, "foxml1.0", "public", retry).result.isSuccess() ? 1 : 0;
+			}
+		});
+		
+		// ExtractDatastreams
+		runner.add(new Benchmark("projection.dc")
+		{
+			byte[] xml;
+			
+			public void setUp() throws Exception
+			{
+				xml = apim.getObjectXML(PREFIX + 1);
+			}
+			
+			public long run() throws Exception
+			{
+				FoxmlProjection projection = new FoxmlProjection(Arrays.asList("DC"), 
+						Arrays.asList("digitalObject/objectProperties/property/@VALUE"), true).parse(xml);
+				return projection.getDatastreams().size();
+			}
+		});
+	}
+	
+	/*
+	 * Lists every work of a collection through GetWorkObjects.findWorks
+	 * and counts the rows kept.
+	 */
+	class FindWorks extends Benchmark
+	{
+		final boolean serverSide;
+		final int pageSize;
+		final int prefetch;
+		
+		FindWorks(String name, boolean serverSide, int pageSize, int prefetch)
+		{
+			super(name);
+			this.serverSide = serverSide;
+			this.pageSize = pageSize;
+			this.prefetch = prefetch;
+		}
+		
+		public long run() throws Exception
+		{
+			final long[] kept = {0};
+			FindObjectsPager pager = new FindObjectsPager(apia, new String[] {"pid","title"}, pageSize, prefetch);
+			GetWorkObjects.findWorks(pager, PREFIX + "1", serverSide, new GetWorkObjects.PageHandler()
+			{
+				public void handlePage(ArrayList<CorpusObject> page)
+				{
+					kept[0] += page.size();
+				}
+			});
+			return kept[0];
+		}
+	}
+}
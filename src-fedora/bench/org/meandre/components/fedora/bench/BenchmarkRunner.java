@@ -0,0 +1,225 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.bench;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 
+ * <p>
+ * Title: BenchmarkRunner
+ * </p>
+ * 
+ * <p>
+ * Description: Runs benchmarks with a timed warmup followed by a number
+ * of timed measurement iterations, and prints the mean, spread and
+ * throughput of each.  A value accumulated from every batch is printed
+ * too, so the JIT cannot discard the work.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class BenchmarkRunner
+{
+	public static final long DEFAULT_WARMUP_MILLIS = 2000;
+	public static final int DEFAULT_ITERATIONS = 5;
+	public static final long DEFAULT_ITERATION_MILLIS = 1000;
+	
+	private long warmupMillis = DEFAULT_WARMUP_MILLIS;
+	private int iterations = DEFAULT_ITERATIONS;
+	private long iterationMillis = DEFAULT_ITERATION_MILLIS;
+	private String filter = null;
+	
+	private final List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+	private final List<Result> results = new ArrayList<Result>();
+	private long blackhole = 0;
+	
+	public void setWarmupMillis(long millis)
+	{ warmupMillis = Math.max(0, millis); }
+	
+	public void setIterations(int count)
+	{ iterations = Math.max(1, count); }
+	
+	public void setIterationMillis(long millis)
+	{ iterationMillis = Math.max(1, millis); }
+	
+	/* Only benchmarks whose name contains filter are run. */
+	public void setFilter(String filter)
+	{ this.filter = filter; }
+	
+	public void add(Benchmark benchmark)
+	{
+		benchmarks.add(benchmark);
+	}
+	
+	public List<Result> getResults()
+	{ return results; }
+	
+	/*
+	 * Reads -warmup ms, -iterations n, -time ms and -filter text from
+	 * command line arguments.
+	 */
+	public void configure(String[] args)
+	{
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			String value = args[i + 1];
+			if ("-warmup".equals(args[i]))
+			{  setWarmupMillis(Long.parseLong(value)); }
+			else if ("-iterations".equals(args[i]))
+			{  setIterations(Integer.parseInt(value)); }
+			else if ("-time".equals(args[i]))
+			{  setIterationMillis(Long.parseLong(value)); }
+			else if ("-filter".equals(args[i]))
+			{  setFilter(value); }
+			else
+			{  throw new IllegalArgumentException("Unknown option "+args[i]); }
+		}
+	}
+	
+	public void runAll(PrintStream out)
+	throws Exception
+	{
+		out.println(String.format("%-40s %12s %10s %14s %8s", 
+				"benchmark", "ns/op", "+/-", "ops/s", "ops"));
+		for (Benchmark benchmark: benchmarks)
+		{
+			if (filter != null && benchmark.getName().indexOf(filter) < 0)
+			{  continue; }
+			Result result = run(benchmark);
+			results.add(result);
+			out.println(result);
+		}
+		out.println("(checksum "+blackhole+")");
+	}
+	
+	public Result run(Benchmark benchmark)
+	throws Exception
+	{
+		benchmark.setUp();
+		try
+		{
+			long end = System.currentTimeMillis() + warmupMillis;
+			while (System.currentTimeMillis() < end)
+			{
+				blackhole += benchmark.run();
+			}
+			
+			double[] nanosPerOp = new double[iterations];
+			long totalOps = 0;
+			for (int i = 0; i < iterations; i++)
+			{
+				long ops = 0;
+				long start = System.nanoTime();
+				long stop = start + iterationMillis * 1000000L;
+				long now = start;
+				do
+				{
+					ops += benchmark.run();
+					now = System.nanoTime();
+				}
+				while (now < stop);
+				nanosPerOp[i] = (double)(now - start) / Math.max(1, ops);
+				totalOps += ops;
+			}
+			blackhole += totalOps;
+			return new Result(benchmark.getName(), nanosPerOp, totalOps);
+		}
+		finally
+		{
+			benchmark.tearDown();
+		}
+	}
+	
+	public static class Result
+	{
+		private final String name;
+		private final double mean;
+		private final double error;
+		private final long ops;
+		
+		Result(String name, double[] nanosPerOp, long ops)
+		{
+			this.name = name;
+			this.ops = ops;
+			double sum = 0;
+			for (double v: nanosPerOp)
+			{  sum += v; }
+			mean = sum / nanosPerOp.length;
+			double sq = 0;
+			for (double v: nanosPerOp)
+			{  sq += (v - mean) * (v - mean); }
+			error = (nanosPerOp.length > 1) ? Math.sqrt(sq / (nanosPerOp.length - 1)) : 0;
+		}
+		
+		public String getName()
+		{ return name; }
+		
+		/* Mean nanoseconds per operation over the iterations. */
+		public double getMean()
+		{ return mean; }
+		
+		/* Standard deviation of the per-iteration means. */
+		public double getError()
+		{ return error; }
+		
+		public double getOpsPerSecond()
+		{ return (mean > 0) ? 1e9 / mean : 0; }
+		
+		public String toString()
+		{
+			return String.format("%-40s %12.1f %10.1f %14.1f %8d", 
+					name, mean, error, getOpsPerSecond(), ops);
+		}
+	}
+}
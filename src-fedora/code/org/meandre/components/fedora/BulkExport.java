@@ -0,0 +1,461 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.meandre.annotations.Component;
+import org.meandre.annotations.ComponentInput;
+import org.meandre.annotations.ComponentOutput;
+import org.meandre.annotations.ComponentProperty;
+import org.meandre.core.ComponentContext;
+import org.meandre.core.ComponentContextException;
+import org.meandre.core.ComponentExecutionException;
+import org.meandre.core.ExecutableComponent;
+import fedora.server.management.FedoraAPIM;
+import org.meandre.core.ComponentContextProperties;
+import org.meandre.components.fedora.support.BulkStats;
+import org.meandre.components.fedora.support.ByteStreams;
+import org.meandre.components.fedora.support.Checksums;
+import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FedoraMetrics;
+import org.meandre.components.fedora.support.OperationMetrics;
+import org.meandre.components.fedora.support.OperationResult;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.RetryPolicy;
+
+/**
+ * 
+ * <p>
+ * Title: BulkExport
+ * </p>
+ * 
+ * <p>
+ * Description: Exports many fedora objects with a pool of workers into a
+ *              single ZIP archive, one entry per object.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * 
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+
+@Component(
+		name="BulkExport",
+		tags="fedora export bulk",
+		creator="Automated Learning Group",
+		description="<p>Exports a list of objects from a fedora repository into one ZIP " +
+				"archive, using several concurrent export calls.  Each entry is written to " +
+				"the archive as soon as its export completes, so only a bounded number of " +
+				"exported documents is held in memory.  The pids input is a String[] or a " +
+				"Collection of pids or info:fedora/ URIs, such as the member list produced " +
+				"by GetCollectionMembersComponent.  A collection pid exports only the " +
+				"collection object, not its members; pass the member list to export " +
+				"those.  A pid given more than once is exported once.</p>",
+		dependency={"activation-1.0.2.jar", "axis.jar", "batik-all.jar", "commons-codec-1.3.jar",
+				"commons-dbcp-1.2.1.jar", "commons-discovery.jar", "commons-pool-1.2.jar",
+				"foxml-merge.xsl", "jai_codec.jar", "jai_core.jar", "java-getopt-1.0.11.jar",
+				"jaxrpc.jar", "jhbasic.jar", "jrdf-0.3.3.jar", "log4j-1.2.14.jar",
+				"mail.jar", "mets-merge.xsl", "saaj.jar", "saxon.jar",
+				"sunxacml-patched.jar", "trippi-1.1.2-core.jar", "wsdl4j-1.5.1.jar", "xercesImpl.jar",
+				"xml-apis.jar", "commons-httpclient-3.1-beta1.jar", "commons-logging.jar", 
+				"fedora-client.jar", "icu4j-3.8.1.jar", "icu4j-charsets-3.8.1.jar", 
+				"jena-2.5.5.jar", "jena-arq-2.5.5.jar", "jena-arq-extra-2.5.5.jar", "jena-iri-2.5.5.jar", 
+				"jena-json-2.5.5.jar"}	
+          )
+public class BulkExport implements ExecutableComponent
+{
+	
+	//INPUT
+	@ComponentInput(
+	description="An APIM connection to fedora.", 
+	name=FedoraConstants.APIM)
+	final String DATA_INPUT_1 = FedoraConstants.APIM;
+	
+	@ComponentInput(
+			description = "The fedora PIDs or info:fedora/ URIs to export.",
+			name = FedoraConstants.PIDS) 
+	final static String DATA_INPUT_2 = FedoraConstants.PIDS;
+
+
+	//PROPERTY
+	
+	@ComponentProperty(
+    description = "The xml format: valid values are foxml1.0 or metslikefedora1",
+    name = FedoraConstants.FORMAT,
+    defaultValue= FedoraConstants.FOXML)
+	final static String PROPERTY2 = FedoraConstants.FORMAT;	
+	
+	@ComponentProperty(
+	description = "The export context: the intended use of the exported file. "+
+	              "Valid values are public, migrate, or archive.",
+	name = FedoraConstants.CONTEXT, 
+	defaultValue = FedoraConstants.PUBLIC)
+	final static String PROPERTY3 = FedoraConstants.CONTEXT;	
+	
+	@ComponentProperty(
+	description = "The path of the ZIP archive to write.",
+	name = FedoraConstants.ARCHIVE_FILE, 
+	defaultValue = "/tmp/fedora-export.zip")
+	final static String PROPERTY4 = FedoraConstants.ARCHIVE_FILE;	
+	
+	@ComponentProperty(
+	description = "The number of concurrent export calls.",
+	name = FedoraConstants.WORKERS, 
+	defaultValue = "4")
+	final static String PROPERTY5 = FedoraConstants.WORKERS;	
+	
+	@ComponentProperty(
+	description = "The ZIP compression level, 0 (store) to 9 (smallest).",
+	name = "compressionLevel", 
+	defaultValue = "6")
+	final static String PROPERTY6 = "compressionLevel";	
+	
+	@ComponentProperty(
+	description = "The number of attempts per object for transient (network) failures",
+	name = FedoraConstants.MAX_ATTEMPTS, 
+	defaultValue = "3")
+	final static String PROPERTY7 = FedoraConstants.MAX_ATTEMPTS;	
+	
+	@ComponentProperty(
+	description = "Checksum types (MD5, SHA-1, SHA-256, SHA-384, SHA-512) to compute " +
+			"over each entry as it is written, separated by spaces; blank for none.  " +
+			"Each type also adds a manifest-<type>.txt entry listing the checksums.",
+	name = FedoraConstants.CHECKSUM_TYPES, 
+	defaultValue = "")
+	final static String PROPERTY8 = FedoraConstants.CHECKSUM_TYPES;	
+
+	//OUTPUT
+	@ComponentOutput(
+	description="The path of the written archive.", 
+	name=FedoraConstants.ARCHIVE_FILE)
+	final String DATA_OUTPUT_1=FedoraConstants.ARCHIVE_FILE;		
+	
+	@ComponentOutput(
+	description="An OperationResult for each object, in completion order.", 
+	name=FedoraConstants.OPERATION_RESULT)
+	final String DATA_OUTPUT_2=FedoraConstants.OPERATION_RESULT;		
+	
+	@ComponentOutput(
+	description="A BulkStats summary with the aggregate counts and throughput.", 
+	name=FedoraConstants.BULK_STATS)
+	final String DATA_OUTPUT_3=FedoraConstants.BULK_STATS;		
+	
+	/* The logger object to use for output. */
+	private static Logger logger = null;
+	
+	/* Timings of the export calls, per attempt. */
+	private static final OperationMetrics EXPORT = FedoraMetrics.operation("export");
+	
+	FedoraAPIM APIM = null;
+
+	public void dispose(ComponentContextProperties ccp)
+	{
+	   logger.info("Disposing BulkExport...");
+	}
+
+	public void execute(ComponentContext cc)
+	throws ComponentExecutionException, ComponentContextException
+	{
+		logger.info("Firing BulkExport.execute...");
+
+		ExecutorService executor = null;
+		ZipOutputStream zip = null;
+		try
+		{
+			APIM = (FedoraAPIM) cc.getDataComponentFromInput(DATA_INPUT_1);
+			List<String> pids = toPids(cc.getDataComponentFromInput(DATA_INPUT_2));
+			final String format = cc.getProperty(PROPERTY2);
+			final String context = cc.getProperty(PROPERTY3);
+			String archive = cc.getProperty(PROPERTY4);
+			int workers = Math.max(1, PropertyValues.parseInt(cc.getProperty(PROPERTY5), 4));
+			final RetryPolicy retry = new RetryPolicy(PropertyValues.parseInt(cc.getProperty(PROPERTY7), 3), 500);
+			String[] checksumTypes = Checksums.parseTypes(cc.getProperty(PROPERTY8));
+			StringBuilder[] manifests = new StringBuilder[checksumTypes.length];
+			for (int i = 0; i < manifests.length; i++)
+			{  manifests[i] = new StringBuilder(); }
+			
+			logger.info("Exporting "+pids.size()+" objects to "+archive);
+			zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive)));
+			zip.setLevel(Math.min(9, Math.max(0, PropertyValues.parseInt(cc.getProperty(PROPERTY6), 6))));
+			
+			executor = Executors.newFixedThreadPool(workers);
+			CompletionService<Exported> completion = 
+				new ExecutorCompletionService<Exported>(executor);
+			BulkStats stats = new BulkStats("export");
+			final FedoraAPIM apim = APIM;
+			Set<String> entries = new HashSet<String>();
+			
+			// At most 2 * workers exported documents exist at a time:
+			// those being exported and those waiting to be written.
+			int window = 2 * workers;
+			int submitted = 0;
+			int written = 0;
+			while (written < pids.size())
+			{
+				while (submitted < pids.size() && submitted - written < window)
+				{
+					final String pid = pids.get(submitted++);
+					completion.submit(new Callable<Exported>()
+					{
+						public Exported call()
+						{
+							return export(apim, pid, format, context, retry);
+						}
+					});
+				}
+				
+				Exported exported = completion.take().get();
+				OperationResult result = exported.result;
+				String entry = entryName(result.getPid());
+				if (exported.bytes != null && !entries.add(entry))
+				{
+					// e.g. demo:5 and demo_5
+					result.setError("Duplicate archive entry "+entry);
+					result.setBytes(0);
+					logger.warning("Export not written: "+result);
+				}
+				else if (exported.bytes != null)
+				{
+					Checksums checksums = new Checksums(checksumTypes);
+					zip.putNextEntry(new ZipEntry(entry));
+					write(zip, exported.bytes, checksums);
+					zip.closeEntry();
+					if (!checksums.isEmpty())
+					{
+						result.setChecksums(checksums.toString());
+						for (int i = 0; i < checksumTypes.length; i++)
+						{
+							manifests[i].append(checksums.getValue(checksumTypes[i]));
+							manifests[i].append("  ").append(entry).append('\n');
+						}
+					}
+				}
+				else
+				{
+					logger.warning("Export failed: "+result);
+				}
+				written++;
+				stats.record(result);
+				cc.pushDataComponentToOutput(DATA_OUTPUT_2, result);
+			}
+			
+			for (int i = 0; i < checksumTypes.length; i++)
+			{
+				zip.putNextEntry(new ZipEntry(manifestName(checksumTypes[i])));
+				zip.write(manifests[i].toString().getBytes("UTF-8"));
+				zip.closeEntry();
+			}
+			zip.close();
+			zip = null;
+			stats.finish();
+			logger.info(stats.toString());
+			cc.pushDataComponentToOutput(DATA_OUTPUT_1, archive);
+			cc.pushDataComponentToOutput(DATA_OUTPUT_3, stats);
+		}		
+		catch (ComponentContextException ex1)
+		{
+			logger.severe("Error in BulkExport: "+ex1.getMessage());
+			throw new ComponentContextException("Error in BulkExport: "+ex1.getMessage());
+		}
+		catch (Throwable th)
+		{
+			logger.severe("Error in BulkExport:  "+th.getMessage());
+			throw new ComponentExecutionException(th);
+		}	
+		finally
+		{
+			if (executor != null)
+			{  executor.shutdownNow(); }
+			if (zip != null)
+			{
+				try
+				{  zip.close(); }
+				catch (Exception ex)
+				{  logger.info("Unable to close archive. "+ex.getMessage()); }
+			}
+		}
+	}
+	
+	/* An exported document and its result record. */
+	static class Exported
+	{
+		final OperationResult result;
+		final byte[] bytes;
+		
+		Exported(OperationResult result, byte[] bytes)
+		{
+			this.result = result;
+			this.bytes = bytes;
+		}
+	}
+	
+	static Exported export(final FedoraAPIM apim, final String pid, 
+			               final String format, final String context, RetryPolicy retry)
+	{
+		OperationResult result = new OperationResult(pid);
+		result.setPid(pid);
+		byte[] bytes = null;
+		long start = System.currentTimeMillis();
+		try
+		{
+			bytes = retry.call(new Callable<byte[]>()
+			{
+				public byte[] call() throws Exception
+				{
+					long start = EXPORT.start();
+					try
+					{
+						byte[] exported = apim.export(pid, format, context);
+						EXPORT.success(start, exported.length);
+						return exported;
+					}
+					catch (Exception ex)
+					{
+						EXPORT.failure(start);
+						throw ex;
+					}
+				}
+			});
+			result.setBytes(bytes.length);
+		}
+		catch (Throwable th)
+		{
+			result.setError(th.getClass().getName()+": "+th.getMessage());
+		}
+		result.setAttempts(retry.getLastAttempts());
+		result.setLatencyMillis(System.currentTimeMillis() - start);
+		return new Exported(result, bytes);
+	}
+	
+	/*
+	 * Writes an entry a chunk at a time, adding each chunk to the checksums
+	 * just before it is compressed.
+	 */
+	static void write(ZipOutputStream zip, byte[] bytes, Checksums checksums)
+	throws IOException
+	{
+		for (int off = 0; off < bytes.length; off += ByteStreams.DEFAULT_CHUNK_SIZE)
+		{
+			int len = Math.min(ByteStreams.DEFAULT_CHUNK_SIZE, bytes.length - off);
+			checksums.update(bytes, off, len);
+			zip.write(bytes, off, len);
+		}
+	}
+	
+	/* SHA-256 becomes manifest-sha256.txt, as in a BagIt bag. */
+	static String manifestName(String checksumType)
+	{
+		return "manifest-"+checksumType.toLowerCase().replace("-", "")+".txt";
+	}
+	
+	/* demo:5 becomes demo_5.xml */
+	static String entryName(String pid)
+	{
+		return pid.replace(':', '_').replace('/', '_')+".xml";
+	}
+	
+	/*
+	 * Accepts a String[] or Collection of pids or info:fedora/ URIs and
+	 * returns plain pids, each once, in their first order.
+	 */
+	@SuppressWarnings("unchecked")
+	static List<String> toPids(Object input)
+	throws ComponentExecutionException
+	{
+		Collection<Object> items = null;
+		if (input instanceof String[])
+		{  items = new ArrayList<Object>(Arrays.asList((String[])input)); }
+		else if (input instanceof Collection)
+		{  items = (Collection<Object>)input; }
+		else if (input instanceof String)
+		{  items = new ArrayList<Object>(Arrays.asList(new Object[] {input})); }
+		else
+		{
+			throw new ComponentExecutionException("Unsupported pid list: "+
+					(input == null ? "null" : input.getClass().getName()));
+		}
+		
+		List<String> pids = new ArrayList<String>(items.size());
+		Set<String> seen = new HashSet<String>();
+		for (Object item: items)
+		{
+			String pid = String.valueOf(item).trim();
+			if (pid.startsWith(FedoraConstants.FEDORA_URI_PREFIX))
+			{  pid = pid.substring(FedoraConstants.FEDORA_URI_PREFIX.length()); }
+			if (pid.length() > 0 && seen.add(pid))
+			{  pids.add(pid); }
+		}
+		return pids;
+	}
+
+	public void initialize(ComponentContextProperties ccp)
+	{
+		logger = ccp.getLogger();
+		logger.info("Initializing BulkExport...");
+	}
+}
@@ -0,0 +1,425 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import org.meandre.core.ComponentContext;
+import org.meandre.core.ComponentContextException;
+import org.meandre.core.ComponentExecutionException;
+import org.meandre.core.ExecutableComponent;
+import org.meandre.core.ComponentContextProperties;
+import org.meandre.annotations.Component;
+import org.meandre.annotations.ComponentInput;
+import org.meandre.annotations.ComponentOutput;
+import org.meandre.annotations.ComponentProperty;
+import fedora.server.management.FedoraAPIM;
+import org.meandre.components.fedora.support.BulkStats;
+import org.meandre.components.fedora.support.ByteStreams;
+import org.meandre.components.fedora.support.Checksums;
+import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FedoraMetrics;
+import org.meandre.components.fedora.support.OperationMetrics;
+import org.meandre.components.fedora.support.OperationResult;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.RetryPolicy;
+import org.meandre.components.fedora.support.TupleQueryCache;
+
+/**
+ * 
+ * <p>
+ * Title: BulkIngest
+ * </p>
+ * 
+ * <p>
+ * Description: Ingests many FOXML or METS documents into a Fedora store
+ * using a pool of worker threads.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+
+@Component(
+		name="BulkIngest",
+		tags="fedora ingest bulk",
+		creator="Automated Learning Group",
+		description="<p>Ingests many objects into a Fedora repository with a pool of " +
+				"worker threads.  The ingestSources input is a directory (whose files " +
+				"matching the glob property are ingested), a single file, or an array or " +
+				"collection of file paths and/or FOXML/METS document strings.  Failures " +
+				"to connect are retried; a timed out ingest is not, since the server may " +
+				"have committed the object.  A result record is pushed for every object as it " +
+				"completes, and a throughput summary is pushed at the end.</p>",
+		dependency={"activation-1.0.2.jar", "axis.jar", "batik-all.jar", "commons-codec-1.3.jar",
+				"commons-dbcp-1.2.1.jar", "commons-discovery.jar", "commons-pool-1.2.jar",
+				"foxml-merge.xsl", "jai_codec.jar", "jai_core.jar", "java-getopt-1.0.11.jar",
+				"jaxrpc.jar", "jhbasic.jar", "jrdf-0.3.3.jar", "log4j-1.2.14.jar",
+				"mail.jar", "mets-merge.xsl", "saaj.jar", "saxon.jar",
+				"sunxacml-patched.jar", "trippi-1.1.2-core.jar", "wsdl4j-1.5.1.jar", "xercesImpl.jar",
+				"xml-apis.jar", "commons-httpclient-3.1-beta1.jar", "commons-logging.jar", 
+				"fedora-client.jar", "icu4j-3.8.1.jar", "icu4j-charsets-3.8.1.jar", 
+				"jena-2.5.5.jar", "jena-arq-2.5.5.jar", "jena-arq-extra-2.5.5.jar", "jena-iri-2.5.5.jar", 
+				"jena-json-2.5.5.jar"}							
+		)
+public class BulkIngest implements ExecutableComponent {
+
+	//INPUT
+	@ComponentInput(
+	description="APIM connection", 
+	name=FedoraConstants.APIM)
+	final String DATA_INPUT_1 = FedoraConstants.APIM;
+	
+	@ComponentInput(
+	description = "A directory or file path, or a String[]/Collection of file paths " +
+			"and/or document strings",
+	name = "ingestSources")
+	final static String DATA_INPUT_2 = "ingestSources";
+
+	//PROPERTY
+	@ComponentProperty(
+	description = "Format of input",
+	name = FedoraConstants.FORMAT, 
+	defaultValue = FedoraConstants.FOXML)
+	final static String PROPERTY1 = FedoraConstants.FORMAT;	
+	
+	@ComponentProperty(
+	description = "The file name pattern (* and ? wildcards) used when ingesting a directory",
+	name = "glob", 
+	defaultValue = "*.xml")
+	final static String PROPERTY2 = "glob";	
+	
+	@ComponentProperty(
+	description = "The number of objects ingested concurrently",
+	name = FedoraConstants.WORKERS, 
+	defaultValue = "4")
+	final static String PROPERTY3 = FedoraConstants.WORKERS;	
+	
+	@ComponentProperty(
+	description = "The number of attempts per object for failures to connect; an ingest " +
+			"that may have reached the server is not retried",
+	name = FedoraConstants.MAX_ATTEMPTS, 
+	defaultValue = "3")
+	final static String PROPERTY4 = FedoraConstants.MAX_ATTEMPTS;	
+	
+	@ComponentProperty(
+	description = "The base retry delay in milliseconds; it doubles per attempt, with jitter",
+	name = FedoraConstants.RETRY_DELAY, 
+	defaultValue = "500")
+	final static String PROPERTY5 = FedoraConstants.RETRY_DELAY;	
+	
+	@ComponentProperty(
+	description = "The message written to the Fedora log for each ingest",
+	name = FedoraConstants.LOG_MSG, 
+	defaultValue = "Bulk ingest")
+	final static String PROPERTY6 = FedoraConstants.LOG_MSG;	
+	
+	@ComponentProperty(
+	description = "Checksum types (MD5, SHA-1, SHA-256, SHA-384, SHA-512) to compute " +
+			"over each document as it is read, separated by spaces; blank for none",
+	name = FedoraConstants.CHECKSUM_TYPES, 
+	defaultValue = "")
+	final static String PROPERTY7 = FedoraConstants.CHECKSUM_TYPES;	
+	
+	//OUTPUT
+	@ComponentOutput(
+	description="An OperationResult (source, pid, bytes, latency, attempts, checksums, " +
+			"error) for each object, in completion order", 
+	name=FedoraConstants.OPERATION_RESULT)
+	final String DATA_OUTPUT_1=FedoraConstants.OPERATION_RESULT;	
+	
+	@ComponentOutput(
+	description="A BulkStats summary with the aggregate counts and throughput", 
+	name=FedoraConstants.BULK_STATS)
+	final String DATA_OUTPUT_2=FedoraConstants.BULK_STATS;	
+	
+    FedoraAPIM APIM = null;
+
+    /* The logger object to use for output. */
+	private static Logger logger = null;
+	
+	/* Timings of the ingest calls, per attempt. */
+	private static final OperationMetrics INGEST = FedoraMetrics.operation("ingest");
+	
+    public void initialize(ComponentContextProperties ccp)
+	{
+    	logger = ccp.getLogger();
+		logger.info("Initializing BulkIngest");
+	}
+
+	public void execute(ComponentContext cc)
+	  throws ComponentExecutionException, ComponentContextException
+	  {
+		ExecutorService executor = null;
+		try
+		{
+		     APIM = (FedoraAPIM) cc.getDataComponentFromInput(DATA_INPUT_1);
+		     Object sources = cc.getDataComponentFromInput(DATA_INPUT_2);
+		     final String ingest_format = cc.getProperty(PROPERTY1);
+		     final String log_message = cc.getProperty(PROPERTY6);
+		     final String[] checksum_types = Checksums.parseTypes(cc.getProperty(PROPERTY7));
+		     int workers = PropertyValues.parseInt(cc.getProperty(PROPERTY3), 4);
+		     final RetryPolicy retry = new RetryPolicy(PropertyValues.parseInt(cc.getProperty(PROPERTY4), 3),
+		    		 PropertyValues.parseInt(cc.getProperty(PROPERTY5), 500));
+		     
+		     List<Object> documents = listDocuments(sources, cc.getProperty(PROPERTY2));
+		     logger.info("Bulk ingesting "+documents.size()+" objects with "+workers+" workers");
+		     
+		     BulkStats stats = new BulkStats("ingest");
+		     executor = Executors.newFixedThreadPool(Math.max(1, workers));
+		     CompletionService<OperationResult> completion = 
+		    	 new ExecutorCompletionService<OperationResult>(executor);
+		     
+		     final FedoraAPIM apim = APIM;
+		     for (final Object document: documents)
+		     {
+		    	 completion.submit(new Callable<OperationResult>()
+		    	 {
+		    		 public OperationResult call()
+		    		 {
+		    			 return ingest(apim, document, ingest_format, log_message, 
+		    					                   checksum_types, retry);
+		    		 }
+		    	 });
+		     }
+		     
+		     for (int i = 0; i < documents.size(); i++)
+		     {
+		    	 OperationResult result = completion.take().get();
+		    	 stats.record(result);
+		    	 if (!result.isSuccess())
+		    	 {  logger.warning("Ingest failed: "+result); }
+		    	 cc.pushDataComponentToOutput(DATA_OUTPUT_1, result);
+		     }
+		     
+		     stats.finish();
+		     if (stats.getSucceeded() > 0)
+		     {  TupleQueryCache.getInstance().invalidateAll(); }
+		     logger.info(stats.toString());
+		     cc.pushDataComponentToOutput(DATA_OUTPUT_2, stats);
+		}
+		catch (ComponentContextException ex1)
+		{
+			logger.severe("Error in BulkIngest: "+ex1.getMessage());
+			throw new ComponentContextException("Error in BulkIngest: "+ex1.getMessage());
+		}
+		catch (Throwable th)
+		{
+			logger.severe("Error in BulkIngest:  "+th.getMessage());
+			throw new ComponentExecutionException(th);
+		}
+		finally
+		{
+			if (executor != null)
+			{  executor.shutdownNow(); }
+		}
+	  }
+	
+	/*
+	 * Ingests one document (a File or a document String), retrying
+	 * failures to connect.  The checksums are computed as the document is
+	 * read.  Never throws; failures end up in the result.
+	 */
+	static OperationResult ingest(final FedoraAPIM apim, Object document, 
+			                      final String format, final String log_message,
+			                      String[] checksum_types, RetryPolicy retry)
+	{
+		String name = (document instanceof File) ? ((File)document).getPath() 
+				: "document-"+Integer.toHexString(System.identityHashCode(document));
+		OperationResult result = new OperationResult(name);
+		long start = System.currentTimeMillis();
+		// stays false if the document cannot be read, so the attempts of
+		// this thread's previous ingest are not reported for it
+		boolean called = false;
+		try
+		{
+			Checksums checksums = new Checksums(checksum_types);
+			final byte[] bytes;
+			if (document instanceof File)
+			{
+				bytes = ByteStreams.readFile((File)document, ByteStreams.DEFAULT_CHUNK_SIZE, checksums);
+			}
+			else
+			{
+				bytes = ((String)document).getBytes("UTF-8");
+				checksums.update(bytes, 0, bytes.length);
+			}
+			result.setBytes(bytes.length);
+			if (!checksums.isEmpty())
+			{  result.setChecksums(checksums.toString()); }
+			
+			// an ingest that timed out may have been committed, so only
+			// failures to connect are retried
+			called = true;
+			String pid = retry.callUnsent(new Callable<String>()
+			{
+				public String call() throws Exception
+				{
+					long start = INGEST.start();
+					try
+					{
+						String pid = apim.ingest(bytes, format, log_message);
+						INGEST.success(start, bytes.length);
+						return pid;
+					}
+					catch (Exception ex)
+					{
+						INGEST.failure(start);
+						throw ex;
+					}
+				}
+			});
+			result.setPid(pid);
+		}
+		catch (Throwable th)
+		{
+			result.setError(th.getClass().getName()+": "+th.getMessage());
+		}
+		result.setAttempts(called ? retry.getLastAttempts() : 0);
+		result.setLatencyMillis(System.currentTimeMillis() - start);
+		return result;
+	}
+	
+	/*
+	 * Expands the ingestSources input into Files and document Strings.
+	 */
+	@SuppressWarnings("unchecked")
+	static List<Object> listDocuments(Object sources, String glob)
+	throws ComponentExecutionException
+	{
+		List<Object> documents = new ArrayList<Object>();
+		if (sources instanceof String[])
+		{
+			sources = Arrays.asList((String[])sources);
+		}
+		if (sources instanceof Collection)
+		{
+			for (Object source: (Collection<Object>)sources)
+			{
+				documents.addAll(listDocuments(source, glob));
+			}
+			return documents;
+		}
+		
+		if (sources instanceof String && ((String)sources).trim().startsWith("<"))
+		{
+			documents.add(sources);
+			return documents;
+		}
+		
+		File file = null;
+		if (sources instanceof File)
+		{  file = (File)sources; }
+		else if (sources instanceof String)
+		{  file = new File(((String)sources).trim()); }
+		else
+		{
+			throw new ComponentExecutionException("Unsupported ingest source: "+
+					(sources == null ? "null" : sources.getClass().getName()));
+		}
+		
+		if (file.isDirectory())
+		{
+			final Pattern pattern = globToPattern(glob);
+			File[] files = file.listFiles(new FileFilter()
+			{
+				public boolean accept(File f)
+				{
+					return f.isFile() && pattern.matcher(f.getName()).matches();
+				}
+			});
+			Arrays.sort(files);
+			documents.addAll(Arrays.asList(files));
+		}
+		else if (file.isFile())
+		{
+			documents.add(file);
+		}
+		else
+		{
+			throw new ComponentExecutionException("No such file or directory: "+file);
+		}
+		return documents;
+	}
+	
+	static Pattern globToPattern(String glob)
+	{
+		if (glob == null || glob.trim().length() == 0)
+		{  glob = "*"; }
+		StringBuilder regex = new StringBuilder();
+		for (char c: glob.trim().toCharArray())
+		{
+			if (c == '*')
+			{  regex.append(".*"); }
+			else if (c == '?')
+			{  regex.append('.'); }
+			else
+			{  regex.append(Pattern.quote(String.valueOf(c))); }
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	public void dispose(ComponentContextProperties ccp)
+    {
+       logger.info("Disposing BulkIngest");
+	}
+}
@@ -0,0 +1,525 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+import org.meandre.annotations.Component;
+import org.meandre.annotations.ComponentInput;
+import org.meandre.annotations.ComponentOutput;
+import org.meandre.annotations.ComponentProperty;
+import org.meandre.core.ComponentContext;
+import org.meandre.core.ComponentContextException;
+import org.meandre.core.ComponentExecutionException;
+import org.meandre.core.ExecutableComponent;
+import org.meandre.core.ComponentContextProperties;
+import org.meandre.components.fedora.support.BulkStats;
+import org.meandre.components.fedora.support.CsvTupleReader;
+import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FedoraMetrics;
+import org.meandre.components.fedora.support.FindObjectsPager;
+import org.meandre.components.fedora.support.ObjectCache;
+import org.meandre.components.fedora.support.OperationMetrics;
+import org.meandre.components.fedora.support.OperationResult;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.ResourceIndex;
+import org.meandre.components.fedora.support.RetryPolicy;
+import org.meandre.components.fedora.support.TupleQueryCache;
+import org.meandre.components.fedora.support.TupleRows;
+
+import fedora.client.FedoraClient;
+import fedora.server.management.FedoraAPIM;
+import fedora.server.types.gen.ObjectFields;
+
+/**
+ * 
+ * <p>
+ * Title: BulkPurge
+ * </p>
+ * 
+ * <p>
+ * Description: Purges many fedora objects with a pool of workers.  Members
+ *              are purged before the collections that contain them.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * 
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+
+@Component(
+		name="BulkPurge",
+		tags="fedora delete purge bulk",
+		creator="Automated Learning Group",
+		description="<p>Purges a set of objects from a fedora repository, using several " +
+				"concurrent purge calls.  The pids input is a String[] or a Collection of " +
+				"pids or info:fedora/ URIs, a pid pattern such as monk:* that is matched " +
+				"with findObjects, or an iTQL query starting with select whose first column " +
+				"lists the objects.</p><p>The membership relations among the selected objects " +
+				"are read from the resource index and the purge runs in rounds: an object is " +
+				"purged only after all of its selected members, and it is skipped if one of " +
+				"them could not be purged.  A failure is recorded in the object's result and " +
+				"does not stop the purge.  A purge retried after a failure that may have " +
+				"reached the server counts as done if the object is then not found.</p>",
+		dependency={"activation-1.0.2.jar", "axis.jar", "batik-all.jar", "commons-codec-1.3.jar",
+				"commons-dbcp-1.2.1.jar", "commons-discovery.jar", "commons-pool-1.2.jar",
+				"foxml-merge.xsl", "jai_codec.jar", "jai_core.jar", "java-getopt-1.0.11.jar",
+				"jaxrpc.jar", "jhbasic.jar", "jrdf-0.3.3.jar", "log4j-1.2.14.jar",
+				"mail.jar", "mets-merge.xsl", "saaj.jar", "saxon.jar",
+				"sunxacml-patched.jar", "trippi-1.1.2-core.jar", "wsdl4j-1.5.1.jar", "xercesImpl.jar",
+				"xml-apis.jar", "commons-httpclient-3.1-beta1.jar", "commons-logging.jar", 
+				"fedora-client.jar", "icu4j-3.8.1.jar", "icu4j-charsets-3.8.1.jar", 
+				"jena-2.5.5.jar", "jena-arq-2.5.5.jar", "jena-arq-extra-2.5.5.jar", "jena-iri-2.5.5.jar", 
+				"jena-json-2.5.5.jar"}	
+          )
+public class BulkPurge implements ExecutableComponent
+{
+	
+	//INPUT
+	@ComponentInput(
+	description="The fedora client.", 
+	name="fedoraClient")
+	final String DATA_INPUT_1 = "fedoraClient";
+	
+	@ComponentInput(
+			description = "The fedora PIDs or info:fedora/ URIs to purge, a pid pattern, " +
+					"or an iTQL query.",
+			name = FedoraConstants.PIDS) 
+	final static String DATA_INPUT_2 = FedoraConstants.PIDS;
+
+
+	//PROPERTY
+	
+	@ComponentProperty(
+	description = "The message to write to the log of each purged object.",
+	name = FedoraConstants.LOG_MSG, 
+	defaultValue = "Bulk purge")
+	final static String PROPERTY2 = FedoraConstants.LOG_MSG;	
+
+	@ComponentProperty(
+	description = "Forced purge? (true/false)",
+	name = FedoraConstants.FORCED, 
+	defaultValue = "false")
+	final static String PROPERTY3 = FedoraConstants.FORCED;	
+	
+	@ComponentProperty(
+	description = "The number of concurrent purge calls.",
+	name = FedoraConstants.WORKERS, 
+	defaultValue = "4")
+	final static String PROPERTY4 = FedoraConstants.WORKERS;	
+	
+	@ComponentProperty(
+	description = "The number of attempts per object for transient (network) failures",
+	name = FedoraConstants.MAX_ATTEMPTS, 
+	defaultValue = "3")
+	final static String PROPERTY5 = FedoraConstants.MAX_ATTEMPTS;	
+	
+	@ComponentProperty(
+	description = "The predicates, separated by spaces, that relate a member to its " +
+			"container.  Leave empty to purge without ordering.",
+	name = FedoraConstants.MEMBERSHIP_PREDICATES, 
+	defaultValue = FedoraConstants.COLLECTION_PREDICATE+" "+FedoraConstants.MEMBER_OF_PREDICATE)
+	final static String PROPERTY6 = FedoraConstants.MEMBERSHIP_PREDICATES;	
+
+	//OUTPUT
+	@ComponentOutput(
+	description="An OperationResult for each object, in completion order.", 
+	name=FedoraConstants.OPERATION_RESULT)
+	final String DATA_OUTPUT_1=FedoraConstants.OPERATION_RESULT;		
+	
+	@ComponentOutput(
+	description="A BulkStats summary with the aggregate counts and throughput.", 
+	name=FedoraConstants.BULK_STATS)
+	final String DATA_OUTPUT_2=FedoraConstants.BULK_STATS;		
+	
+	/* The logger object to use for output. */
+	private static Logger logger = null;
+	
+	/* Timings of the purge calls, per attempt. */
+	private static final OperationMetrics PURGE_OBJECT = FedoraMetrics.operation("purgeObject");
+	
+	public void dispose(ComponentContextProperties ccp)
+	{
+	   logger.info("Disposing BulkPurge...");
+	}
+
+	public void execute(ComponentContext cc)
+	throws ComponentExecutionException, ComponentContextException
+	{
+		logger.info("Firing BulkPurge.execute...");
+
+		ExecutorService executor = null;
+		try
+		{
+			FedoraClient fclient = (FedoraClient) cc.getDataComponentFromInput(DATA_INPUT_1);
+			Object input = cc.getDataComponentFromInput(DATA_INPUT_2);
+			final String logMessage = cc.getProperty(PROPERTY2);
+			final boolean forced = parseBoolean(cc.getProperty(PROPERTY3), false);
+			int workers = Math.max(1, PropertyValues.parseInt(cc.getProperty(PROPERTY4), 4));
+			final RetryPolicy retry = new RetryPolicy(PropertyValues.parseInt(cc.getProperty(PROPERTY5), 3), 500);
+			String[] predicates = split(cc.getProperty(PROPERTY6));
+			
+			List<String> pids = resolvePids(fclient, input);
+			Set<String> selected = new HashSet<String>(pids);
+			List<String[]> memberships = new ArrayList<String[]>();
+			for (int i = 0; i < predicates.length; i++)
+			{
+				memberships.addAll(memberships(fclient, predicates[i], selected, i == 0));
+			}
+			Map<String,Set<String>> members = membersWithin(pids, memberships);
+			logger.info("Purging "+pids.size()+" objects with "+workers+" workers, forced: "+forced);
+			
+			executor = Executors.newFixedThreadPool(workers);
+			CompletionService<OperationResult> completion = 
+				new ExecutorCompletionService<OperationResult>(executor);
+			BulkStats stats = new BulkStats("purge");
+			final FedoraAPIM apim = fclient.getAPIM();
+			
+			Set<String> pending = new LinkedHashSet<String>(pids);
+			Set<String> failed = new LinkedHashSet<String>();
+			int round = 0;
+			while (!pending.isEmpty())
+			{
+				List<String> ready = new ArrayList<String>();
+				List<String> skipped = new ArrayList<String>();
+				for (String pid: pending)
+				{
+					Set<String> own = members.get(pid);
+					if (own == null || !containsAny(pending, own))
+					{
+						if (own != null && containsAny(failed, own))
+						{  skipped.add(pid); }
+						else
+						{  ready.add(pid); }
+					}
+				}
+				if (ready.isEmpty() && skipped.isEmpty())
+				{
+					// Only membership cycles are left; no order satisfies them.
+					logger.warning("Membership cycle among "+pending.size()+" objects, purging them unordered");
+					ready.addAll(pending);
+				}
+				round++;
+				logger.fine("Purge round "+round+": "+ready.size()+" objects, "+skipped.size()+" skipped");
+				
+				for (String pid: skipped)
+				{
+					OperationResult result = new OperationResult(pid);
+					result.setPid(pid);
+					result.setError("Not purged: a member of "+pid+" could not be purged");
+					pending.remove(pid);
+					failed.add(pid);
+					stats.record(result);
+					cc.pushDataComponentToOutput(DATA_OUTPUT_1, result);
+				}
+				for (final String pid: ready)
+				{
+					completion.submit(new Callable<OperationResult>()
+					{
+						public OperationResult call()
+						{
+							return purge(apim, pid, logMessage, forced, retry);
+						}
+					});
+				}
+				for (int i = 0; i < ready.size(); i++)
+				{
+					OperationResult result = completion.take().get();
+					pending.remove(result.getPid());
+					if (result.isSuccess())
+					{
+						ObjectCache.invalidateAll(result.getPid());
+					}
+					else
+					{
+						failed.add(result.getPid());
+						logger.warning("Purge failed: "+result);
+					}
+					stats.record(result);
+					cc.pushDataComponentToOutput(DATA_OUTPUT_1, result);
+				}
+			}
+			
+			TupleQueryCache.getInstance().invalidateAll();
+			stats.finish();
+			logger.info(stats.toString()+" in "+round+" rounds");
+			cc.pushDataComponentToOutput(DATA_OUTPUT_2, stats);
+		}		
+		catch (ComponentContextException ex1)
+		{
+			logger.severe("Error in BulkPurge: "+ex1.getMessage());
+			throw new ComponentContextException("Error in BulkPurge: "+ex1.getMessage());
+		}
+		catch (Throwable th)
+		{
+			logger.severe("Error in BulkPurge:  "+th.getMessage());
+			throw new ComponentExecutionException(th);
+		}	
+		finally
+		{
+			if (executor != null)
+			{  executor.shutdownNow(); }
+		}
+	}
+	
+	/*
+	 * Purges one object, retrying transient failures.  A failed attempt
+	 * that may have reached the server may also have purged the object,
+	 * so a later attempt that finds no object counts as a success.
+	 */
+	static OperationResult purge(final FedoraAPIM apim, final String pid, final String logMessage,
+			                     final boolean forced, RetryPolicy retry)
+	{
+		OperationResult result = new OperationResult(pid);
+		result.setPid(pid);
+		long start = System.currentTimeMillis();
+		final boolean[] maybePurged = new boolean[1];
+		try
+		{
+			retry.call(new Callable<String>()
+			{
+				public String call() throws Exception
+				{
+					long start = PURGE_OBJECT.start();
+					try
+					{
+						String purged = apim.purgeObject(pid, logMessage, forced);
+						PURGE_OBJECT.success(start, 0);
+						return purged;
+					}
+					catch (Exception ex)
+					{
+						PURGE_OBJECT.failure(start);
+						if (maybePurged[0] && isNotFound(ex))
+						{
+							logger.fine("Purge of "+pid+" was done by an earlier attempt");
+							return null;
+						}
+						if (!RetryPolicy.isUnsent(ex))
+						{  maybePurged[0] = true; }
+						throw ex;
+					}
+				}
+			});
+		}
+		catch (Throwable th)
+		{
+			result.setError(th.getClass().getName()+": "+th.getMessage());
+		}
+		result.setAttempts(retry.getLastAttempts());
+		result.setLatencyMillis(System.currentTimeMillis() - start);
+		return result;
+	}
+	
+	/*
+	 * The pids named by the input: an iTQL query starting with select, a
+	 * pattern containing *, or anything BulkExport.toPids accepts.
+	 */
+	static List<String> resolvePids(FedoraClient fclient, Object input)
+	throws Exception
+	{
+		if (input instanceof String)
+		{
+			String value = ((String)input).trim();
+			if (value.regionMatches(true, 0, "select", 0, 6))
+			{
+				TupleRows rows = ResourceIndex.getTuples(fclient, ResourceIndex.ITQL, value, true, 0);
+				List<String> values = new ArrayList<String>(rows.size());
+				for (String[] row: rows.getRows())
+				{  values.add(row[0]); }
+				return BulkExport.toPids(values);
+			}
+			if (value.indexOf('*') >= 0)
+			{
+				return findPids(fclient, value);
+			}
+		}
+		return BulkExport.toPids(input);
+	}
+	
+	/* The pids of the objects matching a findObjects pid pattern. */
+	static List<String> findPids(FedoraClient fclient, String pattern)
+	throws Exception
+	{
+		FindObjectsPager pager = new FindObjectsPager(fclient.getAPIA(), new String[] {"pid"},
+				FindObjectsPager.DEFAULT_PAGE_SIZE, FindObjectsPager.DEFAULT_PREFETCH_DEPTH);
+		List<String> pids = new ArrayList<String>();
+		try
+		{
+			pager.open(GetWorkObjects.pidPrefixQuery(pattern));
+			while (pager.hasNext())
+			{
+				for (ObjectFields fields: pager.next())
+				{  pids.add(fields.getPid()); }
+			}
+		}
+		finally
+		{
+			pager.close();
+		}
+		return pids;
+	}
+	
+	/* True if the failure says the object does not exist. */
+	static boolean isNotFound(Throwable th)
+	{
+		String message = String.valueOf(th.getMessage());
+		return message.indexOf("ObjectNotFound") >= 0 
+			|| message.indexOf("ObjectNotInLowlevelStorage") >= 0
+			|| message.toLowerCase().indexOf("not found") >= 0;
+	}
+	
+	/*
+	 * The {member, container} pairs related by the predicate where both
+	 * are selected.  One query reads every pair for the predicate; the rows
+	 * are filtered as they stream in, so only the selected pairs are held.
+	 */
+	static List<String[]> memberships(FedoraClient fclient, String predicate, 
+			                          Set<String> selected, boolean flush)
+	throws Exception
+	{
+		String query = String.format("select $m $c from <#ri> where $m <%s> $c;", predicate);
+		List<String[]> pairs = new ArrayList<String[]>();
+		CsvTupleReader tuples = ResourceIndex.openTuples(fclient, ResourceIndex.ITQL, query, flush);
+		try
+		{
+			String[] row = null;
+			while ((row = tuples.next()) != null)
+			{
+				String member = stripUri(row[0]);
+				String container = stripUri(row[1]);
+				if (selected.contains(member) && selected.contains(container))
+				{  pairs.add(new String[] {member, container}); }
+			}
+		}
+		finally
+		{
+			tuples.close();
+		}
+		return pairs;
+	}
+	
+	/*
+	 * The members of each selected object that are selected too, for
+	 * containers with at least one such member.
+	 */
+	static Map<String,Set<String>> membersWithin(Collection<String> pids, List<String[]> memberships)
+	{
+		Set<String> selected = new LinkedHashSet<String>(pids);
+		Map<String,Set<String>> members = new HashMap<String,Set<String>>();
+		for (String[] pair: memberships)
+		{
+			if (!pair[0].equals(pair[1]) && selected.contains(pair[0]) && selected.contains(pair[1]))
+			{
+				Set<String> own = members.get(pair[1]);
+				if (own == null)
+				{
+					own = new LinkedHashSet<String>();
+					members.put(pair[1], own);
+				}
+				own.add(pair[0]);
+			}
+		}
+		return members;
+	}
+	
+	private static boolean containsAny(Set<String> set, Set<String> values)
+	{
+		for (String value: values)
+		{
+			if (set.contains(value))
+			{  return true; }
+		}
+		return false;
+	}
+	
+	private static String stripUri(String value)
+	{
+		return value.startsWith(FedoraConstants.FEDORA_URI_PREFIX) 
+			? value.substring(FedoraConstants.FEDORA_URI_PREFIX.length()) : value;
+	}
+	
+	private static String[] split(String value)
+	{
+		if (value == null || value.trim().length() == 0)
+		{  return new String[0]; }
+		return value.trim().split("\\s+");
+	}
+	
+	/* true or false, ignoring case; anything else is logged and the default used. */
+	private static boolean parseBoolean(String value, boolean defaultValue)
+	{
+		if (value != null && value.trim().equalsIgnoreCase(FedoraConstants.TRUE))
+		{  return true; }
+		if (value != null && value.trim().equalsIgnoreCase(FedoraConstants.FALSE))
+		{  return false; }
+		logger.warning("Invalid property 'forced': "+value+", using "+defaultValue);
+		return defaultValue;
+	}
+
+	public void initialize(ComponentContextProperties ccp)
+	{
+		logger = ccp.getLogger();
+		logger.info("Initializing BulkPurge...");
+	}
+}
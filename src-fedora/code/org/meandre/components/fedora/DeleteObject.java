@@ -53,7 +53,12 @@ import org.meandre.annotations.ComponentInput;
 import org.meandre.annotations.ComponentOutput;
 import org.meandre.annotations.ComponentProperty;
 import java.util.logging.Logger;
+import java.rmi.RemoteException;
 import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FedoraMetrics;
+import org.meandre.components.fedora.support.ObjectCache;
+import org.meandre.components.fedora.support.OperationMetrics;
+import org.meandre.components.fedora.support.TupleQueryCache;
 
 /**
  * 
@@ -129,6 +134,9 @@ public class DeleteObject implements ExecutableComponent {
 	/* The logger object to use for output. */
 	private static Logger logger = null;
 	
+	/* Timings of the purge calls. */
+	private static final OperationMetrics PURGE_OBJECT = FedoraMetrics.operation("purgeObject");
+	
 	FedoraAPIM APIM = null;
 
 	public void dispose(ComponentContextProperties ccp) 
@@ -168,18 +176,31 @@ public class DeleteObject implements ExecutableComponent {
 
            logger.info("Deleting "+pid);
            logger.info("Logging: "+log_msg);
-           logger.info("forced: "+forced);
 
-           if (instr.compareToIgnoreCase(FedoraConstants.TRUE) == 0)
+           if (instr != null && instr.trim().equalsIgnoreCase(FedoraConstants.TRUE))
            {  forced = true; }
-           else if (instr.compareToIgnoreCase(FedoraConstants.FALSE) == 0)
+           else if (instr != null && instr.trim().equalsIgnoreCase(FedoraConstants.FALSE))
            { forced = false; }
            else
-           { throw new ComponentExecutionException("Invalid property 'forced' "); }
+           { logger.warning("Invalid property 'forced': "+instr+", using false"); }
+           logger.info("forced: "+forced);
            
 		   APIM = (FedoraAPIM) cc.getDataComponentFromInput(DATA_INPUT_1);
 
-		   String purgeDateTime = APIM.purgeObject(pid, log_msg, forced);
+		   String purgeDateTime = null;
+		   long start = PURGE_OBJECT.start();
+		   try
+		   {
+			   purgeDateTime = APIM.purgeObject(pid, log_msg, forced);
+			   PURGE_OBJECT.success(start, 0);
+		   }
+		   catch (RemoteException ex)
+		   {
+			   PURGE_OBJECT.failure(start);
+			   throw ex;
+		   }
+		   TupleQueryCache.getInstance().invalidateAll();
+		   ObjectCache.invalidateAll(pid);
 
 		   cc.pushDataComponentToOutput(DATA_OUTPUT_1, purgeDateTime);
 
@@ -54,6 +54,10 @@ import fedora.server.management.FedoraAPIM;
 import org.meandre.core.ComponentContextProperties;
 import java.util.logging.Logger;
 import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FedoraMetrics;
+import org.meandre.components.fedora.support.ObjectCache;
+import org.meandre.components.fedora.support.OperationMetrics;
+import org.meandre.components.fedora.support.PropertyValues;
 
 /**
  * 
@@ -125,6 +129,24 @@ public class Export implements ExecutableComponent
 	name = FedoraConstants.CONTEXT, 
 	defaultValue = FedoraConstants.PUBLIC)
 	final static String PROPERTY3 = FedoraConstants.CONTEXT;	
+	
+	@ComponentProperty(
+	description = "A directory for a local disk cache of exported objects; leave empty to always fetch from the server.",
+	name = FedoraConstants.OBJECT_CACHE_DIR,
+	defaultValue = "")
+	final static String PROPERTY4 = FedoraConstants.OBJECT_CACHE_DIR;
+	
+	@ComponentProperty(
+	description = "Seconds a cached copy is used without asking the server whether the object changed.",
+	name = FedoraConstants.OBJECT_CACHE_TTL,
+	defaultValue = "0")
+	final static String PROPERTY5 = FedoraConstants.OBJECT_CACHE_TTL;
+	
+	@ComponentProperty(
+	description = "The size limit of the disk cache in megabytes; least recently used entries are removed first.",
+	name = FedoraConstants.OBJECT_CACHE_MAX_MB,
+	defaultValue = "256")
+	final static String PROPERTY6 = FedoraConstants.OBJECT_CACHE_MAX_MB;
 
 	//OUTPUT
 	@ComponentOutput(
@@ -135,6 +157,9 @@ public class Export implements ExecutableComponent
 	/* The logger object to use for output. */
 	private static Logger logger = null;
 	
+	/* Timings of the export calls that reach the server. */
+	private static final OperationMetrics EXPORT = FedoraMetrics.operation("export");
+	
 	FedoraAPIM APIM = null;
 
 	public void dispose(ComponentContextProperties ccp)
@@ -157,6 +182,8 @@ public class Export implements ExecutableComponent
 	 *         "metslikefedora1"
 	 * CONTEXT: the export context: the intended use of the exported file.
 	 *          Valid values are "public", "migrate", or "archive".
+	 * OBJECT_CACHE_DIR, OBJECT_CACHE_TTL, OBJECT_CACHE_MAX_MB: the optional
+	 *          disk cache of exports
      *
      * Outputs:
      * OBJECT_XML: The formatted xml, of type byte[]
@@ -174,7 +201,8 @@ public class Export implements ExecutableComponent
 			String format = cc.getProperty(FedoraConstants.FORMAT);
 			String context = cc.getProperty(FedoraConstants.CONTEXT);
 
-			byte[] formattedXML = APIM.export(pid, format, context);
+			byte[] formattedXML = export(APIM, pid, format, context, 
+					ObjectCache.open(cc.getProperty(PROPERTY4), cc.getProperty(PROPERTY6)), PropertyValues.cacheTTL(cc));
 		    cc.pushDataComponentToOutput(FedoraConstants.OBJECT_XML, formattedXML);
 		}		
 		catch (ComponentContextException ex1)
@@ -189,6 +217,43 @@ public class Export implements ExecutableComponent
 		}	
 	}
 
+	/*
+	 * Exports an object, from the cache if one is given and its copy is
+	 * still current.
+	 */
+	static byte[] export(final FedoraAPIM apim, final String pid, final String format, 
+			             final String context, ObjectCache cache, long ttlMillis)
+	throws Exception
+	{
+		if (cache == null)
+		{  return exportObject(apim, pid, format, context); }
+		
+		String key = ObjectCache.makeKey(apim, pid, "export", new String[] {format, context});
+		return cache.get(key, pid, ttlMillis, ObjectCache.datastreamValidator(apim),
+				new ObjectCache.Loader()
+				{
+					public byte[] load() throws Exception
+					{  return exportObject(apim, pid, format, context); }
+				});
+	}
+	
+	private static byte[] exportObject(FedoraAPIM apim, String pid, String format, String context)
+	throws Exception
+	{
+		long start = EXPORT.start();
+		try
+		{
+			byte[] exported = apim.export(pid, format, context);
+			EXPORT.success(start, exported.length);
+			return exported;
+		}
+		catch (Exception ex)
+		{
+			EXPORT.failure(start);
+			throw ex;
+		}
+	}
+
 	public void initialize(ComponentContextProperties ccp)
 	{
 		logger = ccp.getLogger();
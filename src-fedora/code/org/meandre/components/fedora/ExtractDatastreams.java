@@ -0,0 +1,215 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.meandre.core.ComponentContext;
+import org.meandre.core.ComponentContextException;
+import org.meandre.core.ComponentExecutionException;
+import org.meandre.core.ExecutableComponent;
+import org.meandre.core.ComponentContextProperties;
+import org.meandre.annotations.Component;
+import org.meandre.annotations.ComponentInput;
+import org.meandre.annotations.ComponentOutput;
+import org.meandre.annotations.ComponentProperty;
+import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FoxmlProjection;
+
+/**
+ * 
+ * <p>
+ * Title: ExtractDatastreams
+ * </p>
+ * 
+ * <p>
+ * Description: Extracts selected datastreams and element or attribute
+ * values from FOXML object xml in a single streaming pass.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+
+@Component(
+creator="Automated Learning Group", 
+description="Extracts selected datastreams (for example DC and RELS-EXT) and element or " +
+		"attribute values from FOXML object xml, as returned by GetXmlObject or Export, " +
+		"without building a DOM.",
+tags="fedora XML datastream", 
+name="ExtractDatastreams",
+	dependency={"activation-1.0.2.jar", "axis.jar", "batik-all.jar", "commons-codec-1.3.jar",
+		"commons-dbcp-1.2.1.jar", "commons-discovery.jar", "commons-pool-1.2.jar",
+		"foxml-merge.xsl", "jai_codec.jar", "jai_core.jar", "java-getopt-1.0.11.jar",
+		"jaxrpc.jar", "jhbasic.jar", "jrdf-0.3.3.jar", "log4j-1.2.14.jar",
+		"mail.jar", "mets-merge.xsl", "saaj.jar", "saxon.jar",
+		"sunxacml-patched.jar", "trippi-1.1.2-core.jar", "wsdl4j-1.5.1.jar", "xercesImpl.jar",
+		"xml-apis.jar", "commons-httpclient-3.1-beta1.jar", "commons-logging.jar", 
+		"fedora-client.jar", "icu4j-3.8.1.jar", "icu4j-charsets-3.8.1.jar", 
+		"jena-2.5.5.jar", "jena-arq-2.5.5.jar", "jena-arq-extra-2.5.5.jar", "jena-iri-2.5.5.jar", 
+		"jena-json-2.5.5.jar"}	
+)
+public class ExtractDatastreams implements ExecutableComponent {
+
+	//INPUT
+	@ComponentInput(
+	description = "The FOXML object xml, as a byte[], String or InputStream.",
+	name = FedoraConstants.OBJECT_XML) 
+	final static String DATA_INPUT_1 = FedoraConstants.OBJECT_XML;
+
+	//PROPERTY
+	@ComponentProperty(
+	defaultValue="DC,RELS-EXT",
+	description="A comma separated list of the ids of the datastreams to extract.",
+	name=FedoraConstants.DATASTREAM_IDS)
+	final static String PROPERTY1 = FedoraConstants.DATASTREAM_IDS;
+	
+	@ComponentProperty(
+	defaultValue="",
+	description="A comma separated list of paths of element local names from the document " +
+			"element, e.g. digitalObject/objectProperties/property/@VALUE.  A path selects " +
+			"the text of each matching element, or an attribute if it ends in /@NAME.",
+	name=FedoraConstants.PATHS)
+	final static String PROPERTY2 = FedoraConstants.PATHS;
+	
+	@ComponentProperty(
+	defaultValue="true",
+	description="Extract only the current version of each datastream (true), or every " +
+			"version keyed by its version id (false).",
+	name="latestVersionOnly")
+	final static String PROPERTY3 = "latestVersionOnly";
+
+	//OUTPUT
+	@ComponentOutput(
+	description="A Map from datastream id to its content: inline xml as a string, the " +
+			"base64 text of binary content, or the URL of referenced content.", 
+	name=FedoraConstants.DATASTREAMS)
+	final String DATA_OUTPUT_1=FedoraConstants.DATASTREAMS;
+	
+	@ComponentOutput(
+	description="A Map from each requested path to the List of values found.", 
+	name=FedoraConstants.PROJECTION)
+	final String DATA_OUTPUT_2=FedoraConstants.PROJECTION;
+	
+	/* The logger object to use for output. */
+	private static Logger logger = null;
+	
+	public void initialize(ComponentContextProperties ccp)
+	{
+		logger = ccp.getLogger();
+		logger.info("Initializing ExtractDatastreams");
+	}
+	
+	/*
+	 * Extracts the selected parts of an object's xml.
+	 * 
+	 * Inputs:
+	 * objectXML: the FOXML object xml
+	 * 
+	 * Properties:
+	 * datastreamIds: the datastreams to extract
+	 * paths: the element or attribute values to extract
+	 * latestVersionOnly: whether only current datastream versions are kept
+	 * 
+	 * Outputs:
+	 * datastreams: the datastream contents by id
+	 * projection: the values by path
+	 * @see org.meandre.core.ExecutableComponent#execute(org.meandre.core.ComponentContext)
+	 */
+	public void execute(ComponentContext cc)
+	  throws ComponentExecutionException, ComponentContextException
+	  {
+		 try
+		 {
+			Object objectXML = cc.getDataComponentFromInput(DATA_INPUT_1);
+			List<String> ids = split(cc.getProperty(PROPERTY1));
+			List<String> paths = split(cc.getProperty(PROPERTY2));
+			boolean latestOnly = !FedoraConstants.FALSE.equalsIgnoreCase(cc.getProperty(PROPERTY3));
+			
+			FoxmlProjection projection = new FoxmlProjection(ids, paths, latestOnly).parse(objectXML);
+			logger.fine("Extracted "+projection.getDatastreams().keySet()+" and "+paths.size()+" paths");
+			
+		    cc.pushDataComponentToOutput(DATA_OUTPUT_1, projection.getDatastreams());
+		    cc.pushDataComponentToOutput(DATA_OUTPUT_2, projection.getValues());
+		 }
+		 catch (ComponentContextException ex1)
+		 {
+				logger.severe("Error in ExtractDatastreams: "+ex1.getMessage());
+				throw new ComponentContextException("Error in ExtractDatastreams: "+ex1.getMessage());
+		  }
+		  catch (Throwable th)
+		  {
+				logger.severe("Error in ExtractDatastreams:  "+th.getMessage());
+				throw new ComponentExecutionException(th);
+		  }
+	  }
+
+	/* The non-empty entries of a comma separated list. */
+	static List<String> split(String list)
+	{
+		List<String> items = new ArrayList<String>();
+		if (list == null)
+		{  return items; }
+		for (String item: list.split(","))
+		{
+			if (item.trim().length() > 0)
+			{  items.add(item.trim()); }
+		}
+		return items;
+	}
+
+	public void dispose(ComponentContextProperties ccp)
+    {
+       logger.info("Disposing ExtractDatastreams");
+	}
+
+}
@@ -0,0 +1,250 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora;
+
+import org.meandre.core.ComponentContext;
+import org.meandre.core.ComponentContextException;
+import org.meandre.core.ComponentExecutionException;
+import org.meandre.core.ExecutableComponent;
+import org.meandre.core.ComponentContextProperties;
+import org.meandre.annotations.Component;
+import org.meandre.annotations.ComponentOutput;
+import org.meandre.annotations.ComponentProperty;
+import java.util.logging.Logger;
+import org.meandre.components.fedora.fake.FakeFedoraClient;
+import org.meandre.components.fedora.fake.FakeRepository;
+import org.meandre.components.fedora.fake.FaultInjector;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.RestTransport;
+
+/**
+* 
+* <p>
+* Title: FakeFedoraClientComponent
+* </p>
+* 
+* <p>
+* Description: Returns a Fedora Client and APIA/APIM objects backed by an
+* in-memory fake repository instead of a Fedora server, for load and
+* performance testing of flows.  The repository is populated with a
+* collection of generated works on the first firing and kept until the
+* component is disposed.  Latency and failures can be injected into
+* every repository call.
+* </p>
+* 
+* <p>
+* Copyright: Copyright (c) 2008
+* </p>
+* 
+* <p>
+* Company: Automated Learning Group, NCSA
+* </p>
+* 
+* @version 1.0
+*/
+
+@Component(
+		name="FakeFedoraClientComponent",
+		tags="fedora client APIA APIM fake test load",
+		creator="Automated Learning Group",
+		description="A client for an in-memory fake Fedora repository, for load testing flows."
+		)
+public class FakeFedoraClientComponent implements ExecutableComponent {
+
+	// PROPERTIES
+	@ComponentProperty(
+	description="The collection the generated works are members of.", 
+	name="COLLECTION_PID",
+    defaultValue="monk:collection")
+	public static final String COLLECTION_PID = "COLLECTION_PID";
+	
+	@ComponentProperty(
+	description="The pid prefix of the generated works.", 
+	name="OBJECT_PREFIX",
+    defaultValue="monk:")
+	public static final String OBJECT_PREFIX = "OBJECT_PREFIX";
+	
+	@ComponentProperty(
+	description="The number of works to generate.", 
+	name="OBJECT_COUNT",
+    defaultValue="1000")
+	public static final String OBJECT_COUNT = "OBJECT_COUNT";
+	
+	@ComponentProperty(
+	description="The approximate size in bytes of each generated work's xml.", 
+	name="OBJECT_BYTES",
+    defaultValue="16384")
+	public static final String OBJECT_BYTES = "OBJECT_BYTES";
+	
+	@ComponentProperty(
+	description="Milliseconds of latency added to every repository call.", 
+	name="LATENCY",
+    defaultValue="0")
+	public static final String LATENCY = "LATENCY";
+	
+	@ComponentProperty(
+	description="Up to this many more milliseconds of random latency per call.", 
+	name="LATENCY_JITTER",
+    defaultValue="0")
+	public static final String LATENCY_JITTER = "LATENCY_JITTER";
+	
+	@ComponentProperty(
+	description="The fraction of repository calls that fail, from 0.0 to 1.0.", 
+	name="FAILURE_RATE",
+    defaultValue="0.0")
+	public static final String FAILURE_RATE = "FAILURE_RATE";
+	
+	@ComponentProperty(
+	description="The random seed for latency and failures; blank for a different " +
+			"sequence each run.", 
+	name="SEED",
+    defaultValue="")
+	public static final String SEED = "SEED";
+
+	@ComponentProperty(
+	description="soap to use the in-process APIA/APIM, or rest to read datastream " +
+			"contents and disseminations over HTTP from the fake server, as " +
+			"FedoraClientComponent does.  The fake reports Fedora 2.2, so object " +
+			"xml and exports stay in-process.", 
+	name="TRANSPORT",
+    defaultValue=RestTransport.SOAP)
+	public static final String TRANSPORT = "TRANSPORT";
+
+	// OUTPUTS
+	@ComponentOutput(
+	description="The fedora client object.", 
+	name="fedoraClient")
+	public final static String DATA_PORT_OUT_1 = "fedoraClient";
+	
+	@ComponentOutput(
+	description="The apia interface.", 
+	name="apia")
+	public final static String DATA_PORT_OUT_2 = "apia";
+	
+	@ComponentOutput(
+	description="The apim interface.", 
+	name="apim")
+	public final static String DATA_PORT_OUT_3 = "apim";
+
+	/* The fake client, created on the first firing. */
+	private FakeFedoraClient fclient = null;
+
+	/* The logger object to use for output. */
+	private static Logger logger = null;
+	
+	public void initialize(ComponentContextProperties ccp)
+	{
+		logger = ccp.getLogger();
+		logger.info("Initializing FakeFedoraClientComponent");
+	}
+
+	public void execute(ComponentContext cc)
+	throws ComponentExecutionException, ComponentContextException
+	{
+		logger.info("Firing FakeFedoraClientComponent");
+		try
+		{
+			if (fclient == null)
+			{
+				String seed = cc.getProperty(SEED);
+				FaultInjector faults = (seed == null || seed.trim().length() == 0) ? 
+						new FaultInjector() : new FaultInjector(Long.parseLong(seed.trim()));
+				FakeRepository repository = new FakeRepository(faults);
+				
+				int count = PropertyValues.parseInt(cc.getProperty(OBJECT_COUNT), 1000);
+				int bytes = PropertyValues.parseInt(cc.getProperty(OBJECT_BYTES), 16384);
+				repository.populateCollection(cc.getProperty(COLLECTION_PID), 
+						cc.getProperty(OBJECT_PREFIX), count, bytes);
+				logger.info("Generated "+repository.size()+" objects");
+				fclient = new FakeFedoraClient(repository);
+			}
+			
+			// the fault settings may change between firings
+			FaultInjector faults = fclient.getRepository().getFaults();
+			faults.setLatency(PropertyValues.parseInt(cc.getProperty(LATENCY), 0), 
+					          PropertyValues.parseInt(cc.getProperty(LATENCY_JITTER), 0));
+			faults.setFailureRate(parseDouble(cc.getProperty(FAILURE_RATE), 0.0));
+
+			String transport = cc.getProperty(TRANSPORT);
+			cc.pushDataComponentToOutput(DATA_PORT_OUT_1, fclient);
+			cc.pushDataComponentToOutput(DATA_PORT_OUT_2, 
+					RestTransport.apia(transport, fclient, fclient.getAPIA()));
+			cc.pushDataComponentToOutput(DATA_PORT_OUT_3, 
+					RestTransport.apim(transport, fclient, fclient.getAPIM()));
+		}
+		catch (ComponentContextException ex1)
+		{
+			logger.severe("ComponentContextException error in FakeFedoraClientComponent: "+ex1.getMessage());
+			throw new ComponentContextException("Error in FakeFedoraClientComponent: "+ex1.getMessage());
+		}
+		catch (Throwable th)
+		{
+			logger.severe("ComponentExecutionException error in FakeFedoraClientComponent:  "+th.getMessage());
+			throw new ComponentExecutionException(th);
+		}
+	}
+
+	public void dispose(ComponentContextProperties ccp)
+	{
+		logger.info("Disposing FakeFedoraClientComponent.");
+		if (fclient != null)
+		{
+			logger.info("Fake repository answered "+fclient.getRepository().getFaults().getCalls()+
+					" calls, "+fclient.getRepository().getFaults().getFailures()+" failed by injection");
+			fclient.stop();
+			fclient = null;
+		}
+	}
+	
+	private static double parseDouble(String value, double defaultValue)
+	{
+		try
+		{
+			return Double.parseDouble(value.trim());
+		}
+		catch (Exception ex)
+		{
+			return defaultValue;
+		}
+	}
+}
@@ -53,8 +53,14 @@ import org.meandre.core.ComponentContextProperties;
 import org.meandre.annotations.Component;
 import org.meandre.annotations.ComponentOutput;
 import org.meandre.annotations.ComponentProperty;
+import java.io.File;
 import java.util.logging.Logger;
+import org.meandre.components.fedora.support.FedoraConnection;
+import org.meandre.components.fedora.support.FedoraConnectionRegistry;
 import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FedoraMetrics;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.RestTransport;
 
 /**
 * 
@@ -128,6 +134,53 @@ public class FedoraClientComponent implements ExecutableComponent {
     defaultValue="XXXXXX")
 	public static final String PWORD = "PWORD";
 
+	@ComponentProperty(
+	description="Reuse a cached client and APIA/APIM stubs for this server " +
+			"and user across firings (true/false).", 
+	name="SHARED_CONNECTION",
+    defaultValue="true")
+	public static final String SHARED_CONNECTION = "SHARED_CONNECTION";
+	
+	@ComponentProperty(
+	description="The maximum number of pooled HTTP connections to the Fedora host.", 
+	name="MAX_CONNECTIONS",
+    defaultValue="20")
+	public static final String MAX_CONNECTIONS = "MAX_CONNECTIONS";
+	
+	@ComponentProperty(
+	description="Seconds a shared connection may sit unused before it is evicted.", 
+	name="IDLE_TIMEOUT",
+    defaultValue="300")
+	public static final String IDLE_TIMEOUT = "IDLE_TIMEOUT";
+	
+	@ComponentProperty(
+	description="Seconds a shared connection may sit unused before it is " +
+			"health checked on reuse.", 
+	name="VALIDATE_AFTER",
+    defaultValue="30")
+	public static final String VALIDATE_AFTER = "VALIDATE_AFTER";
+	
+	@ComponentProperty(
+	description="A file to write the Fedora call metrics (counts, bytes, latency " +
+			"percentiles) to periodically; blank to only publish them over JMX.", 
+	name="METRICS_FILE",
+    defaultValue="")
+	public static final String METRICS_FILE = "METRICS_FILE";
+	
+	@ComponentProperty(
+	description="Seconds between writes of the metrics file.", 
+	name="METRICS_INTERVAL",
+    defaultValue="60")
+	public static final String METRICS_INTERVAL = "METRICS_INTERVAL";
+
+	@ComponentProperty(
+	description="How the APIA/APIM read bulk content: soap uses the SOAP stubs " +
+			"for everything; rest fetches datastream contents and disseminations " +
+			"raw over API-A-LITE, and object xml and exports over the REST API " +
+			"when the server is Fedora 3 or later, and uses SOAP for the other calls.", 
+	name="TRANSPORT",
+    defaultValue=RestTransport.SOAP)
+	public static final String TRANSPORT = "TRANSPORT";
 
 	private FedoraClient fclient = null;
 	/*          Get information about the repository:
@@ -148,6 +201,9 @@ public class FedoraClientComponent implements ExecutableComponent {
 	 */
 	private FedoraAPIA APIA = null;
 	private FedoraAPIM APIM = null;
+	
+	/* Whether this component started the metrics dump, so dispose stops it. */
+	private boolean dumping = false;
 
 	// output data port
 	@ComponentOutput(
@@ -199,18 +255,48 @@ public class FedoraClientComponent implements ExecutableComponent {
 	System.out.println("PWORD is: "+pass);
 
 
-			fedoraURL = protocol+"://"+host+":"+port+"/fedora";
+			fedoraURL = FedoraConnectionRegistry.makeBaseURL(protocol, host, port);
 	System.out.println("fedoraURL is: "+fedoraURL);
 	
 			logger.info("FedoraURL: "+fedoraURL);
 
-			fclient = new FedoraClient(fedoraURL, user, pass);
-			if(fclient==null){
-				throw new ComponentExecutionException("Error getting FedoraClient");
+			if (FedoraConstants.FALSE.equalsIgnoreCase(cc.getProperty(SHARED_CONNECTION)))
+			{
+				fclient = new FedoraClient(fedoraURL, user, pass);
+				if(fclient==null){
+					throw new ComponentExecutionException("Error getting FedoraClient");
+				}
+				APIA = fclient.getAPIA();
+				APIM = fclient.getAPIM();
+			}
+			else
+			{
+				int maxConnections = PropertyValues.parseInt(cc.getProperty(MAX_CONNECTIONS),
+						FedoraConnectionRegistry.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+				long idleTimeout = PropertyValues.parseInt(cc.getProperty(IDLE_TIMEOUT), 300) * 1000L;
+				long validateAfter = PropertyValues.parseInt(cc.getProperty(VALIDATE_AFTER), 30) * 1000L;
+				
+				FedoraConnection conn = FedoraConnectionRegistry.getInstance().getConnection(
+						protocol, host, port, user, pass, maxConnections, 
+						Math.max(maxConnections, FedoraConnectionRegistry.DEFAULT_MAX_TOTAL_CONNECTIONS),
+						idleTimeout, validateAfter);
+				fclient = conn.getClient();
+				APIA = conn.getAPIA();
+				APIM = conn.getAPIM();
 			}
-			APIA = fclient.getAPIA();
-			APIM = fclient.getAPIM();
 
+			String transport = cc.getProperty(TRANSPORT);
+			logger.info("Transport: "+(RestTransport.isRest(transport) ? RestTransport.REST : RestTransport.SOAP));
+			APIA = RestTransport.apia(transport, fclient, APIA);
+			APIM = RestTransport.apim(transport, fclient, APIM);
+
+			String metricsFile = cc.getProperty(METRICS_FILE);
+			if (metricsFile != null && metricsFile.trim().length() > 0)
+			{
+				FedoraMetrics.getInstance().startDump(new File(metricsFile.trim()),
+						PropertyValues.parseInt(cc.getProperty(METRICS_INTERVAL), 60) * 1000L);
+				dumping = true;
+			}
 
 			cc.pushDataComponentToOutput(DATA_PORT_OUT_1, fclient);
 			cc.pushDataComponentToOutput(DATA_PORT_OUT_2, APIA);
@@ -233,6 +319,11 @@ public class FedoraClientComponent implements ExecutableComponent {
 	public void dispose(ComponentContextProperties ccp)
 	{
 		logger.info("Disposing FedoraClientComponent.");
+		if (dumping)
+		{
+			FedoraMetrics.getInstance().stopDump();
+			dumping = false;
+		}
 	}
 }
 
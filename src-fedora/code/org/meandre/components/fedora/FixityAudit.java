@@ -0,0 +1,379 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+import org.meandre.annotations.Component;
+import org.meandre.annotations.ComponentInput;
+import org.meandre.annotations.ComponentOutput;
+import org.meandre.annotations.ComponentProperty;
+import org.meandre.core.ComponentContext;
+import org.meandre.core.ComponentContextException;
+import org.meandre.core.ComponentExecutionException;
+import org.meandre.core.ExecutableComponent;
+import org.meandre.core.ComponentContextProperties;
+import org.meandre.components.fedora.support.BulkStats;
+import org.meandre.components.fedora.support.Checksums;
+import org.meandre.components.fedora.support.DatastreamReader;
+import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FedoraMetrics;
+import org.meandre.components.fedora.support.OperationMetrics;
+import org.meandre.components.fedora.support.OperationResult;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.RestTransport;
+import org.meandre.components.fedora.support.RetryPolicy;
+
+import fedora.client.FedoraClient;
+import fedora.server.management.FedoraAPIM;
+import fedora.server.types.gen.Datastream;
+
+/**
+ * 
+ * <p>
+ * Title: FixityAudit
+ * </p>
+ * 
+ * <p>
+ * Description: Checks the content of many fedora objects against the
+ *              checksums Fedora recorded for their datastreams, several
+ *              objects at a time.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * 
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+
+@Component(
+		name="FixityAudit",
+		tags="fedora datastream checksum fixity audit bulk",
+		creator="Automated Learning Group",
+		description="<p>Verifies the datastreams of a set of objects against the checksums " +
+				"Fedora recorded for them.  The content of each datastream is read over the " +
+				"API-A-LITE interface and checksummed as it streams in, so no datastream is held " +
+				"in memory, and several objects are audited at a time.  The pids input is " +
+				"anything BulkPurge accepts: a String[] or Collection of pids or info:fedora/ " +
+				"URIs, a pid pattern such as monk:*, or an iTQL query starting with select.</p>" +
+				"<p>An OperationResult is pushed for each datastream checked, with the " +
+				"computed checksum and, for a mismatch or a read failure, the error.  At the " +
+				"end the pid/dsID of every mismatch is pushed as a String[], followed by a " +
+				"BulkStats summary.</p>",
+		dependency={"activation-1.0.2.jar", "axis.jar", "batik-all.jar", "commons-codec-1.3.jar",
+				"commons-dbcp-1.2.1.jar", "commons-discovery.jar", "commons-pool-1.2.jar",
+				"foxml-merge.xsl", "jai_codec.jar", "jai_core.jar", "java-getopt-1.0.11.jar",
+				"jaxrpc.jar", "jhbasic.jar", "jrdf-0.3.3.jar", "log4j-1.2.14.jar",
+				"mail.jar", "mets-merge.xsl", "saaj.jar", "saxon.jar",
+				"sunxacml-patched.jar", "trippi-1.1.2-core.jar", "wsdl4j-1.5.1.jar", "xercesImpl.jar",
+				"xml-apis.jar", "commons-httpclient-3.1-beta1.jar", "commons-logging.jar", 
+				"fedora-client.jar", "icu4j-3.8.1.jar", "icu4j-charsets-3.8.1.jar", 
+				"jena-2.5.5.jar", "jena-arq-2.5.5.jar", "jena-arq-extra-2.5.5.jar", "jena-iri-2.5.5.jar", 
+				"jena-json-2.5.5.jar"}	
+          )
+public class FixityAudit implements ExecutableComponent
+{
+	
+	//INPUT
+	@ComponentInput(
+	description="The fedora client.", 
+	name="fedoraClient")
+	final String DATA_INPUT_1 = "fedoraClient";
+	
+	@ComponentInput(
+			description = "The fedora PIDs or info:fedora/ URIs to audit, a pid pattern, " +
+					"or an iTQL query.",
+			name = FedoraConstants.PIDS) 
+	final static String DATA_INPUT_2 = FedoraConstants.PIDS;
+
+
+	//PROPERTY
+	
+	@ComponentProperty(
+	description = "The IDs of the datastreams to check, separated by spaces.  Leave empty " +
+			"to check every datastream that has a recorded checksum; a listed datastream " +
+			"without one is reported as a failure.",
+	name = FedoraConstants.DATASTREAM_IDS, 
+	defaultValue = "")
+	final static String PROPERTY2 = FedoraConstants.DATASTREAM_IDS;	
+	
+	@ComponentProperty(
+	description = "The number of objects audited concurrently.",
+	name = FedoraConstants.WORKERS, 
+	defaultValue = "4")
+	final static String PROPERTY3 = FedoraConstants.WORKERS;	
+	
+	@ComponentProperty(
+	description = "The number of attempts per call for transient (network) failures",
+	name = FedoraConstants.MAX_ATTEMPTS, 
+	defaultValue = "3")
+	final static String PROPERTY4 = FedoraConstants.MAX_ATTEMPTS;	
+
+	//OUTPUT
+	@ComponentOutput(
+	description="An OperationResult for each datastream checked, in completion order.", 
+	name=FedoraConstants.OPERATION_RESULT)
+	final String DATA_OUTPUT_1=FedoraConstants.OPERATION_RESULT;		
+	
+	@ComponentOutput(
+	description="A String[] with the pid/dsID of each datastream whose content did not " +
+			"match its recorded checksum.", 
+	name=FedoraConstants.CHECKSUM_MISMATCHES)
+	final String DATA_OUTPUT_2=FedoraConstants.CHECKSUM_MISMATCHES;		
+	
+	@ComponentOutput(
+	description="A BulkStats summary with the aggregate counts and throughput.", 
+	name=FedoraConstants.BULK_STATS)
+	final String DATA_OUTPUT_3=FedoraConstants.BULK_STATS;		
+	
+	/* The logger object to use for output. */
+	private static Logger logger = null;
+	
+	/* Timings of the datastream listing calls, per attempt. */
+	private static final OperationMetrics GET_DATASTREAMS = FedoraMetrics.operation("getDatastreams");
+	
+	/* Starts the error of a result whose content was read but did not match. */
+	static final String MISMATCH = "Checksum mismatch: ";
+	
+	public void dispose(ComponentContextProperties ccp)
+	{
+	   logger.info("Disposing FixityAudit...");
+	}
+
+	public void execute(ComponentContext cc)
+	throws ComponentExecutionException, ComponentContextException
+	{
+		logger.info("Firing FixityAudit.execute...");
+
+		ExecutorService executor = null;
+		try
+		{
+			FedoraClient fclient = (FedoraClient) cc.getDataComponentFromInput(DATA_INPUT_1);
+			Object input = cc.getDataComponentFromInput(DATA_INPUT_2);
+			final List<String> dsIDs = Arrays.asList(split(cc.getProperty(PROPERTY2)));
+			int workers = Math.max(1, PropertyValues.parseInt(cc.getProperty(PROPERTY3), 4));
+			final RetryPolicy retry = new RetryPolicy(PropertyValues.parseInt(cc.getProperty(PROPERTY4), 3), 500);
+			
+			List<String> pids = BulkPurge.resolvePids(fclient, input);
+			logger.info("Auditing "+pids.size()+" objects with "+workers+" workers");
+			
+			executor = Executors.newFixedThreadPool(workers);
+			CompletionService<List<OperationResult>> completion = 
+				new ExecutorCompletionService<List<OperationResult>>(executor);
+			BulkStats stats = new BulkStats("fixity");
+			final FedoraAPIM apim = fclient.getAPIM();
+			final RestTransport transport = new RestTransport(fclient);
+			
+			for (final String pid: pids)
+			{
+				completion.submit(new Callable<List<OperationResult>>()
+				{
+					public List<OperationResult> call()
+					{
+						return audit(apim, transport, pid, dsIDs, retry);
+					}
+				});
+			}
+			
+			List<String> mismatches = new ArrayList<String>();
+			for (int i = 0; i < pids.size(); i++)
+			{
+				for (OperationResult result: completion.take().get())
+				{
+					if (!result.isSuccess())
+					{
+						logger.warning("Fixity check failed: "+result);
+						if (result.getError().startsWith(MISMATCH))
+						{  mismatches.add(result.getSource()); }
+					}
+					stats.record(result);
+					cc.pushDataComponentToOutput(DATA_OUTPUT_1, result);
+				}
+			}
+			
+			stats.finish();
+			logger.info(stats.toString()+", "+mismatches.size()+" checksum mismatches");
+			cc.pushDataComponentToOutput(DATA_OUTPUT_2, mismatches.toArray(new String[mismatches.size()]));
+			cc.pushDataComponentToOutput(DATA_OUTPUT_3, stats);
+		}		
+		catch (ComponentContextException ex1)
+		{
+			logger.severe("Error in FixityAudit: "+ex1.getMessage());
+			throw new ComponentContextException("Error in FixityAudit: "+ex1.getMessage());
+		}
+		catch (Throwable th)
+		{
+			logger.severe("Error in FixityAudit:  "+th.getMessage());
+			throw new ComponentExecutionException(th);
+		}	
+		finally
+		{
+			if (executor != null)
+			{  executor.shutdownNow(); }
+		}
+	}
+	
+	/*
+	 * Checks the datastreams of one object, one after another.  Never
+	 * throws; failures end up in the results.
+	 */
+	static List<OperationResult> audit(final FedoraAPIM apim, RestTransport transport, 
+			                           final String pid, List<String> dsIDs, RetryPolicy retry)
+	{
+		List<OperationResult> results = new ArrayList<OperationResult>();
+		Datastream[] datastreams = null;
+		long start = System.currentTimeMillis();
+		try
+		{
+			datastreams = retry.call(new Callable<Datastream[]>()
+			{
+				public Datastream[] call() throws Exception
+				{
+					long start = GET_DATASTREAMS.start();
+					try
+					{
+						Datastream[] datastreams = apim.getDatastreams(pid, null, null);
+						GET_DATASTREAMS.success(start, 0);
+						return datastreams;
+					}
+					catch (Exception ex)
+					{
+						GET_DATASTREAMS.failure(start);
+						throw ex;
+					}
+				}
+			});
+		}
+		catch (Throwable th)
+		{
+			OperationResult result = new OperationResult(pid);
+			result.setPid(pid);
+			result.setError(th.getClass().getName()+": "+th.getMessage());
+			result.setAttempts(retry.getLastAttempts());
+			result.setLatencyMillis(System.currentTimeMillis() - start);
+			results.add(result);
+			return results;
+		}
+		
+		List<String> missing = new ArrayList<String>(dsIDs);
+		for (Datastream ds: (datastreams == null) ? new Datastream[0] : datastreams)
+		{
+			boolean listed = dsIDs.contains(ds.getID());
+			missing.remove(ds.getID());
+			if (listed || (dsIDs.isEmpty() && Checksums.isRecorded(ds.getChecksumType(), ds.getChecksum())))
+			{
+				results.add(verify(transport, pid, ds, retry));
+			}
+		}
+		for (String dsID: missing)
+		{
+			OperationResult result = new OperationResult(pid+"/"+dsID);
+			result.setPid(pid);
+			result.setError("Datastream not found");
+			results.add(result);
+		}
+		return results;
+	}
+	
+	/* Streams the content of one datastream through its recorded checksum type. */
+	static OperationResult verify(RestTransport transport, String pid, Datastream ds, RetryPolicy retry)
+	{
+		OperationResult result = new OperationResult(pid+"/"+ds.getID());
+		result.setPid(pid);
+		if (!Checksums.isRecorded(ds.getChecksumType(), ds.getChecksum()))
+		{
+			result.setError("No checksum recorded (checksum type "+ds.getChecksumType()+")");
+			return result;
+		}
+		
+		long start = System.currentTimeMillis();
+		// stays false if the checksum type is not supported, so the attempts
+		// of this thread's previous read are not reported for it
+		boolean read = false;
+		try
+		{
+			Checksums checksums = new Checksums(new String[] {ds.getChecksumType()});
+			read = true;
+			new DatastreamReader(transport, pid, ds.getID(), null, retry).read(0, -1, checksums);
+			result.setBytes(checksums.getLength());
+			result.setChecksums(checksums.toString());
+			String mismatch = checksums.mismatch(ds.getChecksumType(), ds.getChecksum());
+			if (mismatch != null)
+			{  result.setError(MISMATCH+mismatch); }
+		}
+		catch (Throwable th)
+		{
+			result.setError(th.getClass().getName()+": "+th.getMessage());
+		}
+		result.setAttempts(read ? retry.getLastAttempts() : 0);
+		result.setLatencyMillis(System.currentTimeMillis() - start);
+		return result;
+	}
+	
+	private static String[] split(String value)
+	{
+		if (value == null || value.trim().length() == 0)
+		{  return new String[0]; }
+		return value.trim().split("\\s+");
+	}
+
+	public void initialize(ComponentContextProperties ccp)
+	{
+		logger = ccp.getLogger();
+		logger.info("Initializing FixityAudit...");
+	}
+}
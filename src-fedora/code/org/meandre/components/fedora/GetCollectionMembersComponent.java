@@ -24,23 +24,24 @@ package org.meandre.components.fedora;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Logger;
 
-import org.jrdf.graph.Node;
 import org.meandre.annotations.Component;
 import org.meandre.annotations.ComponentInput;
 import org.meandre.annotations.ComponentOutput;
 import org.meandre.annotations.ComponentProperty;
+import org.meandre.components.fedora.support.CsvTupleReader;
 import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.ResourceIndex;
+import org.meandre.components.fedora.support.StreamBuffer;
+import org.meandre.components.fedora.support.TupleQueryCache;
+import org.meandre.components.fedora.support.TupleRows;
 import org.meandre.core.ComponentContext;
 import org.meandre.core.ComponentContextException;
 import org.meandre.core.ComponentContextProperties;
 import org.meandre.core.ComponentExecutionException;
 import org.meandre.core.ExecutableComponent;
-import org.trippi.TrippiException;
-import org.trippi.TupleIterator;
 
 import fedora.client.FedoraClient;
 import fedora.common.PID;
@@ -59,6 +60,10 @@ import fedora.common.PID;
 		"jena-json-2.5.5.jar","xmlpull_1_1_3_4a.jar"}	)
 public class GetCollectionMembersComponent implements ExecutableComponent {
 
+	public static final String STREAM_NONE = "none";
+	public static final String STREAM_MEMBER = "member";
+	public static final String STREAM_BATCH = "batch";
+
 	@ComponentInput(description="The fedora client.", name="fedoraClient")
 	private static final String DATA_IN_1 ="fedoraClient";
 	
@@ -76,12 +81,54 @@ public class GetCollectionMembersComponent implements ExecutableComponent {
 	
 	
 	
+	@ComponentProperty(defaultValue="true",
+			description="Ask the resource index to flush buffered triples before answering (true/false). " +
+					"Only needed when the membership must reflect changes made moments ago.",
+			name=FedoraConstants.FLUSH_INDEX)
+	private static final String DATA_PROP_FLUSH = FedoraConstants.FLUSH_INDEX;
+	
+	@ComponentProperty(defaultValue="60",
+			description="Seconds a query result may be answered from the shared query cache; 0 disables caching.",
+			name=FedoraConstants.CACHE_TTL)
+	private static final String DATA_PROP_CACHE_TTL = FedoraConstants.CACHE_TTL;
+	
+	@ComponentProperty(defaultValue="100",
+			description="The number of query results kept in the shared query cache.",
+			name=FedoraConstants.CACHE_MAX_ENTRIES)
+	private static final String DATA_PROP_CACHE_SIZE = FedoraConstants.CACHE_MAX_ENTRIES;
+	
+	@ComponentProperty(defaultValue=STREAM_NONE,
+			description="How members are pushed: none (one list after the query completes), " +
+					"member (each member URI on workId as it is read) or batch (lists of " +
+					"batchSize members on workArrayList as they are read).  The streaming modes " +
+					"push the member count on endOfStream after the last member and bypass the query cache.",
+			name="streamingMode")
+	private static final String DATA_PROP_STREAM = "streamingMode";
+	
+	@ComponentProperty(defaultValue="1000",
+			description="The number of members per list in the batch streaming mode.",
+			name="batchSize")
+	private static final String DATA_PROP_BATCH = "batchSize";
+	
+	@ComponentProperty(defaultValue="1000",
+			description="In a streaming mode, the number of members or batches that reading may " +
+					"run ahead of the pushes to the output.",
+			name="streamBufferSize")
+	private static final String DATA_PROP_BUFFER = "streamBufferSize";
+	
 	@ComponentOutput(description="the arraylist with work ids", name="workArrayList")
 	private static final String DATA_OUT_1 = "workArrayList";
 	
 	@ComponentOutput(description="the collectionId URI", name="collectionId")
 	private static final String DATA_OUT_2 ="collectionId";
 	
+	@ComponentOutput(description="a single work id URI, in the member streaming mode", name="workId")
+	private static final String DATA_OUT_3 ="workId";
+	
+	@ComponentOutput(description="the Integer number of members streamed, pushed after the last one " +
+			"in a streaming mode", name="endOfStream")
+	private static final String DATA_OUT_4 ="endOfStream";
+	
 	
 	private Logger logger;
 	
@@ -124,28 +171,29 @@ public class GetCollectionMembersComponent implements ExecutableComponent {
 	                        predicate, object);
 	        }
 
-			Map<String, String> params = new HashMap<String, String>();
-	        params.put("lang", "itql");
-	        params.put("flush", "true");
-	        params.put("query", query);
+	        boolean flush = !FedoraConstants.FALSE.equalsIgnoreCase(cc.getProperty(DATA_PROP_FLUSH));
+	        long ttl = PropertyValues.parseInt(cc.getProperty(DATA_PROP_CACHE_TTL), 0) * 1000L;
+	        TupleQueryCache.getInstance().setMaxEntries(PropertyValues.parseInt(cc.getProperty(DATA_PROP_CACHE_SIZE),
+	        		TupleQueryCache.DEFAULT_MAX_ENTRIES));
 	        logger.info("doing a query: " + query);
+	        
+	        String mode = cc.getProperty(DATA_PROP_STREAM);
+	        if (STREAM_MEMBER.equalsIgnoreCase(mode) || STREAM_BATCH.equalsIgnoreCase(mode)) {
+	        	int count = streamMembers(cc, fclient, query, flush, 
+	        			STREAM_BATCH.equalsIgnoreCase(mode) ? PropertyValues.parseInt(cc.getProperty(DATA_PROP_BATCH), 1000) : 0,
+	        			PropertyValues.parseInt(cc.getProperty(DATA_PROP_BUFFER), 1000));
+	        	logger.info("streamed " + count + " members");
+	        	cc.pushDataComponentToOutput(DATA_OUT_4, Integer.valueOf(count));
+	        	cc.pushDataComponentToOutput(DATA_OUT_2, object);
+	        	return;
+	        }
 			
 	        try {
-				TupleIterator tuples =fclient.getTuples(params);
-				while(tuples.hasNext()){
-					Map<String,Node> row = tuples.next();
-					  for (String key : row.keySet()) {
-						  alist.add((row.get(key)).toString());
-				        }
-
-					
-				}
+				TupleRows tuples = ResourceIndex.getTuples(fclient, ResourceIndex.ITQL, query, flush, ttl);
+				tuples.addValuesTo(alist);
 			} catch (IOException e) {
 				logger.finest("error: " + e.getMessage());
 				throw new ComponentExecutionException(e.getMessage());
-			} catch (TrippiException e) {
-				logger.finest("error: " + e.getMessage());
-				throw new ComponentExecutionException(e.getMessage());
 			}
 			
 			cc.pushDataComponentToOutput(DATA_OUT_1, alist);
@@ -153,6 +201,62 @@ public class GetCollectionMembersComponent implements ExecutableComponent {
 
 	}
 
+	/*
+	 * Reads the tuples on a producer thread and pushes each member (or each
+	 * batch of members when batchSize > 0) as soon as it is parsed.
+	 * Returns the number of members pushed.
+	 */
+	private int streamMembers(ComponentContext cc, final FedoraClient fclient, final String query,
+			final boolean flush, final int batchSize, int bufferSize)
+			throws ComponentExecutionException, ComponentContextException {
+		final StreamBuffer<Object> buffer = new StreamBuffer<Object>(bufferSize);
+		buffer.start(new StreamBuffer.Producer<Object>() {
+			public void produce(StreamBuffer<Object> out) throws Exception {
+				CsvTupleReader tuples = ResourceIndex.openTuples(fclient, ResourceIndex.ITQL, query, flush);
+				try {
+					ArrayList<String> batch = new ArrayList<String>(Math.max(1, batchSize));
+					String[] row = null;
+					while ((row = tuples.next()) != null) {
+						for (String value : row) {
+							if (batchSize <= 0) {
+								out.put(value);
+								continue;
+							}
+							batch.add(value);
+							if (batch.size() >= batchSize) {
+								out.put(batch);
+								batch = new ArrayList<String>(batchSize);
+							}
+						}
+					}
+					if (batch.size() > 0) {
+						out.put(batch);
+					}
+				} finally {
+					tuples.close();
+				}
+			}
+		}, "GetCollectionMembers-reader");
+		
+		String port = (batchSize > 0) ? DATA_OUT_1 : DATA_OUT_3;
+		int count = 0;
+		try {
+			Object item = null;
+			while ((item = buffer.take()) != null) {
+				cc.pushDataComponentToOutput(port, item);
+				count += (item instanceof ArrayList) ? ((ArrayList<?>) item).size() : 1;
+			}
+		} catch (ComponentContextException e) {
+			throw e;
+		} catch (Exception e) {
+			logger.finest("error: " + e.getMessage());
+			throw new ComponentExecutionException(e.getMessage());
+		} finally {
+			buffer.cancel();
+		}
+		return count;
+	}
+
 	public void initialize(ComponentContextProperties ccp) {
 		this.logger = ccp.getLogger();
 	}
@@ -4,7 +4,6 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.logging.Logger;
 
-import org.apache.axis.types.NonNegativeInteger;
 import org.meandre.core.ComponentContext;
 import org.meandre.core.ComponentContextException;
 import org.meandre.core.ComponentExecutionException;
@@ -20,11 +19,12 @@ import fedora.server.management.FedoraAPIM;
 import fedora.server.types.gen.ComparisonOperator;
 import fedora.server.types.gen.Condition;
 import fedora.server.types.gen.FieldSearchQuery;
-import fedora.server.types.gen.FieldSearchResult;
 import fedora.server.types.gen.ObjectFields;
 
 import org.meandre.components.fedora.support.FedoraConstants;
 import org.meandre.components.fedora.support.CorpusObject;
+import org.meandre.components.fedora.support.FindObjectsPager;
+import org.meandre.components.fedora.support.PropertyValues;
 
 /**
  * 
@@ -81,6 +81,19 @@ public class GetCollectionObjects implements ExecutableComponent
 	defaultValue = "monk:collection-*")
 	final static String PROPERTY1 = FedoraConstants.COLLECTION_PATTERN;	
 	
+	@ComponentProperty(
+	description = "The number of objects requested per findObjects page.",
+	name = FedoraConstants.PAGE_SIZE, 
+	defaultValue = "10000")
+	final static String PROPERTY2 = FedoraConstants.PAGE_SIZE;
+	
+	@ComponentProperty(
+	description = "The number of pages fetched ahead while the current page is processed; " +
+			"0 pages strictly one after another.",
+	name = FedoraConstants.PREFETCH_DEPTH, 
+	defaultValue = "2")
+	final static String PROPERTY3 = FedoraConstants.PREFETCH_DEPTH;
+	
 	//OUTPUT
 	@ComponentOutput(
 	description="The list of collection objects from a Fedora repository", 
@@ -119,53 +132,31 @@ public class GetCollectionObjects implements ExecutableComponent
 		    // pid.
 		    
             String[] resultFields = {"pid","title"};
-            NonNegativeInteger maxResults = new NonNegativeInteger("" + 10000);
+            int pageSize = PropertyValues.parseInt(cc.getProperty(PROPERTY2), FindObjectsPager.DEFAULT_PAGE_SIZE);
+            int prefetchDepth = PropertyValues.parseInt(cc.getProperty(PROPERTY3), FindObjectsPager.DEFAULT_PREFETCH_DEPTH);
             Condition[] condition = {new Condition("pid", ComparisonOperator.eq, "true")};
             FieldSearchQuery query = new FieldSearchQuery(condition, collection_pattern);
-            FieldSearchResult result = null;
 
-            result = APIA.findObjects(resultFields, maxResults, query);
-            
-            ObjectFields[] fields = result.getResultList();
-            for(ObjectFields ofield: fields)
+            FindObjectsPager pager = 
+            	new FindObjectsPager(APIA, resultFields, pageSize, prefetchDepth);
+            try
             {
-               CorpusObject wobject = new CorpusObject( ofield.getPid());
-               wobject.setTitle(ofield.getTitle(0));
-               alist.add(wobject);
+            	pager.open(query);
+            	while (pager.hasNext())
+            	{
+            		for(ObjectFields ofield: pager.next())
+            		{
+            			CorpusObject wobject = new CorpusObject( ofield.getPid());
+            			wobject.setTitle(ofield.getTitle(0));
+            			alist.add(wobject);
+            		}
+            	}
             }
-            
-            if(result.getListSession()!=null)
+            finally
             {
-               String token = result.getListSession().getToken();
-               int count=1;
-               while(result.getResultList().length!=0)
-               {
-                  count++;
-                  if(result.getListSession()!=null)
-                  {
-                    token = result.getListSession().getToken();
-                  }
-                  else
-                  {
-                     break;
-                  }
-                  try 
-                  {
-                     result=APIA.resumeFindObjects(token);
-                     fields=result.getResultList();
-                     for(ObjectFields ofield: fields)
-                     {
-                       CorpusObject wobject = new CorpusObject( ofield.getPid());
-                       wobject.setTitle(ofield.getTitle(0));
-                       alist.add(wobject);
-                     }
-                  } 
-                  catch (Throwable th1) 
-                  {
-                     th1.printStackTrace();
-                  }
-                } // End while
-           } // End if
+            	pager.close();
+            }
+            logger.info("Read "+alist.size()+" collection objects in "+pager.getPageCount()+" pages");
            	
            cc.pushDataComponentToOutput(DATA_OUTPUT_1, alist);	
 		}
@@ -0,0 +1,181 @@
+/**
+ * 
+ * <p>
+ * Title: GetCollectionTree
+ * </p>
+ * 
+ * <p>
+ * Description: Loads a super collection, its collections and the works of
+ * every collection with one joined resource index query.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+
+package org.meandre.components.fedora;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.meandre.annotations.Component;
+import org.meandre.annotations.ComponentInput;
+import org.meandre.annotations.ComponentOutput;
+import org.meandre.annotations.ComponentProperty;
+import org.meandre.components.fedora.support.CollectionTree;
+import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.ResourceIndex;
+import org.meandre.components.fedora.support.TupleQueryCache;
+import org.meandre.components.fedora.support.TupleRows;
+import org.meandre.core.ComponentContext;
+import org.meandre.core.ComponentContextException;
+import org.meandre.core.ComponentContextProperties;
+import org.meandre.core.ComponentExecutionException;
+import org.meandre.core.ExecutableComponent;
+
+import fedora.client.FedoraClient;
+import fedora.common.PID;
+
+@Component(creator="Automated Learning Group", description="Returns the collections of a super collection " +
+		"and the works of each collection, loaded with one joined query instead of one query per collection.",
+		name="GetCollectionTree", tags="fedora monk collections",
+		dependency={"activation-1.0.2.jar", "axis.jar", "batik-all.jar", "commons-codec-1.3.jar",
+		"commons-dbcp-1.2.1.jar", "commons-discovery.jar", "commons-pool-1.2.jar",
+		"foxml-merge.xsl", "jai_codec.jar", "jai_core.jar", "java-getopt-1.0.11.jar",
+		"jaxrpc.jar", "jhbasic.jar", "jrdf-0.3.3.jar", "log4j-1.2.14.jar",
+		"mail.jar", "mets-merge.xsl", "saaj.jar", "saxon.jar",
+		"sunxacml-patched.jar", "trippi-1.1.2-core.jar", "wsdl4j-1.5.1.jar", "xercesImpl.jar",
+		"xml-apis.jar", "commons-httpclient-3.1-beta1.jar", "commons-logging.jar", 
+		"fedora-client.jar", "icu4j-3.8.1.jar", "icu4j-charsets-3.8.1.jar", 
+		"jena-2.5.5.jar", "jena-arq-2.5.5.jar", "jena-arq-extra-2.5.5.jar", "jena-iri-2.5.5.jar", 
+		"jena-json-2.5.5.jar","xmlpull_1_1_3_4a.jar"}	)
+public class GetCollectionTree implements ExecutableComponent {
+
+	@ComponentInput(description="The fedora client.", name="fedoraClient")
+	private static final String DATA_IN_1 ="fedoraClient";
+	
+	@ComponentProperty(defaultValue=FedoraConstants.SUPER_COLLECTION,
+			description="The Super collection that each collection is a member of.",
+			name="superCollectionPID")
+	private static final String DATA_PROP_1 ="superCollectionPID";
+	
+	@ComponentProperty(defaultValue=FedoraConstants.SUPER_COLLECTION_PREDICATE,
+			description="defines the membership of a collection in the super collection",
+			name="collectionMembershipPredicate")
+	private static final String DATA_PROP_2 ="collectionMembershipPredicate";
+	
+	@ComponentProperty(defaultValue=FedoraConstants.COLLECTION_PREDICATE,
+			description="defines the membership of a work in a collection",
+			name="membershipPredicate")
+	private static final String DATA_PROP_3 ="membershipPredicate";
+	
+	@ComponentProperty(defaultValue="true",
+			description="Also list collections without works (true/false).  This costs a second, " +
+					"collections-only query since the joined query only returns collections that have works.",
+			name="includeEmptyCollections")
+	private static final String DATA_PROP_4 ="includeEmptyCollections";
+	
+	@ComponentProperty(defaultValue="true",
+			description="Ask the resource index to flush buffered triples before answering (true/false). " +
+					"Only needed when the membership must reflect changes made moments ago.",
+			name=FedoraConstants.FLUSH_INDEX)
+	private static final String DATA_PROP_FLUSH = FedoraConstants.FLUSH_INDEX;
+	
+	@ComponentProperty(defaultValue="60",
+			description="Seconds a query result may be answered from the shared query cache; 0 disables caching.",
+			name=FedoraConstants.CACHE_TTL)
+	private static final String DATA_PROP_CACHE_TTL = FedoraConstants.CACHE_TTL;
+	
+	@ComponentProperty(defaultValue="100",
+			description="The number of query results kept in the shared query cache.",
+			name=FedoraConstants.CACHE_MAX_ENTRIES)
+	private static final String DATA_PROP_CACHE_SIZE = FedoraConstants.CACHE_MAX_ENTRIES;
+	
+	@ComponentOutput(description="The CollectionTree mapping each collection id to its work ids",
+			name=FedoraConstants.COLLECTION_TREE)
+	private static final String DATA_OUT_1 = FedoraConstants.COLLECTION_TREE;
+	
+	@ComponentOutput(description="The arraylist with collection ids", name="collectionArrayList")
+	private static final String DATA_OUT_2 = "collectionArrayList";
+	
+	@ComponentOutput(description="The Super CollectionId URI", name="superCollectionId")
+	private static final String DATA_OUT_3 ="superCollectionId";
+	
+	
+	private Logger logger;
+	
+	public void dispose(ComponentContextProperties ccp) {
+	}
+
+	public void execute(ComponentContext cc)
+			throws ComponentExecutionException, ComponentContextException {
+			logger.info("In the execute GetCollectionTree");
+			String object = cc.getProperty(DATA_PROP_1);
+			String collectionPredicate = cc.getProperty(DATA_PROP_2);
+			String workPredicate = cc.getProperty(DATA_PROP_3);
+			boolean includeEmpty = !FedoraConstants.FALSE.equalsIgnoreCase(cc.getProperty(DATA_PROP_4));
+			FedoraClient fclient = (FedoraClient)cc.getDataComponentFromInput(DATA_IN_1);
+			
+			if(!object.startsWith("info:")){
+				object = PID.toURI(object);
+			}
+			
+			// ordered by collection so the works of a collection arrive together
+			String joined = String.format("select $c $w from <#ri> where $c <%s> <%s> and $w <%s> $c order by $c;",
+					collectionPredicate, object, workPredicate);
+			String collections = String.format("select $s from <#ri> where $s <%s> <%s>;",
+					collectionPredicate, object);
+			
+	        boolean flush = !FedoraConstants.FALSE.equalsIgnoreCase(cc.getProperty(DATA_PROP_FLUSH));
+	        long ttl = PropertyValues.parseInt(cc.getProperty(DATA_PROP_CACHE_TTL), 0) * 1000L;
+	        TupleQueryCache.getInstance().setMaxEntries(PropertyValues.parseInt(cc.getProperty(DATA_PROP_CACHE_SIZE),
+	        		TupleQueryCache.DEFAULT_MAX_ENTRIES));
+	        
+	        CollectionTree tree = new CollectionTree(object);
+	        try {
+	        	if (includeEmpty) {
+	        		logger.info("doing a query: " + collections);
+	        		TupleRows rows = ResourceIndex.getTuples(fclient, ResourceIndex.ITQL, collections, flush, ttl);
+	        		for (String[] row : rows.getRows()) {
+	        			tree.addCollection(row[0]);
+	        		}
+	        		// a query that reached the server flushed the index for the
+	        		// second one; a cached answer flushed nothing
+	        		if (!ResourceIndex.wasLastCallCached()) {
+	        			flush = false;
+	        		}
+	        	}
+	        	logger.info("doing a query: " + joined);
+				TupleRows rows = ResourceIndex.getTuples(fclient, ResourceIndex.ITQL, joined, flush, ttl);
+				int c = rows.indexOf("c");
+				int w = rows.indexOf("w");
+				if (c < 0 || w < 0) {
+					throw new ComponentExecutionException("Unexpected columns in the collection tree query result");
+				}
+				for (String[] row : rows.getRows()) {
+					tree.addWork(row[c], row[w]);
+				}
+			} catch (IOException e) {
+				logger.finest("error: " + e.getMessage());
+				throw new ComponentExecutionException(e.getMessage());
+			}
+			logger.info("loaded " + tree);
+			
+			cc.pushDataComponentToOutput(DATA_OUT_1, tree);
+			cc.pushDataComponentToOutput(DATA_OUT_2, tree.getCollections());
+			cc.pushDataComponentToOutput(DATA_OUT_3, object);
+	}
+
+	public void initialize(ComponentContextProperties ccp) {
+		this.logger = ccp.getLogger();
+	}
+
+}
@@ -24,23 +24,22 @@ package org.meandre.components.fedora;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Logger;
 
-import org.jrdf.graph.Node;
 import org.meandre.annotations.Component;
 import org.meandre.annotations.ComponentInput;
 import org.meandre.annotations.ComponentOutput;
 import org.meandre.annotations.ComponentProperty;
 import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.ResourceIndex;
+import org.meandre.components.fedora.support.TupleQueryCache;
+import org.meandre.components.fedora.support.TupleRows;
 import org.meandre.core.ComponentContext;
 import org.meandre.core.ComponentContextException;
 import org.meandre.core.ComponentContextProperties;
 import org.meandre.core.ComponentExecutionException;
 import org.meandre.core.ExecutableComponent;
-import org.trippi.TrippiException;
-import org.trippi.TupleIterator;
 
 import fedora.client.FedoraClient;
 import fedora.common.PID;
@@ -82,6 +81,22 @@ public class GetCollectionsComponent implements ExecutableComponent {
 	
 	
 	
+	@ComponentProperty(defaultValue="true",
+			description="Ask the resource index to flush buffered triples before answering (true/false). " +
+					"Only needed when the membership must reflect changes made moments ago.",
+			name=FedoraConstants.FLUSH_INDEX)
+	private static final String DATA_PROP_FLUSH = FedoraConstants.FLUSH_INDEX;
+	
+	@ComponentProperty(defaultValue="60",
+			description="Seconds a query result may be answered from the shared query cache; 0 disables caching.",
+			name=FedoraConstants.CACHE_TTL)
+	private static final String DATA_PROP_CACHE_TTL = FedoraConstants.CACHE_TTL;
+	
+	@ComponentProperty(defaultValue="100",
+			description="The number of query results kept in the shared query cache.",
+			name=FedoraConstants.CACHE_MAX_ENTRIES)
+	private static final String DATA_PROP_CACHE_SIZE = FedoraConstants.CACHE_MAX_ENTRIES;
+	
 	@ComponentOutput(description="The arraylist with collectin ids", name="collectionArrayList")
 	private static final String DATA_OUT_1 = "collectionArrayList";
 	
@@ -131,28 +146,18 @@ public class GetCollectionsComponent implements ExecutableComponent {
 	                        predicate, object);
 	        }
 
-			Map<String, String> params = new HashMap<String, String>();
-	        params.put("lang", "itql");
-	        params.put("flush", "true");
-	        params.put("query", query);
+	        boolean flush = !FedoraConstants.FALSE.equalsIgnoreCase(cc.getProperty(DATA_PROP_FLUSH));
+	        long ttl = PropertyValues.parseInt(cc.getProperty(DATA_PROP_CACHE_TTL), 0) * 1000L;
+	        TupleQueryCache.getInstance().setMaxEntries(PropertyValues.parseInt(cc.getProperty(DATA_PROP_CACHE_SIZE),
+	        		TupleQueryCache.DEFAULT_MAX_ENTRIES));
 	        logger.info("doing a query: " + query);
 			
 	        try {
-				TupleIterator tuples =fclient.getTuples(params);
-				while(tuples.hasNext()){
-					Map<String,Node> row = tuples.next();
-					  for (String key : row.keySet()) {
-						  alist.add((row.get(key)).toString());
-				        }
-
-					
-				}
+				TupleRows tuples = ResourceIndex.getTuples(fclient, ResourceIndex.ITQL, query, flush, ttl);
+				tuples.addValuesTo(alist);
 			} catch (IOException e) {
 				logger.finest("error: " + e.getMessage());
 				throw new ComponentExecutionException(e.getMessage());
-			} catch (TrippiException e) {
-				logger.finest("error: " + e.getMessage());
-				throw new ComponentExecutionException(e.getMessage());
 			}
 			
 			cc.pushDataComponentToOutput(DATA_OUT_1, alist);
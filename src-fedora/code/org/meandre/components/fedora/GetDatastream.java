@@ -0,0 +1,489 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+import org.meandre.annotations.Component;
+import org.meandre.annotations.ComponentInput;
+import org.meandre.annotations.ComponentOutput;
+import org.meandre.annotations.ComponentProperty;
+import org.meandre.core.ComponentContext;
+import org.meandre.core.ComponentContextException;
+import org.meandre.core.ComponentExecutionException;
+import org.meandre.core.ExecutableComponent;
+import org.meandre.core.ComponentContextProperties;
+import org.meandre.components.fedora.support.Checksums;
+import org.meandre.components.fedora.support.DatastreamReader;
+import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.RestTransport;
+import org.meandre.components.fedora.support.RetryPolicy;
+
+import fedora.client.FedoraClient;
+import fedora.server.types.gen.Datastream;
+
+/**
+ * 
+ * <p>
+ * Title: GetDatastream
+ * </p>
+ * 
+ * <p>
+ * Description: Reads the content of a single datastream in byte ranges,
+ * either passing it on piece by piece or writing it to a file, without
+ * holding the whole datastream in memory.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+
+@Component(
+		name="GetDatastream",
+		tags="fedora datastream content range",
+		creator="Automated Learning Group",
+		description="<p>Reads the content of one datastream of an object over the " +
+				"API-A-LITE interface, requesting it in byte ranges of rangeSize bytes with up to " +
+				"workers ranges in flight.  A range that fails part way is resumed from " +
+				"the first byte not yet received.</p><p>If targetFile is blank, each range " +
+				"is pushed in order as a byte[] on dsChunk with its Long position on dsOffset, " +
+				"so at most workers ranges are held in memory.  Otherwise the ranges are " +
+				"written into targetFile at their positions and its path is pushed on " +
+				"targetFile once the whole datastream is written.</p><p>With verifyChecksum " +
+				"the content is checksummed as it is pushed or written, in order, and " +
+				"compared with the checksum Fedora recorded for the datastream; a mismatch " +
+				"fails the component, and in file mode targetFile is not pushed.</p>",
+		dependency={"activation-1.0.2.jar", "axis.jar", "batik-all.jar", "commons-codec-1.3.jar",
+				"commons-dbcp-1.2.1.jar", "commons-discovery.jar", "commons-pool-1.2.jar",
+				"foxml-merge.xsl", "jai_codec.jar", "jai_core.jar", "java-getopt-1.0.11.jar",
+				"jaxrpc.jar", "jhbasic.jar", "jrdf-0.3.3.jar", "log4j-1.2.14.jar",
+				"mail.jar", "mets-merge.xsl", "saaj.jar", "saxon.jar",
+				"sunxacml-patched.jar", "trippi-1.1.2-core.jar", "wsdl4j-1.5.1.jar", "xercesImpl.jar",
+				"xml-apis.jar", "commons-httpclient-3.1-beta1.jar", "commons-logging.jar", 
+				"fedora-client.jar", "icu4j-3.8.1.jar", "icu4j-charsets-3.8.1.jar", 
+				"jena-2.5.5.jar", "jena-arq-2.5.5.jar", "jena-arq-extra-2.5.5.jar", "jena-iri-2.5.5.jar", 
+				"jena-json-2.5.5.jar"}	
+          )
+public class GetDatastream implements ExecutableComponent
+{
+	
+	//INPUT
+	@ComponentInput(
+	description="The fedora client.", 
+	name="fedoraClient")
+	final String DATA_INPUT_1 = "fedoraClient";
+	
+	@ComponentInput(
+			description = "The fedora PID.",
+			name = FedoraConstants.PID) 
+	final static String DATA_INPUT_2 = FedoraConstants.PID;
+
+
+	//PROPERTY
+	
+	@ComponentProperty(
+	description = "The ID of the datastream to read.",
+	name = FedoraConstants.DS_ID, 
+	defaultValue = "DC")
+	final static String PROPERTY2 = FedoraConstants.DS_ID;	
+	
+	@ComponentProperty(
+	description = "The version date of the content to read; blank for the latest version.",
+	name = FedoraConstants.AS_OF_DATE, 
+	defaultValue = "")
+	final static String PROPERTY3 = FedoraConstants.AS_OF_DATE;	
+	
+	@ComponentProperty(
+	description = "The file to write the content to; blank to push it on dsChunk.",
+	name = FedoraConstants.TARGET_FILE, 
+	defaultValue = "")
+	final static String PROPERTY4 = FedoraConstants.TARGET_FILE;	
+	
+	@ComponentProperty(
+	description = "The number of bytes requested at a time.",
+	name = FedoraConstants.RANGE_SIZE, 
+	defaultValue = "4194304")
+	final static String PROPERTY5 = FedoraConstants.RANGE_SIZE;	
+	
+	@ComponentProperty(
+	description = "The number of ranges requested concurrently.",
+	name = FedoraConstants.WORKERS, 
+	defaultValue = "4")
+	final static String PROPERTY6 = FedoraConstants.WORKERS;	
+	
+	@ComponentProperty(
+	description = "The number of attempts per range for transient (network) failures",
+	name = FedoraConstants.MAX_ATTEMPTS, 
+	defaultValue = "3")
+	final static String PROPERTY7 = FedoraConstants.MAX_ATTEMPTS;	
+	
+	@ComponentProperty(
+	description = "Whether to compare the content with the checksum Fedora recorded for it",
+	name = FedoraConstants.VERIFY_CHECKSUM, 
+	defaultValue = "false")
+	final static String PROPERTY8 = FedoraConstants.VERIFY_CHECKSUM;	
+
+	//OUTPUT
+	@ComponentOutput(
+	description="A byte[] piece of the content, in order.", 
+	name=FedoraConstants.DS_CHUNK)
+	final String DATA_OUTPUT_1=FedoraConstants.DS_CHUNK;		
+	
+	@ComponentOutput(
+	description="The Long position of the piece on dsChunk within the content.", 
+	name=FedoraConstants.DS_OFFSET)
+	final String DATA_OUTPUT_2=FedoraConstants.DS_OFFSET;		
+	
+	@ComponentOutput(
+	description="The path of the written file.", 
+	name=FedoraConstants.TARGET_FILE)
+	final String DATA_OUTPUT_3=FedoraConstants.TARGET_FILE;		
+	
+	/* The logger object to use for output. */
+	private static Logger logger = null;
+	
+	public void dispose(ComponentContextProperties ccp)
+	{
+	   logger.info("Disposing GetDatastream...");
+	}
+
+	public void execute(ComponentContext cc)
+	throws ComponentExecutionException, ComponentContextException
+	{
+		logger.info("Firing GetDatastream.execute...");
+
+		ExecutorService executor = null;
+		RandomAccessFile file = null;
+		try
+		{
+			FedoraClient fclient = (FedoraClient) cc.getDataComponentFromInput(DATA_INPUT_1);
+			String pid = (String) cc.getDataComponentFromInput(DATA_INPUT_2);
+			String dsID = cc.getProperty(PROPERTY2).trim();
+			String asOf = cc.getProperty(PROPERTY3);
+			if (asOf != null && asOf.trim().length() == 0)
+			{  asOf = null; }
+			String target = cc.getProperty(PROPERTY4);
+			int rangeSize = Math.max(1, PropertyValues.parseInt(cc.getProperty(PROPERTY5), DatastreamReader.DEFAULT_RANGE_SIZE));
+			int workers = Math.max(1, PropertyValues.parseInt(cc.getProperty(PROPERTY6), 4));
+			RetryPolicy retry = new RetryPolicy(PropertyValues.parseInt(cc.getProperty(PROPERTY7), 3), 500);
+			String verifyProperty = cc.getProperty(PROPERTY8);
+			boolean verify = verifyProperty != null && verifyProperty.trim().equalsIgnoreCase(FedoraConstants.TRUE);
+			
+			Datastream recorded = null;
+			Checksums checksums = null;
+			if (verify)
+			{
+				recorded = fclient.getAPIM().getDatastream(pid, dsID, asOf);
+				if (Checksums.isRecorded(recorded.getChecksumType(), recorded.getChecksum()))
+				{  checksums = new Checksums(new String[] {recorded.getChecksumType()}); }
+				else
+				{  logger.warning("No checksum recorded for "+pid+"/"+dsID+"; not verifying"); }
+			}
+			
+			long start = System.currentTimeMillis();
+			DatastreamReader reader = new DatastreamReader(new RestTransport(fclient), pid, dsID, asOf, retry);
+			long length = reader.probe();
+			List<long[]> ranges = ranges(length, reader.isRanged(), rangeSize);
+			logger.info("Reading "+pid+"/"+dsID+": "+length+" bytes in "+ranges.size()+" ranges");
+			
+			executor = Executors.newFixedThreadPool(workers);
+			if (target != null && target.trim().length() > 0)
+			{
+				file = new RandomAccessFile(target.trim(), "rw");
+				file.setLength(Math.max(0, length));
+				if (checksums == null)
+				{
+					readToFile(reader, ranges, file.getChannel(), executor);
+				}
+				else
+				{
+					// checksums need the content in order, so write it as it is pushed
+					readInOrder(reader, ranges, workers, executor, 
+							fileSink(file.getChannel(), checksums));
+				}
+				file.close();
+				file = null;
+				verify(pid, dsID, recorded, checksums);
+				cc.pushDataComponentToOutput(DATA_OUTPUT_3, target.trim());
+			}
+			else
+			{
+				readInOrder(reader, ranges, workers, executor, outputSink(cc, checksums));
+				verify(pid, dsID, recorded, checksums);
+			}
+			logger.info("Read "+pid+"/"+dsID+" in "+(System.currentTimeMillis() - start)+" ms");
+		}		
+		catch (ComponentContextException ex1)
+		{
+			logger.severe("Error in GetDatastream: "+ex1.getMessage());
+			throw new ComponentContextException("Error in GetDatastream: "+ex1.getMessage());
+		}
+		catch (ExecutionException ex2)
+		{
+			logger.severe("Error in GetDatastream:  "+ex2.getCause().getMessage());
+			throw new ComponentExecutionException(ex2.getCause());
+		}
+		catch (Throwable th)
+		{
+			logger.severe("Error in GetDatastream:  "+th.getMessage());
+			throw new ComponentExecutionException(th);
+		}	
+		finally
+		{
+			if (executor != null)
+			{  executor.shutdownNow(); }
+			if (file != null)
+			{
+				try
+				{  file.close(); }
+				catch (IOException ex)
+				{  logger.info("Unable to close "+ex.getMessage()); }
+			}
+		}
+	}
+	
+	/*
+	 * The {first, last} ranges to request.  Content of unknown length, or
+	 * from a server that does not serve ranges, is read as a single range
+	 * with last -1.
+	 */
+	static List<long[]> ranges(long length, boolean ranged, int rangeSize)
+	{
+		List<long[]> ranges = new ArrayList<long[]>();
+		if (!ranged || length < 0)
+		{
+			ranges.add(new long[] {0, -1});
+			return ranges;
+		}
+		for (long first = 0; first < length; first += rangeSize)
+		{
+			ranges.add(new long[] {first, Math.min(length, first + rangeSize) - 1});
+		}
+		return ranges;
+	}
+	
+	/* Writes every range into the file at its position, several at a time. */
+	static void readToFile(final DatastreamReader reader, List<long[]> ranges, 
+			               final FileChannel channel, ExecutorService executor)
+	throws Exception
+	{
+		final DatastreamReader.Sink sink = fileSink(channel, null);
+		CompletionService<long[]> completion = new ExecutorCompletionService<long[]>(executor);
+		for (final long[] range: ranges)
+		{
+			completion.submit(new Callable<long[]>()
+			{
+				public long[] call() throws Exception
+				{
+					reader.read(range[0], range[1], sink);
+					return range;
+				}
+			});
+		}
+		for (int i = 0; i < ranges.size(); i++)
+		{
+			completion.take().get();
+		}
+	}
+	
+	/*
+	 * Passes the ranges to the sink in order, keeping at most workers of
+	 * them between request and sink.  Content of unknown length is passed
+	 * in pieces of up to the buffer size as it arrives.  Every array the
+	 * sink is given is its own, holding exactly the piece, and may be kept.
+	 */
+	static void readInOrder(final DatastreamReader reader, List<long[]> ranges, int workers, 
+			                ExecutorService executor, final DatastreamReader.Sink sink)
+	throws Exception
+	{
+		if (ranges.size() == 1 && ranges.get(0)[1] < 0)
+		{
+			reader.read(0, -1, new DatastreamReader.Sink()
+			{
+				public void write(long offset, byte[] bytes, int off, int len) throws IOException
+				{
+					byte[] chunk = new byte[len];
+					System.arraycopy(bytes, off, chunk, 0, len);
+					sink.write(offset, chunk, 0, len);
+				}
+			});
+			return;
+		}
+		
+		CompletionService<Range> completion = new ExecutorCompletionService<Range>(executor);
+		Map<Integer, Range> reorder = new HashMap<Integer, Range>();
+		int submitted = 0;
+		int pushed = 0;
+		while (pushed < ranges.size())
+		{
+			while (submitted < ranges.size() && submitted - pushed < workers)
+			{
+				final int index = submitted++;
+				final long[] range = ranges.get(index);
+				completion.submit(new Callable<Range>()
+				{
+					public Range call() throws Exception
+					{
+						final byte[] bytes = new byte[(int)(range[1] - range[0] + 1)];
+						reader.read(range[0], range[1], new DatastreamReader.Sink()
+						{
+							public void write(long offset, byte[] b, int off, int len)
+							{
+								System.arraycopy(b, off, bytes, (int)(offset - range[0]), len);
+							}
+						});
+						return new Range(index, range[0], bytes);
+					}
+				});
+			}
+			
+			Range done = completion.take().get();
+			reorder.put(Integer.valueOf(done.index), done);
+			Range next = reorder.remove(Integer.valueOf(pushed));
+			while (next != null)
+			{
+				sink.write(next.offset, next.bytes, 0, next.bytes.length);
+				pushed++;
+				next = reorder.remove(Integer.valueOf(pushed));
+			}
+		}
+	}
+	
+	/* Writes content at its position in the file, adding it to the checksums if given. */
+	static DatastreamReader.Sink fileSink(final FileChannel channel, final Checksums checksums)
+	{
+		return new DatastreamReader.Sink()
+		{
+			public void write(long offset, byte[] bytes, int off, int len) throws IOException
+			{
+				ByteBuffer buffer = ByteBuffer.wrap(bytes, off, len);
+				long position = offset;
+				while (buffer.hasRemaining())
+				{
+					position += channel.write(buffer, position);
+				}
+				if (checksums != null)
+				{  checksums.write(offset, bytes, off, len); }
+			}
+		};
+	}
+	
+	/* Pushes each whole array given to it, adding it to the checksums if given. */
+	private DatastreamReader.Sink outputSink(final ComponentContext cc, final Checksums checksums)
+	{
+		return new DatastreamReader.Sink()
+		{
+			public void write(long offset, byte[] bytes, int off, int len) throws IOException
+			{
+				if (checksums != null)
+				{  checksums.write(offset, bytes, off, len); }
+				try
+				{
+					cc.pushDataComponentToOutput(DATA_OUTPUT_1, bytes);
+					cc.pushDataComponentToOutput(DATA_OUTPUT_2, Long.valueOf(offset));
+				}
+				catch (ComponentContextException ex)
+				{
+					throw new IOException("Unable to push content: "+ex.getMessage());
+				}
+			}
+		};
+	}
+	
+	/* Compares the computed checksum, if any, with the recorded one. */
+	private static void verify(String pid, String dsID, Datastream recorded, Checksums checksums)
+	throws ComponentExecutionException
+	{
+		if (checksums == null)
+		{  return; }
+		String mismatch = checksums.mismatch(recorded.getChecksumType(), recorded.getChecksum());
+		if (mismatch != null)
+		{
+			throw new ComponentExecutionException("Checksum of "+pid+"/"+dsID+" does not match: "+mismatch);
+		}
+		logger.info("Verified "+pid+"/"+dsID+": "+checksums);
+	}
+	
+	/* The content of one range and its position in the list of ranges. */
+	static class Range
+	{
+		final int index;
+		final long offset;
+		final byte[] bytes;
+		
+		Range(int index, long offset, byte[] bytes)
+		{
+			this.index = index;
+			this.offset = offset;
+			this.bytes = bytes;
+		}
+	}
+
+	public void initialize(ComponentContextProperties ccp)
+	{
+		logger = ccp.getLogger();
+		logger.info("Initializing GetDatastream...");
+	}
+}
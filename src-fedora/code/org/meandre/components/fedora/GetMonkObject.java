@@ -42,6 +42,8 @@
 
 package org.meandre.components.fedora;
 
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import org.meandre.core.ComponentContext;
@@ -57,6 +59,12 @@ import fedora.server.access.FedoraAPIA;
 import fedora.server.types.gen.MIMETypedStream;
 import fedora.server.types.gen.Property;
 import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FedoraMetrics;
+import org.meandre.components.fedora.support.HedgedCalls;
+import org.meandre.components.fedora.support.ObjectCache;
+import org.meandre.components.fedora.support.OperationMetrics;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.RetryPolicy;
 
 /**
  * 
@@ -119,6 +127,50 @@ public class GetMonkObject implements ExecutableComponent
 	defaultValue = "getChunk")
 	final static String PROPERTY3 = FedoraConstants.METHOD_NAME;
 	
+	@ComponentProperty(
+	description = "A directory for a local disk cache of disseminations; leave empty to always fetch from the server.",
+	name = FedoraConstants.OBJECT_CACHE_DIR,
+	defaultValue = "")
+	final static String PROPERTY4 = FedoraConstants.OBJECT_CACHE_DIR;
+	
+	@ComponentProperty(
+	description = "Seconds a cached copy is used without asking the server whether the object changed.",
+	name = FedoraConstants.OBJECT_CACHE_TTL,
+	defaultValue = "0")
+	final static String PROPERTY5 = FedoraConstants.OBJECT_CACHE_TTL;
+	
+	@ComponentProperty(
+	description = "The size limit of the disk cache in megabytes; least recently used entries are removed first.",
+	name = FedoraConstants.OBJECT_CACHE_MAX_MB,
+	defaultValue = "256")
+	final static String PROPERTY6 = FedoraConstants.OBJECT_CACHE_MAX_MB;
+	
+	@ComponentProperty(
+	description = "The number of attempts per dissemination for transient (network or timeout) failures.",
+	name = FedoraConstants.MAX_ATTEMPTS,
+	defaultValue = "3")
+	final static String PROPERTY7 = FedoraConstants.MAX_ATTEMPTS;
+	
+	@ComponentProperty(
+	description = "The base retry delay in milliseconds; it doubles per attempt, with jitter.",
+	name = FedoraConstants.RETRY_DELAY,
+	defaultValue = "100")
+	final static String PROPERTY8 = FedoraConstants.RETRY_DELAY;
+	
+	@ComponentProperty(
+	description = "Milliseconds the dissemination may take, retries included, before the firing fails; 0 for no limit.",
+	name = FedoraConstants.DEADLINE,
+	defaultValue = "0")
+	final static String PROPERTY9 = FedoraConstants.DEADLINE;
+	
+	@ComponentProperty(
+	description = "Send a duplicate request when the first has not answered after this delay and use " +
+			"whichever answers first: a latency percentile of recent disseminations such as p95, " +
+			"or milliseconds.  Leave empty to never hedge.",
+	name = FedoraConstants.HEDGE_DELAY,
+	defaultValue = "")
+	final static String PROPERTY10 = FedoraConstants.HEDGE_DELAY;
+	
 	
 	//OUTPUT
 	@ComponentOutput(
@@ -131,6 +183,18 @@ public class GetMonkObject implements ExecutableComponent
 	/* The logger object to use for output. */
 	private static Logger logger = null;
 	
+	/* Timings of the dissemination calls that reach the server. */
+	private static final OperationMetrics GET_DISSEMINATION = FedoraMetrics.operation("getDissemination");
+	
+	/* Timings of hedged duplicates, kept apart so they do not skew the hedge delay. */
+	private static final OperationMetrics GET_DISSEMINATION_HEDGE = FedoraMetrics.operation("getDisseminationHedge");
+	
+	/* Timeouts and hedging for disseminations, shared by every instance. */
+	private static final HedgedCalls HEDGED = new HedgedCalls();
+	
+	/* Dissemination latencies seen before a percentile hedge delay is trusted. */
+	private static final int MIN_HEDGE_SAMPLES = 20;
+	
 	public void initialize(ComponentContextProperties ccp)
 	{	
 		logger = ccp.getLogger();
@@ -147,6 +211,8 @@ public class GetMonkObject implements ExecutableComponent
 	 * pid:  The fedora id of the object to get
 	 * bDefPid: The behavior definition id
 	 * methodName: The method name to call
+	 * objectCacheDir, objectCacheTTL, objectCacheMaxMB: the optional disk cache
+	 * maxAttempts, retryDelay, deadline, hedgeDelay: retries, time limit and hedging
 	 * 
 	 * Outputs:
 	 * HTMLFrag: the html fragment of a Monk object representation
@@ -166,19 +232,12 @@ public class GetMonkObject implements ExecutableComponent
 			String pid =  (String)cc.getDataComponentFromInput(DATA_INPUT_2);
 			String workpartId = (String)cc.getDataComponentFromInput(DATA_INPUT_3);
 
-			Property propertiesArray[] = new Property[1];
-			propertiesArray[0] = new Property();
-			propertiesArray[0].setName("xmlid");
-			propertiesArray[0].setValue(workpartId);
-			System.out.println("Initialized property array.");
-			
-			MIMETypedStream mt_stream = null;
-			
-			//String output_html_fragment = "tester output";
-			
-			mt_stream = APIA.getDissemination(pid, b_def_pid, method_name, 
-					propertiesArray, null);
-		    String output_html_fragment = new String(mt_stream.getStream());
+			RetryPolicy retry = new RetryPolicy(PropertyValues.parseInt(cc.getProperty(PROPERTY7), 3),
+					PropertyValues.parseInt(cc.getProperty(PROPERTY8), 100));
+			String output_html_fragment = 
+				getChunk(APIA, pid, b_def_pid, method_name, workpartId,
+						 ObjectCache.open(cc.getProperty(PROPERTY4), cc.getProperty(PROPERTY6)), PropertyValues.cacheTTL(cc),
+						 retry, PropertyValues.parseInt(cc.getProperty(PROPERTY9), 0), cc.getProperty(PROPERTY10));
 			
 		    logger.info(output_html_fragment);
 		    cc.pushDataComponentToOutput(DATA_OUTPUT_1, output_html_fragment);
@@ -195,9 +254,173 @@ public class GetMonkObject implements ExecutableComponent
 		  }		 
 	  }
 
+	/*
+	 * Calls the dissemination method for one workpart of a Monk object and
+	 * returns the resulting html fragment.
+	 */
+	static String getChunk(FedoraAPIA apia, String pid, String b_def_pid,
+			               String method_name, String workpartId)
+	throws java.rmi.RemoteException
+	{
+		MIMETypedStream mt_stream = disseminate(apia, pid, b_def_pid, method_name, workpartId);
+		return new String(mt_stream.getStream());
+	}
+	
+	private static MIMETypedStream disseminate(FedoraAPIA apia, String pid, String b_def_pid,
+			                                   String method_name, String workpartId)
+	throws java.rmi.RemoteException
+	{
+		return disseminate(apia, pid, b_def_pid, method_name, workpartId, GET_DISSEMINATION);
+	}
+	
+	private static MIMETypedStream disseminate(FedoraAPIA apia, String pid, String b_def_pid,
+			                                   String method_name, String workpartId, 
+			                                   OperationMetrics metrics)
+	throws java.rmi.RemoteException
+	{
+		long start = metrics.start();
+		try
+		{
+			MIMETypedStream stream = apia.getDissemination(pid, b_def_pid, 
+					method_name, workpartParameters(workpartId), null);
+			metrics.success(start, 
+					(stream == null || stream.getStream() == null) ? 0 : stream.getStream().length);
+			return stream;
+		}
+		catch (java.rmi.RemoteException ex)
+		{
+			metrics.failure(start);
+			throw ex;
+		}
+	}
+
+	/* The dissemination parameters that select a workpart. */
+	static Property[] workpartParameters(String workpartId)
+	{
+		Property propertiesArray[] = new Property[1];
+		propertiesArray[0] = new Property();
+		propertiesArray[0].setName("xmlid");
+		propertiesArray[0].setValue(workpartId);
+		return propertiesArray;
+	}
+
+	/*
+	 * As getChunk, answered from the cache if one is given and its copy is
+	 * still current.  Cached copies are revalidated against the object's
+	 * last-modified date.
+	 */
+	static String getChunk(FedoraAPIA apia, String pid, String b_def_pid, String method_name, 
+			               String workpartId, ObjectCache cache, long ttlMillis)
+	throws Exception
+	{
+		return getChunk(apia, pid, b_def_pid, method_name, workpartId, cache, ttlMillis, null, 0, null);
+	}
+	
+	/*
+	 * As getChunk with a cache, fetching from the server with retries of
+	 * transient failures, an overall deadline and an optional hedge (see
+	 * hedgeDelayMillis).  A null retry policy makes one attempt.
+	 */
+	static String getChunk(final FedoraAPIA apia, final String pid, final String b_def_pid,
+			               final String method_name, final String workpartId,
+			               ObjectCache cache, long ttlMillis, 
+			               final RetryPolicy retry, final long deadlineMillis, final String hedgeDelay)
+	throws Exception
+	{
+		if (cache == null)
+		{  return new String(fetchChunk(apia, pid, b_def_pid, method_name, workpartId, 
+				                        retry, deadlineMillis, hedgeDelay)); }
+		
+		String key = ObjectCache.makeKey(apia, pid, "dissemination", 
+				new String[] {b_def_pid, method_name, workpartId});
+		byte[] bytes = cache.get(key, pid, ttlMillis, ObjectCache.profileValidator(apia),
+				new ObjectCache.Loader()
+				{
+					public byte[] load() throws Exception
+					{  return fetchChunk(apia, pid, b_def_pid, method_name, workpartId,
+							             retry, deadlineMillis, hedgeDelay); }
+				});
+		return new String(bytes);
+	}
+	
+	/*
+	 * Disseminates one chunk.  Each attempt is bounded by what is left of
+	 * the deadline and hedged after hedgeDelay; attempts that time out or
+	 * fail on the network are retried while the deadline allows.
+	 */
+	private static byte[] fetchChunk(final FedoraAPIA apia, final String pid, final String b_def_pid,
+			                         final String method_name, final String workpartId,
+			                         RetryPolicy retry, long deadlineMillis, String hedgeDelay)
+	throws Exception
+	{
+		final Callable<byte[]> call = new Callable<byte[]>()
+		{
+			public byte[] call() throws Exception
+			{  return disseminate(apia, pid, b_def_pid, method_name, workpartId).getStream(); }
+		};
+		final Callable<byte[]> hedge = new Callable<byte[]>()
+		{
+			public byte[] call() throws Exception
+			{  return disseminate(apia, pid, b_def_pid, method_name, workpartId, 
+					              GET_DISSEMINATION_HEDGE).getStream(); }
+		};
+		final long hedgeMillis = hedgeDelayMillis(hedgeDelay);
+		if (retry == null && deadlineMillis <= 0 && hedgeMillis <= 0)
+		{  return call.call(); }
+		
+		final long deadline = (deadlineMillis > 0) ? System.currentTimeMillis() + deadlineMillis : 0;
+		Callable<byte[]> attempt = new Callable<byte[]>()
+		{
+			public byte[] call() throws Exception
+			{
+				long remaining = 0;
+				if (deadline > 0)
+				{
+					remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0)
+					{  throw new SocketTimeoutException("Deadline passed for "+pid); }
+				}
+				return HEDGED.call(call, hedge, remaining, hedgeMillis);
+			}
+		};
+		return (retry == null) ? attempt.call() : retry.call(attempt, deadlineMillis);
+	}
+	
+	/*
+	 * The hedge delay in milliseconds for a property value: a percentile
+	 * such as "p95" of the disseminations timed so far (none until enough
+	 * have been seen), a number of milliseconds, or 0 for no hedging.
+	 */
+	static long hedgeDelayMillis(String hedgeDelay)
+	{
+		if (hedgeDelay == null || hedgeDelay.trim().length() == 0)
+		{  return 0; }
+		String value = hedgeDelay.trim();
+		try
+		{
+			if (value.startsWith("p") || value.startsWith("P"))
+			{
+				double q = Double.parseDouble(value.substring(1)) / 100.0;
+				if (q <= 0 || q >= 1 || GET_DISSEMINATION.getCalls() < MIN_HEDGE_SAMPLES)
+				{  return 0; }
+				return Math.max(1, (long)Math.ceil(GET_DISSEMINATION.percentileMillis(q)));
+			}
+			return Math.max(0, Long.parseLong(value));
+		}
+		catch (NumberFormatException ex)
+		{
+			return 0;
+		}
+	}
+
 	public void dispose(ComponentContextProperties ccp)
     {
        logger.info("Disposing GetMonkObject");
+       if (HEDGED.getHedges() > 0)
+       {
+    	   logger.info("Hedged "+HEDGED.getHedges()+" of "+HEDGED.getCalls()+
+    			   " disseminations; the duplicate answered first "+HEDGED.getHedgeWins()+" times");
+       }
 	}
 
 }
@@ -0,0 +1,392 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Logger;
+
+import org.meandre.core.ComponentContext;
+import org.meandre.core.ComponentContextException;
+import org.meandre.core.ComponentExecutionException;
+import org.meandre.core.ExecutableComponent;
+import org.meandre.core.ComponentContextProperties;
+import org.meandre.annotations.Component;
+import org.meandre.annotations.ComponentInput;
+import org.meandre.annotations.ComponentOutput;
+import org.meandre.annotations.ComponentProperty;
+import fedora.server.access.FedoraAPIA;
+import fedora.server.types.gen.MIMETypedStream;
+import org.meandre.components.fedora.support.AsyncFedoraClient;
+import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.PropertyValues;
+
+/**
+ * 
+ * <p>
+ * Title: GetMonkObjects
+ * </p>
+ * 
+ * <p>
+ * Description: Gets the html fragments for a list of workparts of a Monk
+ * object, keeping a bounded number of dissemination requests in flight.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+
+@Component(
+		creator="Automated Learning Group", 
+		description="Gets the html fragments for a list of workparts from the Monk " +
+				"fedora store, fetching several workparts concurrently.  Each fragment " +
+				"is pushed as soon as it can be emitted, either in the order of the " +
+				"input list or in completion order.",
+		tags="fedora XML Monk batch", 
+		name="GetMonkObjects",
+		dependency={"activation-1.0.2.jar", "axis.jar", "batik-all.jar", "commons-codec-1.3.jar",
+				"commons-dbcp-1.2.1.jar", "commons-discovery.jar", "commons-pool-1.2.jar",
+				"foxml-merge.xsl", "jai_codec.jar", "jai_core.jar", "java-getopt-1.0.11.jar",
+				"jaxrpc.jar", "jhbasic.jar", "jrdf-0.3.3.jar", "log4j-1.2.14.jar",
+				"mail.jar", "mets-merge.xsl", "saaj.jar", "saxon.jar",
+				"sunxacml-patched.jar", "trippi-1.1.2-core.jar", "wsdl4j-1.5.1.jar", "xercesImpl.jar",
+				"xml-apis.jar", "commons-httpclient-3.1-beta1.jar", "commons-logging.jar", 
+				"fedora-client.jar", "icu4j-3.8.1.jar", "icu4j-charsets-3.8.1.jar", 
+				"jena-2.5.5.jar", "jena-arq-2.5.5.jar", "jena-arq-extra-2.5.5.jar", "jena-iri-2.5.5.jar", 
+				"jena-json-2.5.5.jar"}	
+		)
+public class GetMonkObjects implements ExecutableComponent
+{
+	public static final String ORIGINAL_ORDER = "original";
+	public static final String COMPLETION_ORDER = "completion";
+	
+	//INPUT
+	@ComponentInput(
+	description="An APIA connection", 
+	name=FedoraConstants.APIA)
+	final String DATA_INPUT_1 = FedoraConstants.APIA;
+	
+	@ComponentInput(
+			description = "The fedora ID of the object to get",
+			name = FedoraConstants.PID)
+	final static String DATA_INPUT_2 = FedoraConstants.PID;
+	
+	@ComponentInput(
+			description = "The workpart IDs, as a String[] or a java.util.Collection of Strings",
+			name = "WorkpartIDs") 
+	final static String DATA_INPUT_3 = "WorkpartIDs";
+
+	//PROPERTY
+	
+	@ComponentProperty(
+	description = "The behavior definition ID",
+	name = FedoraConstants.B_DEF_PID, 
+	defaultValue = "monk:behav-def-book")
+	final static String PROPERTY2 = FedoraConstants.B_DEF_PID;
+	
+	@ComponentProperty(
+	description = "The method name to call",
+	name=FedoraConstants.METHOD_NAME, 
+	defaultValue = "getChunk")
+	final static String PROPERTY3 = FedoraConstants.METHOD_NAME;
+	
+	@ComponentProperty(
+	description = "The maximum number of dissemination requests in flight at once",
+	name="maxInFlight", 
+	defaultValue = "8")
+	final static String PROPERTY4 = "maxInFlight";
+	
+	@ComponentProperty(
+	description = "The order in which fragments are pushed: " +
+			"original (input list order) or completion (as soon as each arrives)",
+	name="outputOrder", 
+	defaultValue = ORIGINAL_ORDER)
+	final static String PROPERTY5 = "outputOrder";
+	
+	//OUTPUT
+	@ComponentOutput(
+	description="The html fragment for one workpart", 
+    name="HTMLFrag")
+	final String DATA_OUTPUT_1="HTMLFrag";
+	
+	@ComponentOutput(
+	description="The workpart ID of the fragment pushed on HTMLFrag", 
+    name="WorkpartID")
+	final String DATA_OUTPUT_2="WorkpartID";
+	
+	FedoraAPIA APIA = null;
+	
+	/* The pool that runs the dissemination requests of AsyncFedoraClient. */
+	private ExecutorService executor = null;
+	
+	private int maxInFlight = 8;
+
+	/* The logger object to use for output. */
+	private static Logger logger = null;
+	
+	public void initialize(ComponentContextProperties ccp)
+	{	
+		logger = ccp.getLogger();
+		logger.info("Initializing GetMonkObjects");
+		
+		maxInFlight = Math.max(1, PropertyValues.parseInt(ccp.getProperty(PROPERTY4), 8));
+		executor = AsyncFedoraClient.newPool(maxInFlight);
+	}
+	
+	/*
+	 * Gets the html fragments for a list of workparts in the Monk Fedora
+	 * store.
+	 * 
+	 * Inputs: an APIA connection to fedora, the object pid and the list of
+	 * workpart ids
+	 * 
+	 * Outputs:
+	 * HTMLFrag: one html fragment per workpart
+	 * WorkpartID: the workpart id of each fragment
+	 * @see org.meandre.core.ExecutableComponent#execute(org.meandre.core.ComponentContext)
+	 */
+	public void execute(ComponentContext cc)
+	  throws ComponentExecutionException, ComponentContextException
+	  {
+		 logger.info("Firing GetMonkObjects");
+		 // Only the workparts not yet taken from the completed queue, so
+		 // this stays within maxInFlight however long the list is.
+		 Map<Integer, Future<MIMETypedStream>> pending = new HashMap<Integer, Future<MIMETypedStream>>();
+		 try
+		 {
+			String b_def_pid = cc.getProperty(PROPERTY2);
+			String method_name = cc.getProperty(PROPERTY3);
+			boolean ordered = !COMPLETION_ORDER.equalsIgnoreCase(cc.getProperty(PROPERTY5));
+			
+			APIA = (FedoraAPIA) cc.getDataComponentFromInput(DATA_INPUT_1);
+			String pid =  (String)cc.getDataComponentFromInput(DATA_INPUT_2);
+			List<String> workpartIds = toList(cc.getDataComponentFromInput(DATA_INPUT_3));
+			
+			logger.info("Getting "+workpartIds.size()+" workparts of "+pid);
+			
+			AsyncFedoraClient async = new AsyncFedoraClient(null, APIA, null, executor);
+			BlockingQueue<Chunk> completed = new LinkedBlockingQueue<Chunk>();
+			Map<Integer, Chunk> reorder = new HashMap<Integer, Chunk>();
+			int submitted = 0;
+			int emitted = 0;
+			int total = workpartIds.size();
+			
+			while (emitted < total)
+			{
+				// Keep at most maxInFlight workparts between submission and
+				// emission; this also bounds the reorder buffer.
+				while (submitted < total && submitted - emitted < maxInFlight)
+				{
+					String workpartId = workpartIds.get(submitted);
+					pending.put(Integer.valueOf(submitted), 
+							async.getDissemination(pid, b_def_pid, method_name, 
+							GetMonkObject.workpartParameters(workpartId), null, 
+							new ChunkCallback(completed, submitted, workpartId)));
+					submitted++;
+				}
+				
+				Chunk chunk = completed.take();
+				pending.remove(Integer.valueOf(chunk.index));
+				if (chunk.error != null)
+				{
+					throw new ChunkFailedException(chunk.error);
+				}
+				if (!ordered)
+				{
+					push(cc, chunk);
+					emitted++;
+					continue;
+				}
+				
+				reorder.put(Integer.valueOf(chunk.index), chunk);
+				Chunk next = reorder.remove(Integer.valueOf(emitted));
+				while (next != null)
+				{
+					push(cc, next);
+					emitted++;
+					next = reorder.remove(Integer.valueOf(emitted));
+				}
+			}
+		 }
+		 catch (ComponentContextException ex1)
+		 {
+				cancel(pending);
+				logger.severe("Error in GetMonkObjects: "+ex1.getMessage());
+				throw new ComponentContextException("Error in GetMonkObjects: "+ex1.getMessage());
+		  }
+		  catch (ChunkFailedException ex2)
+		  {
+				cancel(pending);
+				logger.severe("Error in GetMonkObjects:  "+ex2.getCause().getMessage());
+				throw new ComponentExecutionException(ex2.getCause());
+		  }
+		  catch (Throwable th)
+		  {
+				cancel(pending);
+				logger.severe("Error in GetMonkObjects:  "+th.getMessage());
+				throw new ComponentExecutionException(th);
+		  }		 
+	  }
+	
+	private void push(ComponentContext cc, Chunk chunk)
+	throws ComponentContextException
+	{
+		cc.pushDataComponentToOutput(DATA_OUTPUT_1, chunk.fragment);
+		cc.pushDataComponentToOutput(DATA_OUTPUT_2, chunk.workpartId);
+	}
+	
+	private static void cancel(Map<Integer, Future<MIMETypedStream>> pending)
+	{
+		for (Future<MIMETypedStream> future: pending.values())
+		{
+			future.cancel(true);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	static List<String> toList(Object input)
+	throws ComponentExecutionException
+	{
+		if (input instanceof String[])
+		{
+			return Arrays.asList((String[])input);
+		}
+		else if (input instanceof List)
+		{
+			return (List<String>)input;
+		}
+		else if (input instanceof Collection)
+		{
+			return new ArrayList<String>((Collection<String>)input);
+		}
+		else if (input instanceof String)
+		{
+			return Arrays.asList(new String[] {(String)input});
+		}
+		throw new ComponentExecutionException("Unsupported workpart ID list: "+
+				(input == null ? "null" : input.getClass().getName()));
+	}
+
+	public void dispose(ComponentContextProperties ccp)
+    {
+       logger.info("Disposing GetMonkObjects");
+       if (executor != null)
+       {
+    	   executor.shutdownNow();
+    	   executor = null;
+       }
+	}
+	
+	/* One fetched workpart, or its failure, and its position in the input list. */
+	static class Chunk
+	{
+		final int index;
+		final String workpartId;
+		final String fragment;
+		final Throwable error;
+		
+		Chunk(int index, String workpartId, String fragment, Throwable error)
+		{
+			this.index = index;
+			this.workpartId = workpartId;
+			this.fragment = fragment;
+			this.error = error;
+		}
+	}
+	
+	/* Queues the outcome of one dissemination for the firing thread. */
+	static class ChunkCallback implements AsyncFedoraClient.Callback<MIMETypedStream>
+	{
+		private final BlockingQueue<Chunk> completed;
+		private final int index;
+		private final String workpartId;
+		
+		ChunkCallback(BlockingQueue<Chunk> completed, int index, String workpartId)
+		{
+			this.completed = completed;
+			this.index = index;
+			this.workpartId = workpartId;
+		}
+		
+		public void completed(MIMETypedStream stream)
+		{
+			if (stream == null || stream.getStream() == null)
+			{
+				failed(new IllegalStateException("Empty dissemination of "+workpartId));
+				return;
+			}
+			completed.add(new Chunk(index, workpartId, new String(stream.getStream()), null));
+		}
+		
+		public void failed(Throwable th)
+		{
+			completed.add(new Chunk(index, workpartId, null, th));
+		}
+	}
+	
+	/* A workpart that could not be fetched; the cause is the call's failure. */
+	static class ChunkFailedException extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+		
+		ChunkFailedException(Throwable cause)
+		{
+			super(cause);
+		}
+	}
+}
@@ -1,10 +1,10 @@
 package org.meandre.components.fedora;
 
 import java.io.*;
+import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.logging.Logger;
 
-import org.apache.axis.types.NonNegativeInteger;
 import org.meandre.core.ComponentContext;
 import org.meandre.core.ComponentContextException;
 import org.meandre.core.ComponentExecutionException;
@@ -20,11 +20,13 @@ import fedora.server.management.FedoraAPIM;
 import fedora.server.types.gen.ComparisonOperator;
 import fedora.server.types.gen.Condition;
 import fedora.server.types.gen.FieldSearchQuery;
-import fedora.server.types.gen.FieldSearchResult;
 import fedora.server.types.gen.ObjectFields;
 
 import org.meandre.components.fedora.support.FedoraConstants;
 import org.meandre.components.fedora.support.CorpusObject;
+import org.meandre.components.fedora.support.FindObjectsPager;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.StreamBuffer;
 
 /**
  * 
@@ -67,6 +69,10 @@ import org.meandre.components.fedora.support.CorpusObject;
 		)
 public class GetWorkObjects implements ExecutableComponent
 {
+	public static final String STREAM_NONE = "none";
+	public static final String STREAM_PAGE = "page";
+	public static final String STREAM_OBJECT = "object";
+	
 	//INPUT
 	@ComponentInput(
 	description="APIA connection", 
@@ -80,16 +86,60 @@ public class GetWorkObjects implements ExecutableComponent
 	defaultValue = "monk:tcp-")
 	final static String PROPERTY1 = FedoraConstants.COLLECTION_PATTERN;	
 	
+	@ComponentProperty(
+	description = "How results are pushed: none (one list with every work, after the last page), " +
+			"page (one list per findObjects page, as each page arrives) or " +
+			"object (each work on work_object, as each page arrives).",
+	name = "streamingMode", 
+	defaultValue = STREAM_NONE)
+	final static String PROPERTY2 = "streamingMode";
+	
+	@ComponentProperty(
+	description = "In a streaming mode, the number of pages or works that paging may run " +
+			"ahead of the pushes to the output.",
+	name = "streamBufferSize", 
+	defaultValue = "1000")
+	final static String PROPERTY3 = "streamBufferSize";
+	
+	@ComponentProperty(
+	description = "Push the pid prefix into the findObjects query (true/false).  When false, " +
+			"or when the server rejects the query, every object is fetched and filtered here.",
+	name = "serverSideFilter", 
+	defaultValue = "true")
+	final static String PROPERTY4 = "serverSideFilter";
+	
+	@ComponentProperty(
+	description = "The number of objects requested per findObjects page.",
+	name = FedoraConstants.PAGE_SIZE, 
+	defaultValue = "10000")
+	final static String PROPERTY5 = FedoraConstants.PAGE_SIZE;
+	
+	@ComponentProperty(
+	description = "The number of pages fetched ahead while the current page is processed; " +
+			"0 pages strictly one after another.",
+	name = FedoraConstants.PREFETCH_DEPTH, 
+	defaultValue = "2")
+	final static String PROPERTY6 = FedoraConstants.PREFETCH_DEPTH;
+	
 	//OUTPUT
 	@ComponentOutput(
 	description="The list of work objects from a Fedora repository which have pid identifiers beginning with a given pattern.", 
 	name=FedoraConstants.WORK_OBJECTS)
 	final String DATA_OUTPUT_1=FedoraConstants.WORK_OBJECTS;	
 	
+	@ComponentOutput(
+	description="A single work object, pushed in the object streaming mode.", 
+	name=FedoraConstants.WORK_OBJECT)
+	final String DATA_OUTPUT_2=FedoraConstants.WORK_OBJECT;	
+	
 	FedoraAPIA APIA = null;
+	
+	boolean serverSideFilter = true;
+	int pageSize = FindObjectsPager.DEFAULT_PAGE_SIZE;
+	int prefetchDepth = FindObjectsPager.DEFAULT_PREFETCH_DEPTH;
 
-    /* The logger object to use for output. */
-	private static Logger logger = null;
+    /* The logger object to use for output; replaced in initialize. */
+	private static Logger logger = Logger.getLogger(GetWorkObjects.class.getName());
 	
 	public void initialize(ComponentContextProperties ccp)
 	{
@@ -102,7 +152,6 @@ public class GetWorkObjects implements ExecutableComponent
 	{
 		
 		//String collection_pattern = "monk:collection-*";
-		ArrayList<CorpusObject> alist = new ArrayList<CorpusObject>(300);	
 		String collection_pattern = "monk:tcp-";
 		
 		try
@@ -112,70 +161,27 @@ public class GetWorkObjects implements ExecutableComponent
 		    APIA = (FedoraAPIA) cc.getDataComponentFromInput(DATA_INPUT_1);
 		
 		    collection_pattern = cc.getProperty(PROPERTY1);
+		    String mode = cc.getProperty(PROPERTY2);
+		    serverSideFilter = !FedoraConstants.FALSE.equalsIgnoreCase(cc.getProperty(PROPERTY4));
+		    pageSize = PropertyValues.parseInt(cc.getProperty(PROPERTY5), FindObjectsPager.DEFAULT_PAGE_SIZE);
+		    prefetchDepth = PropertyValues.parseInt(cc.getProperty(PROPERTY6), FindObjectsPager.DEFAULT_PREFETCH_DEPTH);
 		    
-            String[] resultFields = {"pid","title"};
-            NonNegativeInteger maxResults = new NonNegativeInteger("" + 10000);
-        
-            Condition[] condition = {new Condition("*", ComparisonOperator.eq, "true")};
-            FieldSearchQuery query = new FieldSearchQuery();
-            query.setTerms("*");
-            query.setConditions(condition);
-        
-            FieldSearchResult result = null;
-       
-            result = APIA.findObjects(resultFields, maxResults, query);
-        
-            ObjectFields[] fields = result.getResultList();
-            for(ObjectFields ofield: fields)
-            {
-                CorpusObject wobject = new CorpusObject( ofield.getPid());
-                wobject.setTitle(ofield.getTitle(0));
-                if(wobject.getFedoraPid().startsWith(collection_pattern))
-                {
-                  alist.add(wobject);
-                }
-            }
-
-            String token = result.getListSession().getToken();
-            int count=1;
-            while(result.getResultList().length!=0)
-            {
-               count++;
-               if(result.getListSession()!=null)
-               {
-                  token = result.getListSession().getToken();
-               }
-               else
-               {
-                  break;
-               }
-               try 
-               {
-                   while(result.getListSession()!=null)
-                   {
-                     token = result.getListSession().getToken();
-                     result=APIA.resumeFindObjects(token);
-                     fields=result.getResultList();
-                     for(ObjectFields ofield: fields)
-                     {
-                         CorpusObject wobject = new CorpusObject( ofield.getPid());
-                         wobject.setTitle(ofield.getTitle(0));
-                         //if(wobject.getFedoraPid().startsWith("monk:tcp"))
-                         if(wobject.getFedoraPid().startsWith(collection_pattern))
-                         {
-                           alist.add(wobject);
-                         }
-                     }
-                   //System.out.println(" Number of results "+count+" batch: "+ result.getResultList().length);
-                   }
-               }  // End try
-               catch (Throwable th1) 
-               {
-                        // TODO Auto-generated catch block
-                        th1.printStackTrace();
-               }
-           } // End while
-           cc.pushDataComponentToOutput(DATA_OUTPUT_1, alist);
+		    if (STREAM_PAGE.equalsIgnoreCase(mode) || STREAM_OBJECT.equalsIgnoreCase(mode))
+		    {
+		    	streamWorks(cc, collection_pattern, STREAM_OBJECT.equalsIgnoreCase(mode));
+		    }
+		    else
+		    {
+		    	final ArrayList<CorpusObject> alist = new ArrayList<CorpusObject>(300);
+		    	findWorks(newPager(APIA), collection_pattern, serverSideFilter, new PageHandler()
+		    	{
+		    		public void handlePage(ArrayList<CorpusObject> page)
+		    		{
+		    			alist.addAll(page);
+		    		}
+		    	});
+		    	cc.pushDataComponentToOutput(DATA_OUTPUT_1, alist);
+		    }
 		}
 		catch (ComponentContextException ex1)
 		{
@@ -189,6 +195,146 @@ public class GetWorkObjects implements ExecutableComponent
 		}
 	}
 	
+	/*
+	 * Pages through findObjects on a producer thread and pushes each page
+	 * (or each work) as soon as it arrives.  The producer may run at most
+	 * streamBufferSize pages or works ahead of the pushes.
+	 */
+	private void streamWorks(ComponentContext cc, final String collection_pattern, 
+			                 final boolean perObject)
+	throws Exception
+	{
+		int bufferSize = PropertyValues.parseInt(cc.getProperty(PROPERTY3), 1000);
+		
+		final FindObjectsPager pager = newPager(APIA);
+		final boolean serverSide = serverSideFilter;
+		final StreamBuffer<Object> buffer = new StreamBuffer<Object>(bufferSize);
+		buffer.start(new StreamBuffer.Producer<Object>()
+		{
+			public void produce(final StreamBuffer<Object> out) throws Exception
+			{
+				findWorks(pager, collection_pattern, serverSide, new PageHandler()
+				{
+					public void handlePage(ArrayList<CorpusObject> page)
+					throws InterruptedException
+					{
+						if (!perObject)
+						{
+							if (page.size() > 0)
+							{  out.put(page); }
+							return;
+						}
+						for (CorpusObject wobject: page)
+						{
+							out.put(wobject);
+						}
+					}
+				});
+			}
+		}, "GetWorkObjects-pager");
+		
+		String port = perObject ? DATA_OUTPUT_2 : DATA_OUTPUT_1;
+		int count = 0;
+		try
+		{
+			Object item = null;
+			while ((item = buffer.take()) != null)
+			{
+				cc.pushDataComponentToOutput(port, item);
+				count++;
+			}
+		}
+		finally
+		{
+			buffer.cancel();
+		}
+		logger.info("Streamed "+count+(perObject ? " work objects" : " pages of work objects"));
+	}
+	
+	/* Receives each page of matching work objects as it is read. */
+	interface PageHandler
+	{
+		public void handlePage(ArrayList<CorpusObject> page) throws Exception;
+	}
+	
+	private FindObjectsPager newPager(FedoraAPIA apia)
+	{
+		return new FindObjectsPager(apia, new String[] {"pid","title"}, 
+				pageSize, prefetchDepth);
+	}
+	
+	/*
+	 * Pages through findObjects/resumeFindObjects, handing each page of
+	 * objects whose pid starts with collection_pattern to the handler.
+	 * With serverSide set, the prefix is sent as a pid condition so only
+	 * matching objects cross the wire; if the server rejects that query
+	 * the whole repository is scanned and filtered here instead.
+	 */
+	static void findWorks(FindObjectsPager pager, String collection_pattern, boolean serverSide,
+			              PageHandler handler)
+	throws Exception
+	{
+        try
+        {
+        	pager.open(serverSide ? pidPrefixQuery(collection_pattern) : scanQuery());
+        }
+        catch (RemoteException ex)
+        {
+        	if (!serverSide)
+        	{  throw ex; }
+        	logger.warning("Server-side pid filter failed, scanning the repository: "+ex.getMessage());
+        	pager = pager.reopen(scanQuery());
+        }
+        
+        long kept = 0;
+        try
+        {
+        	while (pager.hasNext())
+        	{
+        		ObjectFields[] fields = pager.next();
+        		ArrayList<CorpusObject> page = new ArrayList<CorpusObject>(fields.length);
+        		for(ObjectFields ofield: fields)
+        		{
+        			// Kept with the server-side condition too, which the
+        			// field search may match case-insensitively.
+        			if(ofield.getPid().startsWith(collection_pattern))
+        			{
+        				CorpusObject wobject = new CorpusObject( ofield.getPid());
+        				wobject.setTitle(ofield.getTitle(0));
+        				page.add(wobject);
+        			}
+        		}
+        		kept += page.size();
+        		handler.handlePage(page);
+        	}
+        }
+        finally
+        {
+        	pager.close();
+        }
+        logger.info("findObjects rows fetched: "+pager.getFetchedCount()+", rows kept: "+kept);
+	}
+	
+	/* Matches objects whose pid starts with the given prefix. */
+	static FieldSearchQuery pidPrefixQuery(String prefix)
+	{
+		String value = prefix.endsWith("*") ? prefix : prefix+"*";
+		Condition[] condition = {new Condition("pid", ComparisonOperator.has, value)};
+		FieldSearchQuery query = new FieldSearchQuery();
+		query.setConditions(condition);
+		return query;
+	}
+	
+	/* Matches every object in the repository. */
+	static FieldSearchQuery scanQuery()
+	{
+        Condition[] condition = {new Condition("*", ComparisonOperator.eq, "true")};
+        FieldSearchQuery query = new FieldSearchQuery();
+        query.setTerms("*");
+        query.setConditions(condition);
+        return query;
+	}
+	
 	public void dispose(ComponentContextProperties ccp)
     {
        logger.info("Disposing GetWorkObjects");
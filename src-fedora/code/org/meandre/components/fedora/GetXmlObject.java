@@ -42,6 +42,7 @@
 
 package org.meandre.components.fedora;
 
+import java.io.ByteArrayInputStream;
 import java.util.logging.Logger;
 
 import org.meandre.core.ComponentContext;
@@ -54,7 +55,12 @@ import org.meandre.annotations.ComponentInput;
 import org.meandre.annotations.ComponentOutput;
 import org.meandre.annotations.ComponentProperty;
 import fedora.server.management.FedoraAPIM;
+import org.meandre.components.fedora.support.ByteStreams;
 import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FedoraMetrics;
+import org.meandre.components.fedora.support.ObjectCache;
+import org.meandre.components.fedora.support.OperationMetrics;
+import org.meandre.components.fedora.support.PropertyValues;
 
 /**
  * 
@@ -96,6 +102,9 @@ name="GetXmlObject",
 )
 public class GetXmlObject implements ExecutableComponent {
 
+	public static final String OUTPUT_STRING = "string";
+	public static final String OUTPUT_STREAM = "stream";
+
 	//INPUT
 	@ComponentInput(
 	description="An APIM connection", 
@@ -108,18 +117,53 @@ public class GetXmlObject implements ExecutableComponent {
 	name = FedoraConstants.PID) 
 	final static String  DATA_INPUT_2 = FedoraConstants.PID;
 
+	//PROPERTY
+	@ComponentProperty(
+	defaultValue=OUTPUT_STRING,
+	description="What to push: string (the decoded xml string on objectXML) or " +
+			"stream (an InputStream over the xml bytes on objectXMLStream, for readers " +
+			"that parse the document without holding a decoded copy).",
+	name="outputType")
+	final static String PROPERTY1 = "outputType";
+	
+	@ComponentProperty(
+	description = "A directory for a local disk cache of object xml; leave empty to always fetch from the server.",
+	name = FedoraConstants.OBJECT_CACHE_DIR,
+	defaultValue = "")
+	final static String PROPERTY2 = FedoraConstants.OBJECT_CACHE_DIR;
+	
+	@ComponentProperty(
+	description = "Seconds a cached copy is used without asking the server whether the object changed.",
+	name = FedoraConstants.OBJECT_CACHE_TTL,
+	defaultValue = "0")
+	final static String PROPERTY3 = FedoraConstants.OBJECT_CACHE_TTL;
+	
+	@ComponentProperty(
+	description = "The size limit of the disk cache in megabytes; least recently used entries are removed first.",
+	name = FedoraConstants.OBJECT_CACHE_MAX_MB,
+	defaultValue = "256")
+	final static String PROPERTY4 = FedoraConstants.OBJECT_CACHE_MAX_MB;
+	
 	//OUTPUT
 	@ComponentOutput(
 	description="The xml string.", 
 	name=FedoraConstants.OBJECT_XML)
 	final String DATA_OUTPUT_1=FedoraConstants.OBJECT_XML;
 	
+	@ComponentOutput(
+	description="An InputStream over the object xml.", 
+	name=FedoraConstants.OBJECT_XML_STREAM)
+	final String DATA_OUTPUT_2=FedoraConstants.OBJECT_XML_STREAM;
+	
 	/* The APIM object interface to the store. */
 	FedoraAPIM APIM = null;
 
 	/* The logger object to use for output. */
 	private static Logger logger = null;
 	
+	/* Timings of the getObjectXML calls that reach the server. */
+	private static final OperationMetrics GET_OBJECT_XML = FedoraMetrics.operation("getObjectXML");
+	
 	public void initialize(ComponentContextProperties ccp)
 	{
 		logger = ccp.getLogger();
@@ -131,11 +175,15 @@ public class GetXmlObject implements ExecutableComponent {
 	 * 
 	 * Inputs: an APIM connection to fedora
 	 * 
-	 * Properties:
 	 * pid:  The fedora id of the object to get
 	 * 
+	 * Properties:
+	 * outputType: string or stream
+	 * objectCacheDir, objectCacheTTL, objectCacheMaxMB: the optional disk cache
+	 * 
 	 * Outputs:
 	 * objectXML: the xml representation of the object
+	 * objectXMLStream: an InputStream over the xml, for outputType stream
 	 * @see org.meandre.core.ExecutableComponent#execute(org.meandre.core.ComponentContext)
 	 */
 	public void execute(ComponentContext cc)
@@ -152,10 +200,20 @@ public class GetXmlObject implements ExecutableComponent {
 			
 			APIM = (FedoraAPIM) cc.getDataComponentFromInput(DATA_INPUT_1);
 
-		    byte[] objectXML = APIM.getObjectXML(pid);
-		    String stringXML = new String(objectXML);
-		    System.out.println(stringXML);
-		    cc.pushDataComponentToOutput(DATA_OUTPUT_1, stringXML);
+		    byte[] objectXML = getObjectXML(APIM, pid, 
+		    		ObjectCache.open(cc.getProperty(PROPERTY2), cc.getProperty(PROPERTY4)), PropertyValues.cacheTTL(cc));
+		    logger.fine("Got "+objectXML.length+" bytes of xml for "+pid);
+		    
+		    if (OUTPUT_STREAM.equalsIgnoreCase(cc.getProperty(PROPERTY1)))
+		    {
+		    	// the stream reads the array the SOAP call returned; nothing is copied
+		    	cc.pushDataComponentToOutput(DATA_OUTPUT_2, new ByteArrayInputStream(objectXML));
+		    }
+		    else
+		    {
+		    	String stringXML = new String(objectXML, ByteStreams.xmlEncoding(objectXML));
+		    	cc.pushDataComponentToOutput(DATA_OUTPUT_1, stringXML);
+		    }
 		 }
 		 catch (ComponentContextException ex1)
 		 {
@@ -169,6 +227,42 @@ public class GetXmlObject implements ExecutableComponent {
 		  }
 	  }
 
+	/*
+	 * Gets the object xml, from the cache if one is given and its copy is
+	 * still current.
+	 */
+	static byte[] getObjectXML(final FedoraAPIM apim, final String pid, ObjectCache cache, long ttlMillis)
+	throws Exception
+	{
+		if (cache == null)
+		{  return fetchObjectXML(apim, pid); }
+		
+		String key = ObjectCache.makeKey(apim, pid, "objectXML", new String[0]);
+		return cache.get(key, pid, ttlMillis, ObjectCache.datastreamValidator(apim),
+				new ObjectCache.Loader()
+				{
+					public byte[] load() throws Exception
+					{  return fetchObjectXML(apim, pid); }
+				});
+	}
+	
+	private static byte[] fetchObjectXML(FedoraAPIM apim, String pid)
+	throws Exception
+	{
+		long start = GET_OBJECT_XML.start();
+		try
+		{
+			byte[] xml = apim.getObjectXML(pid);
+			GET_OBJECT_XML.success(start, xml.length);
+			return xml;
+		}
+		catch (Exception ex)
+		{
+			GET_OBJECT_XML.failure(start);
+			throw ex;
+		}
+	}
+
 	public void dispose(ComponentContextProperties ccp)
     {
        logger.info("Disposing GetXmlObject");
@@ -43,6 +43,7 @@
 package org.meandre.components.fedora;
 
 import java.io.*;
+import java.rmi.RemoteException;
 import java.util.logging.Logger;
 
 import org.meandre.core.ComponentContext;
@@ -55,7 +56,12 @@ import org.meandre.annotations.ComponentInput;
 import org.meandre.annotations.ComponentOutput;
 import org.meandre.annotations.ComponentProperty;
 import fedora.server.management.FedoraAPIM;
+import org.meandre.components.fedora.support.ByteStreams;
 import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FedoraMetrics;
+import org.meandre.components.fedora.support.OperationMetrics;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.TupleQueryCache;
 
 /**
  * 
@@ -116,6 +122,12 @@ public class IngestSingleObject implements ExecutableComponent {
 	defaultValue = "/fedora/obj_test_100.xml")
 	final static String PROPERTY2 = FedoraConstants.INGEST_FILE;	
 	
+	@ComponentProperty(
+	description = "The number of bytes read from the ingest file per read call",
+	name = FedoraConstants.CHUNK_SIZE, 
+	defaultValue = "65536")
+	final static String PROPERTY3 = FedoraConstants.CHUNK_SIZE;	
+	
 	//OUTPUT
 	@ComponentOutput(
 	description="The ID assigned to the uploaded object", 
@@ -127,6 +139,9 @@ public class IngestSingleObject implements ExecutableComponent {
     /* The logger object to use for output. */
 	private static Logger logger = null;
 	
+	/* Timings of the ingest calls. */
+	private static final OperationMetrics INGEST = FedoraMetrics.operation("ingest");
+	
     public void initialize(ComponentContextProperties ccp)
 	{
     	logger = ccp.getLogger();
@@ -146,16 +161,29 @@ public class IngestSingleObject implements ExecutableComponent {
 
 		     logger.info("Ingesting "+ingest_file_name);
 		     File ingest_file = new File(ingest_file_name);
-		     FileInputStream ingest_stream = new FileInputStream(ingest_file);
 		     String log_message = "Ingesting file "+ingest_file_name;
 
-		     ByteArrayOutputStream outstr = new ByteArrayOutputStream();
-
-		     pipeStream(ingest_stream, outstr, 4096);
-
-		     String pid = APIM.ingest(outstr.toByteArray(), ingest_format, log_message);
+		     int chunk_size = PropertyValues.parseInt(cc.getProperty(PROPERTY3), ByteStreams.DEFAULT_CHUNK_SIZE);
+
+		     // APIM.ingest only accepts a byte[]; read the file into one
+		     // exactly-sized array instead of growing and copying a buffer.
+		     byte[] ingest_bytes = ByteStreams.readFile(ingest_file, chunk_size);
+
+		     String pid = null;
+		     long start = INGEST.start();
+		     try
+		     {
+		    	 pid = APIM.ingest(ingest_bytes, ingest_format, log_message);
+		    	 INGEST.success(start, ingest_bytes.length);
+		     }
+		     catch (RemoteException ex)
+		     {
+		    	 INGEST.failure(start);
+		    	 throw ex;
+		     }
 
 		     logger.info("Ingested one object:  "+pid);
+		     TupleQueryCache.getInstance().invalidateAll();
 
 		     cc.pushDataComponentToOutput(DATA_OUTPUT_1, pid);
 		}
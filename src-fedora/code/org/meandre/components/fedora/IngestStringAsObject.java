@@ -43,6 +43,8 @@
 package org.meandre.components.fedora;
 
 import java.io.*;
+import java.rmi.RemoteException;
+import java.util.LinkedList;
 import java.util.logging.Logger;
 
 import org.meandre.core.ComponentContext;
@@ -55,7 +57,12 @@ import org.meandre.annotations.ComponentInput;
 import org.meandre.annotations.ComponentOutput;
 import org.meandre.annotations.ComponentProperty;
 import fedora.server.management.FedoraAPIM;
+import org.meandre.components.fedora.support.ByteStreams;
 import org.meandre.components.fedora.support.FedoraConstants;
+import org.meandre.components.fedora.support.FedoraMetrics;
+import org.meandre.components.fedora.support.OperationMetrics;
+import org.meandre.components.fedora.support.PropertyValues;
+import org.meandre.components.fedora.support.TupleQueryCache;
 
 /**
  * 
@@ -118,6 +125,19 @@ public class IngestStringAsObject implements ExecutableComponent {
 	defaultValue = FedoraConstants.FOXML)
 	final static String PROPERTY1 = FedoraConstants.FORMAT;	
 	
+	@ComponentProperty(
+	description = "Debugging only: a directory to copy each ingest string into. " +
+			"Leave empty to ingest without touching disk.",
+	name = "debugSpoolDir", 
+	defaultValue = "")
+	final static String PROPERTY2 = "debugSpoolDir";	
+	
+	@ComponentProperty(
+	description = "Debugging only: the most spooled files to keep; older ones are deleted.",
+	name = "debugSpoolLimit", 
+	defaultValue = "20")
+	final static String PROPERTY3 = "debugSpoolLimit";	
+	
 	//OUTPUT
 	@ComponentOutput(
 	description="The ID assigned to the uploaded object", 
@@ -125,10 +145,16 @@ public class IngestStringAsObject implements ExecutableComponent {
 	final String DATA_OUTPUT_1=FedoraConstants.PID;	
 	
     FedoraAPIM APIM = null;
+    
+    /* Files written in the debug spool mode, oldest first. */
+    private final LinkedList<File> spooled = new LinkedList<File>();
 
     /* The logger object to use for output. */
 	private static Logger logger = null;
 	
+	/* Timings of the ingest calls. */
+	private static final OperationMetrics INGEST = FedoraMetrics.operation("ingest");
+	
     public void initialize(ComponentContextProperties ccp)
 	{
     	logger = ccp.getLogger();
@@ -145,19 +171,33 @@ public class IngestStringAsObject implements ExecutableComponent {
 		     APIM = (FedoraAPIM) cc.getDataComponentFromInput(DATA_INPUT_1);
 		     String ingest_format = cc.getProperty(PROPERTY1);
 		     String ingest_string = (String)cc.getDataComponentFromInput(DATA_INPUT_2);
-		     File file = new File(System.getProperty("java.io.tmpdir")+File.separator + System.currentTimeMillis()+".xml");
-		     BufferedWriter bfw = new BufferedWriter(new FileWriter(file));
-		     
-		     bfw.write(ingest_string);
-		     bfw.flush();
-		     bfw.close();
-		     
+		     // The SOAP ingest call takes the document as a byte[]; encode it
+		     // once, in the encoding its XML declaration names, rather than in
+		     // the platform charset.
+		     byte[] ingest_bytes = encode(ingest_string);
+		     String spool_dir = cc.getProperty(PROPERTY2);
+		     if (spool_dir != null && spool_dir.trim().length() > 0)
+		     {
+		    	 spool(ingest_bytes, new File(spool_dir.trim()), cc.getProperty(PROPERTY3));
+		     }
 		     
 		     logger.info("Ingesting "+ingest_string.length());
 		     String log_message = "Ingesting string "+ ingest_string.length();
-		     String pid = APIM.ingest(ingest_string.getBytes(), ingest_format, log_message);
+		     String pid = null;
+		     long start = INGEST.start();
+		     try
+		     {
+		    	 pid = APIM.ingest(ingest_bytes, ingest_format, log_message);
+		    	 INGEST.success(start, ingest_bytes.length);
+		     }
+		     catch (RemoteException ex)
+		     {
+		    	 INGEST.failure(start);
+		    	 throw ex;
+		     }
 
 		     logger.info("Ingested one object:  "+pid);
+		     TupleQueryCache.getInstance().invalidateAll();
 
 		     cc.pushDataComponentToOutput(DATA_OUTPUT_1, pid);
 		}
@@ -168,11 +208,58 @@ public class IngestStringAsObject implements ExecutableComponent {
 		}
 		catch (Throwable th)
 		{
-			logger.severe("Error in IngestSingleObject:  "+th.getMessage() +" file created  " );
+			logger.severe("Error in IngestSingleObject:  "+th.getMessage());
 			throw new ComponentExecutionException(th);
 		}		
 	  }
 
+	/*
+	 * The document in the encoding its XML declaration names, or UTF-8 if
+	 * it names none.  A leading byte order mark character is dropped; the
+	 * UTF-16 encoder writes its own.
+	 */
+	static byte[] encode(String ingest_string)
+	throws UnsupportedEncodingException
+	{
+		if (ingest_string.length() > 0 && ingest_string.charAt(0) == '\uFEFF')
+		{  ingest_string = ingest_string.substring(1); }
+		// the declaration is ASCII, so its characters survive as Latin-1 bytes
+		String head = ingest_string.substring(0, Math.min(ingest_string.length(), 256));
+		String encoding = ByteStreams.xmlEncoding(head.getBytes("ISO-8859-1"));
+		return ingest_string.getBytes(encoding);
+	}
+	
+	/*
+	 * Debugging aid: writes the encoded ingest document to a uniquely named
+	 * file in the spool directory, keeping at most limit files.
+	 */
+	private synchronized void spool(byte[] ingest_bytes, File dir, String limit)
+	throws IOException
+	{
+		int max = PropertyValues.parseInt(limit, 20);
+		if (max <= 0)
+		{  return; }
+		
+		dir.mkdirs();
+		File file = File.createTempFile("ingest-", ".xml", dir);
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(ingest_bytes);
+		}
+		finally
+		{
+			out.close();
+		}
+		logger.info("Spooled ingest string to "+file);
+		
+		spooled.addLast(file);
+		while (spooled.size() > max)
+		{
+			spooled.removeFirst().delete();
+		}
+	}
+
 	public void dispose(ComponentContextProperties ccp)
     {
        logger.info("Disposing IngestSingleObject");
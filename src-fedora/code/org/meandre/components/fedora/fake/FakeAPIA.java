@@ -0,0 +1,375 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.fake;
+
+import java.io.UnsupportedEncodingException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.axis.types.NonNegativeInteger;
+import org.meandre.components.fedora.support.FoxmlProjection;
+
+import fedora.server.access.FedoraAPIA;
+import fedora.server.types.gen.ComparisonOperator;
+import fedora.server.types.gen.Condition;
+import fedora.server.types.gen.DatastreamDef;
+import fedora.server.types.gen.FieldSearchQuery;
+import fedora.server.types.gen.FieldSearchResult;
+import fedora.server.types.gen.ListSession;
+import fedora.server.types.gen.MIMETypedStream;
+import fedora.server.types.gen.ObjectFields;
+import fedora.server.types.gen.ObjectMethodsDef;
+import fedora.server.types.gen.ObjectProfile;
+import fedora.server.types.gen.Property;
+import fedora.server.types.gen.RepositoryInfo;
+
+/**
+ * 
+ * <p>
+ * Title: FakeAPIA
+ * </p>
+ * 
+ * <p>
+ * Description: An in-process FedoraAPIA answering from a FakeRepository.
+ * findObjects matches the "has" conditions on pid, label and title and
+ * the search terms against the pid and label, with * as a wildcard;
+ * other conditions are ignored.  Results are paged through list
+ * sessions like the server does, and sessions left unfinished expire
+ * after five minutes.  Disseminations return a generated html chunk
+ * naming the object, method and parameters.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FakeAPIA implements FedoraAPIA
+{
+	private static final long SESSION_TIMEOUT = 5 * 60 * 1000L;
+	
+	private final FakeRepository repository;
+	private final FaultInjector faults;
+	private final Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+	private final AtomicLong nextToken = new AtomicLong();
+	
+	public FakeAPIA(FakeRepository repository)
+	{
+		this.repository = repository;
+		this.faults = repository.getFaults();
+	}
+	
+	public RepositoryInfo describeRepository() throws RemoteException
+	{
+		faults.apply("describeRepository");
+		RepositoryInfo info = new RepositoryInfo();
+		info.setRepositoryName(FakeServer.REPOSITORY_NAME);
+		info.setRepositoryVersion(repository.getVersion());
+		return info;
+	}
+	
+	public ObjectProfile getObjectProfile(String pid, String asOfDateTime) throws RemoteException
+	{
+		faults.apply("getObjectProfile");
+		FakeRepository.StoredObject object = find(pid);
+		ObjectProfile profile = new ObjectProfile();
+		profile.setPid(pid);
+		profile.setObjLabel(object.getLabel());
+		profile.setObjCreateDate(object.getLastModified());
+		profile.setObjLastModDate(object.getLastModified());
+		return profile;
+	}
+	
+	public ObjectMethodsDef[] listMethods(String pid, String asOfDateTime) throws RemoteException
+	{
+		faults.apply("listMethods");
+		find(pid);
+		return new ObjectMethodsDef[0];
+	}
+	
+	public DatastreamDef[] listDatastreams(String pid, String asOfDateTime) throws RemoteException
+	{
+		faults.apply("listDatastreams");
+		String[][] datastreams = find(pid).getDatastreams();
+		DatastreamDef[] defs = new DatastreamDef[datastreams.length];
+		for (int i = 0; i < datastreams.length; i++)
+		{
+			defs[i] = new DatastreamDef(datastreams[i][0], datastreams[i][0], datastreams[i][1]);
+		}
+		return defs;
+	}
+	
+	/* The inline content of the datastream's latest version. */
+	public MIMETypedStream getDatastreamDissemination(String pid, String dsID, String asOfDateTime)
+	throws RemoteException
+	{
+		faults.apply("getDatastreamDissemination");
+		FakeRepository.StoredObject object = find(pid);
+		String content = content(object, dsID);
+		if (content == null)
+		{  throw new RemoteException("Datastream not found: "+pid+"/"+dsID); }
+		
+		String mimeType = "text/xml";
+		for (String[] ds: object.getDatastreams())
+		{
+			if (ds[0].equals(dsID))
+			{  mimeType = ds[1]; }
+		}
+		return new MIMETypedStream(mimeType, utf8(content), new Property[0]);
+	}
+	
+	/*
+	 * Answers every method with an html fragment naming the object, the
+	 * method and its parameters, about as large as a Monk chunk.
+	 */
+	public MIMETypedStream getDissemination(String pid, String bDefPid, String methodName, 
+			                                Property[] parameters, String asOfDateTime)
+	throws RemoteException
+	{
+		faults.apply("getDissemination");
+		find(pid);
+		StringBuilder sb = new StringBuilder(2048);
+		sb.append("<div class=\"").append(methodName).append("\" title=\"").append(pid).append("\">");
+		if (parameters != null)
+		{
+			for (Property p: parameters)
+			{
+				sb.append("<span class=\"").append(p.getName()).append("\">").append(p.getValue()).append("</span>");
+			}
+		}
+		while (sb.length() < 2000)
+		{
+			sb.append("<p>Generated text standing in for a chunk of a work.</p>");
+		}
+		sb.append("</div>");
+		return new MIMETypedStream("text/html", utf8(sb.toString()), new Property[0]);
+	}
+	
+	public FieldSearchResult findObjects(String[] resultFields, NonNegativeInteger maxResults,
+			                             FieldSearchQuery query)
+	throws RemoteException
+	{
+		faults.apply("findObjects");
+		List<Pattern> fieldPatterns = new ArrayList<Pattern>();
+		Pattern termsPattern = null;
+		if (query != null)
+		{
+			Condition[] conditions = query.getConditions();
+			if (conditions != null)
+			{
+				for (Condition c: conditions)
+				{
+					if (ComparisonOperator.has.equals(c.getOperator()) && isSearchable(c.getProperty()))
+					{  fieldPatterns.add(wildcard(c.getValue())); }
+				}
+			}
+			String terms = query.getTerms();
+			if (terms != null && !terms.equals("*"))
+			{  termsPattern = wildcard(terms); }
+		}
+		
+		List<String> matched = new ArrayList<String>();
+		for (String pid: repository.pids())
+		{
+			FakeRepository.StoredObject object = repository.get(pid);
+			if (object != null && matches(object, fieldPatterns, termsPattern))
+			{  matched.add(pid); }
+		}
+		int pageSize = (maxResults == null) ? matched.size() : maxResults.intValue();
+		expireSessions();
+		return new Session(matched, pageSize).nextPage();
+	}
+	
+	public FieldSearchResult resumeFindObjects(String sessionToken) throws RemoteException
+	{
+		faults.apply("resumeFindObjects");
+		Session session = sessions.remove(sessionToken);
+		if (session == null)
+		{  throw new RemoteException("Unknown or expired list session "+sessionToken); }
+		return session.nextPage();
+	}
+	
+	public String[] getObjectHistory(String pid) throws RemoteException
+	{
+		faults.apply("getObjectHistory");
+		return new String[] {find(pid).getLastModified()};
+	}
+	
+	/* The number of list sessions waiting to be resumed. */
+	public int getOpenSessions()
+	{
+		return sessions.size();
+	}
+	
+	private FakeRepository.StoredObject find(String pid) throws RemoteException
+	{
+		FakeRepository.StoredObject object = repository.get(pid);
+		if (object == null)
+		{  throw new RemoteException("Object not found: "+pid); }
+		return object;
+	}
+	
+	private void expireSessions()
+	{
+		long cutoff = System.currentTimeMillis() - SESSION_TIMEOUT;
+		for (Iterator<Session> it = sessions.values().iterator(); it.hasNext();)
+		{
+			if (it.next().touched < cutoff)
+			{  it.remove(); }
+		}
+	}
+	
+	private static boolean isSearchable(String property)
+	{
+		return "pid".equals(property) || "label".equals(property) || "title".equals(property);
+	}
+	
+	private static boolean matches(FakeRepository.StoredObject object, List<Pattern> fieldPatterns, 
+			                       Pattern termsPattern)
+	{
+		for (Pattern p: fieldPatterns)
+		{
+			if (!p.matcher(object.getPid()).matches() && !p.matcher(object.getLabel()).matches())
+			{  return false; }
+		}
+		return termsPattern == null 
+			|| termsPattern.matcher(object.getPid()).matches()
+			|| termsPattern.matcher(object.getLabel()).matches();
+	}
+	
+	/* A pattern for a value where * matches any run of characters. */
+	private static Pattern wildcard(String value)
+	{
+		StringBuilder regex = new StringBuilder();
+		for (String part: value.split("\\*", -1))
+		{
+			if (regex.length() > 0 || value.startsWith("*"))
+			{  regex.append(".*"); }
+			regex.append(Pattern.quote(part));
+		}
+		return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	}
+	
+	/* The latest content of a datastream, or null if the object has no such datastream. */
+	static String content(FakeRepository.StoredObject object, String dsID)
+	throws RemoteException
+	{
+		try
+		{
+			FoxmlProjection projection = new FoxmlProjection(Collections.singleton(dsID), 
+					Collections.<String>emptyList(), true);
+			return projection.parse(object.getXML()).getDatastreams().get(dsID);
+		}
+		catch (Exception ex)
+		{
+			throw new RemoteException("Error reading "+object.getPid()+"/"+dsID, ex);
+		}
+	}
+	
+	static byte[] utf8(String s)
+	{
+		try
+		{
+			return s.getBytes("UTF-8");
+		}
+		catch (UnsupportedEncodingException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	private class Session
+	{
+		final List<String> pids;
+		final int pageSize;
+		int cursor = 0;
+		long touched = System.currentTimeMillis();
+		
+		Session(List<String> pids, int pageSize)
+		{
+			this.pids = pids;
+			this.pageSize = Math.max(1, pageSize);
+		}
+		
+		FieldSearchResult nextPage()
+		{
+			int end = Math.min(pids.size(), cursor + pageSize);
+			ObjectFields[] page = new ObjectFields[end - cursor];
+			for (int i = cursor; i < end; i++)
+			{
+				ObjectFields fields = new ObjectFields();
+				String pid = pids.get(i);
+				fields.setPid(pid);
+				FakeRepository.StoredObject object = repository.get(pid);
+				String label = (object == null) ? pid : object.getLabel();
+				fields.setLabel(label);
+				fields.setTitle(new String[] {label});
+				page[i - cursor] = fields;
+			}
+			
+			ListSession session = null;
+			if (end < pids.size())
+			{
+				String token = "session-"+nextToken.incrementAndGet();
+				session = new ListSession(token, new NonNegativeInteger(""+cursor),
+						new NonNegativeInteger(""+pids.size()), null);
+				cursor = end;
+				touched = System.currentTimeMillis();
+				sessions.put(token, this);
+			}
+			return new FieldSearchResult(session, page);
+		}
+	}
+}
@@ -0,0 +1,310 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.fake;
+
+import java.rmi.RemoteException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.axis.types.NonNegativeInteger;
+import org.meandre.components.fedora.support.Checksums;
+import org.meandre.components.fedora.support.FedoraConstants;
+
+import fedora.server.management.FedoraAPIM;
+import fedora.server.types.gen.Datastream;
+import fedora.server.types.gen.DatastreamBindingMap;
+import fedora.server.types.gen.Disseminator;
+import fedora.server.types.gen.UserInfo;
+
+/**
+ * 
+ * <p>
+ * Title: FakeAPIM
+ * </p>
+ * 
+ * <p>
+ * Description: An in-process FedoraAPIM answering from a FakeRepository.
+ * Ingest, object xml, export, purge, pid allocation and the datastream
+ * listing are supported; the datastream and disseminator editing
+ * methods are not.  Every call goes through the repository's
+ * FaultInjector first.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FakeAPIM implements FedoraAPIM
+{
+	private final FakeRepository repository;
+	private final FaultInjector faults;
+	private final AtomicLong nextPid = new AtomicLong();
+	
+	public FakeAPIM(FakeRepository repository)
+	{
+		this.repository = repository;
+		this.faults = repository.getFaults();
+	}
+	
+	public String ingest(byte[] objectXML, String format, String logMessage) throws RemoteException
+	{
+		faults.apply("ingest");
+		try
+		{
+			return repository.ingest(objectXML);
+		}
+		catch (IllegalArgumentException ex)
+		{
+			throw new RemoteException(ex.getMessage());
+		}
+	}
+	
+	public String ingestObject(byte[] objectXML, String logMessage) throws RemoteException
+	{
+		return ingest(objectXML, null, logMessage);
+	}
+	
+	public byte[] getObjectXML(String pid) throws RemoteException
+	{
+		faults.apply("getObjectXML");
+		return find(pid).getXML();
+	}
+	
+	public byte[] export(String pid, String format, String context) throws RemoteException
+	{
+		faults.apply("export");
+		return find(pid).getXML();
+	}
+	
+	public byte[] exportObject(String pid) throws RemoteException
+	{
+		return export(pid, null, null);
+	}
+	
+	public String purgeObject(String pid, String logMessage, boolean force) throws RemoteException
+	{
+		faults.apply("purgeObject");
+		if (!repository.purge(pid))
+		{  throw new RemoteException("Object not found: "+pid); }
+		return new Date().toString();
+	}
+	
+	public Datastream[] getDatastreams(String pid, String asOfDateTime, String state) 
+	throws RemoteException
+	{
+		faults.apply("getDatastreams");
+		return datastreams(find(pid));
+	}
+	
+	public Datastream getDatastream(String pid, String dsID, String asOfDateTime) 
+	throws RemoteException
+	{
+		faults.apply("getDatastream");
+		for (Datastream ds: datastreams(find(pid)))
+		{
+			if (ds.getID().equals(dsID))
+			{  return ds; }
+		}
+		throw new RemoteException("Datastream not found: "+pid+"/"+dsID);
+	}
+	
+	/*
+	 * The datastreams of an object.  Their checksums are the contentDigests
+	 * of the ingested xml if it had them, otherwise the MD5 of the content
+	 * FakeAPIA serves, as a server configured to record MD5 would have.
+	 */
+	private static Datastream[] datastreams(FakeRepository.StoredObject object)
+	throws RemoteException
+	{
+		String[][] ids = object.getDatastreams();
+		Datastream[] datastreams = new Datastream[ids.length];
+		for (int i = 0; i < ids.length; i++)
+		{
+			Datastream ds = new Datastream();
+			ds.setID(ids[i][0]);
+			ds.setVersionID(ids[i][0]+".0");
+			ds.setLabel(ids[i][0]);
+			ds.setCreateDate(object.getLastModified());
+			ds.setMIMEType(ids[i][1]);
+			if (ids[i][2] != null)
+			{
+				ds.setChecksumType(ids[i][2]);
+				ds.setChecksum(ids[i][3]);
+			}
+			else
+			{
+				ds.setChecksumType(FedoraConstants.MD5);
+				ds.setChecksum(md5(FakeAPIA.content(object, ids[i][0])));
+			}
+			datastreams[i] = ds;
+		}
+		return datastreams;
+	}
+	
+	private static String md5(String content)
+	{
+		try
+		{
+			MessageDigest digest = Checksums.newDigest(FedoraConstants.MD5);
+			return Checksums.hex(digest.digest(FakeAPIA.utf8(content == null ? "" : content)));
+		}
+		catch (NoSuchAlgorithmException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	public String[] getNextPID(NonNegativeInteger numPIDs, String pidNamespace) throws RemoteException
+	{
+		faults.apply("getNextPID");
+		int n = (numPIDs == null) ? 1 : numPIDs.intValue();
+		String namespace = (pidNamespace == null) ? "changeme" : pidNamespace;
+		String[] pids = new String[n];
+		for (int i = 0; i < n; i++)
+		{
+			String pid = null;
+			do
+			{
+				pid = namespace+":"+nextPid.incrementAndGet();
+			}
+			while (repository.get(pid) != null);
+			pids[i] = pid;
+		}
+		return pids;
+	}
+	
+	public UserInfo describeUser(String id) throws RemoteException
+	{  throw unsupported("describeUser"); }
+	
+	public String modifyObject(String pid, String state, String label, String ownerId, String logMessage)
+	throws RemoteException
+	{  throw unsupported("modifyObject"); }
+	
+	public String addDatastream(String pid, String dsID, String[] altIDs, String dsLabel, 
+			boolean versionable, String MIMEType, String formatURI, String dsLocation, 
+			String controlGroup, String dsState, String checksumType, String checksum, String logMessage)
+	throws RemoteException
+	{  throw unsupported("addDatastream"); }
+	
+	public String addDisseminator(String pid, String bDefPid, String bMechPid, String dissLabel,
+			DatastreamBindingMap bindingMap, String dissState, String logMessage)
+	throws RemoteException
+	{  throw unsupported("addDisseminator"); }
+	
+	public String modifyDatastreamByReference(String pid, String dsID, String[] altIDs, 
+			String dsLabel, String MIMEType, String formatURI, String dsLocation, 
+			String checksumType, String checksum, String logMessage, boolean force)
+	throws RemoteException
+	{  throw unsupported("modifyDatastreamByReference"); }
+	
+	public String modifyDatastreamByValue(String pid, String dsID, String[] altIDs, 
+			String dsLabel, String MIMEType, String formatURI, byte[] dsContent, 
+			String checksumType, String checksum, String logMessage, boolean force)
+	throws RemoteException
+	{  throw unsupported("modifyDatastreamByValue"); }
+	
+	public String modifyDisseminator(String pid, String dissID, String bMechPid, String dissLabel,
+			DatastreamBindingMap bindingMap, String dissState, String logMessage, boolean force)
+	throws RemoteException
+	{  throw unsupported("modifyDisseminator"); }
+	
+	public String setDatastreamState(String pid, String dsID, String dsState, String logMessage)
+	throws RemoteException
+	{  throw unsupported("setDatastreamState"); }
+	
+	public String setDatastreamVersionable(String pid, String dsID, boolean versionable, String logMessage)
+	throws RemoteException
+	{  throw unsupported("setDatastreamVersionable"); }
+	
+	public String compareDatastreamChecksum(String pid, String dsID, String versionDate)
+	throws RemoteException
+	{  throw unsupported("compareDatastreamChecksum"); }
+	
+	public String setDisseminatorState(String pid, String dissID, String dissState, String logMessage)
+	throws RemoteException
+	{  throw unsupported("setDisseminatorState"); }
+	
+	public Datastream[] getDatastreamHistory(String pid, String dsID) throws RemoteException
+	{  throw unsupported("getDatastreamHistory"); }
+	
+	public Disseminator getDisseminator(String pid, String dissID, String asOfDateTime)
+	throws RemoteException
+	{  throw unsupported("getDisseminator"); }
+	
+	public Disseminator[] getDisseminators(String pid, String asOfDateTime, String dissState)
+	throws RemoteException
+	{  throw unsupported("getDisseminators"); }
+	
+	public Disseminator[] getDisseminatorHistory(String pid, String dissID) throws RemoteException
+	{  throw unsupported("getDisseminatorHistory"); }
+	
+	public String[] purgeDatastream(String pid, String dsID, String startDT, String endDT,
+			String logMessage, boolean force)
+	throws RemoteException
+	{  throw unsupported("purgeDatastream"); }
+	
+	public String[] purgeDisseminator(String pid, String dissID, String endDT, String logMessage)
+	throws RemoteException
+	{  throw unsupported("purgeDisseminator"); }
+	
+	private FakeRepository.StoredObject find(String pid) throws RemoteException
+	{
+		FakeRepository.StoredObject object = repository.get(pid);
+		if (object == null)
+		{  throw new RemoteException("Object not found: "+pid); }
+		return object;
+	}
+	
+	private static RemoteException unsupported(String method)
+	{
+		return new RemoteException(method+" is not supported by the fake repository");
+	}
+}
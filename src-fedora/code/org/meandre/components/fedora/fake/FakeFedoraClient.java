@@ -0,0 +1,113 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.fake;
+
+import java.io.IOException;
+
+import fedora.client.FedoraClient;
+import fedora.server.access.FedoraAPIA;
+import fedora.server.management.FedoraAPIM;
+
+/**
+ * 
+ * <p>
+ * Title: FakeFedoraClient
+ * </p>
+ * 
+ * <p>
+ * Description: A FedoraClient wired to a FakeRepository.  getAPIA and
+ * getAPIM return the in-process FakeAPIA and FakeAPIM; the client's HTTP
+ * calls (describe and resource index queries) go to a FakeServer on a
+ * loopback port that this client starts and stop() shuts down.  It can
+ * be handed to any component that takes a FedoraClient, APIA or APIM.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FakeFedoraClient extends FedoraClient
+{
+	private final FakeServer server;
+	private final FakeAPIA apia;
+	private final FakeAPIM apim;
+	
+	public FakeFedoraClient(FakeRepository repository)
+	throws IOException
+	{
+		this(new FakeServer(repository));
+	}
+	
+	private FakeFedoraClient(FakeServer server)
+	throws IOException
+	{
+		super(server.getBaseURL(), "fakeUser", "fakePassword");
+		this.server = server;
+		this.apia = new FakeAPIA(server.getRepository());
+		this.apim = new FakeAPIM(server.getRepository());
+	}
+	
+	public FedoraAPIA getAPIA()
+	{ return apia; }
+	
+	public FedoraAPIM getAPIM()
+	{ return apim; }
+	
+	public FakeRepository getRepository()
+	{ return server.getRepository(); }
+	
+	public FakeServer getServer()
+	{ return server; }
+	
+	/* Shuts down the loopback server; the client is unusable afterwards. */
+	public void stop()
+	{
+		server.stop();
+	}
+}
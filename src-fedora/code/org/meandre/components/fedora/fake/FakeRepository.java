@@ -0,0 +1,352 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.fake;
+
+import java.io.UnsupportedEncodingException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 
+ * <p>
+ * Title: FakeRepository
+ * </p>
+ * 
+ * <p>
+ * Description: An in-memory Fedora repository that FakeAPIA, FakeAPIM and
+ * FakeServer answer from, so flows can be driven at load without a
+ * server or its database.  Objects are kept as FOXML bytes with their
+ * label, datastream list and a last-modified date; the resource
+ * relations in each object's RELS-EXT datastream are kept in a TripleSet
+ * for resource index queries.  A FaultInjector adds latency and failures
+ * to every call.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FakeRepository
+{
+	private static final Pattern PID_ATTRIBUTE = Pattern.compile("PID=\"([^\"]+)\"");
+	private static final Pattern LABEL_PROPERTY = Pattern.compile("model#label\"\\s+VALUE=\"([^\"]*)\"");
+	private static final Pattern DATASTREAM = Pattern.compile(
+			"<(?:[\\w-]+:)?datastream\\s[^>]*?\\bID=\"([^\"]+)\"");
+	private static final Pattern MIMETYPE = Pattern.compile("MIMETYPE=\"([^\"]+)\"");
+	private static final Pattern CONTENT_DIGEST = Pattern.compile(
+			"<(?:[\\w-]+:)?contentDigest\\s+TYPE=\"([^\"]+)\"\\s+DIGEST=\"([^\"]+)\"");
+	private static final Pattern NAMESPACE = Pattern.compile("xmlns:([\\w-]+)=\"([^\"]+)\"");
+	private static final Pattern RELATION = Pattern.compile(
+			"<([\\w-]+):([\\w-]+)\\s+rdf:resource=\"([^\"]+)\"");
+	
+	private final Map<String, StoredObject> objects = new ConcurrentHashMap<String, StoredObject>();
+	private final TripleSet triples = new TripleSet();
+	private final FaultInjector faults;
+	private final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+	private volatile String version = FakeServer.REPOSITORY_VERSION;
+	
+	public static class StoredObject
+	{
+		final String pid;
+		final String label;
+		final byte[] xml;
+		final String lastModified;
+		final String[][] datastreams;
+		
+		StoredObject(String pid, String label, byte[] xml, String lastModified, String[][] datastreams)
+		{
+			this.pid = pid;
+			this.label = label;
+			this.xml = xml;
+			this.lastModified = lastModified;
+			this.datastreams = datastreams;
+		}
+		
+		public String getPid()
+		{ return pid; }
+		
+		public String getLabel()
+		{ return label; }
+		
+		public byte[] getXML()
+		{ return xml; }
+		
+		public String getLastModified()
+		{ return lastModified; }
+		
+		/*
+		 * {id, mime type, checksum type, checksum} for each datastream, in
+		 * document order.  The checksum is the contentDigest given in the
+		 * ingested xml, unchecked, or null if there was none.
+		 */
+		public String[][] getDatastreams()
+		{ return datastreams; }
+	}
+	
+	public FakeRepository()
+	{
+		this(new FaultInjector());
+	}
+	
+	public FakeRepository(FaultInjector faults)
+	{
+		this.faults = faults;
+	}
+	
+	public FaultInjector getFaults()
+	{ return faults; }
+	
+	public TripleSet getTriples()
+	{ return triples; }
+	
+	/* The version describeRepository reports, 2.2 unless set. */
+	public String getVersion()
+	{ return version; }
+	
+	public void setVersion(String version)
+	{ this.version = version; }
+	
+	/*
+	 * Adds count objects named prefix1, prefix2, ... each with a DC
+	 * datastream padded to about contentBytes of inline xml.
+	 */
+	public void populate(String prefix, int count, int contentBytes)
+	{
+		for (int i = 1; i <= count; i++)
+		{
+			String pid = prefix + i;
+			ingest(foxml(pid, "Object "+i, contentBytes, null));
+		}
+	}
+	
+	/*
+	 * Adds a collection object and count member objects named prefix1,
+	 * prefix2, ... whose RELS-EXT makes them members of it.
+	 */
+	public void populateCollection(String collectionPid, String prefix, int count, int contentBytes)
+	{
+		ingest(foxml(collectionPid, "Collection "+collectionPid, 0, null));
+		for (int i = 1; i <= count; i++)
+		{
+			String pid = prefix + i;
+			ingest(foxml(pid, "Object "+i, contentBytes, collectionPid));
+		}
+	}
+	
+	/*
+	 * Stores an object from its FOXML, replacing any object with the same
+	 * pid, and returns its pid.
+	 */
+	public String ingest(byte[] xml)
+	{
+		String text = null;
+		try
+		{
+			text = new String(xml, "UTF-8");
+		}
+		catch (UnsupportedEncodingException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+		Matcher m = PID_ATTRIBUTE.matcher(text);
+		if (!m.find())
+		{  throw new IllegalArgumentException("No PID in object xml"); }
+		String pid = m.group(1);
+		
+		m = LABEL_PROPERTY.matcher(text);
+		String label = m.find() ? m.group(1) : pid;
+		
+		List<String[]> datastreams = new ArrayList<String[]>();
+		int relsExt = -1;
+		m = DATASTREAM.matcher(text);
+		boolean found = m.find();
+		while (found)
+		{
+			String id = m.group(1);
+			int end = m.end();
+			found = m.find();
+			int next = found ? m.start() : text.length();
+			
+			Matcher mime = MIMETYPE.matcher(text);
+			String mimeType = mime.find(end) ? mime.group(1) : "text/xml";
+			Matcher digest = CONTENT_DIGEST.matcher(text).region(end, next);
+			if (digest.find())
+			{  datastreams.add(new String[] {id, mimeType, digest.group(1), digest.group(2)}); }
+			else
+			{  datastreams.add(new String[] {id, mimeType, null, null}); }
+			if (id.equals("RELS-EXT"))
+			{  relsExt = end; }
+		}
+		
+		triples.removeSubject("info:fedora/"+pid);
+		if (relsExt >= 0)
+		{  addRelations(pid, text, relsExt); }
+		objects.put(pid, new StoredObject(pid, label, xml, now(), 
+				datastreams.toArray(new String[datastreams.size()][])));
+		return pid;
+	}
+	
+	public StoredObject get(String pid)
+	{
+		return objects.get(pid);
+	}
+	
+	/* Removes the object and its relations. */
+	public boolean purge(String pid)
+	{
+		triples.removeSubject("info:fedora/"+pid);
+		return objects.remove(pid) != null;
+	}
+	
+	public int size()
+	{
+		return objects.size();
+	}
+	
+	public void clear()
+	{
+		objects.clear();
+		triples.clear();
+	}
+	
+	/* The pids in sorted order. */
+	public List<String> pids()
+	{
+		List<String> pids = new ArrayList<String>(objects.keySet());
+		Collections.sort(pids);
+		return pids;
+	}
+	
+	/*
+	 * Adds a triple for each rdf:resource relation in the RELS-EXT
+	 * datastream starting at offset start.
+	 */
+	private void addRelations(String pid, String text, int start)
+	{
+		Map<String, String> namespaces = new HashMap<String, String>();
+		Matcher ns = NAMESPACE.matcher(text);
+		while (ns.find())
+		{  namespaces.put(ns.group(1), ns.group(2)); }
+		
+		int end = text.indexOf("datastream>", start);
+		Matcher m = RELATION.matcher(text);
+		m.region(start, (end < 0) ? text.length() : end);
+		while (m.find())
+		{
+			String namespace = namespaces.get(m.group(1));
+			if (namespace != null)
+			{  triples.addResource("info:fedora/"+pid, namespace + m.group(2), m.group(3)); }
+		}
+	}
+	
+	/* A strictly increasing timestamp, so every change gets a new date. */
+	private String now()
+	{
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format.format(new Date(clock.incrementAndGet()));
+	}
+	
+	/*
+	 * FOXML for an object with a DC datastream of about contentBytes and,
+	 * when collectionPid is given, a RELS-EXT naming it the collection.
+	 */
+	public static byte[] foxml(String pid, String label, int contentBytes, String collectionPid)
+	{
+		StringBuilder sb = new StringBuilder(contentBytes + 1536);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append("<foxml:digitalObject PID=\"").append(pid).append("\"");
+		sb.append(" xmlns:foxml=\"info:fedora/fedora-system:def/foxml#\">\n");
+		sb.append("<foxml:objectProperties><foxml:property NAME=\"info:fedora/fedora-system:def/model#label\"");
+		sb.append(" VALUE=\"").append(label).append("\"/></foxml:objectProperties>\n");
+		sb.append("<foxml:datastream ID=\"DC\" STATE=\"A\" CONTROL_GROUP=\"X\">");
+		sb.append("<foxml:datastreamVersion ID=\"DC1.0\" MIMETYPE=\"text/xml\"><foxml:xmlContent>");
+		sb.append("<oai_dc:dc xmlns:oai_dc=\"http://www.openarchives.org/OAI/2.0/oai_dc/\"");
+		sb.append(" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">");
+		sb.append("<dc:title>").append(label).append("</dc:title>");
+		sb.append("<dc:identifier>").append(pid).append("</dc:identifier>");
+		int line = 0;
+		while (sb.length() < contentBytes)
+		{
+			sb.append("<dc:description>Line ").append(line++);
+			sb.append(" of generated text standing in for the body of a work.</dc:description>");
+		}
+		sb.append("</oai_dc:dc></foxml:xmlContent></foxml:datastreamVersion></foxml:datastream>\n");
+		if (collectionPid != null)
+		{
+			sb.append("<foxml:datastream ID=\"RELS-EXT\" STATE=\"A\" CONTROL_GROUP=\"X\">");
+			sb.append("<foxml:datastreamVersion ID=\"RELS-EXT.0\" MIMETYPE=\"text/xml\"><foxml:xmlContent>");
+			sb.append("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\"");
+			sb.append(" xmlns:rel=\"info:fedora/fedora-system:def/relations-external#\">");
+			sb.append("<rdf:Description rdf:about=\"info:fedora/").append(pid).append("\">");
+			sb.append("<rel:isMemberOfCollection rdf:resource=\"info:fedora/").append(collectionPid).append("\"/>");
+			sb.append("</rdf:Description></rdf:RDF>");
+			sb.append("</foxml:xmlContent></foxml:datastreamVersion></foxml:datastream>\n");
+		}
+		sb.append("</foxml:digitalObject>\n");
+		try
+		{
+			return sb.toString().getBytes("UTF-8");
+		}
+		catch (UnsupportedEncodingException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+	}
+}
@@ -0,0 +1,688 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.fake;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.rmi.RemoteException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jrdf.graph.GraphElementFactoryException;
+import org.jrdf.graph.Node;
+import org.meandre.components.fedora.support.ResourceIndex;
+import org.meandre.components.fedora.support.RestTransport;
+import org.meandre.components.fedora.support.TupleRows;
+import org.trippi.RDFUtil;
+import org.trippi.TrippiException;
+import org.trippi.TupleIterator;
+import org.trippi.io.CSVTupleWriter;
+
+import fedora.server.types.gen.MIMETypedStream;
+import fedora.server.types.gen.Property;
+
+/**
+ * 
+ * <p>
+ * Title: FakeServer
+ * </p>
+ * 
+ * <p>
+ * Description: A small in-process HTTP server standing in for the Fedora
+ * web application on a loopback port.  It serves /fedora/describe (which
+ * FedoraClient reads before creating its SOAP stubs) and /fedora/risearch
+ * iTQL tuple queries in the CSV, count and SPARQL formats, evaluated
+ * against the repository's TripleSet.  It also serves the HTTP reads
+ * used by RestTransport, answered by a FakeAPIA and FakeAPIM: API-A-LITE
+ * datastream contents (/fedora/get/{pid}/{dsID}), which honour a single
+ * byte Range, and disseminations (/fedora/get/{pid}/{bDef}/{method}), and
+ * the Fedora 3 REST /fedora/objects/{pid}/objectXML and export, which are
+ * only answered when the repository's version is 3 or above.  Requests
+ * go through the repository's FaultInjector and an injected failure is
+ * answered with a 500.  The
+ * SOAP services are not served; FakeAPIA and FakeAPIM are used
+ * in-process instead.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FakeServer
+{
+	public static final String REPOSITORY_NAME = "Fake Repository";
+	public static final String REPOSITORY_VERSION = "2.2";
+	
+	private static final Logger logger = 
+		Logger.getLogger(FakeServer.class.getName());
+	
+	private final FakeRepository repository;
+	private final FakeAPIA apia;
+	private final FakeAPIM apim;
+	private final ServerSocket socket;
+	private final ExecutorService workers;
+	private volatile boolean running = true;
+	
+	public FakeServer(FakeRepository repository)
+	throws IOException
+	{
+		this.repository = repository;
+		this.apia = new FakeAPIA(repository);
+		this.apim = new FakeAPIM(repository);
+		this.socket = new ServerSocket(0, 100, InetAddress.getByName("127.0.0.1"));
+		this.workers = Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "FakeServer-worker");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		Thread acceptor = new Thread(new Runnable()
+		{
+			public void run()
+			{  accept(); }
+		}, "FakeServer");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+	
+	public int getPort()
+	{ return socket.getLocalPort(); }
+	
+	/* The base URL to build a FedoraClient with. */
+	public String getBaseURL()
+	{ return "http://127.0.0.1:"+getPort()+"/fedora"; }
+	
+	public FakeRepository getRepository()
+	{ return repository; }
+	
+	public void stop()
+	{
+		running = false;
+		try
+		{  socket.close(); }
+		catch (IOException ignore)
+		{}
+		workers.shutdownNow();
+	}
+	
+	private void accept()
+	{
+		while (running)
+		{
+			try
+			{
+				final Socket client = socket.accept();
+				workers.execute(new Runnable()
+				{
+					public void run()
+					{  serve(client); }
+				});
+			}
+			catch (IOException ex)
+			{
+				if (running)
+				{  logger.log(Level.WARNING, "Error accepting a connection", ex); }
+			}
+		}
+	}
+	
+	/* Serves requests on one connection until the client closes it. */
+	private void serve(Socket client)
+	{
+		try
+		{
+			client.setTcpNoDelay(true);
+			InputStream in = new BufferedInputStream(client.getInputStream());
+			OutputStream out = client.getOutputStream();
+			while (running)
+			{
+				Request request = Request.read(in);
+				if (request == null)
+				{  break; }
+				respond(request, out);
+				out.flush();
+				if (request.close)
+				{  break; }
+			}
+		}
+		catch (SocketException ignore)
+		{}
+		catch (IOException ex)
+		{
+			logger.log(Level.WARNING, "Error serving a connection", ex);
+		}
+		finally
+		{
+			try
+			{  client.close(); }
+			catch (IOException ignore)
+			{}
+		}
+	}
+	
+	private void respond(Request request, OutputStream out)
+	throws IOException
+	{
+		String path = request.path;
+		if (path.equals("/fedora/describe"))
+		{
+			write(out, 200, "text/xml", utf8("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+					"<fedoraRepository><repositoryName>"+REPOSITORY_NAME+"</repositoryName>" +
+					"<repositoryVersion>"+repository.getVersion()+"</repositoryVersion></fedoraRepository>"));
+		}
+		else if (path.equals("/fedora/risearch"))
+		{
+			String format = request.params.get("format");
+			String query = request.params.get("query");
+			TupleRows rows = null;
+			try
+			{
+				repository.getFaults().apply("risearch");
+				if (query == null || !"itql".equalsIgnoreCase(request.params.get("lang")))
+				{  throw new IllegalArgumentException("Only iTQL queries are supported"); }
+				rows = repository.getTriples().select(query);
+			}
+			catch (RemoteException ex)
+			{
+				write(out, 500, "text/plain", utf8(ex.getMessage()));
+				return;
+			}
+			catch (IllegalArgumentException ex)
+			{
+				write(out, 400, "text/plain", utf8(ex.getMessage()));
+				return;
+			}
+			
+			if ("count".equalsIgnoreCase(format))
+			{
+				write(out, 200, "text/plain", utf8(String.valueOf(rows.size())));
+			}
+			else if ("CSV".equalsIgnoreCase(format))
+			{
+				byte[] body;
+				try
+				{
+					body = csv(rows);
+				}
+				catch (TrippiException ex)
+				{
+					write(out, 500, "text/plain", utf8(ex.getMessage()));
+					return;
+				}
+				write(out, 200, "text/plain; charset=UTF-8", body);
+			}
+			else if (format == null || "Sparql".equalsIgnoreCase(format))
+			{
+				write(out, 200, "text/xml; charset=UTF-8", sparql(rows));
+			}
+			else
+			{
+				write(out, 400, "text/plain", utf8("Unsupported format "+format));
+			}
+		}
+		else if (path.startsWith("/fedora/get/") 
+				|| (path.startsWith("/fedora/objects/") && RestTransport.majorVersion(repository.getVersion()) >= 3))
+		{
+			boolean lite = path.startsWith("/fedora/get/");
+			String[] segments = path.substring(path.indexOf('/', "/fedora/".length()) + 1).split("/");
+			for (int i = 0; i < segments.length; i++)
+			{  segments[i] = URLDecoder.decode(segments[i], "UTF-8"); }
+			try
+			{
+				if (lite)
+				{  get(request, segments, out); }
+				else
+				{  rest(request, segments, out); }
+			}
+			catch (RemoteException ex)
+			{
+				String message = String.valueOf(ex.getMessage());
+				write(out, message.indexOf("not found") >= 0 ? 404 : 500, "text/plain", utf8(message));
+			}
+		}
+		else if (path.startsWith("/fedora/services/"))
+		{
+			write(out, 200, "text/plain", new byte[0]);
+		}
+		else
+		{
+			write(out, 404, "text/plain", utf8("Not found: "+path));
+		}
+	}
+	
+	/*
+	 * Answers an API-A-LITE read of /fedora/get/{pid}/{dsID}[/{asOf}] or
+	 * /fedora/get/{pid}/{bDef}/{method}[/{asOf}]; as in Fedora, a second
+	 * segment containing a colon is a behavior definition pid.
+	 */
+	private void get(Request request, String[] segments, OutputStream out)
+	throws IOException
+	{
+		String pid = segments[0];
+		if (segments.length >= 3 && segments[1].indexOf(':') >= 0)
+		{
+			String asOf = (segments.length > 3) ? segments[3] : null;
+			List<Property> parameters = new ArrayList<Property>();
+			for (Map.Entry<String, String> param: request.params.entrySet())
+			{  parameters.add(new Property(param.getKey(), param.getValue())); }
+			MIMETypedStream stream = apia.getDissemination(pid, segments[1], segments[2], 
+					parameters.toArray(new Property[parameters.size()]), asOf);
+			write(out, 200, stream.getMIMEType(), stream.getStream());
+		}
+		else if (segments.length == 2 || segments.length == 3)
+		{
+			String asOf = (segments.length > 2) ? segments[2] : null;
+			MIMETypedStream stream = apia.getDatastreamDissemination(pid, segments[1], asOf);
+			if (request.range == null)
+			{
+				write(out, 200, stream.getMIMEType(), stream.getStream());
+			}
+			else
+			{
+				writeRange(out, stream.getMIMEType(), stream.getStream(), request.range);
+			}
+		}
+		else
+		{
+			write(out, 404, "text/plain", utf8("Not found: "+request.path));
+		}
+	}
+	
+	/* Answers a Fedora 3 REST read of /fedora/objects/{pid}/objectXML or export. */
+	private void rest(Request request, String[] segments, OutputStream out)
+	throws IOException
+	{
+		String pid = segments[0];
+		if (segments.length == 2 && segments[1].equals("objectXML"))
+		{
+			write(out, 200, "text/xml", apim.getObjectXML(pid));
+		}
+		else if (segments.length == 2 && segments[1].equals("export"))
+		{
+			write(out, 200, "text/xml", 
+					apim.export(pid, request.params.get("format"), request.params.get("context")));
+		}
+		else
+		{
+			write(out, 404, "text/plain", utf8("Not found: "+request.path));
+		}
+	}
+	
+	/*
+	 * Answers a Range header of the form bytes=first-last, bytes=first- or
+	 * bytes=-suffix with a 206, or a 416 if it is not satisfiable.
+	 */
+	private static void writeRange(OutputStream out, String contentType, byte[] body, String range)
+	throws IOException
+	{
+		long first = -1;
+		long last = -1;
+		try
+		{
+			String spec = range.substring(range.indexOf('=') + 1).trim();
+			int dash = spec.indexOf('-');
+			String from = spec.substring(0, dash).trim();
+			String to = spec.substring(dash + 1).trim();
+			if (from.length() == 0)
+			{
+				first = Math.max(0, body.length - Long.parseLong(to));
+				last = body.length - 1;
+			}
+			else
+			{
+				first = Long.parseLong(from);
+				last = (to.length() == 0) ? body.length - 1 : Math.min(Long.parseLong(to), body.length - 1);
+			}
+		}
+		catch (RuntimeException ex)
+		{
+			first = -1;
+		}
+		if (first < 0 || first >= body.length || last < first)
+		{
+			write(out, 416, "text/plain", utf8("Unsatisfiable range "+range), 
+					"Content-Range: bytes */"+body.length+"\r\n");
+			return;
+		}
+		byte[] part = new byte[(int)(last - first + 1)];
+		System.arraycopy(body, (int)first, part, 0, part.length);
+		write(out, 206, contentType, part, 
+				"Content-Range: bytes "+first+"-"+last+"/"+body.length+"\r\n");
+	}
+	
+	private static void write(OutputStream out, int status, String contentType, byte[] body)
+	throws IOException
+	{
+		write(out, status, contentType, body, "");
+	}
+	
+	private static void write(OutputStream out, int status, String contentType, byte[] body,
+			                  String extraHeaders)
+	throws IOException
+	{
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		StringBuilder head = new StringBuilder(256);
+		head.append("HTTP/1.1 ").append(status).append(status == 200 ? " OK" : 
+			(status == 206 ? " Partial Content" : " Error")).append("\r\n");
+		head.append("Date: ").append(format.format(new Date())).append("\r\n");
+		head.append("Content-Type: ").append(contentType).append("\r\n");
+		head.append("Content-Length: ").append(body.length).append("\r\n");
+		head.append(extraHeaders);
+		head.append("\r\n");
+		out.write(head.toString().getBytes("ISO-8859-1"));
+		out.write(body);
+	}
+	
+	/*
+	 * The rows, whose values are N-Triples terms, written by trippi's
+	 * CSVTupleWriter as the resource index writes them in the CSV format,
+	 * with URIs abbreviated by the default aliases.
+	 */
+	static byte[] csv(TupleRows rows)
+	throws TrippiException
+	{
+		final String[] names = rows.getNames();
+		final Iterator<String[]> it = rows.getRows().iterator();
+		final RDFUtil factory = new RDFUtil();
+		TupleIterator tuples = new TupleIterator()
+		{
+			public boolean hasNext()
+			{  return it.hasNext(); }
+			
+			public Map next()
+			throws TrippiException
+			{
+				String[] row = it.next();
+				Map<String, Node> tuple = new HashMap<String, Node>();
+				for (int i = 0; i < names.length; i++)
+				{
+					if (row[i] != null)
+					{  tuple.put(names[i], node(factory, row[i])); }
+				}
+				return tuple;
+			}
+			
+			public String[] names()
+			{  return names; }
+			
+			public void close()
+			{ }
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64 + rows.size() * 48);
+		new CSVTupleWriter(out, ResourceIndex.getAliases()).write(tuples);
+		return out.toByteArray();
+	}
+	
+	/* The node for an N-Triples term. */
+	private static Node node(RDFUtil factory, String term)
+	throws TrippiException
+	{
+		try
+		{
+			if (term.startsWith("<"))
+			{
+				return factory.createResource(new URI(term.substring(1, term.length() - 1)));
+			}
+			int close = term.lastIndexOf('"');
+			String value = unescape(term.substring(1, close));
+			String suffix = term.substring(close + 1);
+			if (suffix.startsWith("^^<"))
+			{
+				return factory.createLiteral(value, new URI(suffix.substring(3, suffix.length() - 1)));
+			}
+			else if (suffix.startsWith("@"))
+			{
+				return factory.createLiteral(value, suffix.substring(1));
+			}
+			return factory.createLiteral(value);
+		}
+		catch (URISyntaxException ex)
+		{
+			throw new TrippiException("Bad term "+term, ex);
+		}
+		catch (GraphElementFactoryException ex)
+		{
+			throw new TrippiException("Bad term "+term, ex);
+		}
+	}
+	
+	/* The rows in the SPARQL xml result format FedoraClient.getTuples reads. */
+	static byte[] sparql(TupleRows rows)
+	throws UnsupportedEncodingException
+	{
+		String[] names = rows.getNames();
+		StringBuilder sb = new StringBuilder(256 + rows.size() * 96);
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		sb.append("<sparql xmlns=\"http://www.w3.org/2001/sw/DataAccess/rf1/result\">\n<head>\n");
+		for (String name: names)
+		{
+			sb.append("<variable name=\"").append(name).append("\"/>\n");
+		}
+		sb.append("</head>\n<results>\n");
+		for (String[] row: rows.getRows())
+		{
+			sb.append("<result>\n");
+			for (int i = 0; i < names.length; i++)
+			{
+				if (row[i] == null)
+				{
+					sb.append('<').append(names[i]).append(" bound=\"false\"/>\n");
+				}
+				else if (row[i].startsWith("<"))
+				{
+					String uri = row[i].substring(1, row[i].length() - 1);
+					sb.append('<').append(names[i]).append(" uri=\"").append(escape(uri)).append("\"/>\n");
+				}
+				else
+				{
+					int close = row[i].lastIndexOf('"');
+					String value = unescape(row[i].substring(1, close));
+					String suffix = row[i].substring(close + 1);
+					sb.append('<').append(names[i]);
+					if (suffix.startsWith("^^<"))
+					{
+						sb.append(" datatype=\"").append(escape(suffix.substring(3, suffix.length() - 1))).append('"');
+					}
+					else if (suffix.startsWith("@"))
+					{
+						sb.append(" xml:lang=\"").append(escape(suffix.substring(1))).append('"');
+					}
+					sb.append('>').append(escape(value));
+					sb.append("</").append(names[i]).append(">\n");
+				}
+			}
+			sb.append("</result>\n");
+		}
+		sb.append("</results>\n</sparql>\n");
+		return utf8(sb.toString());
+	}
+	
+	/* The value of an N-Triples literal's quoted part. */
+	private static String unescape(String quoted)
+	{
+		if (quoted.indexOf('\\') < 0)
+		{  return quoted; }
+		StringBuilder sb = new StringBuilder(quoted.length());
+		for (int i = 0; i < quoted.length(); i++)
+		{
+			char c = quoted.charAt(i);
+			if (c == '\\' && i + 1 < quoted.length())
+			{
+				c = quoted.charAt(++i);
+				switch (c)
+				{
+					case 'n': c = '\n'; break;
+					case 'r': c = '\r'; break;
+					case 't': c = '\t'; break;
+					default:  break;
+				}
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+	
+	private static String escape(String value)
+	{
+		return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+	}
+	
+	private static byte[] utf8(String s)
+	throws UnsupportedEncodingException
+	{
+		return s.getBytes("UTF-8");
+	}
+	
+	private static class Request
+	{
+		String path;
+		String range;
+		final Map<String, String> params = new HashMap<String, String>();
+		boolean close = false;
+		
+		/* Reads one request, or returns null at the end of the connection. */
+		static Request read(InputStream in)
+		throws IOException
+		{
+			String line = readLine(in);
+			while (line != null && line.length() == 0)
+			{  line = readLine(in); }
+			if (line == null)
+			{  return null; }
+			
+			String[] parts = line.split(" ");
+			if (parts.length < 2)
+			{  throw new IOException("Bad request line: "+line); }
+			Request request = new Request();
+			request.close = parts.length < 3 || !parts[2].equals("HTTP/1.1");
+			
+			int length = 0;
+			String header = null;
+			while ((header = readLine(in)) != null && header.length() > 0)
+			{
+				int colon = header.indexOf(':');
+				if (colon < 0)
+				{  continue; }
+				String name = header.substring(0, colon).trim();
+				String value = header.substring(colon + 1).trim();
+				if (name.equalsIgnoreCase("Content-Length"))
+				{  length = Integer.parseInt(value); }
+				else if (name.equalsIgnoreCase("Connection"))
+				{  request.close = value.equalsIgnoreCase("close"); }
+				else if (name.equalsIgnoreCase("Range"))
+				{  request.range = value; }
+			}
+			for (int i = 0; i < length; i++)
+			{
+				if (in.read() < 0)
+				{  break; }
+			}
+			
+			String target = parts[1];
+			int q = target.indexOf('?');
+			request.path = (q < 0) ? target : target.substring(0, q);
+			if (q >= 0)
+			{
+				for (String pair: target.substring(q + 1).split("&"))
+				{
+					int eq = pair.indexOf('=');
+					if (eq > 0)
+					{
+						request.params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+								           URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+					}
+				}
+			}
+			return request;
+		}
+		
+		private static String readLine(InputStream in)
+		throws IOException
+		{
+			ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+			int c = in.read();
+			if (c < 0)
+			{  return null; }
+			while (c >= 0 && c != '\n')
+			{
+				if (c != '\r')
+				{  line.write(c); }
+				c = in.read();
+			}
+			return line.toString("ISO-8859-1");
+		}
+	}
+}
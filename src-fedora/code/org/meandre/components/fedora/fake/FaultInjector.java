@@ -0,0 +1,157 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.fake;
+
+import java.net.SocketException;
+import java.rmi.RemoteException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * <p>
+ * Title: FaultInjector
+ * </p>
+ * 
+ * <p>
+ * Description: Adds latency and random failures to the calls the fake
+ * repository answers, so flows can be loaded with the delays and errors
+ * of a real server.  Every call waits latencyMillis plus up to
+ * jitterMillis, then fails with probability failureRate.  Failures are
+ * reported as a reset connection, which RetryPolicy treats as transient.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FaultInjector
+{
+	private final Random random;
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	
+	private volatile long latencyMillis = 0;
+	private volatile long jitterMillis = 0;
+	private volatile double failureRate = 0.0;
+	
+	public FaultInjector()
+	{
+		this(System.nanoTime());
+	}
+	
+	/* A fixed seed gives the same sequence of delays and failures per run. */
+	public FaultInjector(long seed)
+	{
+		random = new Random(seed);
+	}
+	
+	public void setLatency(long latencyMillis, long jitterMillis)
+	{
+		this.latencyMillis = Math.max(0, latencyMillis);
+		this.jitterMillis = Math.max(0, jitterMillis);
+	}
+	
+	public long getLatencyMillis()
+	{ return latencyMillis; }
+	
+	public long getJitterMillis()
+	{ return jitterMillis; }
+	
+	/* The fraction of calls to fail, from 0.0 (none) to 1.0 (all). */
+	public void setFailureRate(double failureRate)
+	{
+		this.failureRate = Math.min(1.0, Math.max(0.0, failureRate));
+	}
+	
+	public double getFailureRate()
+	{ return failureRate; }
+	
+	public long getCalls()
+	{ return calls.get(); }
+	
+	public long getFailures()
+	{ return failures.get(); }
+	
+	/*
+	 * Delays the named operation and decides whether it fails.  Returns
+	 * normally when the call should go ahead.
+	 */
+	public void apply(String operation)
+	throws RemoteException
+	{
+		calls.incrementAndGet();
+		long delay = latencyMillis;
+		double roll;
+		synchronized (random)
+		{
+			if (jitterMillis > 0)
+			{  delay += (long)(random.nextDouble() * jitterMillis); }
+			roll = random.nextDouble();
+		}
+		if (delay > 0)
+		{
+			try
+			{
+				Thread.sleep(delay);
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new RemoteException("Interrupted in "+operation, ex);
+			}
+		}
+		if (roll < failureRate)
+		{
+			failures.incrementAndGet();
+			throw new RemoteException("Injected failure in "+operation,
+					new SocketException("Connection reset (injected)"));
+		}
+	}
+}
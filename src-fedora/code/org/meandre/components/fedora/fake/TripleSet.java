@@ -0,0 +1,403 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.fake;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.meandre.components.fedora.support.TupleRows;
+
+/**
+ * 
+ * <p>
+ * Title: TripleSet
+ * </p>
+ * 
+ * <p>
+ * Description: An in-memory set of RDF triples standing in for the
+ * resource index, with an evaluator for the iTQL the components send:
+ * a select of variables from &lt;#ri&gt; where a conjunction ("and") of
+ * triple patterns holds, optionally ordered by one variable.  Each
+ * pattern has a variable or URI subject, a URI predicate, and a
+ * variable, URI or literal object, as in
+ * <pre>
+ * select $s from &lt;#ri&gt; where $s &lt;p&gt; &lt;o&gt;;
+ * select $c $w from &lt;#ri&gt; where $c &lt;p1&gt; &lt;o&gt; and $w &lt;p2&gt; $c order by $c;
+ * </pre>
+ * Terms are kept and returned in N-Triples form: &lt;uri&gt; or a quoted
+ * literal with an optional ^^&lt;datatype&gt; or @language.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class TripleSet
+{
+	private static final Pattern SELECT = Pattern.compile(
+			"\\s*select\\s+((?:\\$\\w+\\s+)+)from\\s+<#ri>\\s+where\\s+(.+?)" +
+			"(?:\\s+order\\s+by\\s+\\$(\\w+))?\\s*;?\\s*",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	private static final Pattern CLAUSE = Pattern.compile(
+			"(\\$\\w+|<[^>]*>)\\s+<([^>]*)>\\s+" +
+			"(\\$\\w+|<[^>]*>|'((?:[^'\\\\]|\\\\.)*)'(\\^\\^<[^>]*>|@[\\w-]+)?)\\s*");
+	private static final Pattern AND = Pattern.compile("and\\s+", Pattern.CASE_INSENSITIVE);
+	
+	/* predicate -> object term -> subject terms */
+	private final Map<String, Map<String, Set<String>>> byPredicate = 
+		new HashMap<String, Map<String, Set<String>>>();
+	/* subject term -> {predicate, object term} pairs */
+	private final Map<String, List<String[]>> bySubject = new HashMap<String, List<String[]>>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private int size = 0;
+	
+	/* Adds subject predicate object, where the object is a URI. */
+	public void addResource(String subject, String predicate, String object)
+	{
+		add(uri(subject), predicate, uri(object));
+	}
+	
+	/* Adds subject predicate "value", a plain literal. */
+	public void addLiteral(String subject, String predicate, String value)
+	{
+		add(uri(subject), predicate, literal(value));
+	}
+	
+	/* Adds a triple whose subject and object are N-Triples terms. */
+	public void add(String subjectTerm, String predicate, String objectTerm)
+	{
+		lock.writeLock().lock();
+		try
+		{
+			Map<String, Set<String>> objects = byPredicate.get(predicate);
+			if (objects == null)
+			{
+				objects = new LinkedHashMap<String, Set<String>>();
+				byPredicate.put(predicate, objects);
+			}
+			Set<String> subjects = objects.get(objectTerm);
+			if (subjects == null)
+			{
+				subjects = new LinkedHashSet<String>();
+				objects.put(objectTerm, subjects);
+			}
+			if (!subjects.add(subjectTerm))
+			{  return; }
+			
+			List<String[]> pairs = bySubject.get(subjectTerm);
+			if (pairs == null)
+			{
+				pairs = new ArrayList<String[]>(4);
+				bySubject.put(subjectTerm, pairs);
+			}
+			pairs.add(new String[] {predicate, objectTerm});
+			size++;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/* Removes every triple about the subject URI, returning how many. */
+	public int removeSubject(String subject)
+	{
+		String term = uri(subject);
+		lock.writeLock().lock();
+		try
+		{
+			List<String[]> pairs = bySubject.remove(term);
+			if (pairs == null)
+			{  return 0; }
+			for (String[] pair: pairs)
+			{
+				Map<String, Set<String>> objects = byPredicate.get(pair[0]);
+				Set<String> subjects = objects.get(pair[1]);
+				subjects.remove(term);
+				if (subjects.isEmpty())
+				{  objects.remove(pair[1]); }
+			}
+			size -= pairs.size();
+			return pairs.size();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	public int size()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return size;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+	
+	public void clear()
+	{
+		lock.writeLock().lock();
+		try
+		{
+			byPredicate.clear();
+			bySubject.clear();
+			size = 0;
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/*
+	 * Evaluates an iTQL select, returning one column per selected variable
+	 * with the values as N-Triples terms.  A query outside the supported
+	 * shape throws IllegalArgumentException.
+	 */
+	public TupleRows select(String query)
+	{
+		Matcher m = SELECT.matcher(query);
+		if (!m.matches())
+		{  throw new IllegalArgumentException("Unsupported query: "+query); }
+		
+		List<String> variables = new ArrayList<String>();
+		String[] selected = m.group(1).trim().split("\\s+");
+		for (int i = 0; i < selected.length; i++)
+		{
+			selected[i] = selected[i].substring(1);
+			variableIndex(variables, selected[i]);
+		}
+		List<String[]> clauses = parseWhere(m.group(2), variables);
+		
+		List<String[]> bindings = new ArrayList<String[]>();
+		bindings.add(new String[variables.size()]);
+		lock.readLock().lock();
+		try
+		{
+			for (String[] clause: clauses)
+			{
+				bindings = extend(bindings, clause, variables);
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+		
+		int[] columns = new int[selected.length];
+		for (int i = 0; i < selected.length; i++)
+		{  columns[i] = variables.indexOf(selected[i]); }
+		TupleRows rows = new TupleRows(selected, bindings.size());
+		if (m.group(3) != null)
+		{
+			final int key = variables.indexOf(m.group(3));
+			if (key < 0)
+			{  throw new IllegalArgumentException("Unknown order by variable $"+m.group(3)); }
+			Collections.sort(bindings, new Comparator<String[]>()
+			{
+				public int compare(String[] a, String[] b)
+				{  return String.valueOf(a[key]).compareTo(String.valueOf(b[key])); }
+			});
+		}
+		for (String[] binding: bindings)
+		{
+			String[] row = new String[columns.length];
+			for (int i = 0; i < columns.length; i++)
+			{  row[i] = binding[columns[i]]; }
+			rows.add(row);
+		}
+		return rows;
+	}
+	
+	/* Splits the where clause into {subject, predicate, object} patterns. */
+	private static List<String[]> parseWhere(String where, List<String> variables)
+	{
+		List<String[]> clauses = new ArrayList<String[]>();
+		Matcher clause = CLAUSE.matcher(where);
+		Matcher and = AND.matcher(where);
+		int pos = 0;
+		while (true)
+		{
+			clause.region(pos, where.length());
+			if (!clause.lookingAt())
+			{  throw new IllegalArgumentException("Unsupported pattern: "+where.substring(pos)); }
+			String subject = clause.group(1);
+			String object = clause.group(3);
+			if (clause.group(4) != null)
+			{
+				String suffix = (clause.group(5) == null) ? "" : clause.group(5);
+				object = literal(clause.group(4).replace("\\'", "'").replace("\\\\", "\\")) + suffix;
+			}
+			if (subject.startsWith("$"))
+			{  variableIndex(variables, subject.substring(1)); }
+			if (object.startsWith("$"))
+			{  variableIndex(variables, object.substring(1)); }
+			clauses.add(new String[] {subject, clause.group(2), object});
+			
+			pos = clause.end();
+			if (pos >= where.length())
+			{  break; }
+			and.region(pos, where.length());
+			if (!and.lookingAt())
+			{  throw new IllegalArgumentException("Expected \"and\" at: "+where.substring(pos)); }
+			pos = and.end();
+		}
+		return clauses;
+	}
+	
+	/* Every binding extended by the matches for one pattern. */
+	private List<String[]> extend(List<String[]> bindings, String[] clause, List<String> variables)
+	{
+		int sVar = clause[0].startsWith("$") ? variables.indexOf(clause[0].substring(1)) : -1;
+		int oVar = clause[2].startsWith("$") ? variables.indexOf(clause[2].substring(1)) : -1;
+		String predicate = clause[1];
+		Map<String, Set<String>> objects = byPredicate.get(predicate);
+		List<String[]> extended = new ArrayList<String[]>();
+		if (objects == null)
+		{  return extended; }
+		
+		for (String[] binding: bindings)
+		{
+			String subject = (sVar < 0) ? clause[0] : binding[sVar];
+			String object = (oVar < 0) ? clause[2] : binding[oVar];
+			if (subject != null)
+			{
+				List<String[]> pairs = bySubject.get(subject);
+				if (pairs == null)
+				{  continue; }
+				for (String[] pair: pairs)
+				{
+					if (pair[0].equals(predicate) && (object == null || object.equals(pair[1])))
+					{  extended.add(bind(binding, sVar, subject, oVar, pair[1])); }
+				}
+			}
+			else if (object != null)
+			{
+				Set<String> subjects = objects.get(object);
+				if (subjects == null)
+				{  continue; }
+				for (String s: subjects)
+				{  extended.add(bind(binding, sVar, s, oVar, object)); }
+			}
+			else
+			{
+				for (Map.Entry<String, Set<String>> entry: objects.entrySet())
+				{
+					for (String s: entry.getValue())
+					{  extended.add(bind(binding, sVar, s, oVar, entry.getKey())); }
+				}
+			}
+		}
+		return extended;
+	}
+	
+	private static String[] bind(String[] binding, int sVar, String subject, int oVar, String object)
+	{
+		String[] copy = binding.clone();
+		if (sVar >= 0)
+		{  copy[sVar] = subject; }
+		if (oVar >= 0)
+		{  copy[oVar] = object; }
+		return copy;
+	}
+	
+	private static int variableIndex(List<String> variables, String name)
+	{
+		int i = variables.indexOf(name);
+		if (i < 0)
+		{
+			variables.add(name);
+			i = variables.size() - 1;
+		}
+		return i;
+	}
+	
+	/* The N-Triples term for a URI. */
+	public static String uri(String uri)
+	{
+		return uri.startsWith("<") ? uri : "<"+uri+">";
+	}
+	
+	/* The N-Triples term for a plain literal. */
+	public static String literal(String value)
+	{
+		StringBuilder sb = new StringBuilder(value.length() + 2);
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			switch (c)
+			{
+				case '"':  sb.append("\\\""); break;
+				case '\\': sb.append("\\\\"); break;
+				case '\n': sb.append("\\n"); break;
+				case '\r': sb.append("\\r"); break;
+				case '\t': sb.append("\\t"); break;
+				default:   sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
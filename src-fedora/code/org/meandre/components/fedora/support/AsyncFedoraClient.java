@@ -0,0 +1,359 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.axis.types.NonNegativeInteger;
+
+import fedora.client.FedoraClient;
+import fedora.server.access.FedoraAPIA;
+import fedora.server.management.FedoraAPIM;
+import fedora.server.types.gen.FieldSearchQuery;
+import fedora.server.types.gen.FieldSearchResult;
+import fedora.server.types.gen.MIMETypedStream;
+import fedora.server.types.gen.Property;
+
+/**
+ * 
+ * <p>
+ * Title: AsyncFedoraClient
+ * </p>
+ * 
+ * <p>
+ * Description: Starts Fedora calls without waiting for them.  Each method
+ * returns a Future at once and, if a Callback is given, calls it on the
+ * pool thread when the call completes, so a component can have many
+ * requests outstanding within one firing.  The SOAP stubs and
+ * commons-httpclient block a thread per request, so the calls run on a
+ * bounded pool; there is no point in more threads than the HTTP
+ * connection pool has connections, and requests beyond that wait in the
+ * pool's queue rather than holding a thread.  Each call is recorded in
+ * FedoraMetrics under its operation name.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class AsyncFedoraClient
+{
+	/*
+	 * Receives the outcome of a call, on the thread that ran it.  If
+	 * completed throws, failed is called with what it threw.
+	 */
+	public interface Callback<T>
+	{
+		public void completed(T result);
+		public void failed(Throwable th);
+	}
+	
+	private static final OperationMetrics GET_DISSEMINATION = FedoraMetrics.operation("getDissemination");
+	private static final OperationMetrics GET_OBJECT_XML = FedoraMetrics.operation("getObjectXML");
+	private static final OperationMetrics EXPORT = FedoraMetrics.operation("export");
+	private static final OperationMetrics INGEST = FedoraMetrics.operation("ingest");
+	private static final OperationMetrics PURGE_OBJECT = FedoraMetrics.operation("purgeObject");
+	private static final OperationMetrics FIND_OBJECTS = FedoraMetrics.operation("findObjects");
+	private static final OperationMetrics RESUME_FIND_OBJECTS = FedoraMetrics.operation("resumeFindObjects");
+	
+	private final FedoraClient fclient;
+	private final FedoraAPIA APIA;
+	private final FedoraAPIM APIM;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	
+	/*
+	 * Runs calls on a pool of its own with the given number of threads,
+	 * which shutdown() stops.  Any of the client, APIA or APIM may be null
+	 * if the calls that need it are not used.
+	 */
+	public AsyncFedoraClient(FedoraClient fclient, FedoraAPIA apia, FedoraAPIM apim, int threads)
+	{
+		this(fclient, apia, apim, newPool(threads), true);
+	}
+	
+	/* Runs calls on the caller's executor, which the caller shuts down. */
+	public AsyncFedoraClient(FedoraClient fclient, FedoraAPIA apia, FedoraAPIM apim, 
+			                 ExecutorService executor)
+	{
+		this(fclient, apia, apim, executor, false);
+	}
+	
+	private AsyncFedoraClient(FedoraClient fclient, FedoraAPIA apia, FedoraAPIM apim, 
+			                  ExecutorService executor, boolean ownsExecutor)
+	{
+		this.fclient = fclient;
+		this.APIA = apia;
+		this.APIM = apim;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+	
+	/* A fixed pool of daemon threads. */
+	public static ExecutorService newPool(int threads)
+	{
+		return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "AsyncFedoraClient");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	/* The number of calls started that have not completed. */
+	public int getInFlight()
+	{ return inFlight.get(); }
+	
+	/* Stops the pool if it is this client's own, interrupting running calls. */
+	public void shutdown()
+	{
+		if (ownsExecutor)
+		{  executor.shutdownNow(); }
+	}
+	
+	public Future<MIMETypedStream> getDissemination(final String pid, final String bDefPid, 
+			final String methodName, final Property[] parameters, final String asOfDateTime,
+			Callback<MIMETypedStream> callback)
+	{
+		return submit(GET_DISSEMINATION, new Callable<MIMETypedStream>()
+		{
+			public MIMETypedStream call() throws Exception
+			{
+				return APIA.getDissemination(pid, bDefPid, methodName, parameters, asOfDateTime);
+			}
+		}, callback);
+	}
+	
+	public Future<byte[]> getObjectXML(final String pid, Callback<byte[]> callback)
+	{
+		return submit(GET_OBJECT_XML, new Callable<byte[]>()
+		{
+			public byte[] call() throws Exception
+			{
+				return APIM.getObjectXML(pid);
+			}
+		}, callback);
+	}
+	
+	public Future<byte[]> export(final String pid, final String format, final String context,
+			                     Callback<byte[]> callback)
+	{
+		return submit(EXPORT, new Callable<byte[]>()
+		{
+			public byte[] call() throws Exception
+			{
+				return APIM.export(pid, format, context);
+			}
+		}, callback);
+	}
+	
+	public Future<String> ingest(final byte[] objectXML, final String format, final String logMessage,
+			                     Callback<String> callback)
+	{
+		return submit(INGEST, new Callable<String>()
+		{
+			public String call() throws Exception
+			{
+				return APIM.ingest(objectXML, format, logMessage);
+			}
+		}, callback);
+	}
+	
+	public Future<String> purgeObject(final String pid, final String logMessage, final boolean force,
+			                          Callback<String> callback)
+	{
+		return submit(PURGE_OBJECT, new Callable<String>()
+		{
+			public String call() throws Exception
+			{
+				String purged = APIM.purgeObject(pid, logMessage, force);
+				TupleQueryCache.getInstance().invalidateAll();
+				ObjectCache.invalidateAll(pid);
+				return purged;
+			}
+		}, callback);
+	}
+	
+	public Future<FieldSearchResult> findObjects(final String[] resultFields, final int maxResults,
+			final FieldSearchQuery query, Callback<FieldSearchResult> callback)
+	{
+		return submit(FIND_OBJECTS, new Callable<FieldSearchResult>()
+		{
+			public FieldSearchResult call() throws Exception
+			{
+				return APIA.findObjects(resultFields, new NonNegativeInteger(String.valueOf(maxResults)), query);
+			}
+		}, callback);
+	}
+	
+	public Future<FieldSearchResult> resumeFindObjects(final String sessionToken,
+			                                           Callback<FieldSearchResult> callback)
+	{
+		return submit(RESUME_FIND_OBJECTS, new Callable<FieldSearchResult>()
+		{
+			public FieldSearchResult call() throws Exception
+			{
+				return APIA.resumeFindObjects(sessionToken);
+			}
+		}, callback);
+	}
+	
+	/* A resource index tuple query, as ResourceIndex.getTuples, which records its own metrics. */
+	public Future<TupleRows> getTuples(final String lang, final String query, final boolean flush,
+			                           final long ttlMillis, Callback<TupleRows> callback)
+	{
+		return submit(null, new Callable<TupleRows>()
+		{
+			public TupleRows call() throws Exception
+			{
+				return ResourceIndex.getTuples(fclient, lang, query, flush, ttlMillis);
+			}
+		}, callback);
+	}
+	
+	private <T> Future<T> submit(OperationMetrics metrics, Callable<T> call, Callback<T> callback)
+	{
+		Call<T> task = new Call<T>(metrics, call, callback);
+		inFlight.incrementAndGet();
+		try
+		{
+			executor.execute(task);
+		}
+		catch (RuntimeException ex)
+		{
+			inFlight.decrementAndGet();
+			throw ex;
+		}
+		return task;
+	}
+	
+	/* The bytes a result carried, for the metrics. */
+	static long sizeOf(Object result)
+	{
+		if (result instanceof byte[])
+		{  return ((byte[])result).length; }
+		if (result instanceof MIMETypedStream && ((MIMETypedStream)result).getStream() != null)
+		{  return ((MIMETypedStream)result).getStream().length; }
+		return 0;
+	}
+	
+	/* A started call: times it, and reports it to the callback when done. */
+	private class Call<T> extends FutureTask<T>
+	{
+		private final Callback<T> callback;
+		
+		Call(final OperationMetrics metrics, final Callable<T> call, Callback<T> callback)
+		{
+			super(new Callable<T>()
+			{
+				public T call() throws Exception
+				{
+					if (metrics == null)
+					{  return call.call(); }
+					long start = metrics.start();
+					try
+					{
+						T result = call.call();
+						metrics.success(start, sizeOf(result));
+						return result;
+					}
+					catch (Exception ex)
+					{
+						metrics.failure(start);
+						throw ex;
+					}
+				}
+			});
+			this.callback = callback;
+		}
+		
+		protected void done()
+		{
+			inFlight.decrementAndGet();
+			if (callback == null || isCancelled())
+			{  return; }
+			T result = null;
+			try
+			{
+				result = get();
+			}
+			catch (ExecutionException ex)
+			{
+				callback.failed(ex.getCause());
+				return;
+			}
+			catch (InterruptedException ex)
+			{
+				callback.failed(ex);
+				return;
+			}
+			// nothing above done() sees an exception thrown here, so a
+			// caller waiting on the callback would never hear of it
+			try
+			{
+				callback.completed(result);
+			}
+			catch (Throwable th)
+			{
+				callback.failed(th);
+			}
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+/**
+ * 
+ * <p>
+ * Title: BulkStats
+ * </p>
+ * 
+ * <p>
+ * Description: Aggregate counts and throughput for a bulk operation.
+ * Results may be recorded from several worker threads.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class BulkStats
+{
+	private final String operation;
+	private final long startMillis;
+	private long endMillis = 0;
+	private long succeeded = 0;
+	private long failed = 0;
+	private long bytes = 0;
+	private long totalLatencyMillis = 0;
+	
+	public BulkStats(String operation)
+	{
+		this.operation = operation;
+		this.startMillis = System.currentTimeMillis();
+	}
+	
+	public synchronized void record(OperationResult result)
+	{
+		if (result.isSuccess())
+		{  succeeded++; }
+		else
+		{  failed++; }
+		bytes += result.getBytes();
+		totalLatencyMillis += result.getLatencyMillis();
+	}
+	
+	/* Stops the clock used for the throughput figures. */
+	public synchronized void finish()
+	{
+		endMillis = System.currentTimeMillis();
+	}
+	
+	public synchronized long getSucceeded()
+	{ return succeeded; }
+	
+	public synchronized long getFailed()
+	{ return failed; }
+	
+	public synchronized long getBytes()
+	{ return bytes; }
+	
+	public synchronized long getElapsedMillis()
+	{
+		long end = (endMillis == 0) ? System.currentTimeMillis() : endMillis;
+		return Math.max(1, end - startMillis);
+	}
+	
+	/* Completed operations (successful or not) per second. */
+	public synchronized double getObjectsPerSecond()
+	{
+		return (succeeded + failed) * 1000.0 / getElapsedMillis();
+	}
+	
+	public synchronized double getBytesPerSecond()
+	{
+		return bytes * 1000.0 / getElapsedMillis();
+	}
+	
+	public synchronized String toString()
+	{
+		long count = succeeded + failed;
+		return String.format("%s: %d objects (%d ok, %d failed), %d bytes in %d ms; " +
+				"%.1f objects/s, %.1f KB/s, mean latency %d ms",
+				operation, count, succeeded, failed, bytes, getElapsedMillis(),
+				getObjectsPerSecond(), getBytesPerSecond() / 1024.0,
+				count == 0 ? 0 : totalLatencyMillis / count);
+	}
+}
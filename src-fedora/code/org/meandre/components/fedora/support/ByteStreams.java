@@ -0,0 +1,217 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 
+ * <p>
+ * Title: ByteStreams
+ * </p>
+ * 
+ * <p>
+ * Description: Byte handling helpers shared by the ingest and export
+ * components.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class ByteStreams
+{
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	
+	private ByteStreams()
+	{}
+	
+	/*
+	 * Reads a whole file into a single array of exactly the file's size,
+	 * straight from its FileChannel in chunks of chunkSize bytes.  Unlike
+	 * piping through a ByteArrayOutputStream there is no growing buffer and
+	 * no final copy, so the heap holds the file once.
+	 */
+	public static byte[] readFile(File file, int chunkSize)
+	throws IOException
+	{
+		return readFile(file, chunkSize, null);
+	}
+	
+	/*
+	 * Reads a whole file as above, adding each chunk to the checksums, if
+	 * given, as soon as it has been read.
+	 */
+	public static byte[] readFile(File file, int chunkSize, Checksums checksums)
+	throws IOException
+	{
+		if (chunkSize <= 0)
+		{  chunkSize = DEFAULT_CHUNK_SIZE; }
+		
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+			{
+				throw new IOException("File too large to ingest: "+file+" ("+size+" bytes)");
+			}
+			
+			byte[] bytes = new byte[(int)size];
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.position() < bytes.length)
+			{
+				buffer.limit(Math.min(bytes.length, buffer.position() + chunkSize));
+				int position = buffer.position();
+				if (channel.read(buffer) < 0)
+				{
+					throw new IOException("Unexpected end of file: "+file);
+				}
+				if (checksums != null)
+				{  checksums.update(bytes, position, buffer.position() - position); }
+			}
+			return bytes;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	/*
+	 * Reads a stream to its end.  With a known length (>= 0) the bytes are
+	 * read straight into an array of that size; otherwise the array grows
+	 * by doubling and is trimmed once at the end.
+	 */
+	public static byte[] readStream(InputStream in, int length, int chunkSize)
+	throws IOException
+	{
+		if (chunkSize <= 0)
+		{  chunkSize = DEFAULT_CHUNK_SIZE; }
+		
+		byte[] bytes = new byte[(length >= 0) ? length : chunkSize];
+		int size = 0;
+		while (true)
+		{
+			if (size == bytes.length)
+			{
+				if (length >= 0)
+				{
+					if (in.read() >= 0)
+					{  throw new IOException("Stream longer than its length of "+length+" bytes"); }
+					return bytes;
+				}
+				byte[] grown = new byte[bytes.length * 2];
+				System.arraycopy(bytes, 0, grown, 0, size);
+				bytes = grown;
+			}
+			int n = in.read(bytes, size, Math.min(chunkSize, bytes.length - size));
+			if (n < 0)
+			{  break; }
+			size += n;
+		}
+		if (length >= 0 && size < length)
+		{
+			throw new IOException("Unexpected end of stream after "+size+" of "+length+" bytes");
+		}
+		if (size == bytes.length)
+		{  return bytes; }
+		byte[] trimmed = new byte[size];
+		System.arraycopy(bytes, 0, trimmed, 0, size);
+		return trimmed;
+	}
+	
+	/*
+	 * The character encoding of an XML document: from its byte order mark,
+	 * else from the encoding in its XML declaration, else UTF-8 as the XML
+	 * specification requires.  Only the first bytes are looked at.
+	 */
+	public static String xmlEncoding(byte[] bytes)
+	{
+		int n = bytes.length;
+		if (n >= 3 && (bytes[0] & 0xFF) == 0xEF && (bytes[1] & 0xFF) == 0xBB && (bytes[2] & 0xFF) == 0xBF)
+		{  return "UTF-8"; }
+		if (n >= 2 && (bytes[0] & 0xFF) == 0xFE && (bytes[1] & 0xFF) == 0xFF)
+		{  return "UTF-16BE"; }
+		if (n >= 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xFE)
+		{  return "UTF-16LE"; }
+		
+		// the declaration is ASCII in every encoding a FOXML document uses
+		int end = Math.min(n, 256);
+		StringBuilder head = new StringBuilder(end);
+		for (int i = 0; i < end; i++)
+		{
+			char c = (char)(bytes[i] & 0xFF);
+			head.append(c);
+			if (c == '>')
+			{  break; }
+		}
+		String decl = head.toString();
+		if (!decl.startsWith("<?xml"))
+		{  return "UTF-8"; }
+		int at = decl.indexOf("encoding");
+		if (at < 0)
+		{  return "UTF-8"; }
+		int quote = at + 8;
+		while (quote < decl.length() && decl.charAt(quote) != '"' && decl.charAt(quote) != '\'')
+		{  quote++; }
+		if (quote >= decl.length())
+		{  return "UTF-8"; }
+		int close = decl.indexOf(decl.charAt(quote), quote + 1);
+		if (close < 0)
+		{  return "UTF-8"; }
+		return decl.substring(quote + 1, close).trim();
+	}
+}
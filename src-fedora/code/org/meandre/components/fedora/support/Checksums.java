@@ -0,0 +1,241 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 
+ * <p>
+ * Title: Checksums
+ * </p>
+ * 
+ * <p>
+ * Description: Computes one or more digests of the bytes passed to it, so
+ * content can be checksummed while it is being read or written instead of
+ * in a second pass.  Types use the names Fedora records for datastreams
+ * (MD5, SHA-1, SHA-256, SHA-384, SHA-512).  As a DatastreamReader.Sink it
+ * accepts content in order only; a gap or an overlap is an error.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class Checksums implements DatastreamReader.Sink
+{
+	/* The checksum type Fedora records when checksums are turned off. */
+	public static final String DISABLED = "DISABLED";
+	
+	/* The checksum Fedora records when none has been computed. */
+	public static final String NONE = "none";
+	
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	private final String[] types;
+	private final MessageDigest[] digests;
+	private long length = 0;
+	private String[] values = null;
+	
+	public Checksums(String[] types)
+	throws NoSuchAlgorithmException
+	{
+		this.types = new String[types.length];
+		this.digests = new MessageDigest[types.length];
+		for (int i = 0; i < types.length; i++)
+		{
+			this.types[i] = normalize(types[i]);
+			this.digests[i] = newDigest(this.types[i]);
+		}
+	}
+	
+	/*
+	 * Splits a space or comma separated list of checksum types, checking
+	 * that each is supported.  DISABLED and blank entries are dropped, so
+	 * a blank list turns checksumming off.
+	 */
+	public static String[] parseTypes(String list)
+	throws NoSuchAlgorithmException
+	{
+		List<String> types = new ArrayList<String>();
+		if (list != null)
+		{
+			for (String type: list.trim().split("[\\s,]+"))
+			{
+				type = normalize(type);
+				if (type.length() > 0 && !type.equals(DISABLED) && !types.contains(type))
+				{
+					newDigest(type);
+					types.add(type);
+				}
+			}
+		}
+		return types.toArray(new String[types.size()]);
+	}
+	
+	/* A digest for a Fedora checksum type. */
+	public static MessageDigest newDigest(String type)
+	throws NoSuchAlgorithmException
+	{
+		return MessageDigest.getInstance(normalize(type));
+	}
+	
+	/* True if Fedora has recorded a checksum that can be compared. */
+	public static boolean isRecorded(String type, String checksum)
+	{
+		return type != null && checksum != null && checksum.trim().length() > 0
+			&& !type.equalsIgnoreCase(DISABLED) && !checksum.equalsIgnoreCase(NONE);
+	}
+	
+	/* Lower case hex, the form Fedora records checksums in. */
+	public static String hex(byte[] bytes)
+	{
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++)
+		{
+			chars[2*i] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[2*i + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+	
+	/* FedoraConstants.SHA385 is a misspelling of SHA-384. */
+	private static String normalize(String type)
+	{
+		type = type.trim().toUpperCase();
+		return type.equals("SHA-385") ? "SHA-384" : type;
+	}
+	
+	public String[] getTypes()
+	{ return types.clone(); }
+	
+	/* True if no types were asked for, so nothing is computed. */
+	public boolean isEmpty()
+	{ return types.length == 0; }
+	
+	/* The number of bytes digested so far. */
+	public synchronized long getLength()
+	{ return length; }
+	
+	public synchronized void update(byte[] bytes, int off, int len)
+	{
+		if (values != null)
+		{  throw new IllegalStateException("Checksums already computed"); }
+		for (MessageDigest digest: digests)
+		{
+			digest.update(bytes, off, len);
+		}
+		length += len;
+	}
+	
+	public synchronized void write(long offset, byte[] bytes, int off, int len)
+	throws IOException
+	{
+		if (offset != length)
+		{
+			throw new IOException("Content for checksums must arrive in order: expected byte "+
+					length+", got "+offset);
+		}
+		update(bytes, off, len);
+	}
+	
+	/*
+	 * The hex checksum of the given type, or null if it was not asked for.
+	 * The first call finishes every digest; no more bytes can be added.
+	 */
+	public synchronized String getValue(String type)
+	{
+		if (values == null)
+		{
+			values = new String[digests.length];
+			for (int i = 0; i < digests.length; i++)
+			{
+				values[i] = hex(digests[i].digest());
+			}
+		}
+		type = normalize(type);
+		for (int i = 0; i < types.length; i++)
+		{
+			if (types[i].equals(type))
+			{  return values[i]; }
+		}
+		return null;
+	}
+	
+	/*
+	 * Compares the computed checksum with the one Fedora recorded.  Returns
+	 * null if they match, or a description of the mismatch.
+	 */
+	public String mismatch(String type, String recorded)
+	{
+		String computed = getValue(type);
+		if (computed == null)
+		{  return "No "+type+" checksum computed"; }
+		if (computed.equalsIgnoreCase(recorded.trim()))
+		{  return null; }
+		return type+" recorded "+recorded+", computed "+computed;
+	}
+	
+	/* TYPE:value pairs separated by spaces; finishes the digests like getValue. */
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (String type: types)
+		{
+			if (sb.length() > 0)
+			{  sb.append(' '); }
+			sb.append(type).append(':').append(getValue(type));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 
+ * <p>
+ * Title: CollectionTree
+ * </p>
+ * 
+ * <p>
+ * Description: A super collection, its collections and the works in each
+ * collection, in the order they were added.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class CollectionTree
+{
+	private final String superCollection;
+	private final Map<String, List<String>> members = new LinkedHashMap<String, List<String>>();
+	private int workCount = 0;
+	
+	public CollectionTree(String superCollection)
+	{
+		this.superCollection = superCollection;
+	}
+	
+	public String getSuperCollection()
+	{ return superCollection; }
+	
+	/* Adds a collection with no works yet; a known collection is left as is. */
+	public void addCollection(String collection)
+	{
+		if (!members.containsKey(collection))
+		{
+			members.put(collection, new ArrayList<String>());
+		}
+	}
+	
+	public void addWork(String collection, String work)
+	{
+		List<String> works = members.get(collection);
+		if (works == null)
+		{
+			works = new ArrayList<String>();
+			members.put(collection, works);
+		}
+		works.add(work);
+		workCount++;
+	}
+	
+	/* The collection ids. */
+	public ArrayList<String> getCollections()
+	{
+		return new ArrayList<String>(members.keySet());
+	}
+	
+	/* The works of a collection; empty for an unknown collection. */
+	public List<String> getWorks(String collection)
+	{
+		List<String> works = members.get(collection);
+		if (works == null)
+		{  return Collections.emptyList(); }
+		return Collections.unmodifiableList(works);
+	}
+	
+	public Map<String, List<String>> getMembers()
+	{
+		return Collections.unmodifiableMap(members);
+	}
+	
+	public int getCollectionCount()
+	{ return members.size(); }
+	
+	public int getWorkCount()
+	{ return workCount; }
+	
+	public String toString()
+	{
+		return superCollection + ": " + members.size() + " collections, " + workCount + " works";
+	}
+}
@@ -0,0 +1,347 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Map;
+
+/**
+ * 
+ * <p>
+ * Title: CsvTupleReader
+ * </p>
+ * 
+ * <p>
+ * Description: Reads the CSV tuple format written by the Fedora resource
+ * index (trippi's CSVTupleWriter) one row at a time.  The header row gives
+ * the column names; each value is a bare URI or the lexical form of a
+ * literal, and an unbound value is written as null.  The server abbreviates
+ * URIs that start with one of its aliases (e.g. rdf:type), so those are
+ * expanded again with the alias map given.  The format cannot tell a
+ * literal from a URI, so a literal that happens to start with an alias and
+ * a colon is expanded too, and a literal null reads as unbound; use the
+ * SPARQL result where that matters.  Unlike the SPARQL XML result, no
+ * per-row map or node objects are created.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class CsvTupleReader
+{
+	private static final int BUFFER_SIZE = 8192;
+	
+	/* Written for an unbound value. */
+	private static final String UNBOUND = "null";
+	
+	/* Returned by readRecord for a blank line. */
+	private static final String[] BLANK = new String[0];
+	
+	private final Reader in;
+	private final String[] aliasNames;
+	private final String[] aliasURIs;
+	private final char[] buf = new char[BUFFER_SIZE];
+	private int pos = 0;
+	private int limit = 0;
+	private boolean eof = false;
+	
+	private final StringBuilder field = new StringBuilder(128);
+	private boolean quoted = false;
+	private String[] names;
+	
+	public CsvTupleReader(InputStream in)
+	throws IOException
+	{
+		this(in, null);
+	}
+	
+	public CsvTupleReader(Reader in)
+	{
+		this(in, null);
+	}
+	
+	/*
+	 * With the alias map (alias name to URI prefix) the server abbreviates
+	 * URIs with.
+	 */
+	public CsvTupleReader(InputStream in, Map<String, String> aliases)
+	throws IOException
+	{
+		this(new InputStreamReader(in, "UTF-8"), aliases);
+	}
+	
+	public CsvTupleReader(Reader in, Map<String, String> aliases)
+	{
+		this.in = in;
+		int size = (aliases == null) ? 0 : aliases.size();
+		aliasNames = new String[size];
+		aliasURIs = new String[size];
+		if (size > 0)
+		{
+			int i = 0;
+			for (Map.Entry<String, String> alias: aliases.entrySet())
+			{
+				aliasNames[i] = alias.getKey();
+				aliasURIs[i] = alias.getValue();
+				i++;
+			}
+		}
+	}
+	
+	/* The column names from the header row. */
+	public String[] names()
+	throws IOException
+	{
+		if (names == null)
+		{
+			String[] header = readRecord(-1);
+			names = (header == null) ? new String[0] : header;
+		}
+		return names;
+	}
+	
+	/*
+	 * The next row with one value per column (null where a column is
+	 * unbound), or null at the end of the result.
+	 */
+	public String[] next()
+	throws IOException
+	{
+		int columns = names().length;
+		String[] row = readRecord(columns);
+		while (row == BLANK)
+		{
+			row = readRecord(columns);
+		}
+		if (row != null)
+		{
+			for (int i = 0; i < row.length; i++)
+			{
+				row[i] = expand(row[i]);
+			}
+		}
+		return row;
+	}
+	
+	/*
+	 * Reads every remaining row.
+	 */
+	public TupleRows readAll()
+	throws IOException
+	{
+		TupleRows rows = new TupleRows(names());
+		String[] row = null;
+		while ((row = next()) != null)
+		{
+			rows.add(row);
+		}
+		return rows;
+	}
+	
+	public void close()
+	{
+		try
+		{  in.close(); }
+		catch (IOException ignore)
+		{}
+	}
+	
+	/*
+	 * Reads one CSV record.  With columns > 0 the returned array has that
+	 * length; otherwise it has one slot per field read.  An unquoted null
+	 * is returned as null.  Returns null at the end of the input, and BLANK
+	 * for an empty line where more than one column is expected.
+	 */
+	private String[] readRecord(int columns)
+	throws IOException
+	{
+		if (!fill())
+		{  return null; }
+		
+		String[] values = new String[(columns > 0) ? columns : 8];
+		int count = 0;
+		while (true)
+		{
+			boolean more = readField();
+			if (count == values.length)
+			{
+				if (columns > 0)
+				{  throw new IOException("Tuple row has more than " + columns + " values"); }
+				String[] grown = new String[values.length * 2];
+				System.arraycopy(values, 0, grown, 0, count);
+				values = grown;
+			}
+			values[count++] = (!quoted && isUnbound()) ? null : field.toString();
+			if (!more)
+			{  break; }
+		}
+		
+		if (columns > 0)
+		{
+			if (columns > 1 && count == 1 && !quoted && field.length() == 0)
+			{  return BLANK; }
+			return values;
+		}
+		String[] exact = new String[count];
+		System.arraycopy(values, 0, exact, 0, count);
+		return exact;
+	}
+	
+	/*
+	 * Reads one field into the field buffer.  Returns true if another field
+	 * follows on the same record.
+	 */
+	private boolean readField()
+	throws IOException
+	{
+		field.setLength(0);
+		quoted = false;
+		if (!fill())
+		{  return false; }
+		
+		if (buf[pos] == '"')
+		{
+			quoted = true;
+			pos++;
+			while (true)
+			{
+				if (!fill())
+				{  throw new IOException("Unterminated quoted value in tuple result"); }
+				char c = buf[pos++];
+				if (c != '"')
+				{
+					field.append(c);
+					continue;
+				}
+				if (fill() && buf[pos] == '"')
+				{
+					field.append('"');
+					pos++;
+					continue;
+				}
+				break;
+			}
+		}
+		
+		while (fill())
+		{
+			char c = buf[pos++];
+			if (c == ',')
+			{  return true; }
+			if (c == '\n')
+			{  return false; }
+			if (c == '\r')
+			{
+				if (fill() && buf[pos] == '\n')
+				{  pos++; }
+				return false;
+			}
+			field.append(c);
+		}
+		return false;
+	}
+	
+	private boolean fill()
+	throws IOException
+	{
+		if (pos < limit)
+		{  return true; }
+		if (eof)
+		{  return false; }
+		int n = in.read(buf, 0, buf.length);
+		while (n == 0)
+		{
+			n = in.read(buf, 0, buf.length);
+		}
+		if (n < 0)
+		{
+			eof = true;
+			return false;
+		}
+		pos = 0;
+		limit = n;
+		return true;
+	}
+	
+	private boolean isUnbound()
+	{
+		if (field.length() != UNBOUND.length())
+		{  return false; }
+		for (int i = 0; i < UNBOUND.length(); i++)
+		{
+			if (field.charAt(i) != UNBOUND.charAt(i))
+			{  return false; }
+		}
+		return true;
+	}
+	
+	/*
+	 * Expands a value the server abbreviated as alias:rest to the full URI.
+	 * Anything else is returned as is.
+	 */
+	String expand(String value)
+	{
+		if (value == null)
+		{  return null; }
+		for (int i = 0; i < aliasNames.length; i++)
+		{
+			String alias = aliasNames[i];
+			if (value.length() > alias.length() && value.charAt(alias.length()) == ':'
+				&& value.startsWith(alias))
+			{
+				return aliasURIs[i] + value.substring(alias.length() + 1);
+			}
+		}
+		return value;
+	}
+}
@@ -0,0 +1,246 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.util.concurrent.Callable;
+
+
+/**
+ * 
+ * <p>
+ * Title: DatastreamReader
+ * </p>
+ * 
+ * <p>
+ * Description: Reads the content of one datastream over API-A-LITE in
+ * byte ranges, handing the bytes to a Sink as they arrive, so a large
+ * managed datastream is never held in memory whole.  Ranges can be read
+ * concurrently by different threads.  A range that fails part way is
+ * retried from the first byte not yet received, not from its start.
+ * Servers that ignore the Range header are handled by reading the whole
+ * content once.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class DatastreamReader
+{
+	public static final int DEFAULT_RANGE_SIZE = 4 * 1024 * 1024;
+	
+	/* Receives content; calls for different ranges may come from different threads. */
+	public interface Sink
+	{
+		public void write(long offset, byte[] bytes, int off, int len) throws IOException;
+	}
+	
+	private static final OperationMetrics GET_DATASTREAM_RANGE = FedoraMetrics.operation("getDatastreamRange");
+	
+	private final RestTransport transport;
+	private final String locator;
+	private final RetryPolicy retry;
+	private final int bufferSize;
+	
+	private boolean probed = false;
+	private long length = -1;
+	private boolean ranged = false;
+	
+	public DatastreamReader(RestTransport transport, String pid, String dsID, String asOfDateTime,
+			                RetryPolicy retry)
+	{
+		this.transport = transport;
+		this.locator = RestTransport.datastreamLocator(pid, dsID, asOfDateTime);
+		this.retry = retry;
+		this.bufferSize = ByteStreams.DEFAULT_CHUNK_SIZE;
+	}
+	
+	/*
+	 * Asks for the first byte to learn the content length and whether the
+	 * server serves ranges.  Returns the length, or -1 if it is unknown.
+	 * Empty content has no first byte, so the server answers 416 with a
+	 * length of 0; a server that ignores the range starts sending the
+	 * whole content, and the connection is dropped rather than drained.
+	 */
+	public synchronized long probe()
+	throws Exception
+	{
+		if (!probed)
+		{
+			retry.call(new Callable<Object>()
+			{
+				public Object call() throws Exception
+				{
+					RestTransport.RangeInputStream in = transport.openRange(locator, 0, 0);
+					long empty = RestTransport.unsatisfiedLength(in);
+					if (empty >= 0)
+					{
+						in.close();
+						ranged = true;
+						length = empty;
+						return null;
+					}
+					long[] range = RestTransport.contentRange(in);
+					ranged = (range != null);
+					length = ranged ? range[2] : in.getContentLength();
+					if (ranged)
+					{  in.close(); }
+					else
+					{  in.abort(); }
+					return null;
+				}
+			});
+			probed = true;
+		}
+		return length;
+	}
+	
+	/* True if the server answered the probe with a partial response. */
+	public synchronized boolean isRanged()
+	{ return ranged; }
+	
+	/*
+	 * Reads the bytes first to last, inclusive, into the sink; a negative
+	 * last reads to the end.  Each attempt after a failure asks only for
+	 * the bytes not yet written to the sink.  Content that ends before the
+	 * range, or before the length the server announced, is a failure.
+	 */
+	public void read(final long first, final long last, final Sink sink)
+	throws Exception
+	{
+		final long[] position = {first};
+		retry.call(new Callable<Object>()
+		{
+			public Object call() throws Exception
+			{
+				long start = GET_DATASTREAM_RANGE.start();
+				long received = 0;
+				RestTransport.RangeInputStream in = null;
+				boolean consumed = false;
+				try
+				{
+					in = transport.openRange(locator, position[0], last);
+					long total = RestTransport.unsatisfiedLength(in);
+					if (total >= 0)
+					{
+						// the range starts at or past the end of the content
+						if (last >= 0 || position[0] < total)
+						{  throw new IOException("Range "+position[0]+"-"+last+" not satisfiable, length "+total); }
+						consumed = true;
+						GET_DATASTREAM_RANGE.success(start, 0);
+						return null;
+					}
+					// a server that ignores the range sends the content from byte 0
+					long[] range = RestTransport.contentRange(in);
+					long at = (range != null) ? range[0] : 0;
+					long end = (in.getContentLength() >= 0) ? at + in.getContentLength() : -1;
+					skip(in, position[0] - at);
+					
+					byte[] buffer = new byte[bufferSize];
+					long remaining = (last >= 0) ? last - position[0] + 1 : Long.MAX_VALUE;
+					while (remaining > 0)
+					{
+						int n = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+						if (n < 0)
+						{  break; }
+						sink.write(position[0], buffer, 0, n);
+						position[0] += n;
+						remaining -= n;
+						received += n;
+					}
+					if (last >= 0 && remaining > 0)
+					{
+						throw new SocketException("Content ended at byte "+position[0]+
+								" before the end of range "+first+"-"+last);
+					}
+					if (last < 0 && end >= 0 && position[0] < end)
+					{
+						throw new SocketException("Content ended at byte "+position[0]+
+								" before its length "+end);
+					}
+					// the rest of a range the server ignored is still to come
+					consumed = (range != null || last < 0);
+					GET_DATASTREAM_RANGE.success(start, received);
+					return null;
+				}
+				catch (Exception ex)
+				{
+					GET_DATASTREAM_RANGE.failure(start);
+					throw ex;
+				}
+				finally
+				{
+					if (in != null && consumed)
+					{  in.close(); }
+					else if (in != null)
+					{  in.abort(); }
+				}
+			}
+		});
+	}
+	
+	private static void skip(InputStream in, long count)
+	throws IOException
+	{
+		while (count > 0)
+		{
+			long n = in.skip(count);
+			if (n <= 0)
+			{
+				if (in.read() < 0)
+				{  throw new SocketException("Content ended while skipping to a range"); }
+				n = 1;
+			}
+			count -= n;
+		}
+	}
+}
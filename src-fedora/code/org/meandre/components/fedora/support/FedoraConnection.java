@@ -0,0 +1,209 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+
+import fedora.client.FedoraClient;
+import fedora.server.access.FedoraAPIA;
+import fedora.server.management.FedoraAPIM;
+
+/**
+ * 
+ * <p>
+ * Title: FedoraConnection
+ * </p>
+ * 
+ * <p>
+ * Description: A cached Fedora client together with its APIA/APIM stubs.
+ * Instances are handed out by the FedoraConnectionRegistry and are shared
+ * by every component that connects to the same server as the same user.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FedoraConnection
+{
+	private static final OperationMetrics DESCRIBE_REPOSITORY = FedoraMetrics.operation("describeRepository");
+	
+	/* The registry key: protocol://host:port/fedora#user */
+	private final String key;
+	
+	/* The password the client was built with. */
+	private final String password;
+	
+	private final FedoraClient fclient;
+	private final FedoraAPIA APIA;
+	private final FedoraAPIM APIM;
+	
+	/* Last time (System.currentTimeMillis) the connection was handed out. */
+	private volatile long lastUsed;
+	
+	/* Last time the connection passed a health check. */
+	private volatile long lastValidated;
+	
+	/* Unused for this long, the connection is dropped from the registry. */
+	private volatile long idleTimeout;
+	
+	/* Unused for this long, the connection is health checked before reuse. */
+	private volatile long validateAfter;
+	
+	FedoraConnection(String key, String password, FedoraClient fclient,
+			         FedoraAPIA apia, FedoraAPIM apim, long idleTimeout, long validateAfter)
+	{
+		this.key = key;
+		this.password = password;
+		this.fclient = fclient;
+		this.APIA = apia;
+		this.APIM = apim;
+		this.idleTimeout = idleTimeout;
+		this.validateAfter = validateAfter;
+		this.lastUsed = System.currentTimeMillis();
+		this.lastValidated = this.lastUsed;
+	}
+	
+	public String getKey()
+	{ return key; }
+	
+	public FedoraClient getClient()
+	{ return fclient; }
+	
+	public FedoraAPIA getAPIA()
+	{ return APIA; }
+	
+	public FedoraAPIM getAPIM()
+	{ return APIM; }
+	
+	public long getLastUsed()
+	{ return lastUsed; }
+	
+	public long getLastValidated()
+	{ return lastValidated; }
+	
+	public long getIdleTimeout()
+	{ return idleTimeout; }
+	
+	public long getValidateAfter()
+	{ return validateAfter; }
+	
+	/*
+	 * Merges the settings of another component sharing the connection, so
+	 * that each gets at least what it asked for: the longest idle timeout
+	 * and the most frequent health check.
+	 */
+	synchronized void share(long idleTimeout, long validateAfter)
+	{
+		this.idleTimeout = Math.max(this.idleTimeout, idleTimeout);
+		this.validateAfter = Math.min(this.validateAfter, validateAfter);
+	}
+	
+	boolean hasPassword(String pass)
+	{
+		return (password == null) ? pass == null : password.equals(pass);
+	}
+	
+	void touch()
+	{
+		lastUsed = System.currentTimeMillis();
+	}
+	
+	/*
+	 * Performs a cheap round-trip (describeRepository) to verify that the
+	 * cached stubs still talk to a live server.
+	 */
+	public boolean isHealthy()
+	{
+		long start = DESCRIBE_REPOSITORY.start();
+		try
+		{
+			APIA.describeRepository();
+			DESCRIBE_REPOSITORY.success(start, 0);
+			lastValidated = System.currentTimeMillis();
+			return true;
+		}
+		catch (Throwable th)
+		{
+			DESCRIBE_REPOSITORY.failure(start);
+			return false;
+		}
+	}
+	
+	/*
+	 * Closes pooled HTTP connections that have been idle longer than
+	 * the given number of milliseconds.
+	 */
+	public void closeIdleConnections(long idleMillis)
+	{
+		HttpConnectionManager manager = 
+			fclient.getHttpClient().getHttpConnectionManager();
+		manager.closeIdleConnections(idleMillis);
+	}
+	
+	/*
+	 * Releases every pooled HTTP connection held by this client.  Only for
+	 * a client that was never handed out: one that was may still be in use
+	 * by a running flow, and could not open connections afterwards.
+	 */
+	void shutdown()
+	{
+		HttpConnectionManager manager = 
+			fclient.getHttpClient().getHttpConnectionManager();
+		if (manager instanceof MultiThreadedHttpConnectionManager)
+		{
+			((MultiThreadedHttpConnectionManager)manager).shutdown();
+		}
+		else
+		{
+			manager.closeIdleConnections(0);
+		}
+	}
+}
@@ -0,0 +1,365 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Logger;
+
+import fedora.client.FedoraClient;
+import fedora.server.access.FedoraAPIA;
+import fedora.server.management.FedoraAPIM;
+
+/**
+ * 
+ * <p>
+ * Title: FedoraConnectionRegistry
+ * </p>
+ * 
+ * <p>
+ * Description: A process-wide registry of Fedora connections keyed by
+ * protocol, host, port and user.  Each entry holds one FedoraClient (whose
+ * multi-threaded HTTP connection manager is bounded and kept alive between
+ * calls) and its APIA/APIM stubs, so repeated flow runs do not pay for stub
+ * creation and connection setup every time they fire.  Connections that sit
+ * idle are dropped from the registry by a background timer, and connections
+ * that have been idle for a while are health checked before they are handed
+ * out again.  A dropped client only has its pooled sockets closed, never its
+ * connection manager shut down, since a flow that took it earlier may still
+ * be using it.  The idle timeout and health check interval are kept per
+ * connection; the registry-wide values are the defaults.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FedoraConnectionRegistry
+{
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 40;
+	public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000L;
+	public static final long DEFAULT_VALIDATE_AFTER = 30 * 1000L;
+	
+	private static final FedoraConnectionRegistry registry = 
+		new FedoraConnectionRegistry();
+	
+	private static final Logger logger = 
+		Logger.getLogger(FedoraConnectionRegistry.class.getName());
+	
+	private final Map<String, FedoraConnection> connections = 
+		new HashMap<String, FedoraConnection>();
+	
+	/* The default time unused before a connection is dropped from the registry. */
+	private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	
+	/* The default time unused before a connection is health checked on reuse. */
+	private long validateAfter = DEFAULT_VALIDATE_AFTER;
+	
+	private Timer evictor = null;
+	private long evictorPeriod = 0;
+	
+	private FedoraConnectionRegistry()
+	{}
+	
+	public static FedoraConnectionRegistry getInstance()
+	{
+		return registry;
+	}
+	
+	public static String makeKey(String protocol, String host, String port, String user)
+	{
+		return makeBaseURL(protocol, host, port)+"#"+user;
+	}
+	
+	public static String makeBaseURL(String protocol, String host, String port)
+	{
+		return protocol+"://"+host+":"+port+"/fedora";
+	}
+	
+	public synchronized void setIdleTimeout(long millis)
+	{
+		idleTimeout = millis;
+	}
+	
+	public synchronized long getIdleTimeout()
+	{ return idleTimeout; }
+	
+	public synchronized void setValidateAfter(long millis)
+	{
+		validateAfter = millis;
+	}
+	
+	public synchronized long getValidateAfter()
+	{ return validateAfter; }
+	
+	public FedoraConnection getConnection(String protocol, String host, String port,
+			                              String user, String pass)
+	throws Exception
+	{
+		return getConnection(protocol, host, port, user, pass,
+				DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_TOTAL_CONNECTIONS);
+	}
+	
+	public FedoraConnection getConnection(String protocol, String host, String port,
+			                              String user, String pass,
+			                              int maxPerHost, int maxTotal)
+	throws Exception
+	{
+		long idle = 0;
+		long validate = 0;
+		synchronized (this)
+		{
+			idle = idleTimeout;
+			validate = validateAfter;
+		}
+		return getConnection(protocol, host, port, user, pass, maxPerHost, maxTotal, idle, validate);
+	}
+	
+	/*
+	 * Returns the cached connection for the given server and user, creating
+	 * it on first use.  A cached connection that has been idle longer than
+	 * its validateAfter is health checked and rebuilt if the check fails.  A
+	 * different password for the same user replaces the cached entry.  When
+	 * several callers share a connection, it keeps the longest idle timeout
+	 * and the shortest validateAfter any of them asked for.
+	 */
+	public FedoraConnection getConnection(String protocol, String host, String port,
+			                              String user, String pass,
+			                              int maxPerHost, int maxTotal,
+			                              long idleTimeout, long validateAfter)
+	throws Exception
+	{
+		String key = makeKey(protocol, host, port, user);
+		FedoraConnection conn = null;
+		boolean validate = false;
+		
+		synchronized (this)
+		{
+			conn = connections.get(key);
+			if (conn != null && !conn.hasPassword(pass))
+			{
+				remove(key);
+				conn = null;
+			}
+			if (conn != null)
+			{
+				conn.share(idleTimeout, validateAfter);
+				long now = System.currentTimeMillis();
+				validate = (now - conn.getLastUsed()) > conn.getValidateAfter()
+				        && (now - conn.getLastValidated()) > conn.getValidateAfter();
+				conn.touch();
+				startEvictor(conn.getIdleTimeout());
+			}
+		}
+		
+		// The health check is a network round-trip, keep it out of the lock.
+		if (conn != null && validate && !conn.isHealthy())
+		{
+			logger.info("Dropping unhealthy Fedora connection "+key);
+			synchronized (this)
+			{
+				if (connections.get(key) == conn)
+				{  remove(key); }
+			}
+			conn = null;
+		}
+		
+		if (conn == null)
+		{
+			FedoraConnection created = createConnection(key, protocol, host, port, user, pass, 
+					maxPerHost, maxTotal, idleTimeout, validateAfter);
+			synchronized (this)
+			{
+				conn = connections.get(key);
+				if (conn == null || !conn.hasPassword(pass))
+				{
+					if (conn != null)
+					{  remove(key); }
+					connections.put(key, created);
+					conn = created;
+				}
+				else
+				{
+					// Another thread won the race; use its connection.
+					created.shutdown();
+					conn.share(idleTimeout, validateAfter);
+					conn.touch();
+				}
+				startEvictor(conn.getIdleTimeout());
+			}
+		}
+		return conn;
+	}
+	
+	/*
+	 * Drops the connection for the given key, if any.
+	 */
+	public synchronized void invalidate(String key)
+	{
+		remove(key);
+	}
+	
+	/*
+	 * Drops every cached connection and stops the eviction timer.  Clients
+	 * already handed out keep working.
+	 */
+	public synchronized void clear()
+	{
+		Iterator<String> it = new ArrayList<String>(connections.keySet()).iterator();
+		while (it.hasNext())
+		{
+			remove(it.next());
+		}
+		if (evictor != null)
+		{
+			evictor.cancel();
+			evictor = null;
+			evictorPeriod = 0;
+		}
+	}
+	
+	public synchronized int size()
+	{
+		return connections.size();
+	}
+	
+	/*
+	 * Returns the registry key of a shared client, or null if the client
+	 * was not handed out by this registry.
+	 */
+	public synchronized String keyFor(FedoraClient fclient)
+	{
+		for (FedoraConnection conn: connections.values())
+		{
+			if (conn.getClient() == fclient)
+			{  return conn.getKey(); }
+		}
+		return null;
+	}
+	
+	/*
+	 * Closes idle pooled HTTP connections on every client and drops clients
+	 * that have not been handed out within their idle timeout.  A dropped
+	 * client is not shut down; a flow still holding it reconnects on its
+	 * next call.
+	 */
+	public synchronized void evictIdle()
+	{
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<String, FedoraConnection>> it = connections.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Map.Entry<String, FedoraConnection> entry = it.next();
+			FedoraConnection conn = entry.getValue();
+			if (now - conn.getLastUsed() > conn.getIdleTimeout())
+			{
+				logger.info("Evicting idle Fedora connection "+entry.getKey());
+				it.remove();
+				conn.closeIdleConnections(0);
+			}
+			else
+			{
+				conn.closeIdleConnections(conn.getIdleTimeout());
+			}
+		}
+	}
+	
+	private FedoraConnection createConnection(String key, String protocol, String host,
+			                                  String port, String user, String pass,
+			                                  int maxPerHost, int maxTotal,
+			                                  long idleTimeout, long validateAfter)
+	throws Exception
+	{
+		String fedoraURL = makeBaseURL(protocol, host, port);
+		logger.info("Creating Fedora connection "+key);
+		
+		FedoraClient fclient = new FedoraClient(fedoraURL, user, pass);
+		fclient.MAX_CONNECTIONS_PER_HOST = maxPerHost;
+		fclient.MAX_TOTAL_CONNECTIONS = maxTotal;
+		
+		FedoraAPIA apia = fclient.getAPIA();
+		FedoraAPIM apim = fclient.getAPIM();
+		return new FedoraConnection(key, pass, fclient, apia, apim, idleTimeout, validateAfter);
+	}
+	
+	/* Drops a connection, closing its pooled sockets but leaving it usable. */
+	private void remove(String key)
+	{
+		FedoraConnection conn = connections.remove(key);
+		if (conn != null)
+		{
+			conn.closeIdleConnections(0);
+		}
+	}
+	
+	/* Runs the evictor at least twice per idle timeout of any connection. */
+	private void startEvictor(long idleTimeout)
+	{
+		long period = Math.max(1000L, idleTimeout / 2);
+		if (evictor != null && evictorPeriod <= period)
+		{  return; }
+		
+		if (evictor != null)
+		{  evictor.cancel(); }
+		evictorPeriod = period;
+		evictor = new Timer(true);
+		evictor.schedule(new TimerTask()
+		{
+			public void run()
+			{
+				evictIdle();
+			}
+		}, period, period);
+	}
+}
@@ -58,6 +58,12 @@ public class FedoraConstants {
 	/* Unique fedora identifier */
 	public static final String PID = "pid";
 	
+	/* A list of fedora identifiers */
+	public static final String PIDS = "pids";
+	
+	/* The prefix of a fedora identifier written as a URI */
+	public static final String FEDORA_URI_PREFIX = "info:fedora/";
+	
 	/* Message to log when command executes */
 	public static final String LOG_MSG = "log_message";
 	
@@ -131,9 +137,15 @@ public class FedoraConstants {
 	/* The pathname of a file to ingest. */
     public static final String INGEST_FILE = "ingestFile";
     
+    /* The number of bytes moved per read when streaming a file */
+    public static final String CHUNK_SIZE = "chunkSize";
+    
     /* ObjectXML output */
     public static final String OBJECT_XML = "objectXML";
     
+    /* The object xml as an InputStream */
+    public static final String OBJECT_XML_STREAM = "objectXMLStream";
+    
 	/* A datastream location */
 	public static final String DS_LOCATION = "dsLocation";
 	
@@ -262,6 +274,9 @@ public class FedoraConstants {
 	/*The predicate that defines collection memebership*/
 	public static final String COLLECTION_PREDICATE="info:fedora/fedora-system:def/relations-external#isMemberOfCollection";
 	public static final String SUPER_COLLECTION_PREDICATE = "info:fedora/fedora-system:def/relations-external#isMemberOfCollection";
+	
+	/* The predicate that defines membership of a non-collection container */
+	public static final String MEMBER_OF_PREDICATE = "info:fedora/fedora-system:def/relations-external#isMemberOf";
 
 	// Super collection that is the parent of all other collections
 	public static final String SUPER_COLLECTION="info:fedora/monk:collection";
@@ -269,6 +284,96 @@ public class FedoraConstants {
 	// Fedora work objects
 	public static final String WORK_OBJECTS = "work_objects";
 	
+	// A single Fedora work object
+	public static final String WORK_OBJECT = "work_object";
+	
+	/* The number of results requested per findObjects page */
+	public static final String PAGE_SIZE = "pageSize";
+	
+	/* The number of result pages fetched ahead of the consumer */
+	public static final String PREFETCH_DEPTH = "prefetchDepth";
+	
+	/* The number of worker threads in a bulk component */
+	public static final String WORKERS = "workers";
+	
+	/* The number of attempts made for a failed call */
+	public static final String MAX_ATTEMPTS = "maxAttempts";
+	
+	/* The base delay in milliseconds before a failed call is retried */
+	public static final String RETRY_DELAY = "retryDelay";
+	
+	/* Milliseconds a read may take, retries included, before it fails */
+	public static final String DEADLINE = "deadline";
+	
+	/* When a duplicate of a slow read is sent: a percentile such as p95, or milliseconds */
+	public static final String HEDGE_DELAY = "hedgeDelay";
+	
+	/* The result of one object operation in a bulk component */
+	public static final String OPERATION_RESULT = "operationResult";
+	
+	/* The aggregate counts and throughput of a bulk component */
+	public static final String BULK_STATS = "bulkStats";
+	
+	/* The path of an archive file written or read by a component */
+	public static final String ARCHIVE_FILE = "archiveFile";
+	
+	/* Whether a resource index query flushes buffered triples first */
+	public static final String FLUSH_INDEX = "flushIndex";
+	
+	/* Seconds a cached result may be reused */
+	public static final String CACHE_TTL = "cacheTTL";
+	
+	/* The number of results kept in a cache */
+	public static final String CACHE_MAX_ENTRIES = "cacheMaxEntries";
+	
+	/* The directory of the disk cache of object xml and disseminations */
+	public static final String OBJECT_CACHE_DIR = "objectCacheDir";
+	
+	/* Seconds a disk cached object is used without revalidation */
+	public static final String OBJECT_CACHE_TTL = "objectCacheTTL";
+	
+	/* The size limit of the disk cache in megabytes */
+	public static final String OBJECT_CACHE_MAX_MB = "objectCacheMaxMB";
+	
+	/* A comma separated list of datastream ids */
+	public static final String DATASTREAM_IDS = "datastreamIds";
+	
+	/* The contents of datastreams, by datastream id */
+	public static final String DATASTREAMS = "datastreams";
+	
+	/* A comma separated list of element or attribute paths */
+	public static final String PATHS = "paths";
+	
+	/* The values found for a set of paths, by path */
+	public static final String PROJECTION = "projection";
+	
+	/* A super collection with its collections and their works */
+	public static final String COLLECTION_TREE = "collectionTree";
+	
+	/* A piece of the content of a datastream */
+	public static final String DS_CHUNK = "dsChunk";
+	
+	/* The position of a piece of content within its datastream */
+	public static final String DS_OFFSET = "dsOffset";
+	
+	/* The number of bytes requested at a time from a datastream */
+	public static final String RANGE_SIZE = "rangeSize";
+	
+	/* The path of a file a component writes content to */
+	public static final String TARGET_FILE = "targetFile";
+	
+	/* A space separated list of predicates relating a member to its container */
+	public static final String MEMBERSHIP_PREDICATES = "membershipPredicates";
+	
+	/* A space separated list of checksum types to compute, e.g. MD5 SHA-256 */
+	public static final String CHECKSUM_TYPES = "checksumTypes";
+	
+	/* Whether to compare content with the checksum Fedora recorded for it */
+	public static final String VERIFY_CHECKSUM = "verifyChecksum";
+	
+	/* The pid/dsID of each datastream whose content did not match its checksum */
+	public static final String CHECKSUM_MISMATCHES = "checksumMismatches";
+	
 	public FedoraConstants()
 	{}
 
@@ -0,0 +1,258 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 
+ * <p>
+ * Title: FedoraMetrics
+ * </p>
+ * 
+ * <p>
+ * Description: The process-wide registry of per-operation metrics for the
+ * Fedora calls the components make (findObjects, getTuples,
+ * getDissemination, ingest, export and so on).  Each operation is
+ * published as an MBean named
+ * org.meandre.components.fedora:type=FedoraMetrics,name=&lt;operation&gt;
+ * on the platform MBean server, and the whole registry can be written
+ * to a text file periodically.  Callers look their OperationMetrics up
+ * once and keep it, so recording a call does no map lookup.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FedoraMetrics
+{
+	public static final String DOMAIN = "org.meandre.components.fedora";
+	
+	private static final FedoraMetrics metrics = new FedoraMetrics();
+	private static final Logger logger = Logger.getLogger(FedoraMetrics.class.getName());
+	
+	private final ConcurrentMap<String, OperationMetrics> operations = 
+		new ConcurrentHashMap<String, OperationMetrics>();
+	
+	private Timer dumpTimer = null;
+	private File dumpFile = null;
+	private long dumpPeriod = 0;
+	
+	private FedoraMetrics()
+	{}
+	
+	public static FedoraMetrics getInstance()
+	{
+		return metrics;
+	}
+	
+	/* Shorthand for getInstance().get(name). */
+	public static OperationMetrics operation(String name)
+	{
+		return metrics.get(name);
+	}
+	
+	/* The metrics for the named operation, created and published on first use. */
+	public OperationMetrics get(String name)
+	{
+		OperationMetrics op = operations.get(name);
+		if (op == null)
+		{
+			OperationMetrics created = new OperationMetrics(name);
+			op = operations.putIfAbsent(name, created);
+			if (op == null)
+			{
+				op = created;
+				register(op);
+			}
+		}
+		return op;
+	}
+	
+	/* The operations in name order. */
+	public List<OperationMetrics> getOperations()
+	{
+		List<String> names = new ArrayList<String>(operations.keySet());
+		java.util.Collections.sort(names);
+		List<OperationMetrics> list = new ArrayList<OperationMetrics>(names.size());
+		for (String name: names)
+		{  list.add(operations.get(name)); }
+		return list;
+	}
+	
+	public void reset()
+	{
+		for (OperationMetrics op: operations.values())
+		{  op.reset(); }
+	}
+	
+	/* A table of every operation's counts and latencies. */
+	public String report()
+	{
+		StringBuilder sb = new StringBuilder(256 + operations.size() * 100);
+		sb.append(String.format("%-24s %10s %8s %14s %10s %10s %10s %10s%n", "operation", "calls", 
+				"errors", "bytes", "mean ms", "p50 ms", "p99 ms", "max ms"));
+		for (OperationMetrics op: getOperations())
+		{
+			sb.append(op).append(String.format("%n"));
+		}
+		return sb.toString();
+	}
+	
+	/*
+	 * Writes the report to file every periodMillis until stopDump, or
+	 * stops dumping if file is null or the period is not positive.  Calling
+	 * again with the same settings leaves the running dump alone.
+	 */
+	public synchronized void startDump(File file, long periodMillis)
+	{
+		if (file == null || periodMillis <= 0)
+		{
+			stopDump();
+			return;
+		}
+		if (dumpTimer != null && file.equals(dumpFile) && periodMillis == dumpPeriod)
+		{  return; }
+		
+		stopDump();
+		dumpFile = file;
+		dumpPeriod = periodMillis;
+		dumpTimer = new Timer("FedoraMetrics-dump", true);
+		final File target = file;
+		dumpTimer.schedule(new TimerTask()
+		{
+			public void run()
+			{
+				try
+				{
+					dump(target);
+				}
+				catch (IOException ex)
+				{
+					logger.log(Level.WARNING, "Could not write metrics to "+target, ex);
+				}
+			}
+		}, periodMillis, periodMillis);
+	}
+	
+	public synchronized void stopDump()
+	{
+		if (dumpTimer != null)
+		{
+			dumpTimer.cancel();
+			dumpTimer = null;
+			dumpFile = null;
+			dumpPeriod = 0;
+		}
+	}
+	
+	/* Writes the report to file, replacing it only once it is complete. */
+	public void dump(File file)
+	throws IOException
+	{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null)
+		{  parent.mkdirs(); }
+		File temp = new File(file.getPath()+".tmp");
+		Writer out = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+		try
+		{
+			out.write("# "+new Date()+"\n");
+			out.write(report());
+		}
+		finally
+		{
+			out.close();
+		}
+		if (!temp.renameTo(file))
+		{
+			file.delete();
+			if (!temp.renameTo(file))
+			{  throw new IOException("Could not replace "+file); }
+		}
+	}
+	
+	/*
+	 * Publishes the operation's MBean, replacing one left by an earlier
+	 * load of these classes (a redeployed flow).
+	 */
+	private static void register(OperationMetrics op)
+	{
+		try
+		{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(DOMAIN+":type=FedoraMetrics,name="+ObjectName.quote(op.getName()));
+			if (server.isRegistered(name))
+			{  server.unregisterMBean(name); }
+			server.registerMBean(op, name);
+		}
+		catch (Exception ex)
+		{
+			logger.log(Level.WARNING, "Could not publish metrics for "+op.getName(), ex);
+		}
+	}
+}
@@ -0,0 +1,272 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.rmi.RemoteException;
+
+import org.apache.axis.types.NonNegativeInteger;
+
+import fedora.server.access.FedoraAPIA;
+import fedora.server.types.gen.FieldSearchQuery;
+import fedora.server.types.gen.FieldSearchResult;
+import fedora.server.types.gen.ListSession;
+import fedora.server.types.gen.ObjectFields;
+
+/**
+ * 
+ * <p>
+ * Title: FindObjectsPager
+ * </p>
+ * 
+ * <p>
+ * Description: Iterates over the pages of a findObjects query.  The first
+ * page is requested when the pager is opened; after that a background
+ * thread follows the list session tokens with resumeFindObjects and keeps
+ * up to prefetchDepth pages ready, so page N+1 is on the wire while the
+ * caller is still working on page N.  A prefetch depth of 0 pages strictly
+ * on the caller's thread.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FindObjectsPager
+{
+	public static final int DEFAULT_PAGE_SIZE = 10000;
+	public static final int DEFAULT_PREFETCH_DEPTH = 2;
+	
+	private static final OperationMetrics FIND_OBJECTS = FedoraMetrics.operation("findObjects");
+	private static final OperationMetrics RESUME_FIND_OBJECTS = FedoraMetrics.operation("resumeFindObjects");
+	
+	private final FedoraAPIA APIA;
+	private final String[] resultFields;
+	private final int pageSize;
+	private final int prefetchDepth;
+	
+	/* The result whose list session gives the next page (no prefetch). */
+	private FieldSearchResult current = null;
+	
+	/* The page returned by the next call to next(). */
+	private ObjectFields[] nextPage = null;
+	
+	private StreamBuffer<ObjectFields[]> buffer = null;
+	private volatile long fetched = 0;
+	private volatile int pages = 0;
+	private boolean opened = false;
+	private boolean done = false;
+	
+	public FindObjectsPager(FedoraAPIA apia, String[] resultFields, 
+			                int pageSize, int prefetchDepth)
+	{
+		this.APIA = apia;
+		this.resultFields = resultFields;
+		this.pageSize = (pageSize > 0) ? pageSize : DEFAULT_PAGE_SIZE;
+		this.prefetchDepth = Math.max(0, prefetchDepth);
+	}
+	
+	/*
+	 * Runs the query and fetches its first page on the caller's thread, so
+	 * a rejected query is reported here; then starts prefetching.
+	 */
+	public void open(FieldSearchQuery query) throws RemoteException
+	{
+		if (opened)
+		{  throw new IllegalStateException("Pager already opened"); }
+		opened = true;
+		
+		FieldSearchResult first = find(query);
+		nextPage = record(first);
+		
+		if (prefetchDepth == 0 || !hasMore(first))
+		{
+			current = first;
+			return;
+		}
+		
+		final String token = first.getListSession().getToken();
+		buffer = new StreamBuffer<ObjectFields[]>(prefetchDepth);
+		buffer.start(new StreamBuffer.Producer<ObjectFields[]>()
+		{
+			public void produce(StreamBuffer<ObjectFields[]> out) throws Exception
+			{
+				String next = token;
+				while (next != null)
+				{
+					FieldSearchResult result = resume(next);
+					out.put(record(result));
+					next = hasMore(result) ? result.getListSession().getToken() : null;
+				}
+			}
+		}, "FindObjectsPager");
+	}
+	
+	/*
+	 * Returns a new pager with the same settings, opened on another query.
+	 */
+	public FindObjectsPager reopen(FieldSearchQuery query) throws RemoteException
+	{
+		close();
+		FindObjectsPager pager = 
+			new FindObjectsPager(APIA, resultFields, pageSize, prefetchDepth);
+		pager.open(query);
+		return pager;
+	}
+	
+	public boolean hasNext() throws Exception
+	{
+		if (!opened)
+		{  throw new IllegalStateException("Pager not opened"); }
+		if (nextPage != null)
+		{  return true; }
+		if (done)
+		{  return false; }
+		
+		if (buffer != null)
+		{
+			nextPage = buffer.take();
+		}
+		else if (hasMore(current))
+		{
+			current = resume(current.getListSession().getToken());
+			nextPage = record(current);
+		}
+		
+		if (nextPage == null)
+		{  done = true; }
+		return nextPage != null;
+	}
+	
+	/*
+	 * Returns the next page of results; never null, possibly empty.
+	 */
+	public ObjectFields[] next() throws Exception
+	{
+		if (!hasNext())
+		{  throw new java.util.NoSuchElementException(); }
+		ObjectFields[] page = nextPage;
+		nextPage = null;
+		return page;
+	}
+	
+	/*
+	 * Stops prefetching.  Fedora expires abandoned list sessions itself.
+	 */
+	public void close()
+	{
+		done = true;
+		nextPage = null;
+		if (buffer != null)
+		{
+			buffer.cancel();
+			buffer = null;
+		}
+	}
+	
+	/* The number of result rows fetched so far. */
+	public long getFetchedCount()
+	{ return fetched; }
+	
+	/* The number of pages fetched so far. */
+	public int getPageCount()
+	{ return pages; }
+	
+	private FieldSearchResult find(FieldSearchQuery query) throws RemoteException
+	{
+		long start = FIND_OBJECTS.start();
+		try
+		{
+			FieldSearchResult result = 
+				APIA.findObjects(resultFields, new NonNegativeInteger(""+pageSize), query);
+			FIND_OBJECTS.success(start, 0);
+			return result;
+		}
+		catch (RemoteException ex)
+		{
+			FIND_OBJECTS.failure(start);
+			throw ex;
+		}
+	}
+	
+	private FieldSearchResult resume(String token) throws RemoteException
+	{
+		long start = RESUME_FIND_OBJECTS.start();
+		try
+		{
+			FieldSearchResult result = APIA.resumeFindObjects(token);
+			RESUME_FIND_OBJECTS.success(start, 0);
+			return result;
+		}
+		catch (RemoteException ex)
+		{
+			RESUME_FIND_OBJECTS.failure(start);
+			throw ex;
+		}
+	}
+	
+	private ObjectFields[] record(FieldSearchResult result)
+	{
+		ObjectFields[] page = (result == null) ? null : result.getResultList();
+		if (page == null)
+		{  page = new ObjectFields[0]; }
+		fetched += page.length;
+		pages++;
+		return page;
+	}
+	
+	private static boolean hasMore(FieldSearchResult result)
+	{
+		if (result == null)
+		{  return false; }
+		ListSession session = result.getListSession();
+		ObjectFields[] page = result.getResultList();
+		return session != null && session.getToken() != null 
+		    && page != null && page.length > 0;
+	}
+}
@@ -0,0 +1,474 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+import org.xml.sax.helpers.NamespaceSupport;
+
+/**
+ * 
+ * <p>
+ * Title: FoxmlProjection
+ * </p>
+ * 
+ * <p>
+ * Description: Pulls selected datastreams and element or attribute values
+ * out of FOXML object xml in one SAX pass, without building a DOM.  Only
+ * the selected parts are buffered; everything else is passed over.
+ * </p>
+ * 
+ * <p>
+ * A datastream's content is its inline xml re-serialized as a string (with
+ * the namespace declarations in scope), the base64 text of binary content,
+ * or the REF of a content location.  Paths are slash separated element
+ * local names from the document element, e.g.
+ * digitalObject/objectProperties/property, optionally ending in /@NAME to
+ * select an attribute instead of the element's text.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FoxmlProjection extends DefaultHandler
+{
+	public static final String FOXML_NS = "info:fedora/fedora-system:def/foxml#";
+	
+	private static final SAXParserFactory factory = SAXParserFactory.newInstance();
+	static
+	{
+		factory.setNamespaceAware(true);
+		factory.setValidating(false);
+	}
+	
+	private final Set<String> datastreamIds;
+	private final boolean latestOnly;
+	private final Map<String, String> elementPaths = new LinkedHashMap<String, String>();
+	private final Map<String, String> attributePaths = new LinkedHashMap<String, String>();
+	
+	private final Map<String, String> datastreams = new LinkedHashMap<String, String>();
+	private final Map<String, List<String>> values = new LinkedHashMap<String, List<String>>();
+	
+	private final NamespaceSupport namespaces = new NamespaceSupport();
+	private boolean contextPushed = false;
+	private final List<String> pathStack = new ArrayList<String>();
+	private final List<Capture> captures = new ArrayList<Capture>();
+	private int depth = 0;
+	
+	/* the wanted datastream and version being read, if any */
+	private String datastreamId = null;
+	private String versionId = null;
+	private String content = null;
+	
+	/* inline xml being serialized, or binary content being read */
+	private StringBuilder serialized = null;
+	private int serializeDepth = -1;
+	private boolean openTag = false;
+	private StringBuilder binary = null;
+	
+	public FoxmlProjection(Collection<String> datastreamIds, Collection<String> paths, boolean latestOnly)
+	{
+		this.datastreamIds = new HashSet<String>(datastreamIds);
+		this.latestOnly = latestOnly;
+		for (String path: paths)
+		{
+			String p = path.trim();
+			while (p.startsWith("/"))
+			{  p = p.substring(1); }
+			if (p.length() == 0)
+			{  continue; }
+			int at = p.lastIndexOf("/@");
+			if (at >= 0)
+			{
+				attributePaths.put(path, p);
+			}
+			else
+			{
+				elementPaths.put(path, p);
+			}
+			values.put(path, new ArrayList<String>());
+		}
+	}
+	
+	/*
+	 * Reads the object xml, given as a byte[], String or InputStream.  The
+	 * results are available from getDatastreams and getValues afterwards.
+	 */
+	public FoxmlProjection parse(Object objectXML)
+	throws IOException, SAXException
+	{
+		InputSource source = null;
+		if (objectXML instanceof byte[])
+		{
+			source = new InputSource(new ByteArrayInputStream((byte[])objectXML));
+		}
+		else if (objectXML instanceof InputStream)
+		{
+			source = new InputSource((InputStream)objectXML);
+		}
+		else if (objectXML instanceof String)
+		{
+			source = new InputSource(new StringReader((String)objectXML));
+		}
+		else
+		{
+			throw new IOException("Unsupported object xml type: " +
+					((objectXML == null) ? "null" : objectXML.getClass().getName()));
+		}
+		
+		try
+		{
+			factory.newSAXParser().parse(source, this);
+		}
+		catch (ParserConfigurationException ex)
+		{
+			throw new SAXException(ex);
+		}
+		return this;
+	}
+	
+	/*
+	 * The content of each selected datastream found, by datastream id, or
+	 * by datastream version id when all versions are kept.
+	 */
+	public Map<String, String> getDatastreams()
+	{ return datastreams; }
+	
+	/* The values found for each requested path, in document order. */
+	public Map<String, List<String>> getValues()
+	{ return values; }
+	
+	public void startPrefixMapping(String prefix, String uri)
+	{
+		if (!contextPushed)
+		{
+			namespaces.pushContext();
+			contextPushed = true;
+		}
+		namespaces.declarePrefix(prefix, uri);
+	}
+	
+	public void startElement(String uri, String localName, String qName, Attributes atts)
+	{
+		if (!contextPushed)
+		{
+			namespaces.pushContext();
+		}
+		boolean declared = contextPushed;
+		contextPushed = false;
+		depth++;
+		
+		if (serialized != null)
+		{
+			startSerialized(qName, atts, declared ? namespaces.getDeclaredPrefixes() : null);
+		}
+		else if (FOXML_NS.equals(uri))
+		{
+			startFoxml(localName, atts);
+		}
+		
+		if (!values.isEmpty())
+		{
+			String path = pathStack.isEmpty() ? localName
+					: pathStack.get(pathStack.size() - 1) + "/" + localName;
+			pathStack.add(path);
+			matchPath(path, atts);
+		}
+	}
+	
+	public void characters(char[] ch, int start, int length)
+	{
+		if (serialized != null)
+		{
+			closeOpenTag();
+			escape(serialized, ch, start, length, false);
+		}
+		else if (binary != null)
+		{
+			binary.append(ch, start, length);
+		}
+		for (int i = 0; i < captures.size(); i++)
+		{
+			captures.get(i).text.append(ch, start, length);
+		}
+	}
+	
+	public void endElement(String uri, String localName, String qName)
+	{
+		for (int i = captures.size() - 1; i >= 0; i--)
+		{
+			Capture capture = captures.get(i);
+			if (capture.depth == depth)
+			{
+				values.get(capture.path).add(capture.text.toString());
+				captures.remove(i);
+			}
+		}
+		if (!pathStack.isEmpty())
+		{
+			pathStack.remove(pathStack.size() - 1);
+		}
+		
+		if (serialized != null && depth > serializeDepth)
+		{
+			if (openTag)
+			{
+				serialized.append("/>");
+				openTag = false;
+			}
+			else
+			{
+				serialized.append("</").append(qName).append('>');
+			}
+		}
+		else if (serialized != null)
+		{
+			// end of xmlContent
+			content = serialized.toString().trim();
+			serialized = null;
+			serializeDepth = -1;
+		}
+		else if (FOXML_NS.equals(uri))
+		{
+			endFoxml(localName);
+		}
+		
+		namespaces.popContext();
+		depth--;
+	}
+	
+	private void startFoxml(String localName, Attributes atts)
+	{
+		if ("datastream".equals(localName))
+		{
+			String id = atts.getValue("ID");
+			datastreamId = datastreamIds.contains(id) ? id : null;
+		}
+		else if (datastreamId == null)
+		{
+			return;
+		}
+		else if ("datastreamVersion".equals(localName))
+		{
+			versionId = atts.getValue("ID");
+			content = null;
+		}
+		else if ("xmlContent".equals(localName))
+		{
+			serialized = new StringBuilder(1024);
+			serializeDepth = depth;
+		}
+		else if ("binaryContent".equals(localName))
+		{
+			binary = new StringBuilder(1024);
+		}
+		else if ("contentLocation".equals(localName))
+		{
+			content = atts.getValue("REF");
+		}
+	}
+	
+	private void endFoxml(String localName)
+	{
+		if ("datastream".equals(localName))
+		{
+			datastreamId = null;
+		}
+		else if (datastreamId == null)
+		{
+			return;
+		}
+		else if ("binaryContent".equals(localName))
+		{
+			content = binary.toString().trim();
+			binary = null;
+		}
+		else if ("datastreamVersion".equals(localName))
+		{
+			// versions are listed oldest first, so the last one read is current
+			if (content != null)
+			{
+				datastreams.put(latestOnly ? datastreamId : versionId, content);
+			}
+			versionId = null;
+			content = null;
+		}
+	}
+	
+	private void startSerialized(String qName, Attributes atts, Enumeration<?> declared)
+	{
+		closeOpenTag();
+		serialized.append('<').append(qName);
+		if (depth == serializeDepth + 1)
+		{
+			// the fragment's top element carries every namespace in scope
+			declared = namespaces.getPrefixes();
+			String defaultUri = namespaces.getURI("");
+			if (defaultUri != null && defaultUri.length() > 0)
+			{
+				appendAttribute("xmlns", defaultUri);
+			}
+		}
+		if (declared != null)
+		{
+			while (declared.hasMoreElements())
+			{
+				String prefix = (String)declared.nextElement();
+				String uri = namespaces.getURI(prefix);
+				if ("xml".equals(prefix))
+				{  continue; }
+				if (prefix.length() == 0)
+				{
+					if (depth > serializeDepth + 1)
+					{  appendAttribute("xmlns", (uri == null) ? "" : uri); }
+					continue;
+				}
+				appendAttribute("xmlns:" + prefix, uri);
+			}
+		}
+		for (int i = 0; i < atts.getLength(); i++)
+		{
+			appendAttribute(atts.getQName(i), atts.getValue(i));
+		}
+		openTag = true;
+	}
+	
+	private void appendAttribute(String name, String value)
+	{
+		serialized.append(' ').append(name).append("=\"");
+		escape(serialized, value.toCharArray(), 0, value.length(), true);
+		serialized.append('"');
+	}
+	
+	private void closeOpenTag()
+	{
+		if (openTag)
+		{
+			serialized.append('>');
+			openTag = false;
+		}
+	}
+	
+	private void matchPath(String path, Attributes atts)
+	{
+		for (Map.Entry<String, String> entry: elementPaths.entrySet())
+		{
+			if (entry.getValue().equals(path))
+			{
+				captures.add(new Capture(entry.getKey(), depth));
+			}
+		}
+		for (Map.Entry<String, String> entry: attributePaths.entrySet())
+		{
+			String p = entry.getValue();
+			int at = p.lastIndexOf("/@");
+			if (p.regionMatches(0, path, 0, path.length()) && at == path.length())
+			{
+				String value = atts.getValue(p.substring(at + 2));
+				if (value != null)
+				{
+					values.get(entry.getKey()).add(value);
+				}
+			}
+		}
+	}
+	
+	private static void escape(StringBuilder sb, char[] ch, int start, int length, boolean attribute)
+	{
+		for (int i = start; i < start + length; i++)
+		{
+			char c = ch[i];
+			switch (c)
+			{
+				case '<': sb.append("&lt;"); break;
+				case '>': sb.append("&gt;"); break;
+				case '&': sb.append("&amp;"); break;
+				case '"':
+					if (attribute)
+					{  sb.append("&quot;"); }
+					else
+					{  sb.append(c); }
+					break;
+				default: sb.append(c);
+			}
+		}
+	}
+	
+	private static class Capture
+	{
+		final String path;
+		final int depth;
+		final StringBuilder text = new StringBuilder();
+		
+		Capture(String path, int depth)
+		{
+			this.path = path;
+			this.depth = depth;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 
+ * <p>
+ * Title: HedgedCalls
+ * </p>
+ * 
+ * <p>
+ * Description: Runs idempotent read calls with a timeout and optional
+ * hedging: if the call has not answered after a hedge delay (typically
+ * the operation's p95 latency), a duplicate is started and whichever
+ * answers first is used.  Hedges are capped at a percentage of calls so
+ * a slow server does not get twice the load.  A call that misses its
+ * timeout fails with a SocketTimeoutException, which RetryPolicy treats
+ * as transient.  Calls that lose the race are interrupted, but a SOAP
+ * call blocked on a socket only ends at its socket timeout, so the calls
+ * run on a bounded pool: when every thread is busy new calls wait their
+ * turn and no hedge is started.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class HedgedCalls
+{
+	public static final int DEFAULT_MAX_HEDGE_PERCENT = 10;
+	
+	/* Threads shared by every instance for calls and their hedges. */
+	public static final int MAX_THREADS = 32;
+	
+	private static final ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+			60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+	{
+		public Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, "HedgedCalls");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	
+	private final int maxHedgePercent;
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+	
+	public HedgedCalls()
+	{
+		this(DEFAULT_MAX_HEDGE_PERCENT);
+	}
+	
+	public HedgedCalls(int maxHedgePercent)
+	{
+		this.maxHedgePercent = Math.max(0, Math.min(100, maxHedgePercent));
+	}
+	
+	public long getCalls()
+	{ return calls.get(); }
+	
+	/* The number of duplicate calls started. */
+	public long getHedges()
+	{ return hedges.get(); }
+	
+	/* The number of calls answered by the duplicate rather than the original. */
+	public long getHedgeWins()
+	{ return hedgeWins.get(); }
+	
+	/*
+	 * Runs the call, failing after timeoutMillis and starting one duplicate
+	 * after hedgeDelayMillis.  Either may be 0 or less to turn it off; with
+	 * both off the call runs on the caller's thread.
+	 */
+	public <T> T call(Callable<T> call, long timeoutMillis, long hedgeDelayMillis)
+	throws Exception
+	{
+		return call(call, call, timeoutMillis, hedgeDelayMillis);
+	}
+	
+	/*
+	 * As call, starting hedge rather than call as the duplicate so that it
+	 * can be told apart, for instance to keep its timings out of the
+	 * latencies the hedge delay is computed from.
+	 */
+	public <T> T call(Callable<T> call, Callable<T> hedge, long timeoutMillis, long hedgeDelayMillis)
+	throws Exception
+	{
+		calls.incrementAndGet();
+		if (timeoutMillis <= 0 && hedgeDelayMillis <= 0)
+		{  return call.call(); }
+		
+		long now = System.currentTimeMillis();
+		long deadline = (timeoutMillis > 0) ? now + timeoutMillis : Long.MAX_VALUE;
+		long hedgeAt = (hedgeDelayMillis > 0) ? now + hedgeDelayMillis : Long.MAX_VALUE;
+		
+		CompletionService<T> completion = new ExecutorCompletionService<T>(pool);
+		List<Future<T>> started = new ArrayList<Future<T>>(2);
+		started.add(completion.submit(call));
+		int outstanding = 1;
+		Exception failure = null;
+		try
+		{
+			while (true)
+			{
+				long wait = Math.min(deadline, hedgeAt) - System.currentTimeMillis();
+				Future<T> done = (wait > 0) ? completion.poll(wait, TimeUnit.MILLISECONDS) : completion.poll();
+				if (done == null)
+				{
+					now = System.currentTimeMillis();
+					if (now >= deadline)
+					{  throw new SocketTimeoutException("No answer within "+timeoutMillis+" ms"); }
+					if (now >= hedgeAt)
+					{
+						hedgeAt = Long.MAX_VALUE;
+						if (mayHedge())
+						{
+							hedges.incrementAndGet();
+							started.add(completion.submit(hedge));
+							outstanding++;
+						}
+					}
+					continue;
+				}
+				
+				outstanding--;
+				try
+				{
+					T result = done.get();
+					if (done != started.get(0))
+					{  hedgeWins.incrementAndGet(); }
+					return result;
+				}
+				catch (ExecutionException ex)
+				{
+					failure = (ex.getCause() instanceof Exception) ? (Exception)ex.getCause() : ex;
+				}
+				// a failure before the hedge was started is reported, not hedged
+				if (outstanding == 0)
+				{  throw failure; }
+			}
+		}
+		finally
+		{
+			for (Future<T> f: started)
+			{  f.cancel(true); }
+		}
+	}
+	
+	/* Within the hedge budget, and a thread is free to run the duplicate. */
+	private boolean mayHedge()
+	{
+		if (pool.getActiveCount() >= MAX_THREADS || !pool.getQueue().isEmpty())
+		{  return false; }
+		return hedges.get() * 100 < calls.get() * maxHedgePercent;
+	}
+}
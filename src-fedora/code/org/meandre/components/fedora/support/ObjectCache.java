@@ -0,0 +1,628 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import fedora.server.access.FedoraAPIA;
+import fedora.server.management.FedoraAPIM;
+import fedora.server.types.gen.Datastream;
+import fedora.server.types.gen.ObjectProfile;
+
+/**
+ * 
+ * <p>
+ * Title: ObjectCache
+ * </p>
+ * 
+ * <p>
+ * Description: A disk-backed cache of object xml, exports and
+ * disseminations.  Each entry is one gzip file named by the SHA-1 of its
+ * key (server, pid, kind and parameters) and records a validation token
+ * for the object, normally its last-modified date.  Within the caller's
+ * time-to-live an entry is used as is; after that it is revalidated by
+ * comparing the token with the server's and only fetched again if the
+ * object changed.  The least recently used entries are deleted when the
+ * files grow past the size limit.  The index is rebuilt from the files
+ * when a cache directory is first opened, so a cache outlives the process.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class ObjectCache
+{
+	public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+	
+	private static final int MAGIC = 0x46434331;
+	private static final String SUFFIX = ".gz";
+	
+	private static final Map<File, ObjectCache> caches = new HashMap<File, ObjectCache>();
+	
+	private static final OperationMetrics GET_OBJECT_PROFILE = FedoraMetrics.operation("getObjectProfile");
+	private static final OperationMetrics GET_DATASTREAMS = FedoraMetrics.operation("getDatastreams");
+	
+	/* Supplies the bytes for an entry on a miss. */
+	public interface Loader
+	{
+		byte[] load() throws Exception;
+	}
+	
+	/* Supplies the current validation token of an object. */
+	public interface Validator
+	{
+		String token(String pid) throws Exception;
+	}
+	
+	private final File dir;
+	private long maxBytes = DEFAULT_MAX_BYTES;
+	private long totalBytes = 0;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, 0.75f, true);
+	
+	private long hits = 0;
+	private long revalidations = 0;
+	private long misses = 0;
+	
+	private ObjectCache(File dir)
+	{
+		this.dir = dir;
+	}
+	
+	/*
+	 * The cache stored in dir, opened and indexed on first use.
+	 */
+	public static ObjectCache getInstance(File dir)
+	throws IOException
+	{
+		File key = dir.getAbsoluteFile();
+		synchronized (caches)
+		{
+			ObjectCache cache = caches.get(key);
+			if (cache == null)
+			{
+				if (!key.isDirectory() && !key.mkdirs())
+				{
+					throw new IOException("Cannot create cache directory "+key);
+				}
+				cache = new ObjectCache(key);
+				cache.load();
+				caches.put(key, cache);
+			}
+			return cache;
+		}
+	}
+	
+	/*
+	 * The cache in the directory named by a component property, limited to
+	 * maxMegabytes, or null if the property is blank (no caching).
+	 */
+	public static ObjectCache open(String dir, String maxMegabytes)
+	throws IOException
+	{
+		if (dir == null || dir.trim().length() == 0)
+		{  return null; }
+		ObjectCache cache = getInstance(new File(dir.trim()));
+		long max = DEFAULT_MAX_BYTES;
+		try
+		{
+			max = Long.parseLong(maxMegabytes.trim()) * 1024 * 1024;
+		}
+		catch (RuntimeException ex)
+		{}
+		cache.setMaxBytes(max);
+		return cache;
+	}
+	
+	/*
+	 * Drops the entries of one object from every open cache.  Called when
+	 * an object is purged.
+	 */
+	public static void invalidateAll(String pid)
+	{
+		List<ObjectCache> open = null;
+		synchronized (caches)
+		{
+			open = new ArrayList<ObjectCache>(caches.values());
+		}
+		for (ObjectCache cache: open)
+		{
+			cache.invalidate(pid);
+		}
+	}
+	
+	public synchronized void setMaxBytes(long max)
+	{
+		maxBytes = Math.max(0, max);
+		evict();
+	}
+	
+	/*
+	 * Returns the bytes for key: from disk if the entry is younger than
+	 * ttlMillis or the validator confirms the object is unchanged, else
+	 * from the loader, storing the result.  Without a validator, entries
+	 * older than ttlMillis are always loaded again.
+	 */
+	public byte[] get(String key, String pid, long ttlMillis, Validator validator, Loader loader)
+	throws Exception
+	{
+		Entry entry = lookup(key);
+		String token = null;
+		if (entry != null)
+		{
+			boolean fresh = System.currentTimeMillis() - entry.validated <= ttlMillis;
+			if (!fresh && validator != null)
+			{
+				token = validator.token(pid);
+				fresh = token != null && token.equals(entry.token);
+				if (fresh)
+				{
+					synchronized (this)
+					{  revalidations++; }
+					entry.validated = System.currentTimeMillis();
+				}
+			}
+			if (fresh)
+			{
+				byte[] bytes = read(entry);
+				if (bytes != null)
+				{
+					synchronized (this)
+					{  hits++; }
+					return bytes;
+				}
+			}
+		}
+		
+		synchronized (this)
+		{  misses++; }
+		if (token == null && validator != null)
+		{
+			// taken before loading, so a change made meanwhile fails the next validation
+			token = validator.token(pid);
+		}
+		byte[] bytes = loader.load();
+		put(key, pid, token, bytes);
+		return bytes;
+	}
+	
+	/*
+	 * Stores bytes under key.  The file is written under a temporary name
+	 * and renamed, so readers never see a partial entry.
+	 */
+	public void put(String key, String pid, String token, byte[] bytes)
+	throws IOException
+	{
+		File file = fileFor(key);
+		File tmp = new File(dir, file.getName()+"."+Thread.currentThread().getId()+".tmp");
+		long now = System.currentTimeMillis();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeUTF(key);
+			out.writeUTF(pid);
+			out.writeUTF((token == null) ? "" : token);
+			out.writeInt(bytes.length);
+			out.flush();
+			GZIPOutputStream gz = new GZIPOutputStream(out, 8192);
+			gz.write(bytes);
+			gz.finish();
+		}
+		finally
+		{
+			out.close();
+		}
+		
+		synchronized (this)
+		{
+			Entry old = entries.remove(key);
+			if (old != null)
+			{  totalBytes -= old.size; }
+			if (!tmp.renameTo(file))
+			{
+				file.delete();
+				if (!tmp.renameTo(file))
+				{
+					tmp.delete();
+					throw new IOException("Cannot write cache entry "+file);
+				}
+			}
+			Entry entry = new Entry(key, pid, (token == null) ? "" : token, file, file.length(), now);
+			entries.put(key, entry);
+			totalBytes += entry.size;
+			evict();
+		}
+	}
+	
+	/* Drops every entry of one object. */
+	public synchronized void invalidate(String pid)
+	{
+		Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext())
+		{
+			Entry entry = it.next();
+			if (entry.pid.equals(pid))
+			{
+				it.remove();
+				remove(entry);
+			}
+		}
+	}
+	
+	public synchronized int size()
+	{ return entries.size(); }
+	
+	public synchronized long getTotalBytes()
+	{ return totalBytes; }
+	
+	public synchronized long getHits()
+	{ return hits; }
+	
+	public synchronized long getRevalidations()
+	{ return revalidations; }
+	
+	public synchronized long getMisses()
+	{ return misses; }
+	
+	public String toString()
+	{
+		synchronized (this)
+		{
+			return dir+": "+entries.size()+" entries, "+totalBytes+" bytes, "+
+			       hits+" hits ("+revalidations+" revalidated), "+misses+" misses";
+		}
+	}
+	
+	/*
+	 * A key for an object operation on the server behind port (an APIA or
+	 * APIM stub) with the given parameters.
+	 */
+	public static String makeKey(Object port, String pid, String kind, String[] params)
+	{
+		StringBuilder sb = new StringBuilder(128);
+		sb.append(serverOf(port)).append('\n').append(pid).append('\n').append(kind);
+		for (String param: params)
+		{
+			sb.append('\n').append(param);
+		}
+		return sb.toString();
+	}
+	
+	/*
+	 * The host and port of the endpoint an axis stub talks to and the user
+	 * it authenticates as, or the stub's identity if it has no endpoint.
+	 * The user is part of the key because what an object returns can
+	 * depend on who asks.  A REST transport is keyed by the stub it wraps,
+	 * so both transports share cached entries.
+	 */
+	static String serverOf(Object port)
+	{
+		if (port instanceof RestAPIA)
+		{  port = ((RestAPIA)port).getSoap(); }
+		else if (port instanceof RestAPIM)
+		{  port = ((RestAPIM)port).getSoap(); }
+		if (port instanceof javax.xml.rpc.Stub)
+		{
+			javax.xml.rpc.Stub stub = (javax.xml.rpc.Stub)port;
+			Object endpoint = stub._getProperty(javax.xml.rpc.Stub.ENDPOINT_ADDRESS_PROPERTY);
+			if (endpoint != null)
+			{
+				Object user = stub._getProperty(javax.xml.rpc.Stub.USERNAME_PROPERTY);
+				try
+				{
+					URL url = new URL(endpoint.toString());
+					return url.getHost()+":"+url.getPort()+"#"+user;
+				}
+				catch (IOException ex)
+				{
+					return endpoint.toString()+"#"+user;
+				}
+			}
+		}
+		return "port@"+Integer.toHexString(System.identityHashCode(port));
+	}
+	
+	/* Validates with the object's last-modified date from its profile. */
+	public static Validator profileValidator(final FedoraAPIA apia)
+	{
+		return new Validator()
+		{
+			public String token(String pid) throws Exception
+			{
+				ObjectProfile profile = null;
+				long start = GET_OBJECT_PROFILE.start();
+				try
+				{
+					profile = apia.getObjectProfile(pid, null);
+					GET_OBJECT_PROFILE.success(start, 0);
+				}
+				catch (Exception ex)
+				{
+					GET_OBJECT_PROFILE.failure(start);
+					throw ex;
+				}
+				return (profile == null) ? null : profile.getObjLastModDate();
+			}
+		};
+	}
+	
+	/*
+	 * Validates with the ids, versions and dates of the object's current
+	 * datastreams, for components that only hold an APIM connection.
+	 * Changes to object properties alone are not seen.
+	 */
+	public static Validator datastreamValidator(final FedoraAPIM apim)
+	{
+		return new Validator()
+		{
+			public String token(String pid) throws Exception
+			{
+				Datastream[] datastreams = null;
+				long start = GET_DATASTREAMS.start();
+				try
+				{
+					datastreams = apim.getDatastreams(pid, null, null);
+					GET_DATASTREAMS.success(start, 0);
+				}
+				catch (Exception ex)
+				{
+					GET_DATASTREAMS.failure(start);
+					throw ex;
+				}
+				if (datastreams == null)
+				{  return null; }
+				StringBuilder sb = new StringBuilder(datastreams.length * 48);
+				for (Datastream ds: datastreams)
+				{
+					sb.append(ds.getID()).append(' ').append(ds.getVersionID());
+					sb.append(' ').append(ds.getCreateDate()).append(';');
+				}
+				return sb.toString();
+			}
+		};
+	}
+	
+	private synchronized Entry lookup(String key)
+	{
+		return entries.get(key);
+	}
+	
+	/*
+	 * Reads an entry's bytes, or returns null (dropping the entry) if its
+	 * file is gone or unreadable.
+	 */
+	private byte[] read(Entry entry)
+	{
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry.file)));
+			try
+			{
+				readHeader(in);
+				int length = in.readInt();
+				byte[] bytes = new byte[length];
+				InputStream gz = new GZIPInputStream(in, 8192);
+				int off = 0;
+				while (off < length)
+				{
+					int n = gz.read(bytes, off, length - off);
+					if (n < 0)
+					{  throw new IOException("Truncated cache entry "+entry.file); }
+					off += n;
+				}
+				// keeps the access order across restarts
+				entry.file.setLastModified(System.currentTimeMillis());
+				return bytes;
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException ex)
+		{
+			synchronized (this)
+			{
+				if (entries.get(entry.key) == entry)
+				{
+					entries.remove(entry.key);
+					remove(entry);
+				}
+			}
+			return null;
+		}
+	}
+	
+	private static String[] readHeader(DataInputStream in)
+	throws IOException
+	{
+		if (in.readInt() != MAGIC)
+		{  throw new IOException("Not a cache entry"); }
+		String[] header = new String[3];
+		header[0] = in.readUTF();
+		header[1] = in.readUTF();
+		header[2] = in.readUTF();
+		return header;
+	}
+	
+	/*
+	 * Indexes the entry files in the directory, least recently used
+	 * first.  Unreadable files and leftover temporary files are deleted.
+	 * Entries found on disk are revalidated on first use.
+	 */
+	private void load()
+	{
+		File[] files = dir.listFiles();
+		if (files == null)
+		{  return; }
+		List<File> found = new ArrayList<File>();
+		for (File file: files)
+		{
+			if (file.getName().endsWith(".tmp"))
+			{  file.delete(); }
+			else if (file.getName().endsWith(SUFFIX))
+			{  found.add(file); }
+		}
+		Collections.sort(found, new Comparator<File>()
+		{
+			public int compare(File a, File b)
+			{
+				long d = a.lastModified() - b.lastModified();
+				return (d < 0) ? -1 : (d > 0) ? 1 : 0;
+			}
+		});
+		
+		for (File file: found)
+		{
+			try
+			{
+				DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024));
+				try
+				{
+					String[] header = readHeader(in);
+					Entry entry = new Entry(header[0], header[1], header[2], file, file.length(), 0);
+					entries.put(entry.key, entry);
+					totalBytes += entry.size;
+				}
+				finally
+				{
+					in.close();
+				}
+			}
+			catch (IOException ex)
+			{
+				file.delete();
+			}
+		}
+		evict();
+	}
+	
+	private void evict()
+	{
+		Iterator<Entry> it = entries.values().iterator();
+		while (totalBytes > maxBytes && it.hasNext())
+		{
+			Entry entry = it.next();
+			it.remove();
+			remove(entry);
+		}
+	}
+	
+	private void remove(Entry entry)
+	{
+		totalBytes -= entry.size;
+		entry.file.delete();
+	}
+	
+	private File fileFor(String key)
+	{
+		try
+		{
+			MessageDigest sha = MessageDigest.getInstance("SHA-1");
+			byte[] digest = sha.digest(key.getBytes("UTF-8"));
+			StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+			for (byte b: digest)
+			{
+				name.append(Character.forDigit((b >> 4) & 0xF, 16));
+				name.append(Character.forDigit(b & 0xF, 16));
+			}
+			return new File(dir, name.append(SUFFIX).toString());
+		}
+		catch (NoSuchAlgorithmException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+		catch (IOException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	private static class Entry
+	{
+		final String key;
+		final String pid;
+		final String token;
+		final File file;
+		final long size;
+		volatile long validated;
+		
+		Entry(String key, String pid, String token, File file, long size, long validated)
+		{
+			this.key = key;
+			this.pid = pid;
+			this.token = token;
+			this.file = file;
+			this.size = size;
+			this.validated = validated;
+		}
+	}
+}
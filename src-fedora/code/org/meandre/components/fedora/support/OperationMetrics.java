@@ -0,0 +1,219 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 
+ * <p>
+ * Title: OperationMetrics
+ * </p>
+ * 
+ * <p>
+ * Description: Call, error and byte counts and a latency histogram for one
+ * kind of Fedora call.  Recording only updates atomic counters, so it
+ * allocates nothing and takes no lock:
+ * <pre>
+ * long start = metrics.start();
+ * ... the call ...
+ * metrics.success(start, bytes);   // or metrics.failure(start)
+ * </pre>
+ * The histogram buckets latencies in microseconds by power of two, each
+ * split into four, so percentiles are within 25% of the true value.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class OperationMetrics implements OperationMetricsMBean
+{
+	private static final int SUB_BUCKETS = 4;
+	private static final int BUCKETS = 128;
+	
+	private final String name;
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong totalMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+	
+	OperationMetrics(String name)
+	{
+		this.name = name;
+	}
+	
+	public String getName()
+	{ return name; }
+	
+	/* The start time to pass to success or failure. */
+	public long start()
+	{
+		return System.nanoTime();
+	}
+	
+	public void success(long start, long byteCount)
+	{
+		record(start);
+		if (byteCount > 0)
+		{  bytes.addAndGet(byteCount); }
+	}
+	
+	public void failure(long start)
+	{
+		record(start);
+		errors.incrementAndGet();
+	}
+	
+	private void record(long start)
+	{
+		long micros = (System.nanoTime() - start) / 1000;
+		if (micros < 0)
+		{  micros = 0; }
+		calls.incrementAndGet();
+		totalMicros.addAndGet(micros);
+		histogram.incrementAndGet(bucket(micros));
+		long max = maxMicros.get();
+		while (micros > max && !maxMicros.compareAndSet(max, micros))
+		{
+			max = maxMicros.get();
+		}
+	}
+	
+	public long getCalls()
+	{ return calls.get(); }
+	
+	public long getErrors()
+	{ return errors.get(); }
+	
+	public long getBytes()
+	{ return bytes.get(); }
+	
+	public double getMeanMillis()
+	{
+		long n = calls.get();
+		return (n == 0) ? 0.0 : totalMicros.get() / 1000.0 / n;
+	}
+	
+	public double getP50Millis()
+	{ return percentileMillis(0.50); }
+	
+	public double getP99Millis()
+	{ return percentileMillis(0.99); }
+	
+	public double getMaxMillis()
+	{ return maxMicros.get() / 1000.0; }
+	
+	/*
+	 * The latency below which the fraction q of calls fell, as the upper
+	 * bound of the bucket it lands in.
+	 */
+	public double percentileMillis(double q)
+	{
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			counts[i] = histogram.get(i);
+			total += counts[i];
+		}
+		if (total == 0)
+		{  return 0.0; }
+		
+		long rank = (long)Math.ceil(q * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+			{  return Math.min(upperBound(i), maxMicros.get()) / 1000.0; }
+		}
+		return getMaxMillis();
+	}
+	
+	public void reset()
+	{
+		calls.set(0);
+		errors.set(0);
+		bytes.set(0);
+		totalMicros.set(0);
+		maxMicros.set(0);
+		for (int i = 0; i < BUCKETS; i++)
+		{  histogram.set(i, 0); }
+	}
+	
+	public String toString()
+	{
+		return String.format("%-24s %10d %8d %14d %10.2f %10.2f %10.2f %10.2f", name, getCalls(), 
+				getErrors(), getBytes(), getMeanMillis(), getP50Millis(), getP99Millis(), getMaxMillis());
+	}
+	
+	/* Values below 4 get a bucket each; above, four per power of two. */
+	static int bucket(long micros)
+	{
+		if (micros < SUB_BUCKETS)
+		{  return (int)micros; }
+		int exp = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int)((micros >> (exp - 2)) & (SUB_BUCKETS - 1));
+		return Math.min(BUCKETS - 1, SUB_BUCKETS + (exp - 2) * SUB_BUCKETS + sub);
+	}
+	
+	/* The largest value that falls in the bucket. */
+	static long upperBound(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+		{  return bucket; }
+		int exp = (bucket - SUB_BUCKETS) / SUB_BUCKETS + 2;
+		int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return ((long)(SUB_BUCKETS + sub + 1) << (exp - 2)) - 1;
+	}
+}
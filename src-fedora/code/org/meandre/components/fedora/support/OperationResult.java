@@ -0,0 +1,140 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+/**
+ * 
+ * <p>
+ * Title: OperationResult
+ * </p>
+ * 
+ * <p>
+ * Description: The outcome of one object-level Fedora operation in a bulk
+ * component: what was worked on, the pid involved, how many bytes moved,
+ * how long it took, how many attempts it needed and, on failure, why.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class OperationResult
+{
+	private final String source;
+	private String pid = null;
+	private long bytes = 0;
+	private long latencyMillis = 0;
+	private int attempts = 0;
+	private String error = null;
+	private String checksums = null;
+	
+	public OperationResult(String source)
+	{
+		this.source = source;
+	}
+	
+	/* The file, document or pid the operation was given. */
+	public String getSource()
+	{ return source; }
+	
+	public String getPid()
+	{ return pid; }
+	
+	public void setPid(String pid)
+	{ this.pid = pid; }
+	
+	public long getBytes()
+	{ return bytes; }
+	
+	public void setBytes(long bytes)
+	{ this.bytes = bytes; }
+	
+	public long getLatencyMillis()
+	{ return latencyMillis; }
+	
+	public void setLatencyMillis(long latencyMillis)
+	{ this.latencyMillis = latencyMillis; }
+	
+	public int getAttempts()
+	{ return attempts; }
+	
+	public void setAttempts(int attempts)
+	{ this.attempts = attempts; }
+	
+	public String getError()
+	{ return error; }
+	
+	public void setError(String error)
+	{ this.error = error; }
+	
+	/* TYPE:value pairs for the bytes transferred, if checksums were asked for. */
+	public String getChecksums()
+	{ return checksums; }
+	
+	public void setChecksums(String checksums)
+	{ this.checksums = checksums; }
+	
+	public boolean isSuccess()
+	{ return error == null; }
+	
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(source);
+		sb.append(" pid=").append(pid);
+		sb.append(" bytes=").append(bytes);
+		sb.append(" latencyMs=").append(latencyMillis);
+		sb.append(" attempts=").append(attempts);
+		if (checksums != null)
+		{  sb.append(" checksums=").append(checksums); }
+		if (error != null)
+		{  sb.append(" error=").append(error); }
+		return sb.toString();
+	}
+}
@@ -0,0 +1,301 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.httpclient.Credentials;
+import org.apache.commons.httpclient.UsernamePasswordCredentials;
+import org.apache.commons.httpclient.auth.AuthScope;
+
+import fedora.client.FedoraClient;
+import fedora.client.HttpInputStream;
+
+/**
+ * 
+ * <p>
+ * Title: ResourceIndex
+ * </p>
+ * 
+ * <p>
+ * Description: Runs tuple queries against the Fedora resource index
+ * (risearch), optionally answering them from the TupleQueryCache.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class ResourceIndex
+{
+	public static final String ITQL = "itql";
+	public static final String SPO = "spo";
+	public static final String SPARQL = "sparql";
+	
+	static final String FORMAT_CSV = "CSV";
+	static final String FORMAT_COUNT = "count";
+	
+	private static final OperationMetrics GET_TUPLES = FedoraMetrics.operation("getTuples");
+	private static final OperationMetrics OPEN_TUPLES = FedoraMetrics.operation("openTuples");
+	private static final OperationMetrics COUNT_TUPLES = FedoraMetrics.operation("countTuples");
+	
+	/* Whether the last getTuples call on this thread was answered from the cache. */
+	private static final ThreadLocal<boolean[]> lastCached = new ThreadLocal<boolean[]>()
+	{
+		protected boolean[] initialValue()
+		{  return new boolean[1]; }
+	};
+	
+	/*
+	 * The aliases a Fedora resource index abbreviates URIs with in its CSV
+	 * results, unless the server is configured with others.
+	 */
+	private static volatile Map<String, String> aliases = defaultAliases();
+	
+	private ResourceIndex()
+	{}
+	
+	private static Map<String, String> defaultAliases()
+	{
+		Map<String, String> map = new HashMap<String, String>();
+		map.put("fedora", "info:fedora/");
+		map.put("fedora-model", "info:fedora/fedora-system:def/model#");
+		map.put("fedora-view", "info:fedora/fedora-system:def/view#");
+		map.put("fedora-rels-ext", "info:fedora/fedora-system:def/relations-external#");
+		map.put("dc", "http://purl.org/dc/elements/1.1/");
+		map.put("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+		map.put("xml-schema", "http://www.w3.org/2001/XMLSchema#");
+		return Collections.unmodifiableMap(map);
+	}
+	
+	/* The alias map CSV results are expanded with. */
+	public static Map<String, String> getAliases()
+	{
+		return aliases;
+	}
+	
+	/* For a server configured with other aliases than the defaults. */
+	public static void setAliases(Map<String, String> aliases)
+	{
+		ResourceIndex.aliases = Collections.unmodifiableMap(new HashMap<String, String>(aliases));
+	}
+	
+	/*
+	 * Runs a tuple query.  With ttlMillis > 0 a cached result younger than
+	 * ttlMillis is returned instead and a fresh result is cached.  With flush
+	 * set, the server writes its buffered triples to the index before
+	 * answering, which is only needed right after a change.
+	 */
+	public static TupleRows getTuples(FedoraClient fclient, String lang, String query,
+			                          boolean flush, long ttlMillis)
+	throws IOException
+	{
+		String server = serverKey(fclient);
+		TupleQueryCache cache = TupleQueryCache.getInstance();
+		lastCached.get()[0] = false;
+		if (ttlMillis > 0)
+		{
+			TupleRows cached = cache.get(server, lang, query, ttlMillis);
+			if (cached != null)
+			{
+				lastCached.get()[0] = true;
+				return cached;
+			}
+		}
+		
+		long start = GET_TUPLES.start();
+		TupleRows rows = null;
+		try
+		{
+			HttpInputStream in = fclient.get(queryLocator(lang, query, FORMAT_CSV, flush), true);
+			CsvTupleReader reader = new CsvTupleReader(in, aliases);
+			try
+			{
+				rows = reader.readAll();
+			}
+			finally
+			{
+				reader.close();
+			}
+			GET_TUPLES.success(start, in.getContentLength());
+		}
+		catch (IOException ex)
+		{
+			GET_TUPLES.failure(start);
+			throw ex;
+		}
+		if (ttlMillis > 0)
+		{
+			cache.put(server, lang, query, rows);
+		}
+		return rows;
+	}
+	
+	/*
+	 * True if the last getTuples call on this thread was answered from the
+	 * cache, so it did not reach the server and flushed nothing.
+	 */
+	public static boolean wasLastCallCached()
+	{
+		return lastCached.get()[0];
+	}
+	
+	/*
+	 * Runs a tuple query in the CSV result format and returns the reader,
+	 * for callers that consume rows as they arrive.  The caller must close
+	 * it.  CSV is used rather than the SPARQL XML that
+	 * FedoraClient.getTuples asks for: it is a fraction of the size and is
+	 * parsed without building a map of nodes per row.
+	 */
+	public static CsvTupleReader openTuples(FedoraClient fclient, String lang, String query,
+			                                boolean flush)
+	throws IOException
+	{
+		long start = OPEN_TUPLES.start();
+		try
+		{
+			HttpInputStream in = fclient.get(queryLocator(lang, query, FORMAT_CSV, flush), true);
+			OPEN_TUPLES.success(start, in.getContentLength());
+			return new CsvTupleReader(in, aliases);
+		}
+		catch (IOException ex)
+		{
+			OPEN_TUPLES.failure(start);
+			throw ex;
+		}
+	}
+	
+	/*
+	 * Counts the rows a tuple query matches without transferring them.
+	 */
+	public static int countTuples(FedoraClient fclient, String lang, String query,
+			                      boolean flush)
+	throws IOException
+	{
+		long start = COUNT_TUPLES.start();
+		try
+		{
+			HttpInputStream in = fclient.get(queryLocator(lang, query, FORMAT_COUNT, flush), true);
+			try
+			{
+				BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+				String line = reader.readLine();
+				int count = 0;
+				try
+				{
+					count = Integer.parseInt(line.trim());
+				}
+				catch (RuntimeException ex)
+				{
+					throw new IOException("Unexpected count result: " + line);
+				}
+				COUNT_TUPLES.success(start, in.getContentLength());
+				return count;
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException ex)
+		{
+			COUNT_TUPLES.failure(start);
+			throw ex;
+		}
+	}
+	
+	/* The risearch locator, relative to the client's base URL. */
+	static String queryLocator(String lang, String query, String format, boolean flush)
+	throws IOException
+	{
+		StringBuilder sb = new StringBuilder(query.length() + 96);
+		sb.append("/risearch?type=tuples&lang=").append(lang);
+		sb.append("&format=").append(format);
+		sb.append("&flush=").append(flush);
+		sb.append("&query=").append(URLEncoder.encode(query, "UTF-8"));
+		return sb.toString();
+	}
+	
+	/*
+	 * Identifies the server and user a client talks to for cache keys, in
+	 * the registry's protocol://host:port/fedora#user form, so that clients
+	 * built per firing share entries with each other and with the registry's.
+	 * Only a client whose endpoint cannot be learned is keyed on itself.
+	 */
+	public static String serverKey(FedoraClient fclient)
+	{
+		String key = FedoraConnectionRegistry.getInstance().keyFor(fclient);
+		if (key == null)
+		{
+			try
+			{
+				key = RestTransport.baseURL(fclient)+"#"+user(fclient);
+			}
+			catch (IOException ex)
+			{
+				key = "client@"+Integer.toHexString(System.identityHashCode(fclient));
+			}
+		}
+		return key;
+	}
+	
+	/* The user name the client authenticates with, or null if none. */
+	private static String user(FedoraClient fclient)
+	{
+		Credentials credentials = fclient.getHttpClient().getState().getCredentials(AuthScope.ANY);
+		return (credentials instanceof UsernamePasswordCredentials) 
+			? ((UsernamePasswordCredentials)credentials).getUserName() : null;
+	}
+}
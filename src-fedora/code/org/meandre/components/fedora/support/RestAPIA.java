@@ -0,0 +1,150 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.rmi.RemoteException;
+
+import org.apache.axis.types.NonNegativeInteger;
+
+import fedora.client.HttpInputStream;
+import fedora.server.access.FedoraAPIA;
+import fedora.server.types.gen.DatastreamDef;
+import fedora.server.types.gen.FieldSearchQuery;
+import fedora.server.types.gen.FieldSearchResult;
+import fedora.server.types.gen.MIMETypedStream;
+import fedora.server.types.gen.ObjectMethodsDef;
+import fedora.server.types.gen.ObjectProfile;
+import fedora.server.types.gen.Property;
+import fedora.server.types.gen.RepositoryInfo;
+
+/**
+ * 
+ * <p>
+ * Title: RestAPIA
+ * </p>
+ * 
+ * <p>
+ * Description: A FedoraAPIA that fetches datastream contents and
+ * disseminations over API-A-LITE and passes every other call to the
+ * SOAP stub it wraps.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class RestAPIA implements FedoraAPIA
+{
+	private final RestTransport transport;
+	private final FedoraAPIA soap;
+	
+	public RestAPIA(RestTransport transport, FedoraAPIA soap)
+	{
+		this.transport = transport;
+		this.soap = soap;
+	}
+	
+	public RestTransport getTransport()
+	{ return transport; }
+	
+	/* The SOAP stub the other calls go to. */
+	public FedoraAPIA getSoap()
+	{ return soap; }
+	
+	/*
+	 * Opens the content of a datastream as a stream, for callers that
+	 * consume it as it arrives.  The caller must close it.
+	 */
+	public HttpInputStream openDatastream(String pid, String dsID, String asOfDateTime)
+	throws RemoteException
+	{
+		return transport.open(RestTransport.datastreamLocator(pid, dsID, asOfDateTime));
+	}
+	
+	public MIMETypedStream getDatastreamDissemination(String pid, String dsID, String asOfDateTime)
+	throws RemoteException
+	{
+		HttpInputStream in = openDatastream(pid, dsID, asOfDateTime);
+		String mimeType = in.getContentType();
+		return new MIMETypedStream(mimeType, RestTransport.read(in), new Property[0]);
+	}
+	
+	public MIMETypedStream getDissemination(String pid, String bDefPid, String methodName, 
+			                                Property[] parameters, String asOfDateTime)
+	throws RemoteException
+	{
+		HttpInputStream in = transport.open(RestTransport.disseminationLocator(pid, bDefPid, 
+				methodName, parameters, asOfDateTime));
+		String mimeType = in.getContentType();
+		return new MIMETypedStream(mimeType, RestTransport.read(in), new Property[0]);
+	}
+	
+	public RepositoryInfo describeRepository() throws RemoteException
+	{  return soap.describeRepository(); }
+	
+	public ObjectProfile getObjectProfile(String pid, String asOfDateTime) throws RemoteException
+	{  return soap.getObjectProfile(pid, asOfDateTime); }
+	
+	public ObjectMethodsDef[] listMethods(String pid, String asOfDateTime) throws RemoteException
+	{  return soap.listMethods(pid, asOfDateTime); }
+	
+	public DatastreamDef[] listDatastreams(String pid, String asOfDateTime) throws RemoteException
+	{  return soap.listDatastreams(pid, asOfDateTime); }
+	
+	public FieldSearchResult findObjects(String[] resultFields, NonNegativeInteger maxResults,
+			                             FieldSearchQuery query)
+	throws RemoteException
+	{  return soap.findObjects(resultFields, maxResults, query); }
+	
+	public FieldSearchResult resumeFindObjects(String sessionToken) throws RemoteException
+	{  return soap.resumeFindObjects(sessionToken); }
+	
+	public String[] getObjectHistory(String pid) throws RemoteException
+	{  return soap.getObjectHistory(pid); }
+}
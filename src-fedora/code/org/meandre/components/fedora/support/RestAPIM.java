@@ -0,0 +1,223 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.rmi.RemoteException;
+
+import org.apache.axis.types.NonNegativeInteger;
+
+import fedora.server.management.FedoraAPIM;
+import fedora.server.types.gen.Datastream;
+import fedora.server.types.gen.DatastreamBindingMap;
+import fedora.server.types.gen.Disseminator;
+import fedora.server.types.gen.UserInfo;
+
+/**
+ * 
+ * <p>
+ * Title: RestAPIM
+ * </p>
+ * 
+ * <p>
+ * Description: A FedoraAPIM that fetches object xml and exports over the
+ * REST API when the server is Fedora 3 or later, and passes every other
+ * call, and those too on an older server, to the SOAP stub it wraps.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class RestAPIM implements FedoraAPIM
+{
+	private final RestTransport transport;
+	private final FedoraAPIM soap;
+	
+	public RestAPIM(RestTransport transport, FedoraAPIM soap)
+	{
+		this.transport = transport;
+		this.soap = soap;
+	}
+	
+	public RestTransport getTransport()
+	{ return transport; }
+	
+	/* The SOAP stub the other calls go to. */
+	public FedoraAPIM getSoap()
+	{ return soap; }
+	
+	public byte[] getObjectXML(String pid) throws RemoteException
+	{
+		if (!transport.hasRestAPI())
+		{  return soap.getObjectXML(pid); }
+		StringBuilder locator = RestTransport.objectLocator(pid).append("/objectXML");
+		return transport.read(locator.toString());
+	}
+	
+	public byte[] export(String pid, String format, String context) throws RemoteException
+	{
+		if (!transport.hasRestAPI())
+		{  return soap.export(pid, format, context); }
+		StringBuilder locator = RestTransport.objectLocator(pid).append("/export");
+		RestTransport.appendParam(locator, "format", format);
+		RestTransport.appendParam(locator, "context", context);
+		return transport.read(locator.toString());
+	}
+	
+	public byte[] exportObject(String pid) throws RemoteException
+	{
+		return export(pid, null, null);
+	}
+	
+	public String ingest(byte[] objectXML, String format, String logMessage) throws RemoteException
+	{  return soap.ingest(objectXML, format, logMessage); }
+	
+	public String ingestObject(byte[] objectXML, String logMessage) throws RemoteException
+	{  return soap.ingestObject(objectXML, logMessage); }
+	
+	public UserInfo describeUser(String id) throws RemoteException
+	{  return soap.describeUser(id); }
+	
+	public String modifyObject(String pid, String state, String label, String ownerId, String logMessage)
+	throws RemoteException
+	{  return soap.modifyObject(pid, state, label, ownerId, logMessage); }
+	
+	public String purgeObject(String pid, String logMessage, boolean force) throws RemoteException
+	{  return soap.purgeObject(pid, logMessage, force); }
+	
+	public String addDatastream(String pid, String dsID, String[] altIDs, String dsLabel, 
+			boolean versionable, String MIMEType, String formatURI, String dsLocation, 
+			String controlGroup, String dsState, String checksumType, String checksum, String logMessage)
+	throws RemoteException
+	{
+		return soap.addDatastream(pid, dsID, altIDs, dsLabel, versionable, MIMEType, formatURI, 
+				dsLocation, controlGroup, dsState, checksumType, checksum, logMessage);
+	}
+	
+	public String addDisseminator(String pid, String bDefPid, String bMechPid, String dissLabel,
+			DatastreamBindingMap bindingMap, String dissState, String logMessage)
+	throws RemoteException
+	{  return soap.addDisseminator(pid, bDefPid, bMechPid, dissLabel, bindingMap, dissState, logMessage); }
+	
+	public String modifyDatastreamByReference(String pid, String dsID, String[] altIDs, 
+			String dsLabel, String MIMEType, String formatURI, String dsLocation, 
+			String checksumType, String checksum, String logMessage, boolean force)
+	throws RemoteException
+	{
+		return soap.modifyDatastreamByReference(pid, dsID, altIDs, dsLabel, MIMEType, formatURI, 
+				dsLocation, checksumType, checksum, logMessage, force);
+	}
+	
+	public String modifyDatastreamByValue(String pid, String dsID, String[] altIDs, 
+			String dsLabel, String MIMEType, String formatURI, byte[] dsContent, 
+			String checksumType, String checksum, String logMessage, boolean force)
+	throws RemoteException
+	{
+		return soap.modifyDatastreamByValue(pid, dsID, altIDs, dsLabel, MIMEType, formatURI, 
+				dsContent, checksumType, checksum, logMessage, force);
+	}
+	
+	public String modifyDisseminator(String pid, String dissID, String bMechPid, String dissLabel,
+			DatastreamBindingMap bindingMap, String dissState, String logMessage, boolean force)
+	throws RemoteException
+	{
+		return soap.modifyDisseminator(pid, dissID, bMechPid, dissLabel, bindingMap, dissState, 
+				logMessage, force);
+	}
+	
+	public String setDatastreamState(String pid, String dsID, String dsState, String logMessage)
+	throws RemoteException
+	{  return soap.setDatastreamState(pid, dsID, dsState, logMessage); }
+	
+	public String setDatastreamVersionable(String pid, String dsID, boolean versionable, String logMessage)
+	throws RemoteException
+	{  return soap.setDatastreamVersionable(pid, dsID, versionable, logMessage); }
+	
+	public String compareDatastreamChecksum(String pid, String dsID, String versionDate)
+	throws RemoteException
+	{  return soap.compareDatastreamChecksum(pid, dsID, versionDate); }
+	
+	public String setDisseminatorState(String pid, String dissID, String dissState, String logMessage)
+	throws RemoteException
+	{  return soap.setDisseminatorState(pid, dissID, dissState, logMessage); }
+	
+	public Datastream getDatastream(String pid, String dsID, String asOfDateTime)
+	throws RemoteException
+	{  return soap.getDatastream(pid, dsID, asOfDateTime); }
+	
+	public Datastream[] getDatastreams(String pid, String asOfDateTime, String state) 
+	throws RemoteException
+	{  return soap.getDatastreams(pid, asOfDateTime, state); }
+	
+	public Datastream[] getDatastreamHistory(String pid, String dsID) throws RemoteException
+	{  return soap.getDatastreamHistory(pid, dsID); }
+	
+	public Disseminator getDisseminator(String pid, String dissID, String asOfDateTime)
+	throws RemoteException
+	{  return soap.getDisseminator(pid, dissID, asOfDateTime); }
+	
+	public Disseminator[] getDisseminators(String pid, String asOfDateTime, String dissState)
+	throws RemoteException
+	{  return soap.getDisseminators(pid, asOfDateTime, dissState); }
+	
+	public Disseminator[] getDisseminatorHistory(String pid, String dissID) throws RemoteException
+	{  return soap.getDisseminatorHistory(pid, dissID); }
+	
+	public String[] purgeDatastream(String pid, String dsID, String startDT, String endDT,
+			String logMessage, boolean force)
+	throws RemoteException
+	{  return soap.purgeDatastream(pid, dsID, startDT, endDT, logMessage, force); }
+	
+	public String[] purgeDisseminator(String pid, String dissID, String endDT, String logMessage)
+	throws RemoteException
+	{  return soap.purgeDisseminator(pid, dissID, endDT, logMessage); }
+	
+	public String[] getNextPID(NonNegativeInteger numPIDs, String pidNamespace) throws RemoteException
+	{  return soap.getNextPID(numPIDs, pidNamespace); }
+}
@@ -0,0 +1,419 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.rmi.RemoteException;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.GetMethod;
+
+import fedora.client.FedoraClient;
+import fedora.client.HttpInputStream;
+import fedora.server.access.FedoraAPIA;
+import fedora.server.management.FedoraAPIM;
+import fedora.server.types.gen.Property;
+
+/**
+ * 
+ * <p>
+ * Title: RestTransport
+ * </p>
+ * 
+ * <p>
+ * Description: Serves the bulk read operations over HTTP instead of the
+ * Axis SOAP stubs.  Datastream contents and disseminations are read
+ * through API-A-LITE (/get/...), which Fedora 2.2 and 3 both serve;
+ * object xml and exports are read through the REST API (/objects/...),
+ * which needs Fedora 3, so RestAPIM sends them over SOAP when the server
+ * reports an older version.  The HTTP responses are the raw content,
+ * with no SOAP envelope, no base64 encoding and no axis
+ * deserialization.  The operations are reached through RestAPIA and
+ * RestAPIM, which implement the stub interfaces, so components work with
+ * either transport unchanged.  Byte ranges of datastream content are
+ * opened directly, for DatastreamReader.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class RestTransport
+{
+	public static final String SOAP = "soap";
+	public static final String REST = "rest";
+	
+	/* The first major version of Fedora with the /objects REST API. */
+	public static final int REST_API_VERSION = 3;
+	
+	private static final String ACCESS_SERVICE = "/services/access";
+	
+	private final FedoraClient fclient;
+	
+	/* The client's base URL, found from its APIA endpoint on first use. */
+	private String baseURL = null;
+	
+	/* Whether the server has the REST API, found from its version on first use. */
+	private Boolean restAPI = null;
+	
+	public RestTransport(FedoraClient fclient)
+	{
+		this.fclient = fclient;
+	}
+	
+	public FedoraClient getClient()
+	{ return fclient; }
+	
+	/*
+	 * The APIA for the named transport: the SOAP stub itself, or a RestAPIA
+	 * in front of it.
+	 */
+	public static FedoraAPIA apia(String transport, FedoraClient fclient, FedoraAPIA soap)
+	{
+		if (isRest(transport))
+		{  return new RestAPIA(new RestTransport(fclient), soap); }
+		return soap;
+	}
+	
+	/* The APIM for the named transport, as apia. */
+	public static FedoraAPIM apim(String transport, FedoraClient fclient, FedoraAPIM soap)
+	{
+		if (isRest(transport))
+		{  return new RestAPIM(new RestTransport(fclient), soap); }
+		return soap;
+	}
+	
+	/* True for rest; false for soap, blank or anything else. */
+	public static boolean isRest(String transport)
+	{
+		return transport != null && REST.equalsIgnoreCase(transport.trim());
+	}
+	
+	/*
+	 * Opens the response to a GET of the locator, relative to the client's
+	 * base URL.  An error status is reported as a RemoteException, like a
+	 * SOAP fault; a network failure keeps its IOException as the cause so
+	 * RetryPolicy still sees it as transient.
+	 */
+	public HttpInputStream open(String locator)
+	throws RemoteException
+	{
+		try
+		{
+			return fclient.get(locator, true);
+		}
+		catch (IOException ex)
+		{
+			throw new RemoteException("GET "+locator+" failed: "+ex.getMessage(), ex);
+		}
+	}
+	
+	/*
+	 * Opens a GET of the locator for the bytes first to last, inclusive; a
+	 * negative last asks for the rest of the content.  The server answers
+	 * 206 with only those bytes, 200 with the whole content if it does not
+	 * serve ranges (see contentRange), or 416 with the content's length if
+	 * first is past its end, as it is for any range of empty content (see
+	 * unsatisfiedLength).
+	 */
+	public RangeInputStream openRange(String locator, long first, long last)
+	throws RemoteException
+	{
+		String url = null;
+		try
+		{
+			url = getBaseURL() + locator;
+			GetMethod get = new GetMethod(url);
+			get.setDoAuthentication(true);
+			get.setFollowRedirects(true);
+			get.setRequestHeader("Range", "bytes="+first+"-"+(last >= 0 ? String.valueOf(last) : ""));
+			RangeInputStream in = new RangeInputStream(fclient.getHttpClient(), get, url);
+			int status = in.getStatusCode();
+			if (status != 200 && status != 206 && unsatisfiedLength(in) < 0)
+			{
+				in.close();
+				throw new IOException("Request failed ["+status+" "+in.getStatusText()+"]");
+			}
+			return in;
+		}
+		catch (IOException ex)
+		{
+			throw new RemoteException("GET "+(url != null ? url : locator)+" bytes "+first+"-"+
+					(last >= 0 ? String.valueOf(last) : "")+" failed: "+ex.getMessage(), ex);
+		}
+	}
+	
+	/*
+	 * The base URL of the client, such as http://host:8080/fedora: its APIA
+	 * endpoint without the service path.
+	 */
+	public synchronized String getBaseURL()
+	throws IOException
+	{
+		if (baseURL == null)
+		{
+			baseURL = baseURL(fclient);
+		}
+		return baseURL;
+	}
+	
+	public static String baseURL(FedoraClient fclient)
+	throws IOException
+	{
+		String endpoint = fclient.getAPIAEndpointURL().toString();
+		int at = endpoint.lastIndexOf(ACCESS_SERVICE);
+		return (at >= 0) ? endpoint.substring(0, at) : endpoint;
+	}
+	
+	/*
+	 * True if the server's version is at least REST_API_VERSION, so that
+	 * object xml and exports can be read from /objects.
+	 */
+	public synchronized boolean hasRestAPI()
+	throws RemoteException
+	{
+		if (restAPI == null)
+		{
+			try
+			{
+				restAPI = Boolean.valueOf(majorVersion(fclient.getServerVersion()) >= REST_API_VERSION);
+			}
+			catch (IOException ex)
+			{
+				throw new RemoteException("Error reading the server version: "+ex.getMessage(), ex);
+			}
+		}
+		return restAPI.booleanValue();
+	}
+	
+	/* The leading number of a version such as 2.2 or 3.0b1, or 0. */
+	public static int majorVersion(String version)
+	{
+		if (version == null)
+		{  return 0; }
+		String value = version.trim();
+		int end = 0;
+		while (end < value.length() && Character.isDigit(value.charAt(end)))
+		{  end++; }
+		return (end == 0) ? 0 : Integer.parseInt(value.substring(0, end));
+	}
+	
+	/* The first, last and total length in a 206 response's Content-Range. */
+	public static long[] contentRange(HttpInputStream in)
+	{
+		Header header = in.getResponseHeader("Content-Range");
+		if (in.getStatusCode() != 206 || header == null)
+		{  return null; }
+		
+		// bytes first-last/total, where total may be *
+		String value = header.getValue().trim();
+		try
+		{
+			int space = value.indexOf(' ');
+			int dash = value.indexOf('-', space);
+			int slash = value.indexOf('/', dash);
+			long first = Long.parseLong(value.substring(space + 1, dash).trim());
+			long last = Long.parseLong(value.substring(dash + 1, slash).trim());
+			String total = value.substring(slash + 1).trim();
+			return new long[] {first, last, total.equals("*") ? -1 : Long.parseLong(total)};
+		}
+		catch (RuntimeException ex)
+		{
+			return null;
+		}
+	}
+	
+	/* The total length in a 416 response's Content-Range of bytes * /total, or -1. */
+	public static long unsatisfiedLength(HttpInputStream in)
+	{
+		Header header = in.getResponseHeader("Content-Range");
+		if (in.getStatusCode() != 416 || header == null)
+		{  return -1; }
+		String value = header.getValue().trim();
+		int slash = value.indexOf("*/");
+		try
+		{
+			return (slash >= 0) ? Long.parseLong(value.substring(slash + 2).trim()) : -1;
+		}
+		catch (NumberFormatException ex)
+		{
+			return -1;
+		}
+	}
+	
+	/* The whole body of a GET of the locator. */
+	public byte[] read(String locator)
+	throws RemoteException
+	{
+		return read(open(locator));
+	}
+	
+	static byte[] read(HttpInputStream in)
+	throws RemoteException
+	{
+		try
+		{
+			try
+			{
+				return ByteStreams.readStream(in, in.getContentLength(), ByteStreams.DEFAULT_CHUNK_SIZE);
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException ex)
+		{
+			throw new RemoteException("Error reading "+in.getURL()+": "+ex.getMessage(), ex);
+		}
+	}
+	
+	/* /get/{pid}/{dsID}[/{asOfDateTime}] */
+	public static String datastreamLocator(String pid, String dsID, String asOfDateTime)
+	{
+		StringBuilder locator = liteLocator(pid);
+		locator.append('/').append(encode(dsID));
+		appendSegment(locator, asOfDateTime);
+		return locator.toString();
+	}
+	
+	/* /get/{pid}/{bDefPid}/{methodName}[/{asOfDateTime}]?{parameters} */
+	public static String disseminationLocator(String pid, String bDefPid, String methodName,
+			                                  Property[] parameters, String asOfDateTime)
+	{
+		StringBuilder locator = liteLocator(pid);
+		locator.append('/').append(encode(bDefPid));
+		locator.append('/').append(encode(methodName));
+		appendSegment(locator, asOfDateTime);
+		if (parameters != null)
+		{
+			for (Property p: parameters)
+			{
+				appendParam(locator, p.getName(), p.getValue());
+			}
+		}
+		return locator.toString();
+	}
+	
+	/* /get/{pid} */
+	static StringBuilder liteLocator(String pid)
+	{
+		StringBuilder sb = new StringBuilder(128);
+		sb.append("/get/").append(encode(pid));
+		return sb;
+	}
+	
+	/* /objects/{pid} */
+	static StringBuilder objectLocator(String pid)
+	{
+		StringBuilder sb = new StringBuilder(128);
+		sb.append("/objects/").append(encode(pid));
+		return sb;
+	}
+	
+	/* Appends /value when value is not null. */
+	static void appendSegment(StringBuilder sb, String value)
+	{
+		if (value != null)
+		{  sb.append('/').append(encode(value)); }
+	}
+	
+	/* Appends ?name=value or &name=value when value is not null. */
+	static void appendParam(StringBuilder sb, String name, String value)
+	{
+		if (value == null)
+		{  return; }
+		sb.append(sb.indexOf("?") < 0 ? '?' : '&');
+		sb.append(encode(name)).append('=').append(encode(value));
+	}
+	
+	/*
+	 * A response opened by openRange.  Closing it reads the rest of the
+	 * body so the connection can be reused, which for a server that
+	 * ignored the range is the whole content; abort drops the connection
+	 * instead.
+	 */
+	public static class RangeInputStream extends HttpInputStream
+	{
+		private final GetMethod method;
+		
+		RangeInputStream(HttpClient client, GetMethod method, String url)
+		throws IOException
+		{
+			super(client, method, url);
+			this.method = method;
+		}
+		
+		/* Closes the response without reading the rest of the body. */
+		public void abort()
+		{
+			method.abort();
+			try
+			{  close(); }
+			catch (IOException ignore)
+			{}
+		}
+	}
+	
+	/* A pid, datastream id or parameter, encoded for a URL. */
+	static String encode(String value)
+	{
+		try
+		{
+			return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+		}
+		catch (UnsupportedEncodingException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * 
+ * <p>
+ * Title: RetryPolicy
+ * </p>
+ * 
+ * <p>
+ * Description: Retries a Fedora call that failed for a transient reason
+ * (a dropped or refused connection, a socket timeout, a server that did
+ * not answer) with exponential backoff and random jitter.  Failures that
+ * the server reported deliberately, such as a validation fault, are not
+ * retried.  Calls that must not run twice, such as ingest and purge, use
+ * callUnsent, which retries only failures that happened before the
+ * request reached the server.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class RetryPolicy
+{
+	private static final Random random = new Random();
+	
+	private final int maxAttempts;
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+	
+	/* The number of attempts used by the last call on this thread. */
+	private final ThreadLocal<int[]> lastAttempts = new ThreadLocal<int[]>()
+	{
+		protected int[] initialValue()
+		{  return new int[1]; }
+	};
+	
+	public RetryPolicy(int maxAttempts, long baseDelayMillis)
+	{
+		this(maxAttempts, baseDelayMillis, 30 * 1000L);
+	}
+	
+	public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis)
+	{
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelayMillis = Math.max(0, baseDelayMillis);
+		this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+	}
+	
+	public int getMaxAttempts()
+	{ return maxAttempts; }
+	
+	/*
+	 * Runs the call, retrying transient failures up to maxAttempts times in
+	 * total.  The last failure is rethrown.
+	 */
+	public <T> T call(Callable<T> call) throws Exception
+	{
+		return call(call, 0);
+	}
+	
+	/*
+	 * As call, but gives up once deadlineMillis have passed: no retry is
+	 * started whose backoff would end after the deadline.  A deadline of 0
+	 * or less means none.  The call itself is not interrupted; bound each
+	 * attempt with HedgedCalls or a socket timeout.
+	 */
+	public <T> T call(Callable<T> call, long deadlineMillis) throws Exception
+	{
+		return call(call, deadlineMillis, true);
+	}
+	
+	/*
+	 * As call, for a call that is not idempotent.  A read timeout or a
+	 * dropped connection may come after the server has done the work, so
+	 * only failures to connect are retried.
+	 */
+	public <T> T callUnsent(Callable<T> call) throws Exception
+	{
+		return call(call, 0, false);
+	}
+	
+	private <T> T call(Callable<T> call, long deadlineMillis, boolean idempotent) throws Exception
+	{
+		long deadline = (deadlineMillis > 0) ? System.currentTimeMillis() + deadlineMillis : Long.MAX_VALUE;
+		int attempt = 0;
+		while (true)
+		{
+			attempt++;
+			lastAttempts.get()[0] = attempt;
+			try
+			{
+				return call.call();
+			}
+			catch (Exception ex)
+			{
+				if (attempt >= maxAttempts || !(idempotent ? isTransient(ex) : isUnsent(ex)))
+				{  throw ex; }
+				long delay = backoff(attempt);
+				if (System.currentTimeMillis() + delay >= deadline)
+				{  throw ex; }
+				Thread.sleep(delay);
+			}
+		}
+	}
+	
+	/* The number of attempts the last call on this thread needed. */
+	public int getLastAttempts()
+	{
+		return lastAttempts.get()[0];
+	}
+	
+	/*
+	 * The delay before retry number attempt: exponential in the attempt
+	 * number, capped, with "full jitter" so that workers that failed
+	 * together do not retry together.
+	 */
+	public long backoff(int attempt)
+	{
+		long ceiling = baseDelayMillis << Math.min(attempt - 1, 20);
+		if (ceiling <= 0 || ceiling > maxDelayMillis)
+		{  ceiling = maxDelayMillis; }
+		synchronized (random)
+		{
+			return (long)(random.nextDouble() * ceiling);
+		}
+	}
+	
+	/*
+	 * True when some exception in the cause chain is a network-level
+	 * failure that a later attempt may not hit.
+	 */
+	public static boolean isTransient(Throwable th)
+	{
+		int depth = 0;
+		while (th != null && depth++ < 10)
+		{
+			if (th instanceof SocketException 
+			 || th instanceof InterruptedIOException)
+			{  return true; }
+			
+			String name = th.getClass().getName();
+			if (name.endsWith("NoHttpResponseException") 
+			 || name.endsWith("ConnectTimeoutException"))
+			{  return true; }
+			
+			th = th.getCause();
+		}
+		return false;
+	}
+	
+	/*
+	 * True when some exception in the cause chain shows the request never
+	 * reached the server: the connection was refused, timed out or had no
+	 * route.
+	 */
+	public static boolean isUnsent(Throwable th)
+	{
+		int depth = 0;
+		while (th != null && depth++ < 10)
+		{
+			if (th instanceof ConnectException 
+			 || th instanceof NoRouteToHostException
+			 || th.getClass().getName().endsWith("ConnectTimeoutException"))
+			{  return true; }
+			
+			th = th.getCause();
+		}
+		return false;
+	}
+}
@@ -0,0 +1,175 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 
+ * <p>
+ * Title: StreamBuffer
+ * </p>
+ * 
+ * <p>
+ * Description: A bounded hand-off between a producer thread that reads
+ * results from Fedora and the component thread that pushes them downstream.
+ * The producer blocks when the buffer is full, so paging can run ahead of
+ * the consumer by at most the buffer capacity.  A failure in the producer
+ * is rethrown to the consumer once the items produced before it are taken.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class StreamBuffer<T>
+{
+	/* The work done on the producer thread. */
+	public interface Producer<T>
+	{
+		public void produce(StreamBuffer<T> buffer) throws Exception;
+	}
+	
+	/* Marks the end of the stream in the queue. */
+	private static final Object END = new Object();
+	
+	private final BlockingQueue<Object> queue;
+	private volatile Throwable failure = null;
+	private volatile boolean cancelled = false;
+	private boolean finished = false;
+	private Thread thread = null;
+	
+	public StreamBuffer(int capacity)
+	{
+		queue = new ArrayBlockingQueue<Object>(Math.max(1, capacity));
+	}
+	
+	/*
+	 * Runs the producer on a new daemon thread.
+	 */
+	public void start(final Producer<T> producer, String name)
+	{
+		thread = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					producer.produce(StreamBuffer.this);
+				}
+				catch (InterruptedException ex)
+				{
+					// cancelled by the consumer
+				}
+				catch (Throwable th)
+				{
+					failure = th;
+				}
+				finally
+				{
+					try
+					{
+						if (!cancelled)
+						{  queue.put(END); }
+					}
+					catch (InterruptedException ex)
+					{}
+				}
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/*
+	 * Called by the producer; blocks while the buffer is full.
+	 */
+	public void put(T item) throws InterruptedException
+	{
+		if (cancelled)
+		{  throw new InterruptedException("Stream cancelled"); }
+		queue.put(item);
+	}
+	
+	/*
+	 * Called by the consumer; blocks until the next item is available.
+	 * Returns null at the end of the stream, or throws the exception that
+	 * stopped the producer.
+	 */
+	@SuppressWarnings("unchecked")
+	public T take() throws Exception
+	{
+		if (finished)
+		{  return null; }
+		
+		Object item = queue.take();
+		if (item != END)
+		{  return (T)item; }
+		
+		finished = true;
+		if (failure instanceof Exception)
+		{  throw (Exception)failure; }
+		if (failure != null)
+		{  throw new Exception(failure); }
+		return null;
+	}
+	
+	/*
+	 * Stops the producer and discards anything still buffered.
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+		finished = true;
+		if (thread != null)
+		{  thread.interrupt(); }
+		queue.clear();
+	}
+}
@@ -0,0 +1,191 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 
+ * <p>
+ * Title: TupleQueryCache
+ * </p>
+ * 
+ * <p>
+ * Description: A process-wide, size-bounded cache of resource index query
+ * results keyed on (server, language, query text).  Entries expire after a
+ * time-to-live chosen by the caller, the least recently used entry is
+ * dropped when the cache is full, and components that change the
+ * repository (ingest, purge) clear it through invalidateAll.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class TupleQueryCache
+{
+	public static final int DEFAULT_MAX_ENTRIES = 100;
+	
+	private static final TupleQueryCache cache = new TupleQueryCache();
+	
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+	
+	private final LinkedHashMap<String, CachedRows> entries = 
+		new LinkedHashMap<String, CachedRows>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+		
+		protected boolean removeEldestEntry(Map.Entry<String, CachedRows> eldest)
+		{
+			return size() > maxEntries;
+		}
+	};
+	
+	private long hits = 0;
+	private long misses = 0;
+	
+	private TupleQueryCache()
+	{}
+	
+	public static TupleQueryCache getInstance()
+	{
+		return cache;
+	}
+	
+	public synchronized void setMaxEntries(int max)
+	{
+		maxEntries = Math.max(1, max);
+		Iterator<String> it = entries.keySet().iterator();
+		while (entries.size() > maxEntries && it.hasNext())
+		{
+			it.next();
+			it.remove();
+		}
+	}
+	
+	/*
+	 * Returns the cached rows, or null if there are none or they are older
+	 * than ttlMillis.
+	 */
+	public synchronized TupleRows get(String server, String lang, String query, long ttlMillis)
+	{
+		String key = makeKey(server, lang, query);
+		CachedRows entry = entries.get(key);
+		if (entry != null && System.currentTimeMillis() - entry.created > ttlMillis)
+		{
+			entries.remove(key);
+			entry = null;
+		}
+		if (entry == null)
+		{
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.rows;
+	}
+	
+	public synchronized void put(String server, String lang, String query, TupleRows rows)
+	{
+		entries.put(makeKey(server, lang, query), new CachedRows(rows));
+	}
+	
+	/*
+	 * Drops every cached result for one server.
+	 */
+	public synchronized void invalidate(String server)
+	{
+		String prefix = server+"\n";
+		Iterator<String> it = entries.keySet().iterator();
+		while (it.hasNext())
+		{
+			if (it.next().startsWith(prefix))
+			{  it.remove(); }
+		}
+	}
+	
+	/*
+	 * Drops every cached result.  Called by components that ingest or purge
+	 * objects, since they may change collection membership.
+	 */
+	public synchronized void invalidateAll()
+	{
+		entries.clear();
+	}
+	
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+	
+	public synchronized long getHits()
+	{ return hits; }
+	
+	public synchronized long getMisses()
+	{ return misses; }
+	
+	private static String makeKey(String server, String lang, String query)
+	{
+		return server+"\n"+lang+"\n"+query;
+	}
+	
+	private static class CachedRows
+	{
+		final TupleRows rows;
+		final long created;
+		
+		CachedRows(TupleRows rows)
+		{
+			this.rows = rows;
+			this.created = System.currentTimeMillis();
+		}
+	}
+}
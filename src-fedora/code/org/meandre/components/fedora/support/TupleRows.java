@@ -0,0 +1,126 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 
+ * <p>
+ * Title: TupleRows
+ * </p>
+ * 
+ * <p>
+ * Description: The rows of a resource index tuple query, held as plain
+ * strings in column order.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class TupleRows
+{
+	private final String[] names;
+	private final List<String[]> rows;
+	
+	public TupleRows(String[] names)
+	{
+		this(names, 16);
+	}
+	
+	public TupleRows(String[] names, int initialSize)
+	{
+		this.names = names;
+		this.rows = new ArrayList<String[]>(Math.max(1, initialSize));
+	}
+	
+	public String[] getNames()
+	{ return names; }
+	
+	public List<String[]> getRows()
+	{ return rows; }
+	
+	public void add(String[] row)
+	{
+		rows.add(row);
+	}
+	
+	public int size()
+	{
+		return rows.size();
+	}
+	
+	/* The index of the named column, or -1. */
+	public int indexOf(String name)
+	{
+		for (int i = 0; i < names.length; i++)
+		{
+			if (names[i].equals(name))
+			{  return i; }
+		}
+		return -1;
+	}
+	
+	/*
+	 * Adds every value of every row, row by row, to the target.
+	 */
+	public void addValuesTo(Collection<String> target)
+	{
+		for (String[] row: rows)
+		{
+			for (String value: row)
+			{
+				target.add(value);
+			}
+		}
+	}
+}
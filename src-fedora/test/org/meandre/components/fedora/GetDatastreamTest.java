@@ -0,0 +1,178 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.meandre.components.fedora.fake.FakeFedoraClient;
+import org.meandre.components.fedora.fake.FakeRepository;
+import org.meandre.components.fedora.support.DatastreamReader;
+import org.meandre.components.fedora.support.RestTransport;
+import org.meandre.components.fedora.support.RetryPolicy;
+
+/**
+ * 
+ * <p>
+ * Title: GetDatastreamTest
+ * </p>
+ * 
+ * <p>
+ * Description: Checks how content is split into ranges and that
+ * ranges read concurrently reach the sink in order.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class GetDatastreamTest
+{
+	private FakeFedoraClient fclient;
+	private ExecutorService executor;
+	private byte[] content;
+	
+	@Before
+	public void setUp()
+	throws Exception
+	{
+		FakeRepository repository = new FakeRepository();
+		repository.ingest(FakeRepository.foxml("big:1", "big", 200 * 1024 + 5, null));
+		// completions out of order exercise the reordering
+		repository.getFaults().setLatency(0, 20);
+		fclient = new FakeFedoraClient(repository);
+		content = fclient.getAPIA().getDatastreamDissemination("big:1", "DC", null).getStream();
+		executor = Executors.newFixedThreadPool(4);
+	}
+	
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+		fclient.stop();
+	}
+	
+	@Test
+	public void splitsKnownLengthsIntoRanges()
+	{
+		List<long[]> ranges = GetDatastream.ranges(10, true, 4);
+		assertEquals(3, ranges.size());
+		assertArrayEquals(new long[] {0, 3}, ranges.get(0));
+		assertArrayEquals(new long[] {4, 7}, ranges.get(1));
+		assertArrayEquals(new long[] {8, 9}, ranges.get(2));
+		
+		assertEquals(2, GetDatastream.ranges(8, true, 4).size());
+		assertEquals(1, GetDatastream.ranges(1, true, 4).size());
+		assertEquals(0, GetDatastream.ranges(0, true, 4).size());
+	}
+	
+	@Test
+	public void readsUnknownOrUnrangedContentWhole()
+	{
+		assertArrayEquals(new long[] {0, -1}, GetDatastream.ranges(-1, true, 4).get(0));
+		assertArrayEquals(new long[] {0, -1}, GetDatastream.ranges(10, false, 4).get(0));
+		assertEquals(1, GetDatastream.ranges(10, false, 4).size());
+	}
+	
+	@Test
+	public void pushesRangesInOrder()
+	throws Exception
+	{
+		DatastreamReader reader = reader();
+		List<long[]> ranges = GetDatastream.ranges(reader.probe(), reader.isRanged(), 16 * 1024);
+		OrderedSink sink = new OrderedSink();
+		GetDatastream.readInOrder(reader, ranges, 4, executor, sink);
+		assertArrayEquals(content, sink.toByteArray());
+		assertEquals(ranges.size(), sink.pieces.size());
+	}
+	
+	@Test
+	public void passesWholeContentInOwnedPieces()
+	throws Exception
+	{
+		OrderedSink sink = new OrderedSink();
+		GetDatastream.readInOrder(reader(), GetDatastream.ranges(-1, false, 16 * 1024), 4, executor, sink);
+		assertArrayEquals(content, sink.toByteArray());
+		// every piece is a separate array holding exactly the piece
+		for (int i = 1; i < sink.pieces.size(); i++)
+		{
+			assertFalse(sink.pieces.get(i - 1) == sink.pieces.get(i));
+		}
+	}
+	
+	private DatastreamReader reader()
+	{
+		return new DatastreamReader(new RestTransport(fclient), "big:1", "DC", null, new RetryPolicy(3, 1));
+	}
+	
+	/* Checks each piece starts where the last ended and keeps the arrays. */
+	private static class OrderedSink extends ByteArrayOutputStream implements DatastreamReader.Sink
+	{
+		final List<byte[]> pieces = new ArrayList<byte[]>();
+		
+		public void write(long offset, byte[] bytes, int off, int len)
+		{
+			assertEquals(size(), offset);
+			assertEquals(0, off);
+			assertEquals(bytes.length, len);
+			pieces.add(bytes);
+			write(bytes, off, len);
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.fake;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.meandre.components.fedora.support.TupleRows;
+
+/**
+ * 
+ * <p>
+ * Title: TripleSetTest
+ * </p>
+ * 
+ * <p>
+ * Description: Evaluates the iTQL shapes the components send against
+ * a small collection tree.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class TripleSetTest
+{
+	private static final String MEMBER = "info:fedora/fedora-system:def/relations-external#isMemberOf";
+	private static final String MODEL = "info:fedora/fedora-system:def/model#hasModel";
+	private static final String TITLE = "http://purl.org/dc/elements/1.1/title";
+	
+	private TripleSet triples;
+	
+	@Before
+	public void setUp()
+	{
+		triples = new TripleSet();
+		triples.addResource("info:fedora/monk:c1", MEMBER, "info:fedora/monk:root");
+		triples.addResource("info:fedora/monk:c2", MEMBER, "info:fedora/monk:root");
+		triples.addResource("info:fedora/monk:w1", MEMBER, "info:fedora/monk:c1");
+		triples.addResource("info:fedora/monk:w2", MEMBER, "info:fedora/monk:c1");
+		triples.addResource("info:fedora/monk:w3", MEMBER, "info:fedora/monk:c2");
+		triples.addResource("info:fedora/monk:w1", MODEL, "info:fedora/monk:work");
+		triples.addLiteral("info:fedora/monk:w1", TITLE, "Hamlet");
+		triples.addLiteral("info:fedora/monk:w2", TITLE, "It's \"quoted\"");
+	}
+	
+	@Test
+	public void selectsSubjectsOfAFixedObject()
+	{
+		TupleRows rows = triples.select(
+				"select $c from <#ri> where $c <"+MEMBER+"> <info:fedora/monk:root> order by $c;");
+		assertArrayEquals(new String[] { "c" }, rows.getNames());
+		assertEquals(2, rows.size());
+		assertEquals("<info:fedora/monk:c1>", rows.getRows().get(0)[0]);
+		assertEquals("<info:fedora/monk:c2>", rows.getRows().get(1)[0]);
+	}
+	
+	@Test
+	public void joinsPatternsOnASharedVariable()
+	{
+		TupleRows rows = triples.select(
+				"select $c $w from <#ri> where $c <"+MEMBER+"> <info:fedora/monk:root> " +
+				"and $w <"+MEMBER+"> $c order by $w");
+		assertArrayEquals(new String[] { "c", "w" }, rows.getNames());
+		assertEquals(3, rows.size());
+		assertArrayEquals(new String[] { "<info:fedora/monk:c1>", "<info:fedora/monk:w1>" }, rows.getRows().get(0));
+		assertArrayEquals(new String[] { "<info:fedora/monk:c1>", "<info:fedora/monk:w2>" }, rows.getRows().get(1));
+		assertArrayEquals(new String[] { "<info:fedora/monk:c2>", "<info:fedora/monk:w3>" }, rows.getRows().get(2));
+	}
+	
+	@Test
+	public void selectsObjectsOfAFixedSubject()
+	{
+		TupleRows rows = triples.select(
+				"select $t from <#ri> where <info:fedora/monk:w2> <"+TITLE+"> $t");
+		assertEquals(1, rows.size());
+		assertEquals(TripleSet.literal("It's \"quoted\""), rows.getRows().get(0)[0]);
+	}
+	
+	@Test
+	public void matchesLiteralObjects()
+	{
+		TupleRows rows = triples.select(
+				"select $w from <#ri> where $w <"+TITLE+"> 'Hamlet'");
+		assertEquals(1, rows.size());
+		assertEquals("<info:fedora/monk:w1>", rows.getRows().get(0)[0]);
+		
+		rows = triples.select("select $w from <#ri> where $w <"+TITLE+"> 'It\\'s \"quoted\"'");
+		assertEquals(1, rows.size());
+		assertEquals("<info:fedora/monk:w2>", rows.getRows().get(0)[0]);
+	}
+	
+	@Test
+	public void listsEveryTripleOfAPredicate()
+	{
+		TupleRows rows = triples.select("select $m $c from <#ri> where $m <"+MEMBER+"> $c;");
+		assertEquals(5, rows.size());
+		List<String> members = new ArrayList<String>();
+		for (String[] row: rows.getRows())
+		{  members.add(row[0]); }
+		Collections.sort(members);
+		assertEquals("<info:fedora/monk:c1>", members.get(0));
+		assertEquals("<info:fedora/monk:w3>", members.get(4));
+	}
+	
+	@Test
+	public void unmatchedPatternsGiveNoRows()
+	{
+		assertEquals(0, triples.select(
+				"select $w from <#ri> where $w <"+MODEL+"> <info:fedora/monk:work> " +
+				"and $w <"+MEMBER+"> <info:fedora/monk:c2>").size());
+		assertEquals(0, triples.select(
+				"select $w from <#ri> where $w <http://example.org/unknown> $x").size());
+	}
+	
+	@Test
+	public void removeSubjectDropsItsTriples()
+	{
+		assertEquals(8, triples.size());
+		assertEquals(3, triples.removeSubject("info:fedora/monk:w1"));
+		assertEquals(5, triples.size());
+		assertEquals(1, triples.select(
+				"select $w from <#ri> where $w <"+MEMBER+"> <info:fedora/monk:c1>").size());
+		assertEquals(0, triples.removeSubject("info:fedora/monk:w1"));
+	}
+	
+	@Test
+	public void rejectsUnsupportedQueries()
+	{
+		String[] queries = {
+			"select $w from <#ri> where $w <"+MEMBER+"> $c or $c <"+MEMBER+"> $w",
+			"select $w where $w <"+MEMBER+"> $c",
+			"select $w from <#ri> where $w <"+MEMBER+"> $c order by $x",
+		};
+		for (String query: queries)
+		{
+			try
+			{
+				triples.select(query);
+				fail(query);
+			}
+			catch (IllegalArgumentException expected)
+			{}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jrdf.graph.Node;
+import org.junit.Test;
+import org.trippi.RDFUtil;
+import org.trippi.TupleIterator;
+import org.trippi.io.CSVTupleWriter;
+
+/**
+ * 
+ * <p>
+ * Title: CsvTupleReaderTest
+ * </p>
+ * 
+ * <p>
+ * Description: Reads tuples written by trippi's CSVTupleWriter, the writer
+ * the Fedora resource index answers CSV queries with.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class CsvTupleReaderTest
+{
+	private final RDFUtil factory = new RDFUtil();
+	private final List<Map<String, Node>> tuples = new ArrayList<Map<String, Node>>();
+	
+	@Test
+	public void readsBareValues()
+	throws Exception
+	{
+		add(uri("info:fedora/monk:1"), factory.createLiteral("plain"));
+		add(uri("info:fedora/monk:2"), factory.createLiteral("<wrapped>"));
+		add(uri("info:fedora/monk:3"), factory.createLiteral("42", new URI("http://www.w3.org/2001/XMLSchema#int")));
+		add(uri("info:fedora/monk:4"), factory.createLiteral("chapter", "en"));
+		
+		CsvTupleReader reader = read(null);
+		assertArrayEquals(new String[] { "s", "o" }, reader.names());
+		assertArrayEquals(new String[] { "info:fedora/monk:1", "plain" }, reader.next());
+		assertArrayEquals(new String[] { "info:fedora/monk:2", "<wrapped>" }, reader.next());
+		assertArrayEquals(new String[] { "info:fedora/monk:3", "42" }, reader.next());
+		assertArrayEquals(new String[] { "info:fedora/monk:4", "chapter" }, reader.next());
+		assertNull(reader.next());
+	}
+	
+	@Test
+	public void readsQuotedValues()
+	throws Exception
+	{
+		add(uri("info:fedora/monk:1"), factory.createLiteral("say \"hi\", ok"));
+		add(uri("info:fedora/monk:2"), factory.createLiteral("\"quoted\""));
+		add(uri("info:fedora/monk:3"), factory.createLiteral("a,b"));
+		
+		TupleRows rows = read(null).readAll();
+		assertEquals(3, rows.size());
+		assertEquals("say \"hi\", ok", rows.getRows().get(0)[1]);
+		assertEquals("\"quoted\"", rows.getRows().get(1)[1]);
+		assertEquals("a,b", rows.getRows().get(2)[1]);
+	}
+	
+	@Test
+	public void readsUnboundAsNull()
+	throws Exception
+	{
+		add(uri("info:fedora/monk:1"), null);
+		add(uri("info:fedora/monk:2"), factory.createLiteral(""));
+		
+		CsvTupleReader reader = read(null);
+		assertArrayEquals(new String[] { "info:fedora/monk:1", null }, reader.next());
+		assertArrayEquals(new String[] { "info:fedora/monk:2", "" }, reader.next());
+		assertNull(reader.next());
+	}
+	
+	@Test
+	public void expandsAliases()
+	throws Exception
+	{
+		add(uri("http://www.w3.org/1999/02/22-rdf-syntax-ns#type"), 
+			uri("info:fedora/fedora-system:def/model#FedoraObject"));
+		add(uri("info:fedora/fedora-system:def/relations-external#isMemberOf"), 
+			uri("info:fedora/monk:collection"));
+		add(uri("http://example.org/other#p"), factory.createLiteral("plain"));
+		
+		CsvTupleReader reader = read(ResourceIndex.getAliases());
+		assertArrayEquals(new String[] { "http://www.w3.org/1999/02/22-rdf-syntax-ns#type", 
+			                             "info:fedora/fedora-system:def/model#FedoraObject" }, 
+			              reader.next());
+		assertArrayEquals(new String[] { "info:fedora/fedora-system:def/relations-external#isMemberOf", 
+			                             "info:fedora/monk:collection" }, 
+			              reader.next());
+		assertArrayEquals(new String[] { "http://example.org/other#p", "plain" }, reader.next());
+		assertNull(reader.next());
+	}
+	
+	@Test
+	public void readsManyRows()
+	throws Exception
+	{
+		for (int i = 0; i < 2000; i++)
+		{
+			add(uri("info:fedora/monk:" + i), factory.createLiteral("title " + i));
+		}
+		TupleRows rows = read(ResourceIndex.getAliases()).readAll();
+		assertEquals(2000, rows.size());
+		assertEquals("info:fedora/monk:1999", rows.getRows().get(1999)[0]);
+		assertEquals("title 1999", rows.getRows().get(1999)[1]);
+	}
+	
+	private Node uri(String uri)
+	throws Exception
+	{
+		return factory.createResource(new URI(uri));
+	}
+	
+	private void add(Node s, Node o)
+	{
+		Map<String, Node> tuple = new HashMap<String, Node>();
+		tuple.put("s", s);
+		if (o != null)
+		{  tuple.put("o", o); }
+		tuples.add(tuple);
+	}
+	
+	/* A reader over the tuples as CSVTupleWriter writes them. */
+	private CsvTupleReader read(Map<String, String> aliases)
+	throws Exception
+	{
+		TupleIterator it = new TupleIterator()
+		{
+			int next = 0;
+			
+			public boolean hasNext()
+			{  return next < tuples.size(); }
+			
+			public Map next()
+			{  return tuples.get(next++); }
+			
+			public String[] names()
+			{  return new String[] { "s", "o" }; }
+			
+			public void close()
+			{ }
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new CSVTupleWriter(out, aliases).write(it);
+		return new CsvTupleReader(new ByteArrayInputStream(out.toByteArray()), aliases);
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.meandre.components.fedora.fake.FakeFedoraClient;
+import org.meandre.components.fedora.fake.FakeRepository;
+
+/**
+ * 
+ * <p>
+ * Title: DatastreamReaderTest
+ * </p>
+ * 
+ * <p>
+ * Description: Reads ranges of a datastream from the fake server,
+ * including a range that fails part way and is resumed.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class DatastreamReaderTest
+{
+	private static final int LENGTH = 300 * 1024 + 17;
+	
+	private FakeFedoraClient fclient;
+	private byte[] content;
+	
+	@Before
+	public void setUp()
+	throws Exception
+	{
+		FakeRepository repository = new FakeRepository();
+		repository.ingest(FakeRepository.foxml("big:1", "big", LENGTH, null));
+		fclient = new FakeFedoraClient(repository);
+		content = fclient.getAPIA().getDatastreamDissemination("big:1", "DC", null).getStream();
+	}
+	
+	@After
+	public void tearDown()
+	{
+		fclient.stop();
+	}
+	
+	@Test
+	public void probeGivesLengthAndRangeSupport()
+	throws Exception
+	{
+		DatastreamReader reader = reader(new RetryPolicy(1, 1));
+		assertEquals(content.length, reader.probe());
+		assertTrue(reader.isRanged());
+	}
+	
+	@Test
+	public void readsARange()
+	throws Exception
+	{
+		Collector sink = new Collector(1000, -1);
+		reader(new RetryPolicy(1, 1)).read(1000, 99999, sink);
+		assertArrayEquals(Arrays.copyOfRange(content, 1000, 100000), sink.toByteArray());
+	}
+	
+	@Test
+	public void readsToTheEnd()
+	throws Exception
+	{
+		Collector sink = new Collector(0, -1);
+		reader(new RetryPolicy(1, 1)).read(0, -1, sink);
+		assertArrayEquals(content, sink.toByteArray());
+	}
+	
+	@Test
+	public void resumesAfterAFailurePartWay()
+	throws Exception
+	{
+		RetryPolicy retry = new RetryPolicy(3, 1);
+		Collector sink = new Collector(1000, 100000);
+		reader(retry).read(1000, 200000, sink);
+		
+		// no byte is written twice or skipped
+		assertArrayEquals(Arrays.copyOfRange(content, 1000, 200001), sink.toByteArray());
+		assertEquals(1, sink.failures);
+		assertEquals(2, retry.getLastAttempts());
+	}
+	
+	@Test
+	public void givesUpAfterMaxAttempts()
+	throws Exception
+	{
+		RetryPolicy retry = new RetryPolicy(2, 1);
+		Collector sink = new Collector(0, 1);
+		sink.failEvery = true;
+		try
+		{
+			reader(retry).read(0, -1, sink);
+			fail();
+		}
+		catch (SocketException expected)
+		{}
+		assertEquals(2, retry.getLastAttempts());
+	}
+	
+	@Test
+	public void aRangePastTheEndFails()
+	throws Exception
+	{
+		try
+		{
+			reader(new RetryPolicy(1, 1)).read(content.length + 10, content.length + 20, new Collector(0, -1));
+			fail();
+		}
+		catch (IOException expected)
+		{}
+	}
+	
+	private DatastreamReader reader(RetryPolicy retry)
+	{
+		return new DatastreamReader(new RestTransport(fclient), "big:1", "DC", null, retry);
+	}
+	
+	/*
+	 * Collects content written in order from first, failing with a
+	 * transient error once more than failAfter bytes have arrived.
+	 */
+	private static class Collector extends ByteArrayOutputStream implements DatastreamReader.Sink
+	{
+		private final long first;
+		private final long failAfter;
+		boolean failEvery = false;
+		int failures = 0;
+		
+		Collector(long first, long failAfter)
+		{
+			this.first = first;
+			this.failAfter = failAfter;
+		}
+		
+		public void write(long offset, byte[] bytes, int off, int len)
+		throws IOException
+		{
+			assertEquals(first + size(), offset);
+			if (failAfter >= 0 && size() >= failAfter && (failEvery || failures == 0))
+			{
+				failures++;
+				throw new SocketException("Connection reset");
+			}
+			write(bytes, off, len);
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * 
+ * <p>
+ * Title: FoxmlProjectionTest
+ * </p>
+ * 
+ * <p>
+ * Description: Projects datastreams and values out of a FOXML
+ * document with inline, binary and external content.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class FoxmlProjectionTest
+{
+	private static final String DOC =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+		"<foxml:digitalObject VERSION=\"1.1\" PID=\"monk:1\" xmlns:foxml=\"info:fedora/fedora-system:def/foxml#\">\n" +
+		" <foxml:objectProperties>\n" +
+		"  <foxml:property NAME=\"info:fedora/fedora-system:def/model#state\" VALUE=\"Active\"/>\n" +
+		"  <foxml:property NAME=\"info:fedora/fedora-system:def/model#label\" VALUE=\"A &amp; B\"/>\n" +
+		" </foxml:objectProperties>\n" +
+		" <foxml:datastream ID=\"DC\" STATE=\"A\" CONTROL_GROUP=\"X\">\n" +
+		"  <foxml:datastreamVersion ID=\"DC1.0\" MIMETYPE=\"text/xml\">\n" +
+		"   <foxml:xmlContent><oai_dc:dc xmlns:oai_dc=\"http://www.openarchives.org/OAI/2.0/oai_dc/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><dc:title>Old</dc:title></oai_dc:dc></foxml:xmlContent>\n" +
+		"  </foxml:datastreamVersion>\n" +
+		"  <foxml:datastreamVersion ID=\"DC1.1\" MIMETYPE=\"text/xml\">\n" +
+		"   <foxml:xmlContent><oai_dc:dc xmlns:oai_dc=\"http://www.openarchives.org/OAI/2.0/oai_dc/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><dc:title lang=\"en\">New &lt;1&gt;</dc:title></oai_dc:dc></foxml:xmlContent>\n" +
+		"  </foxml:datastreamVersion>\n" +
+		" </foxml:datastream>\n" +
+		" <foxml:datastream ID=\"BIN\" STATE=\"A\" CONTROL_GROUP=\"M\">\n" +
+		"  <foxml:datastreamVersion ID=\"BIN.0\" MIMETYPE=\"application/octet-stream\">\n" +
+		"   <foxml:binaryContent>\n   aGVsbG8=\n   </foxml:binaryContent>\n" +
+		"  </foxml:datastreamVersion>\n" +
+		" </foxml:datastream>\n" +
+		" <foxml:datastream ID=\"EXT\" STATE=\"A\" CONTROL_GROUP=\"E\">\n" +
+		"  <foxml:datastreamVersion ID=\"EXT.0\" MIMETYPE=\"text/html\">\n" +
+		"   <foxml:contentLocation TYPE=\"URL\" REF=\"http://example.org/page\"/>\n" +
+		"  </foxml:datastreamVersion>\n" +
+		" </foxml:datastream>\n" +
+		" <foxml:datastream ID=\"SKIP\" STATE=\"A\" CONTROL_GROUP=\"X\">\n" +
+		"  <foxml:datastreamVersion ID=\"SKIP.0\" MIMETYPE=\"text/xml\"><foxml:xmlContent><x/></foxml:xmlContent></foxml:datastreamVersion>\n" +
+		" </foxml:datastream>\n" +
+		"</foxml:digitalObject>\n";
+	
+	private static final String TITLE = "digitalObject/datastream/datastreamVersion/xmlContent/dc/title";
+	
+	@Test
+	public void keepsTheLatestVersionOfEachDatastream()
+	throws Exception
+	{
+		FoxmlProjection projection = new FoxmlProjection(Arrays.asList("DC", "BIN", "EXT", "MISSING"), 
+				Collections.<String>emptyList(), true).parse(DOC);
+		Map<String, String> datastreams = projection.getDatastreams();
+		assertEquals(Arrays.asList("DC", "BIN", "EXT"), Arrays.asList(datastreams.keySet().toArray()));
+		
+		String dc = datastreams.get("DC");
+		assertTrue(dc, dc.startsWith("<oai_dc:dc "));
+		assertTrue(dc, dc.contains("<dc:title lang=\"en\">New &lt;1&gt;</dc:title>"));
+		assertFalse(dc, dc.contains("Old"));
+		Document parsed = parse(dc);
+		assertEquals("New <1>", parsed.getElementsByTagNameNS("http://purl.org/dc/elements/1.1/", "title")
+				.item(0).getTextContent());
+		
+		assertEquals("aGVsbG8=", datastreams.get("BIN"));
+		assertEquals("http://example.org/page", datastreams.get("EXT"));
+	}
+	
+	@Test
+	public void keepsEveryVersionByVersionId()
+	throws Exception
+	{
+		FoxmlProjection projection = new FoxmlProjection(Arrays.asList("DC"), 
+				Collections.<String>emptyList(), false).parse(DOC.getBytes("UTF-8"));
+		Map<String, String> datastreams = projection.getDatastreams();
+		assertEquals(2, datastreams.size());
+		assertTrue(datastreams.get("DC1.0").contains("<dc:title>Old</dc:title>"));
+		assertTrue(datastreams.get("DC1.1").contains("New &lt;1&gt;"));
+	}
+	
+	@Test
+	public void collectsElementAndAttributeValues()
+	throws Exception
+	{
+		List<String> paths = Arrays.asList("digitalObject/@PID", 
+				"/digitalObject/objectProperties/property/@VALUE", TITLE, "digitalObject/nothing");
+		FoxmlProjection projection = new FoxmlProjection(Collections.<String>emptyList(), paths, true)
+				.parse(new ByteArrayInputStream(DOC.getBytes("UTF-8")));
+		Map<String, List<String>> values = projection.getValues();
+		assertEquals(Arrays.asList("monk:1"), values.get("digitalObject/@PID"));
+		assertEquals(Arrays.asList("Active", "A & B"), values.get("/digitalObject/objectProperties/property/@VALUE"));
+		assertEquals(Arrays.asList("Old", "New <1>"), values.get(TITLE));
+		assertTrue(values.get("digitalObject/nothing").isEmpty());
+		assertTrue(projection.getDatastreams().isEmpty());
+	}
+	
+	@Test(expected = IOException.class)
+	public void rejectsOtherInputTypes()
+	throws Exception
+	{
+		new FoxmlProjection(Arrays.asList("DC"), Collections.<String>emptyList(), true).parse(Integer.valueOf(1));
+	}
+	
+	private static Document parse(String xml)
+	throws Exception
+	{
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		factory.setNamespaceAware(true);
+		return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+	}
+}
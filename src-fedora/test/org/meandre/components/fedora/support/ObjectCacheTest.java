@@ -0,0 +1,261 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fedora.server.access.FedoraAPIAServiceLocator;
+
+/**
+ * 
+ * <p>
+ * Title: ObjectCacheTest
+ * </p>
+ * 
+ * <p>
+ * Description: Checks hits, revalidation with a validator, least
+ * recently used eviction and the keys of the disk cache.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class ObjectCacheTest
+{
+	private static final long HOUR = 60 * 60 * 1000L;
+	
+	private File dir;
+	private ObjectCache cache;
+	
+	@Before
+	public void setUp()
+	throws IOException
+	{
+		dir = File.createTempFile("objectcache", "");
+		dir.delete();
+		cache = ObjectCache.getInstance(dir);
+	}
+	
+	@After
+	public void tearDown()
+	{
+		File[] files = dir.listFiles();
+		if (files != null)
+		{
+			for (File file: files)
+			{  file.delete(); }
+		}
+		dir.delete();
+	}
+	
+	@Test
+	public void freshEntriesAreHits()
+	throws Exception
+	{
+		CountingLoader loader = new CountingLoader(bytes(1000, 1));
+		assertArrayEquals(loader.bytes, cache.get("k", "monk:1", HOUR, null, loader));
+		assertArrayEquals(loader.bytes, cache.get("k", "monk:1", HOUR, null, loader));
+		assertEquals(1, loader.loads);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void expiredEntriesWithoutValidatorAreLoadedAgain()
+	throws Exception
+	{
+		CountingLoader loader = new CountingLoader(bytes(1000, 1));
+		cache.get("k", "monk:1", -1, null, loader);
+		cache.get("k", "monk:1", -1, null, loader);
+		assertEquals(2, loader.loads);
+		assertEquals(0, cache.getHits());
+	}
+	
+	@Test
+	public void unchangedTokenRevalidates()
+	throws Exception
+	{
+		CountingLoader loader = new CountingLoader(bytes(1000, 1));
+		FixedValidator validator = new FixedValidator("2008-01-01T00:00:00Z");
+		cache.get("k", "monk:1", -1, validator, loader);
+		assertArrayEquals(loader.bytes, cache.get("k", "monk:1", -1, validator, loader));
+		assertEquals(1, loader.loads);
+		assertEquals(1, cache.getRevalidations());
+		assertEquals(1, cache.getHits());
+		
+		validator.token = "2008-01-02T00:00:00Z";
+		loader.bytes = bytes(1000, 2);
+		assertArrayEquals(loader.bytes, cache.get("k", "monk:1", -1, validator, loader));
+		assertEquals(2, loader.loads);
+		assertEquals(1, cache.getRevalidations());
+		
+		// stored with the new token
+		assertArrayEquals(loader.bytes, cache.get("k", "monk:1", -1, validator, loader));
+		assertEquals(2, loader.loads);
+	}
+	
+	@Test
+	public void evictsTheLeastRecentlyUsedEntry()
+	throws Exception
+	{
+		CountingLoader a = new CountingLoader(bytes(10000, 1));
+		CountingLoader b = new CountingLoader(bytes(10000, 2));
+		CountingLoader c = new CountingLoader(bytes(10000, 3));
+		cache.get("a", "monk:a", HOUR, null, a);
+		cache.get("b", "monk:b", HOUR, null, b);
+		long perEntry = cache.getTotalBytes() / 2;
+		cache.setMaxBytes(perEntry * 5 / 2);
+		
+		// a becomes the most recently used, so c pushes out b
+		cache.get("a", "monk:a", HOUR, null, a);
+		cache.get("c", "monk:c", HOUR, null, c);
+		assertEquals(2, cache.size());
+		assertTrue(cache.getTotalBytes() <= perEntry * 5 / 2);
+		
+		cache.get("a", "monk:a", HOUR, null, a);
+		cache.get("b", "monk:b", HOUR, null, b);
+		assertEquals(1, a.loads);
+		assertEquals(2, b.loads);
+		assertEquals(1, c.loads);
+	}
+	
+	@Test
+	public void evictsDownToANewLimit()
+	throws Exception
+	{
+		for (int i = 0; i < 5; i++)
+		{
+			cache.put("k"+i, "monk:"+i, null, bytes(10000, i));
+		}
+		assertEquals(5, cache.size());
+		cache.setMaxBytes(0);
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getTotalBytes());
+		assertEquals(0, dir.listFiles().length);
+	}
+	
+	@Test
+	public void invalidateDropsEveryEntryOfTheObject()
+	throws Exception
+	{
+		cache.put("profile", "monk:1", null, bytes(100, 1));
+		cache.put("datastreams", "monk:1", null, bytes(100, 2));
+		cache.put("profile2", "monk:2", null, bytes(100, 3));
+		cache.invalidate("monk:1");
+		assertEquals(1, cache.size());
+		
+		CountingLoader loader = new CountingLoader(bytes(100, 4));
+		cache.get("profile", "monk:1", HOUR, null, loader);
+		assertEquals(1, loader.loads);
+	}
+	
+	@Test
+	public void keysIncludeServerAndUser()
+	throws Exception
+	{
+		URL endpoint = new URL("http://example.org:8080/fedora/services/access");
+		Object alice = new FedoraAPIAServiceLocator("alice", "pw").getFedoraAPIAPortSOAPHTTP(endpoint);
+		Object bob = new FedoraAPIAServiceLocator("bob", "pw").getFedoraAPIAPortSOAPHTTP(endpoint);
+		Object alice2 = new FedoraAPIAServiceLocator("alice", "pw").getFedoraAPIAPortSOAPHTTP(endpoint);
+		String[] params = { "DC" };
+		
+		String key = ObjectCache.makeKey(alice, "monk:1", "datastream", params);
+		assertEquals(key, ObjectCache.makeKey(alice2, "monk:1", "datastream", params));
+		assertFalse(key.equals(ObjectCache.makeKey(bob, "monk:1", "datastream", params)));
+		assertFalse(key.equals(ObjectCache.makeKey(alice, "monk:2", "datastream", params)));
+	}
+	
+	/* Incompressible bytes, so entry sizes on disk are predictable. */
+	private static byte[] bytes(int length, long seed)
+	{
+		byte[] bytes = new byte[length];
+		new Random(seed).nextBytes(bytes);
+		return bytes;
+	}
+	
+	private static class CountingLoader implements ObjectCache.Loader
+	{
+		byte[] bytes;
+		int loads = 0;
+		
+		CountingLoader(byte[] bytes)
+		{  this.bytes = bytes; }
+		
+		public byte[] load()
+		{
+			loads++;
+			return bytes;
+		}
+	}
+	
+	private static class FixedValidator implements ObjectCache.Validator
+	{
+		String token;
+		
+		FixedValidator(String token)
+		{  this.token = token; }
+		
+		public String token(String pid)
+		{  return token; }
+	}
+}
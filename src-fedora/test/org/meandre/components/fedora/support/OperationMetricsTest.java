@@ -0,0 +1,144 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * 
+ * <p>
+ * Title: OperationMetricsTest
+ * </p>
+ * 
+ * <p>
+ * Description: Checks the latency histogram buckets and the
+ * percentiles read from them.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class OperationMetricsTest
+{
+	@Test
+	public void smallValuesHaveABucketEach()
+	{
+		for (int micros = 0; micros < 4; micros++)
+		{
+			assertEquals(micros, OperationMetrics.bucket(micros));
+			assertEquals(micros, OperationMetrics.upperBound(micros));
+		}
+	}
+	
+	@Test
+	public void bucketsAreContiguous()
+	{
+		for (int bucket = 0; bucket < 120; bucket++)
+		{
+			long upper = OperationMetrics.upperBound(bucket);
+			assertEquals(bucket, OperationMetrics.bucket(upper));
+			assertEquals(bucket + 1, OperationMetrics.bucket(upper + 1));
+		}
+	}
+	
+	@Test
+	public void upperBoundIsWithinAQuarter()
+	{
+		long[] values = { 4, 5, 7, 8, 9, 100, 999, 1000, 1001, 65535, 65536, 123456789L };
+		for (long micros: values)
+		{
+			long upper = OperationMetrics.upperBound(OperationMetrics.bucket(micros));
+			assertTrue(micros+" -> "+upper, upper >= micros);
+			assertTrue(micros+" -> "+upper, upper - micros < micros / 4.0);
+		}
+	}
+	
+	@Test
+	public void hugeValuesShareTheLastBucket()
+	{
+		assertEquals(127, OperationMetrics.bucket(Long.MAX_VALUE));
+		assertEquals(OperationMetrics.bucket(Long.MAX_VALUE), OperationMetrics.bucket(Long.MAX_VALUE / 2));
+	}
+	
+	@Test
+	public void countsCallsErrorsAndBytes()
+	{
+		OperationMetrics metrics = new OperationMetrics("test");
+		metrics.success(metrics.start(), 100);
+		metrics.success(metrics.start(), 0);
+		metrics.failure(metrics.start());
+		assertEquals(3, metrics.getCalls());
+		assertEquals(1, metrics.getErrors());
+		assertEquals(100, metrics.getBytes());
+		
+		metrics.reset();
+		assertEquals(0, metrics.getCalls());
+		assertEquals(0.0, metrics.getP99Millis(), 0.0);
+	}
+	
+	@Test
+	public void percentilesComeFromTheHistogram()
+	{
+		OperationMetrics metrics = new OperationMetrics("test");
+		for (int i = 0; i < 99; i++)
+		{
+			metrics.success(System.nanoTime() - 10 * 1000 * 1000L, 0);
+		}
+		metrics.success(System.nanoTime() - 1000 * 1000 * 1000L, 0);
+		
+		assertEquals(10.0, metrics.getP50Millis(), 2.5);
+		assertEquals(10.0, metrics.getP99Millis(), 2.5);
+		assertEquals(1000.0, metrics.getMaxMillis(), 250.0);
+		assertEquals(1000.0, metrics.percentileMillis(1.0), 250.0);
+	}
+}
@@ -0,0 +1,207 @@
+/**
+ * University of Illinois/NCSA
+ * Open Source License
+ * 
+ * Copyright (c) 2008, Board of Trustees-University of Illinois.  
+ * All rights reserved.
+ * 
+ * Developed by: 
+ * 
+ * Automated Learning Group
+ * National Center for Supercomputing Applications
+ * http://www.seasr.org
+ * 
+ *  
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal with the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions: 
+ * 
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimers. 
+ * 
+ *  * Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimers in the 
+ *    documentation and/or other materials provided with the distribution. 
+ * 
+ *  * Neither the names of Automated Learning Group, The National Center for
+ *    Supercomputing Applications, or University of Illinois, nor the names of
+ *    its contributors may be used to endorse or promote products derived from
+ *    this Software without specific prior written permission. 
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.  IN NO EVENT SHALL THE
+ * CONTRIBUTORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS
+ * WITH THE SOFTWARE.
+ */ 
+
+package org.meandre.components.fedora.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.rmi.RemoteException;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.httpclient.ConnectTimeoutException;
+import org.apache.commons.httpclient.NoHttpResponseException;
+import org.junit.Test;
+
+/**
+ * 
+ * <p>
+ * Title: RetryPolicyTest
+ * </p>
+ * 
+ * <p>
+ * Description: Checks which failures are retried by call and by
+ * callUnsent, and the attempts reported for them.
+ * </p>
+ * 
+ * <p>
+ * Copyright: Copyright (c) 2008
+ * </p>
+ * 
+ * <p>
+ * Company: Automated Learning Group, NCSA
+ * </p>
+ * 
+ * @version 1.0
+ */
+public class RetryPolicyTest
+{
+	@Test
+	public void networkFailuresAreTransient()
+	{
+		assertTrue(RetryPolicy.isTransient(new SocketException("reset")));
+		assertTrue(RetryPolicy.isTransient(new SocketTimeoutException("read timed out")));
+		assertTrue(RetryPolicy.isTransient(new ConnectException("refused")));
+		assertTrue(RetryPolicy.isTransient(new NoHttpResponseException()));
+		assertTrue(RetryPolicy.isTransient(new ConnectTimeoutException()));
+		assertTrue(RetryPolicy.isTransient(new RemoteException("axis", new SocketException("reset"))));
+		
+		assertFalse(RetryPolicy.isTransient(new IOException("404")));
+		assertFalse(RetryPolicy.isTransient(new RemoteException("fedora.server.errors.ObjectNotFoundException")));
+		assertFalse(RetryPolicy.isTransient(null));
+	}
+	
+	@Test
+	public void onlyConnectFailuresAreUnsent()
+	{
+		assertTrue(RetryPolicy.isUnsent(new ConnectException("refused")));
+		assertTrue(RetryPolicy.isUnsent(new NoRouteToHostException()));
+		assertTrue(RetryPolicy.isUnsent(new ConnectTimeoutException()));
+		assertTrue(RetryPolicy.isUnsent(new RemoteException("axis", new ConnectException("refused"))));
+		
+		// the request may have reached the server
+		assertFalse(RetryPolicy.isUnsent(new SocketException("reset")));
+		assertFalse(RetryPolicy.isUnsent(new SocketTimeoutException("read timed out")));
+		assertFalse(RetryPolicy.isUnsent(new NoHttpResponseException()));
+		assertFalse(RetryPolicy.isUnsent(new IOException("500")));
+	}
+	
+	@Test
+	public void callRetriesTransientFailures()
+	throws Exception
+	{
+		RetryPolicy retry = new RetryPolicy(3, 1);
+		assertEquals("done", retry.call(new Failing(2, new SocketException("reset"))));
+		assertEquals(3, retry.getLastAttempts());
+	}
+	
+	@Test
+	public void callGivesUpAfterMaxAttempts()
+	throws Exception
+	{
+		RetryPolicy retry = new RetryPolicy(3, 1);
+		SocketException reset = new SocketException("reset");
+		try
+		{
+			retry.call(new Failing(5, reset));
+			fail();
+		}
+		catch (SocketException ex)
+		{
+			assertSame(reset, ex);
+		}
+		assertEquals(3, retry.getLastAttempts());
+	}
+	
+	@Test
+	public void callDoesNotRetryOtherFailures()
+	throws Exception
+	{
+		RetryPolicy retry = new RetryPolicy(3, 1);
+		try
+		{
+			retry.call(new Failing(1, new IOException("404")));
+			fail();
+		}
+		catch (IOException ex)
+		{}
+		assertEquals(1, retry.getLastAttempts());
+	}
+	
+	@Test
+	public void callUnsentRetriesOnlyUnsentFailures()
+	throws Exception
+	{
+		RetryPolicy retry = new RetryPolicy(3, 1);
+		assertEquals("done", retry.callUnsent(new Failing(1, new ConnectException("refused"))));
+		assertEquals(2, retry.getLastAttempts());
+		
+		try
+		{
+			retry.callUnsent(new Failing(1, new SocketTimeoutException("read timed out")));
+			fail();
+		}
+		catch (SocketTimeoutException ex)
+		{}
+		assertEquals(1, retry.getLastAttempts());
+	}
+	
+	@Test
+	public void backoffIsCapped()
+	{
+		RetryPolicy retry = new RetryPolicy(10, 100, 1000);
+		for (int attempt = 1; attempt < 40; attempt++)
+		{
+			long delay = retry.backoff(attempt);
+			assertTrue(delay >= 0);
+			assertTrue(delay <= Math.min(1000, 100L << Math.min(attempt - 1, 20)));
+		}
+	}
+	
+	/* Fails the first failures times, then returns "done". */
+	private static class Failing implements Callable<String>
+	{
+		private final Exception failure;
+		private int failures;
+		
+		Failing(int failures, Exception failure)
+		{
+			this.failures = failures;
+			this.failure = failure;
+		}
+		
+		public String call() throws Exception
+		{
+			if (failures-- > 0)
+			{  throw failure; }
+			return "done";
+		}
+	}
+}